@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Exact LU factorization of a simplex basis, with product form eta updates for basis changes.
+ * <p>
+ * Rows of the basis matrix are constraint rows, columns are basis positions. Vectors passed to {@link #ftran} are
+ * indexed by constraint row and the result is indexed by basis position, {@link #btran} goes the other way.
+ */
+class BasisFactorization
+{
+    private final int size;
+    private final int[] pivotRows;
+    private final int[] pivotPositions;
+    private final BigFraction[] pivotValues;
+    private final SparseVector[] lowerFactors;
+    private final SparseVector[] upperRows;
+    private final List<Eta> etas = new ArrayList<>();
+
+    private BasisFactorization(int size)
+    {
+        this.size = size;
+        this.pivotRows = new int[size];
+        this.pivotPositions = new int[size];
+        this.pivotValues = new BigFraction[size];
+        this.lowerFactors = new SparseVector[size];
+        this.upperRows = new SparseVector[size];
+    }
+
+    /**
+     * Factorizes the basis matrix made up of the specified columns.
+     *
+     * @param size    the number of rows in the basis matrix, which must equal the number of columns.
+     * @param columns the basis columns, indexed by basis position.
+     * @return the factorization, or {@code null} if the basis matrix is singular.
+     */
+    static BasisFactorization factorize(int size, List<? extends SparseVector> columns)
+    {
+        assert columns.size() == size;
+
+        List<Map<Integer, BigFraction>> activeRows = new ArrayList<>(size);
+        List<Set<Integer>> activeColumns = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++){
+            activeRows.add(new HashMap<>());
+            activeColumns.add(new HashSet<>());
+        }
+
+        for (int position = 0; position < size; position++){
+            SparseVector column = columns.get(position);
+            for (int i = 0; i < column.size(); i++){
+                activeRows.get(column.index(i)).put(position, column.value(i));
+                activeColumns.get(position).add(column.index(i));
+            }
+        }
+
+        BasisFactorization f = new BasisFactorization(size);
+        boolean[] eliminated = new boolean[size];
+
+        for (int k = 0; k < size; k++){
+            /*
+             * Markowitz style pivot selection: the column with the fewest non-zeros, then the row within that column
+             * with the fewest non-zeros. Basis matrices in our models are mostly slack columns, so this finds the
+             * singletons first and keeps fill-in low.
+             */
+            int pivotPosition = -1;
+            for (int position = 0; position < size; position++){
+                if (!eliminated[position]){
+                    int count = activeColumns.get(position).size();
+                    if (count == 0){
+                        return null;
+                    }
+                    if (pivotPosition < 0 || count < activeColumns.get(pivotPosition).size()){
+                        pivotPosition = position;
+                        if (count == 1){
+                            break;
+                        }
+                    }
+                }
+            }
+
+            int pivotRow = -1;
+            for (int row : activeColumns.get(pivotPosition)){
+                if (pivotRow < 0 || activeRows.get(row).size() < activeRows.get(pivotRow).size()){
+                    pivotRow = row;
+                }
+            }
+
+            Map<Integer, BigFraction> pivotRowEntries = activeRows.get(pivotRow);
+            BigFraction pivotValue = pivotRowEntries.get(pivotPosition);
+
+            SparseVector upperRow = new SparseVector(pivotRowEntries.size() - 1);
+            for (var entry : pivotRowEntries.entrySet()){
+                activeColumns.get(entry.getKey()).remove(pivotRow);
+                if (entry.getKey() != pivotPosition){
+                    upperRow.add(entry.getKey(), entry.getValue());
+                }
+            }
+
+            SparseVector lowerFactor = new SparseVector(activeColumns.get(pivotPosition).size());
+
+            for (int row : activeColumns.get(pivotPosition)){
+                Map<Integer, BigFraction> rowEntries = activeRows.get(row);
+                BigFraction multiple = rowEntries.remove(pivotPosition).divide(pivotValue);
+                lowerFactor.add(row, multiple);
+
+                for (int i = 0; i < upperRow.size(); i++){
+                    int position = upperRow.index(i);
+                    BigFraction value = rowEntries.getOrDefault(position, BigFraction.zero())
+                            .subtract(multiple.multiply(upperRow.value(i)));
+
+                    if (value.signum() == 0){
+                        if (rowEntries.remove(position) != null){
+                            activeColumns.get(position).remove(row);
+                        }
+                    }else if (rowEntries.put(position, value) == null){
+                        activeColumns.get(position).add(row);
+                    }
+                }
+            }
+
+            activeColumns.get(pivotPosition).clear();
+            pivotRowEntries.clear();
+            eliminated[pivotPosition] = true;
+
+            f.pivotRows[k] = pivotRow;
+            f.pivotPositions[k] = pivotPosition;
+            f.pivotValues[k] = pivotValue;
+            f.lowerFactors[k] = lowerFactor;
+            f.upperRows[k] = upperRow;
+        }
+
+        return f;
+    }
+
+    /**
+     * Solves {@code y B = d} for {@code y}.
+     *
+     * @param d a vector indexed by basis position. This array is overwritten.
+     * @return {@code y}, indexed by constraint row.
+     */
+    BigFraction[] btran(BigFraction[] d)
+    {
+        for (int e = etas.size() - 1; e >= 0; e--){
+            Eta eta = etas.get(e);
+            BigFraction value = d[eta.position];
+            for (int i = 0; i < eta.column.size(); i++){
+                BigFraction other = d[eta.column.index(i)];
+                if (other.signum() != 0){
+                    value = value.subtract(other.multiply(eta.column.value(i)));
+                }
+            }
+            d[eta.position] = value.divide(eta.pivotValue);
+        }
+
+        BigFraction[] w = new BigFraction[size];
+        Arrays.fill(w, BigFraction.zero());
+
+        for (int k = 0; k < size; k++){
+            BigFraction value = d[pivotPositions[k]];
+            if (value.signum() == 0){
+                continue;
+            }
+            value = value.divide(pivotValues[k]);
+            w[pivotRows[k]] = value;
+            SparseVector upperRow = upperRows[k];
+            for (int i = 0; i < upperRow.size(); i++){
+                int position = upperRow.index(i);
+                d[position] = d[position].subtract(value.multiply(upperRow.value(i)));
+            }
+        }
+
+        for (int k = size - 1; k >= 0; k--){
+            SparseVector lowerFactor = lowerFactors[k];
+            if (lowerFactor.size() == 0){
+                continue;
+            }
+            BigFraction value = w[pivotRows[k]];
+            for (int i = 0; i < lowerFactor.size(); i++){
+                BigFraction other = w[lowerFactor.index(i)];
+                if (other.signum() != 0){
+                    value = value.subtract(other.multiply(lowerFactor.value(i)));
+                }
+            }
+            w[pivotRows[k]] = value;
+        }
+
+        return w;
+    }
+
+    /**
+     * Solves {@code B x = a} for {@code x}.
+     *
+     * @param a a vector indexed by constraint row. This array is overwritten.
+     * @return {@code x}, indexed by basis position.
+     */
+    BigFraction[] ftran(BigFraction[] a)
+    {
+        for (int k = 0; k < size; k++){
+            BigFraction value = a[pivotRows[k]];
+            if (value.signum() == 0){
+                continue;
+            }
+            SparseVector lowerFactor = lowerFactors[k];
+            for (int i = 0; i < lowerFactor.size(); i++){
+                int row = lowerFactor.index(i);
+                a[row] = a[row].subtract(lowerFactor.value(i).multiply(value));
+            }
+        }
+
+        BigFraction[] x = new BigFraction[size];
+
+        for (int k = size - 1; k >= 0; k--){
+            BigFraction value = a[pivotRows[k]];
+            SparseVector upperRow = upperRows[k];
+            for (int i = 0; i < upperRow.size(); i++){
+                BigFraction other = x[upperRow.index(i)];
+                if (other.signum() != 0){
+                    value = value.subtract(upperRow.value(i).multiply(other));
+                }
+            }
+            x[pivotPositions[k]] = value.divide(pivotValues[k]);
+        }
+
+        for (Eta eta : etas){
+            BigFraction value = x[eta.position];
+            if (value.signum() == 0){
+                continue;
+            }
+            value = value.divide(eta.pivotValue);
+            for (int i = 0; i < eta.column.size(); i++){
+                int position = eta.column.index(i);
+                x[position] = x[position].subtract(eta.column.value(i).multiply(value));
+            }
+            x[eta.position] = value;
+        }
+
+        return x;
+    }
+
+    int getUpdateCount()
+    {
+        return etas.size();
+    }
+
+    /**
+     * Records a basis change.
+     *
+     * @param position the basis position of the leaving variable.
+     * @param alpha    the entering column, as returned by {@link #ftran}.
+     */
+    void update(int position, BigFraction[] alpha)
+    {
+        SparseVector column = new SparseVector();
+        for (int i = 0; i < alpha.length; i++){
+            if (i != position && alpha[i].signum() != 0){
+                column.add(i, alpha[i]);
+            }
+        }
+        etas.add(new Eta(position, alpha[position], column));
+    }
+
+    private record Eta(int position, BigFraction pivotValue, SparseVector column)
+    {
+    }
+}
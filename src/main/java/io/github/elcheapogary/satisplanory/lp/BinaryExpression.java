@@ -11,16 +11,14 @@
 package io.github.elcheapogary.satisplanory.lp;
 
 import io.github.elcheapogary.satisplanory.util.BigFraction;
-import java.util.Collections;
-import java.util.Map;
 
 public class BinaryExpression
         extends IntegerExpression
 {
-    static final BinaryExpression ZERO = new BinaryExpression(Collections.emptyMap(), BigFraction.zero());
+    static final BinaryExpression ZERO = new BinaryExpression(new DecisionVariable[0], new BigFraction[0], BigFraction.zero());
 
-    BinaryExpression(Map<DecisionVariable, BigFraction> coefficients, BigFraction constantValue)
+    BinaryExpression(DecisionVariable[] variables, BigFraction[] coefficients, BigFraction constantValue)
     {
-        super(coefficients, constantValue);
+        super(variables, coefficients, constantValue);
     }
 }
@@ -15,7 +15,40 @@ import javax.json.JsonObject;
 
 abstract class BranchingConstraint
 {
+    /*
+     * Adds a cut to the tableau that the current solution does not satisfy, but every solution that satisfies this
+     * constraint does. Returns whether a cut was added, which is never the case for constraints that have no cuts.
+     */
+    boolean addCut(Tableau tableau)
+    {
+        return false;
+    }
+
+    /*
+     * How far the value of the tableau is from each of the branches that getConstraints returns, in the same order,
+     * scaled so the gap between the two branches is 1. Empty if the tableau satisfies this constraint. Pseudo costs
+     * are kept per unit of these distances.
+     */
+    abstract double[] getBranchDistances(Tableau tableau);
+
     abstract Collection<? extends Constraint> getConstraints(Tableau tableau);
 
+    /*
+     * How far the tableau is from satisfying this constraint, which is the distance to the nearest branch, so 0.5 for
+     * an integer expression with a value halfway between two integers, and 0 if the constraint is satisfied.
+     */
+    double getScore(Tableau tableau)
+    {
+        double retv = 0;
+
+        for (double distance : getBranchDistances(tableau)){
+            if (retv == 0 || distance < retv){
+                retv = distance;
+            }
+        }
+
+        return retv;
+    }
+
     public abstract JsonObject toJson();
 }
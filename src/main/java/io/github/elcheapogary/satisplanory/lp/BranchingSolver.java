@@ -11,164 +11,792 @@
 package io.github.elcheapogary.satisplanory.lp;
 
 import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
-import java.util.concurrent.RecursiveAction;
+import java.util.PriorityQueue;
 
+/**
+ * Branch and bound over the branching constraints of a model.
+ * <p>
+ * Open nodes are kept in a priority queue, ordered according to {@link SolverOptions#getNodeSelection()}. Nodes are
+ * taken from the queue in batches of {@link SolverOptions#getParallelism()} nodes, and the nodes in a batch are
+ * expanded in parallel. Incumbent updates and pruning happen between batches, in queue order, so the result does not
+ * depend on thread scheduling.
+ * <p>
+ * The search stops early when it runs out of its node or time budget, see {@link SolverOptions#getMaxNodes()} and
+ * {@link SolverOptions#getMaxTime()}, but not before it has found a solution. The bound it returns is then the highest
+ * bound of the nodes it did not get to, which the optimal value can not exceed.
+ * <p>
+ * A node does not own a tableau. It only stores the branch constraint that was added to its parent, and its bound. The
+ * tableaus of the most recently created nodes are kept, because with depth first selection those are the next to be
+ * expanded. For any other node, the tableau is rebuilt when the node is expanded, by copying the root tableau and
+ * adding the branch constraints on the path from the root with the dual simplex. This way, memory use grows with the
+ * number of open nodes times their depth, rather than the number of open nodes times the size of the model.
+ * <p>
+ * Before the search starts, rounds of cuts are added to the root tableau, see {@link SolverOptions#getCutRounds()}.
+ * Cuts hold for every solution that satisfies the branching constraints, so they stay in the root tableau, and every
+ * node inherits them. Each cut lowers the bound of the root a bit, and a lower bound prunes more nodes. Cuts are only
+ * added at the root, where they are added once rather than once for every node they would be rebuilt for.
+ * <p>
+ * Which of the unsatisfied branching constraints of a node is branched on is chosen according to
+ * {@link SolverOptions#getBranching()}. Pseudo costs, the average decrease of the bound per unit of distance that
+ * branching on a constraint caused, are collected from every node that is branched on, and from every constraint that
+ * is tried with strong branching. Like incumbent updates, they are only updated between batches.
+ * <p>
+ * Primal heuristics run at the root, and between batches every {@link SolverOptions#getHeuristicInterval()} nodes,
+ * from the node that is to be expanded next. A solution they find becomes the incumbent if it is better, just like a
+ * leaf of the search.
+ */
 class BranchingSolver
 {
+    /*
+     * Each cut is a row that every later pivot has to update, so a round with more cuts than this is unlikely to pay
+     * for itself.
+     */
+    private static final int MAX_CUTS_PER_ROUND = 32;
+    /*
+     * Strong branching solves two tableaus for every constraint it tries, which is more than expanding the node costs,
+     * so it only tries the most fractional few.
+     */
+    private static final int MAX_STRONG_BRANCHING_CANDIDATES = 8;
+    /*
+     * With PSEUDO_COST, the number of unreliable constraints that are tried with strong branching at each node.
+     */
+    private static final int MAX_RELIABILITY_CANDIDATES = 4;
+    /*
+     * The number of times each branch of a constraint has to have been solved for its pseudo costs to be used instead of
+     * strong branching.
+     */
+    private static final int RELIABILITY = 2;
+    /*
+     * The smallest decrease of the bound that is counted for a branch when scoring, so that a constraint with a branch
+     * that does not lower the bound still scores by its other branch.
+     */
+    private static final double MIN_GAIN = 1e-6;
+
     private BranchingSolver()
     {
     }
 
-
-    public static Tableau maximize(Tableau initialTableau, Expression objectiveFunction, Collection<? extends BranchingConstraint> constraints)
-            throws UnboundedSolutionException, InterruptedException
+    /*
+     * Returns the bound of the root after the cuts.
+     */
+    private static BigFraction addCuts(Tableau tableau, Tableau.Objective objective, Collection<? extends BranchingConstraint> constraints, int rounds, BigFraction bound)
+            throws UnboundedSolutionException, InterruptedException, InfeasibleSolutionException
     {
-        BestSolutionHolder bestSolutionHolder = new BestSolutionHolder();
+        for (int round = 0; round < rounds; round++){
+            int cuts = 0;
+
+            for (BranchingConstraint constraint : constraints){
+                if (cuts >= MAX_CUTS_PER_ROUND){
+                    break;
+                }
+                if (constraint.addCut(tableau)){
+                    cuts++;
+                }
+            }
+
+            if (cuts == 0){
+                break;
+            }
+
+            BigFraction newBound = tableau.reoptimize(objective);
+
+            if (newBound.compareTo(bound) >= 0){
+                break;
+            }
+
+            bound = newBound;
+        }
 
+        return bound;
+    }
+
+    /**
+     * @param tableauConstraints the constraints that the initial tableau was built with, which the primal heuristics
+     *                           look at.
+     * @param startTime          the {@link System#nanoTime()} at which the solve started, which
+     *                           {@link SolverOptions#getMaxTime()} counts from.
+     */
+    public static Result maximize(Tableau initialTableau, Collection<? extends Constraint> tableauConstraints, Expression objectiveFunction, Collection<? extends BranchingConstraint> constraints, SolverOptions options, long startTime)
+            throws UnboundedSolutionException, InterruptedException, InfeasibleSolutionException
+    {
         Tableau.Objective objective = initialTableau.addObjective(objectiveFunction);
 
-        initialTableau.maximize(objective);
+        Search search = new Search(objective, constraints, PrimalHeuristic.createAll(tableauConstraints), options, initialTableau.getExecutor(), startTime);
+        Tableau retv;
 
-        new FindUnsatisfiedConstraintsAction(initialTableau, objective, constraints, bestSolutionHolder).fork().join();
+        try {
+            BigFraction rootBound = initialTableau.maximize(objective);
 
-        initialTableau.removeObjective(objective);
+            if (constraints.isEmpty()){
+                /*
+                 * Nothing to branch on, so the relaxation is the solution, and there is no search to count in the
+                 * statistics.
+                 */
+                return new Result(initialTableau, rootBound);
+            }
+
+            rootBound = addCuts(initialTableau, objective, constraints, options.getCutRounds(), rootBound);
+
+            retv = search.run(new Node(null, null, rootBound, 0, 0, initialTableau));
+        }finally{
+            initialTableau.removeObjective(objective);
+        }
 
-        Tableau retv = bestSolutionHolder.getBestTableau();
+        if (retv == null){
+            throw new InfeasibleSolutionException();
+        }
 
         if (retv != initialTableau){
             retv.removeObjective(objective);
         }
 
-        return retv;
+        return new Result(retv, search.getBound());
     }
 
-    private static class FindUnsatisfiedConstraintsAction
-            extends RecursiveAction
+    private static Comparator<Node> createComparator(SolverOptions.NodeSelection nodeSelection)
     {
-        private final Tableau tableau;
-        private final Tableau.Objective objective;
-        private final Collection<? extends BranchingConstraint> branchingConstraints;
-        private final BestSolutionHolder bestSolutionHolder;
+        Comparator<Node> bestBound = Comparator.comparing((Node node) -> node.bound).reversed();
+        Comparator<Node> deepest = Comparator.comparingInt((Node node) -> node.depth).reversed();
+        Comparator<Node> oldest = Comparator.comparingLong(Node::sequence);
+
+        return switch (nodeSelection){
+            case BEST_FIRST -> bestBound.thenComparing(deepest).thenComparing(oldest);
+            case DEPTH_FIRST, HYBRID -> deepest.thenComparing(bestBound).thenComparing(oldest);
+        };
+    }
+
+    /**
+     * @param tableau the best tableau found that satisfies all branching constraints.
+     * @param bound   the highest value the objective could have in any tableau that satisfies all branching
+     *                constraints. This is the value of the objective in the tableau, unless the search stopped early.
+     */
+    record Result(Tableau tableau, BigFraction bound)
+    {
+    }
 
-        public FindUnsatisfiedConstraintsAction(Tableau tableau, Tableau.Objective objective, Collection<? extends BranchingConstraint> branchingConstraints, BestSolutionHolder bestSolutionHolder)
+    private static class Node
+    {
+        private final Node parent;
+        private final Constraint constraint;
+        private final BigFraction bound;
+        private final int depth;
+        private final long sequence;
+        /*
+         * Null if the tableau has not been kept, in which case it is rebuilt when this node is expanded.
+         */
+        private Tableau tableau;
+
+        public Node(Node parent, Constraint constraint, BigFraction bound, int depth, long sequence, Tableau tableau)
         {
+            this.parent = parent;
+            this.constraint = constraint;
+            this.bound = bound;
+            this.depth = depth;
+            this.sequence = sequence;
             this.tableau = tableau;
+        }
+
+        public boolean isRoot()
+        {
+            return parent == null;
+        }
+
+        public long sequence()
+        {
+            return sequence;
+        }
+    }
+
+    private static class Search
+    {
+        private final Tableau.Objective objective;
+        private final List<? extends BranchingConstraint> branchingConstraints;
+        private final PseudoCosts pseudoCosts;
+        private final SolverOptions options;
+        private final SolverExecutor executor;
+        private final long startTime;
+        private final int batchSize;
+        /*
+         * Enough to keep the tableaus of all the children of a batch when diving.
+         */
+        private final int maxKeptTableaus;
+        private final Deque<Node> nodesWithKeptTableaus = new ArrayDeque<>();
+        private final List<PrimalHeuristic> heuristics;
+        private Node root;
+        private SolverOptions.NodeSelection nodeSelection;
+        private PriorityQueue<Node> openNodes;
+        private Tableau incumbent;
+        private BigFraction incumbentValue;
+        private long nextSequence = 1;
+        private long expandedNodes = 0;
+        private long lastHeuristicRun = 0;
+
+        public Search(Tableau.Objective objective, Collection<? extends BranchingConstraint> branchingConstraints, List<PrimalHeuristic> heuristics, SolverOptions options, SolverExecutor executor, long startTime)
+        {
             this.objective = objective;
-            this.branchingConstraints = branchingConstraints;
-            this.bestSolutionHolder = bestSolutionHolder;
+            this.branchingConstraints = new ArrayList<>(branchingConstraints);
+            this.heuristics = heuristics;
+            this.pseudoCosts = new PseudoCosts(branchingConstraints.size());
+            this.options = options;
+            this.executor = executor;
+            this.startTime = startTime;
+            this.batchSize = executor.getParallelism();
+            this.maxKeptTableaus = Math.max(16, 4 * batchSize);
+            this.nodeSelection = options.getNodeSelection();
+            this.openNodes = new PriorityQueue<>(createComparator(nodeSelection));
         }
 
-        @Override
-        protected void compute()
+        private boolean canBeatIncumbent(BigFraction bound)
+        {
+            return incumbentValue == null || bound.compareTo(incumbentValue) > 0;
+        }
+
+        /*
+         * The highest objective value that a solution could have: the value of the incumbent, or the bound of an open
+         * node that could beat it if the search stopped early.
+         */
+        public BigFraction getBound()
         {
-            for (BranchingConstraint branchingConstraint : branchingConstraints){
-                Collection<? extends Constraint> branches = branchingConstraint.getConstraints(tableau);
+            BigFraction retv = incumbentValue;
 
-                if (branches == null || branches.isEmpty()){
-                    continue;
+            for (Node node : openNodes){
+                if (retv == null || node.bound.compareTo(retv) > 0){
+                    retv = node.bound;
                 }
+            }
+
+            return retv;
+        }
 
-                List<BoundAction> actions = new ArrayList<>(branches.size());
+        private boolean isBudgetExhausted()
+        {
+            if (incumbent == null){
+                return false;
+            }
 
-                boolean first = true;
-                for (Constraint constraint : branches){
-                    Tableau tmpTableau = tableau;
-                    if (first){
-                        first = false;
+            if (expandedNodes >= options.getMaxNodes()){
+                return true;
+            }
+
+            return options.getMaxTime() != null && System.nanoTime() - startTime >= options.getMaxTime().toNanos();
+        }
+
+        /*
+         * Returns the best tableau that satisfies all branching constraints, or null if none was found.
+         */
+        public Tableau run(Node root)
+                throws UnboundedSolutionException, InterruptedException
+        {
+            this.root = root;
+            openNodes.add(root);
+
+            SolverStatistics statistics = executor.getStatistics();
+            statistics.addNodesCreated(1);
+
+            runHeuristics(root);
+
+            while (!openNodes.isEmpty() && !isBudgetExhausted()){
+                executor.throwIfCancelled();
+
+                List<ExpandNodeAction> batch = new ArrayList<>(batchSize);
+
+                while (batch.size() < batchSize && !openNodes.isEmpty()){
+                    Node node = openNodes.poll();
+                    if (canBeatIncumbent(node.bound)){
+                        batch.add(new ExpandNodeAction(node, root.tableau, objective, branchingConstraints, options.getBranching(), pseudoCosts));
+                    }else{
+                        statistics.addNodesPruned(1);
+                        releaseTableau(node);
+                    }
+                }
+
+                expandedNodes += batch.size();
+                statistics.addNodesExpanded(batch.size());
+
+                executor.forEach(batch, 1, ExpandNodeAction::run);
+
+                for (ExpandNodeAction action : batch){
+                    for (Observation observation : action.observations){
+                        pseudoCosts.record(observation);
+                    }
+                }
+
+                for (ExpandNodeAction action : batch){
+                    if (action.interrupted){
+                        /*
+                         * Clears the interrupted status of this thread, if that is how the solve was cancelled.
+                         */
+                        executor.throwIfCancelled();
+                        throw new InterruptedException();
+                    }else if (action.unboundedSolutionException != null){
+                        throw action.unboundedSolutionException;
+                    }else if (action.children == null){
+                        if (canBeatIncumbent(action.node.bound)){
+                            incumbent = action.tableau;
+                            incumbentValue = action.node.bound;
+                        }
                     }else{
-                        tmpTableau = new Tableau(tmpTableau);
+                        statistics.addNodesCreated(action.children.size() + action.infeasibleChildren);
+                        statistics.addNodesInfeasible(action.infeasibleChildren);
+
+                        for (ExpandNodeAction.Child child : action.children){
+                            if (canBeatIncumbent(child.bound())){
+                                Node node = new Node(action.node, child.constraint(), child.bound(), action.node.depth + 1, nextSequence++, child.tableau());
+                                openNodes.add(node);
+                                keepTableau(node);
+                            }else{
+                                statistics.addNodesPruned(1);
+                            }
+                        }
                     }
-                    actions.add(new BoundAction(tmpTableau, objective, branchingConstraints, bestSolutionHolder, constraint));
+                    releaseTableau(action.node);
                 }
 
-                invokeAll(actions);
+                if (!openNodes.isEmpty() && expandedNodes - lastHeuristicRun >= options.getHeuristicInterval()){
+                    lastHeuristicRun = expandedNodes;
+                    runHeuristics(openNodes.peek());
+                }
+
+                updateNodeSelection();
+            }
+
+            return incumbent;
+        }
+
+        private void keepTableau(Node node)
+        {
+            nodesWithKeptTableaus.addLast(node);
 
+            while (nodesWithKeptTableaus.size() > maxKeptTableaus){
+                releaseTableau(nodesWithKeptTableaus.removeFirst());
+            }
+        }
+
+        private void releaseTableau(Node node)
+        {
+            if (!node.isRoot()){
+                node.tableau = null;
+            }
+        }
+
+        /*
+         * Runs the heuristics from the node, if its tableau has been kept and it could still beat the incumbent.
+         */
+        private void runHeuristics(Node node)
+                throws UnboundedSolutionException, InterruptedException
+        {
+            if (options.getHeuristicInterval() == 0 || node.tableau == null){
                 return;
             }
 
-            BigFraction objectiveValue = tableau.getValue(objective);
-            bestSolutionHolder.submitCompleteSolution(objectiveValue, tableau);
+            for (PrimalHeuristic heuristic : heuristics){
+                if (!canBeatIncumbent(node.bound)){
+                    return;
+                }
+
+                Tableau tableau = heuristic.find(node.tableau, objective, branchingConstraints, incumbent, incumbentValue);
+
+                if (tableau != null && satisfiesBranchingConstraints(tableau)){
+                    BigFraction value = tableau.getValue(objective);
+
+                    if (canBeatIncumbent(value)){
+                        incumbent = tableau;
+                        incumbentValue = value;
+                        executor.getStatistics().countHeuristicSolution();
+                    }
+                }
+            }
+        }
+
+        /*
+         * Heuristics are not trusted to return only solutions, since an incumbent that is not one would be the result.
+         */
+        private boolean satisfiesBranchingConstraints(Tableau tableau)
+        {
+            for (BranchingConstraint constraint : branchingConstraints){
+                if (constraint.getBranchDistances(tableau).length > 0){
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /*
+         * HYBRID dives depth first until there is an incumbent to prune with, then goes best first. If there are too
+         * many open nodes, we dive depth first to find leaves instead of growing the queue any further.
+         */
+        private void updateNodeSelection()
+        {
+            SolverOptions.NodeSelection wanted = options.getNodeSelection();
+
+            if (wanted == SolverOptions.NodeSelection.HYBRID && incumbent != null){
+                wanted = SolverOptions.NodeSelection.BEST_FIRST;
+            }
+
+            if (openNodes.size() > options.getMaxOpenNodes()){
+                wanted = SolverOptions.NodeSelection.DEPTH_FIRST;
+            }
+
+            if (wanted != nodeSelection){
+                nodeSelection = wanted;
+                PriorityQueue<Node> newOpenNodes = new PriorityQueue<>(Math.max(1, openNodes.size()), createComparator(nodeSelection));
+                newOpenNodes.addAll(openNodes);
+                openNodes = newOpenNodes;
+            }
         }
     }
 
-    private static class BoundAction
-            extends RecursiveAction
+    private static class ExpandNodeAction
+            implements Runnable
     {
-        private final Tableau tableau;
+        private final Node node;
+        private final Tableau rootTableau;
         private final Tableau.Objective objective;
-        private final Collection<? extends BranchingConstraint> branchingConstraints;
-        private final BestSolutionHolder bestSolutionHolder;
-        private final Constraint constraint;
+        private final List<? extends BranchingConstraint> branchingConstraints;
+        private final SolverOptions.Branching branching;
+        /*
+         * Only read while the batch is expanded. What we learn goes into observations, which the search records after
+         * the batch.
+         */
+        private final PseudoCosts pseudoCosts;
+        private final List<Observation> observations = new ArrayList<>();
+        private Tableau tableau;
+        /*
+         * Stays null if the node satisfies all branching constraints.
+         */
+        private List<Child> children;
+        private int infeasibleChildren = 0;
+        private UnboundedSolutionException unboundedSolutionException;
+        private boolean interrupted;
 
-        public BoundAction(Tableau tableau, Tableau.Objective objective, Collection<? extends BranchingConstraint> branchingConstraints, BestSolutionHolder bestSolutionHolder, Constraint constraint)
+        public ExpandNodeAction(Node node, Tableau rootTableau, Tableau.Objective objective, List<? extends BranchingConstraint> branchingConstraints, SolverOptions.Branching branching, PseudoCosts pseudoCosts)
         {
-            this.tableau = tableau;
+            this.node = node;
+            this.rootTableau = rootTableau;
             this.objective = objective;
             this.branchingConstraints = branchingConstraints;
-            this.bestSolutionHolder = bestSolutionHolder;
-            this.constraint = constraint;
+            this.branching = branching;
+            this.pseudoCosts = pseudoCosts;
         }
 
         @Override
-        protected void compute()
+        public void run()
         {
-            tableau.addConstraint(constraint);
             try{
-                tableau.solveFeasibility();
-                BigFraction objectiveValue = tableau.maximize(objective);
-                if (bestSolutionHolder.isIncompleteSolutionWorthContinuing(objectiveValue)){
-                    invokeAll(Collections.singleton(new FindUnsatisfiedConstraintsAction(tableau, objective, branchingConstraints, bestSolutionHolder)));
+                rootTableau.getExecutor().throwIfCancelled();
+
+                tableau = node.tableau;
+
+                if (tableau == null){
+                    tableau = rebuildTableau();
                 }
-            }catch (InfeasibleSolutionException ignore){
+
+                expand();
             }catch (UnboundedSolutionException e){
-                bestSolutionHolder.setError(e);
+                unboundedSolutionException = e;
             }catch (InterruptedException e){
-                Thread.currentThread().interrupt();
+                interrupted = true;
+            }
+        }
+
+        /*
+         * Solves the branches of the candidate. Copies are made before any branch constraint is added. If
+         * mayUseTableau, our tableau is not needed after this, so the last branch gets it, unless it is the root
+         * tableau, which belongs to our caller.
+         */
+        private Branch createBranch(Candidate candidate, boolean mayUseTableau)
+                throws UnboundedSolutionException, InterruptedException
+        {
+            List<? extends Constraint> constraints = new ArrayList<>(candidate.constraint().getConstraints(tableau));
+
+            List<Tableau> tableaus = new ArrayList<>(constraints.size());
+            for (int i = 0; i < constraints.size(); i++){
+                if (i == constraints.size() - 1 && mayUseTableau && tableau != rootTableau){
+                    tableaus.add(tableau);
+                }else{
+                    tableaus.add(new Tableau(tableau));
+                }
+            }
+
+            BigFraction[] bounds = new BigFraction[constraints.size()];
+
+            for (int i = 0; i < constraints.size(); i++){
+                try{
+                    bounds[i] = tableaus.get(i).addConstraintAndReoptimize(constraints.get(i), objective);
+                    observations.add(new Observation(candidate.index(), i, node.bound.subtract(bounds[i]).doubleValue() / candidate.distances()[i]));
+                }catch (InfeasibleSolutionException e){
+                    tableaus.set(i, null);
+                }
+            }
+
+            return new Branch(constraints, tableaus, bounds);
+        }
+
+        private void expand()
+                throws UnboundedSolutionException, InterruptedException
+        {
+            List<Candidate> candidates = findCandidates();
+
+            if (candidates.isEmpty()){
+                return;
+            }
+
+            Branch branch = switch (branching){
+                case IN_ORDER, MOST_FRACTIONAL -> createBranch(candidates.get(0), true);
+                case PSEUDO_COST -> selectByPseudoCost(candidates);
+                case STRONG -> selectByStrongBranching(candidates);
+            };
+
+            children = new ArrayList<>(branch.constraints().size());
+
+            for (int i = 0; i < branch.constraints().size(); i++){
+                if (branch.bounds()[i] == null){
+                    infeasibleChildren++;
+                }else{
+                    children.add(new Child(branch.constraints().get(i), branch.bounds()[i], branch.tableaus().get(i)));
+                }
+            }
+        }
+
+        /*
+         * Returns the unsatisfied constraints to choose from, most fractional first. For IN_ORDER and MOST_FRACTIONAL,
+         * that is only the one that is branched on.
+         */
+        private List<Candidate> findCandidates()
+        {
+            List<Candidate> retv = new ArrayList<>();
+
+            int index = 0;
+            for (BranchingConstraint constraint : branchingConstraints){
+                double[] distances = constraint.getBranchDistances(tableau);
+
+                if (distances.length > 0){
+                    Candidate candidate = new Candidate(index, constraint, distances);
+
+                    if (branching == SolverOptions.Branching.IN_ORDER){
+                        return List.of(candidate);
+                    }else if (branching != SolverOptions.Branching.MOST_FRACTIONAL || retv.isEmpty()){
+                        retv.add(candidate);
+                    }else if (candidate.score() > retv.get(0).score()){
+                        retv.set(0, candidate);
+                    }
+                }
+
+                index++;
+            }
+
+            /*
+             * Stable, so ties stay in model order.
+             */
+            retv.sort(Comparator.comparingDouble(Candidate::score).reversed());
+
+            return retv;
+        }
+
+        private Branch selectByPseudoCost(List<Candidate> candidates)
+                throws UnboundedSolutionException, InterruptedException
+        {
+            Candidate best = null;
+            Branch bestBranch = null;
+            double bestScore = -1;
+            int tried = 0;
+
+            for (Candidate candidate : candidates){
+                Branch branch = null;
+                double score;
+
+                if (tried < MAX_RELIABILITY_CANDIDATES && !pseudoCosts.isReliable(candidate.index())){
+                    branch = createBranch(candidate, false);
+                    score = branch.getScore(node.bound);
+                    tried++;
+                }else{
+                    score = pseudoCosts.getScore(candidate);
+                }
+
+                if (score > bestScore){
+                    best = candidate;
+                    bestBranch = branch;
+                    bestScore = score;
+                }
+
+                if (score == Double.POSITIVE_INFINITY){
+                    break;
+                }
+            }
+
+            if (bestBranch == null){
+                bestBranch = createBranch(best, true);
+            }
+
+            return bestBranch;
+        }
+
+        private Branch selectByStrongBranching(List<Candidate> candidates)
+                throws UnboundedSolutionException, InterruptedException
+        {
+            Branch best = null;
+            double bestScore = -1;
+
+            for (Candidate candidate : candidates.subList(0, Math.min(candidates.size(), MAX_STRONG_BRANCHING_CANDIDATES))){
+                Branch branch = createBranch(candidate, false);
+                double score = branch.getScore(node.bound);
+
+                if (score > bestScore){
+                    best = branch;
+                    bestScore = score;
+                }
+
+                /*
+                 * A constraint with an infeasible branch leaves only one child, which is as good as it gets.
+                 */
+                if (score == Double.POSITIVE_INFINITY){
+                    break;
+                }
+            }
+
+            return best;
+        }
+
+        private Tableau rebuildTableau()
+                throws UnboundedSolutionException, InterruptedException
+        {
+            Deque<Constraint> path = new ArrayDeque<>(node.depth);
+
+            for (Node n = node; !n.isRoot(); n = n.parent){
+                path.addFirst(n.constraint);
+            }
+
+            Tableau retv = new Tableau(rootTableau);
+
+            for (Constraint constraint : path){
+                try{
+                    retv.addConstraintAndReoptimize(constraint, objective);
+                }catch (InfeasibleSolutionException e){
+                    throw new IllegalStateException("Branch constraints were feasible when the node was created", e);
+                }
+            }
+
+            return retv;
+        }
+
+        private record Child(Constraint constraint, BigFraction bound, Tableau tableau)
+        {
+        }
+
+        /*
+         * The solved branches of a constraint, with a null tableau and bound for the branches that are infeasible.
+         */
+        private record Branch(List<? extends Constraint> constraints, List<Tableau> tableaus, BigFraction[] bounds)
+        {
+            /*
+             * The product of how much each branch lowers the bound, which favours constraints that lower the bound of
+             * both of their branches over ones that lower one branch a lot and the other not at all.
+             */
+            public double getScore(BigFraction parentBound)
+            {
+                double retv = 1;
+
+                for (BigFraction bound : bounds){
+                    if (bound == null){
+                        return Double.POSITIVE_INFINITY;
+                    }
+                    retv *= Math.max(MIN_GAIN, parentBound.subtract(bound).doubleValue());
+                }
+
+                return retv;
             }
         }
     }
 
-    private static class BestSolutionHolder
+    /*
+     * An unsatisfied branching constraint, with its index in the list of branching constraints.
+     */
+    private record Candidate(int index, BranchingConstraint constraint, double[] distances)
     {
-        private BigFraction bestObjectiveValue;
-        private Tableau bestTableau;
-        private UnboundedSolutionException error;
-
-        public synchronized Tableau getBestTableau()
-                throws UnboundedSolutionException
+        public double score()
         {
-            if (error != null){
-                throw error;
+            double retv = distances[0];
+
+            for (double distance : distances){
+                retv = Math.min(retv, distance);
             }
-            return bestTableau;
+
+            return retv;
         }
+    }
+
+    /*
+     * How much solving a branch lowered the bound, per unit of distance of the branch.
+     */
+    private record Observation(int constraintIndex, int branch, double gain)
+    {
+    }
+
+    /*
+     * The average decrease of the bound per unit of distance, for each branch of each branching constraint. Every
+     * branching constraint has two branches. A branch that has not been solved yet is assumed to cost the average of
+     * the same branch of the other constraints.
+     */
+    private static class PseudoCosts
+    {
+        private static final int BRANCHES = 2;
+        private final double[][] sums;
+        private final int[][] counts;
+        private final double[] totalSums = new double[BRANCHES];
+        private final int[] totalCounts = new int[BRANCHES];
 
-        public synchronized boolean isIncompleteSolutionWorthContinuing(BigFraction objectiveValue)
+        public PseudoCosts(int constraintCount)
         {
-            if (error != null){
-                return false;
-            }else if (bestObjectiveValue == null){
-                return true;
+            this.sums = new double[constraintCount][BRANCHES];
+            this.counts = new int[constraintCount][BRANCHES];
+        }
+
+        private double get(int constraintIndex, int branch)
+        {
+            if (counts[constraintIndex][branch] > 0){
+                return sums[constraintIndex][branch] / counts[constraintIndex][branch];
+            }else if (totalCounts[branch] > 0){
+                return totalSums[branch] / totalCounts[branch];
             }else{
-                return objectiveValue.compareTo(bestObjectiveValue) > 0;
+                return 1;
             }
         }
 
-        public synchronized void setError(UnboundedSolutionException error)
+        public double getScore(Candidate candidate)
         {
-            this.error = error;
+            double retv = 1;
+
+            for (int i = 0; i < candidate.distances().length; i++){
+                retv *= Math.max(MIN_GAIN, get(candidate.index(), i) * candidate.distances()[i]);
+            }
+
+            return retv;
         }
 
-        public synchronized void submitCompleteSolution(BigFraction objectiveValue, Tableau tableau)
+        public boolean isReliable(int constraintIndex)
         {
-            if (bestObjectiveValue == null){
-                bestObjectiveValue = objectiveValue;
-                bestTableau = tableau;
+            for (int count : counts[constraintIndex]){
+                if (count < RELIABILITY){
+                    return false;
+                }
             }
+
+            return true;
+        }
+
+        public void record(Observation observation)
+        {
+            sums[observation.constraintIndex()][observation.branch()] += observation.gain();
+            counts[observation.constraintIndex()][observation.branch()]++;
+            totalSums[observation.branch()] += observation.gain();
+            totalCounts[observation.branch()]++;
         }
     }
 }
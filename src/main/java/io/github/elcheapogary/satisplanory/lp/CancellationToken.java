@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+/**
+ * Cancels a solve.
+ * <p>
+ * Parts of a solve run on the threads of the solver's pool, which an interrupt of the thread that started the solve
+ * does not reach. Those parts check the token instead, after every pivot, between the rows of a pivot and before
+ * every branch and bound node, and a solve that has been cancelled throws {@link InterruptedException} from the
+ * method that started it.
+ */
+public class CancellationToken
+{
+    private final Thread thread;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Creates a token that is only cancelled by {@link #cancel()}.
+     */
+    public CancellationToken()
+    {
+        this(null);
+    }
+
+    private CancellationToken(Thread thread)
+    {
+        this.thread = thread;
+    }
+
+    /**
+     * Creates a token that is cancelled by {@link #cancel()}, and when the current thread is interrupted. This is what
+     * solves without a token of their own use, so interrupting the thread that started a solve still cancels all of
+     * it.
+     */
+    public static CancellationToken forCurrentThread()
+    {
+        return new CancellationToken(Thread.currentThread());
+    }
+
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        if (!cancelled && thread != null && thread.isInterrupted()){
+            cancelled = true;
+        }
+
+        return cancelled;
+    }
+
+    /**
+     * Throws {@link InterruptedException} if the token has been cancelled. On the thread of a token created with
+     * {@link #forCurrentThread()}, this clears the interrupted status of the thread, like {@link Thread#interrupted()}.
+     */
+    void throwIfCancelled()
+            throws InterruptedException
+    {
+        if (thread == Thread.currentThread() && Thread.interrupted()){
+            cancelled = true;
+        }
+
+        if (isCancelled()){
+            throw new InterruptedException();
+        }
+    }
+}
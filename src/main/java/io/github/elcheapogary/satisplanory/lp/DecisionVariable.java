@@ -10,15 +10,30 @@
 
 package io.github.elcheapogary.satisplanory.lp;
 
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+
 class DecisionVariable
         extends Variable
 {
     private final String name;
+    private final BigFraction lowerBound;
+    private final BigFraction upperBound;
 
     public DecisionVariable(int id, String name)
+    {
+        this(id, name, BigFraction.zero(), null);
+    }
+
+    /**
+     * @param lowerBound the lower bound, or {@code null} if the variable has no lower bound.
+     * @param upperBound the upper bound, or {@code null} if the variable has no upper bound.
+     */
+    public DecisionVariable(int id, String name, BigFraction lowerBound, BigFraction upperBound)
     {
         super(id);
         this.name = name;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
     }
 
     @Override
@@ -27,8 +42,32 @@ class DecisionVariable
         return "x" + getId();
     }
 
+    /**
+     * Returns the lower bound, or {@code null} if the variable has no lower bound.
+     */
+    public BigFraction getLowerBound()
+    {
+        return lowerBound;
+    }
+
     public String getName()
     {
         return name;
     }
+
+    /**
+     * Returns the upper bound, or {@code null} if the variable has no upper bound.
+     */
+    public BigFraction getUpperBound()
+    {
+        return upperBound;
+    }
+
+    /**
+     * Whether the variable has the default bounds: non-negative, with no upper bound.
+     */
+    public boolean hasDefaultBounds()
+    {
+        return lowerBound != null && lowerBound.signum() == 0 && upperBound == null;
+    }
 }
@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Revised simplex in {@code double} arithmetic, with an explicit dense basis inverse.
+ * <p>
+ * This is not used to produce answers, only to find a basis that is probably optimal. The basis it returns is
+ * refactorized and checked in exact arithmetic by {@link RevisedSimplex}, which carries on with exact pivots from
+ * there if the check fails.
+ * <p>
+ * Bounds are handled the same way as in {@link RevisedSimplex}: a non-basic column is at its lower bound, at its upper
+ * bound, or at zero if it is free.
+ */
+class DoubleSimplex
+{
+    private static final double PIVOT_TOLERANCE = 1e-7;
+    private static final double PRIMAL_TOLERANCE = 1e-9;
+    private static final double REDUCED_COST_TOLERANCE = 1e-9;
+    /*
+     * After this many updates of the basis inverse, it is recomputed from scratch to get rid of accumulated rounding
+     * errors.
+     */
+    private static final int REINVERSION_INTERVAL = 100;
+    private static final int DEGENERATE_PIVOT_LIMIT = 50;
+    /*
+     * Relative size of the random perturbation applied to the basic variables before we start, see perturb().
+     */
+    private static final double PERTURBATION = 1e-6;
+    /*
+     * Returned by the ratio tests if the entering column reaches its other bound before any basic column reaches one
+     * of its bounds.
+     */
+    private static final int BOUND_FLIP = -2;
+    private final int rowCount;
+    private final int[][] columnIndices;
+    private final double[][] columnValues;
+    private final boolean[] eligible;
+    private final double[] costs;
+    private final double[] lowerBounds;
+    private final double[] upperBounds;
+    private final double[] rightHandSide;
+    private final int[] basis;
+    private final boolean[] atUpperBound;
+    private final int[] lastInvertedBasis;
+    private final boolean[] lastInvertedAtUpperBound;
+    private final int[] basisPositions;
+    private double[][] basisInverse;
+    private double[] basicValues;
+    private int pivotCount;
+
+    /**
+     * @param rowCount      the number of constraint rows.
+     * @param columnIndices for each column, the rows of its non-zero entries.
+     * @param columnValues  for each column, the values of its non-zero entries.
+     * @param eligible      for each column, whether it may enter the basis.
+     * @param costs         the objective coefficient of each column.
+     * @param lowerBounds   the lower bound of each column, which may be negative infinity.
+     * @param upperBounds   the upper bound of each column, which may be positive infinity.
+     * @param rightHandSide the right hand side of each row.
+     * @param basis         the column that is basic at each basis position. This array is updated as we pivot.
+     * @param atUpperBound  for each column, whether it is at its upper bound if it is not basic. This array is updated
+     *                      as we pivot.
+     */
+    DoubleSimplex(int rowCount, int[][] columnIndices, double[][] columnValues, boolean[] eligible, double[] costs, double[] lowerBounds, double[] upperBounds, double[] rightHandSide, int[] basis, boolean[] atUpperBound)
+    {
+        this.rowCount = rowCount;
+        this.columnIndices = columnIndices;
+        this.columnValues = columnValues;
+        this.eligible = eligible;
+        this.costs = costs;
+        this.lowerBounds = lowerBounds;
+        this.upperBounds = upperBounds;
+        this.rightHandSide = rightHandSide.clone();
+        this.basis = basis;
+        this.atUpperBound = atUpperBound;
+        this.lastInvertedBasis = basis.clone();
+        this.lastInvertedAtUpperBound = atUpperBound.clone();
+        this.basisPositions = new int[columnIndices.length];
+        Arrays.fill(basisPositions, -1);
+        for (int position = 0; position < basis.length; position++){
+            basisPositions[basis[position]] = position;
+        }
+    }
+
+    /*
+     * Smallest ratio, ties broken by lowest column index. Used together with Bland's entering rule to get out of
+     * cycles.
+     */
+    private int blandRatioTest(int entering, int direction, double[] alpha)
+    {
+        int leavingPosition = -1;
+        double minRatio = Double.POSITIVE_INFINITY;
+
+        for (int position = 0; position < rowCount; position++){
+            double ratio = getRatio(position, direction * alpha[position]);
+            if (ratio < Double.POSITIVE_INFINITY){
+                if (leavingPosition < 0
+                        || ratio < minRatio - PRIMAL_TOLERANCE
+                        || (ratio <= minRatio + PRIMAL_TOLERANCE && basis[position] < basis[leavingPosition])){
+                    leavingPosition = position;
+                    minRatio = ratio;
+                }
+            }
+        }
+
+        if (getRange(entering) < Double.POSITIVE_INFINITY && getRange(entering) <= minRatio){
+            return BOUND_FLIP;
+        }
+
+        return leavingPosition;
+    }
+
+    /*
+     * How far the non-basic column can move before it reaches its other bound.
+     */
+    private double getRange(int column)
+    {
+        return upperBounds[column] - lowerBounds[column];
+    }
+
+    /*
+     * How far the entering column can move before the basic column at the position reaches a bound, given the rate
+     * at which the basic column decreases as the entering column moves. Infinite if it does not reach a bound.
+     */
+    private double getRatio(int position, double rate)
+    {
+        int column = basis[position];
+
+        if (rate > PIVOT_TOLERANCE && lowerBounds[column] > Double.NEGATIVE_INFINITY){
+            return (basicValues[position] - lowerBounds[column]) / rate;
+        }else if (rate < -PIVOT_TOLERANCE && upperBounds[column] < Double.POSITIVE_INFINITY){
+            return (upperBounds[column] - basicValues[position]) / -rate;
+        }else{
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private double getNonBasicValue(int column)
+    {
+        if (atUpperBound[column] || lowerBounds[column] == Double.NEGATIVE_INFINITY){
+            return upperBounds[column] < Double.POSITIVE_INFINITY ? upperBounds[column] : 0.0;
+        }
+        return lowerBounds[column];
+    }
+
+    int getPivotCount()
+    {
+        return pivotCount;
+    }
+
+    /*
+     * Harris ratio test: first find the largest step that keeps every basic variable within tolerance of feasibility,
+     * then among the rows that limit the step to no more than that, pick the one with the largest pivot. If the
+     * entering column reaches its other bound within that step, it moves there instead.
+     */
+    private int harrisRatioTest(int entering, int direction, double[] alpha)
+    {
+        double maxRatio = Double.POSITIVE_INFINITY;
+
+        for (int position = 0; position < rowCount; position++){
+            double rate = direction * alpha[position];
+            int column = basis[position];
+            if (rate > PIVOT_TOLERANCE && lowerBounds[column] > Double.NEGATIVE_INFINITY){
+                maxRatio = Math.min(maxRatio, (basicValues[position] - lowerBounds[column] + PRIMAL_TOLERANCE) / rate);
+            }else if (rate < -PIVOT_TOLERANCE && upperBounds[column] < Double.POSITIVE_INFINITY){
+                maxRatio = Math.min(maxRatio, (upperBounds[column] - basicValues[position] + PRIMAL_TOLERANCE) / -rate);
+            }
+        }
+
+        if (getRange(entering) < Double.POSITIVE_INFINITY && getRange(entering) <= maxRatio){
+            return BOUND_FLIP;
+        }
+
+        int leavingPosition = -1;
+
+        for (int position = 0; position < rowCount; position++){
+            if (getRatio(position, direction * alpha[position]) <= maxRatio
+                    && (leavingPosition < 0 || Math.abs(alpha[position]) > Math.abs(alpha[leavingPosition]))){
+                leavingPosition = position;
+            }
+        }
+
+        return leavingPosition;
+    }
+
+    /*
+     * Computes the basis inverse with Gauss-Jordan elimination and partial pivoting. Returns false if the basis is
+     * numerically singular.
+     */
+    private boolean invert()
+    {
+        double[][] a = new double[rowCount][rowCount];
+        double[][] inverse = new double[rowCount][rowCount];
+
+        for (int position = 0; position < rowCount; position++){
+            int column = basis[position];
+            for (int i = 0; i < columnIndices[column].length; i++){
+                a[columnIndices[column][i]][position] = columnValues[column][i];
+            }
+            inverse[position][position] = 1.0;
+        }
+
+        /*
+         * We reduce a to the identity by row operations, applying the same operations to inverse. Row k of the reduced
+         * matrix corresponds to basis position k.
+         */
+        for (int k = 0; k < rowCount; k++){
+            int pivotRow = -1;
+            double pivotAbs = 0.0;
+            for (int row = k; row < rowCount; row++){
+                double abs = Math.abs(a[row][k]);
+                if (abs > pivotAbs){
+                    pivotRow = row;
+                    pivotAbs = abs;
+                }
+            }
+
+            if (pivotAbs < PIVOT_TOLERANCE){
+                return false;
+            }
+
+            double[] t = a[k];
+            a[k] = a[pivotRow];
+            a[pivotRow] = t;
+            t = inverse[k];
+            inverse[k] = inverse[pivotRow];
+            inverse[pivotRow] = t;
+
+            double pivotValue = a[k][k];
+            for (int j = 0; j < rowCount; j++){
+                a[k][j] /= pivotValue;
+                inverse[k][j] /= pivotValue;
+            }
+
+            for (int row = 0; row < rowCount; row++){
+                double multiple = a[row][k];
+                if (row != k && multiple != 0.0){
+                    for (int j = 0; j < rowCount; j++){
+                        a[row][j] -= multiple * a[k][j];
+                        inverse[row][j] -= multiple * inverse[k][j];
+                    }
+                }
+            }
+        }
+
+        basisInverse = inverse;
+        System.arraycopy(basis, 0, lastInvertedBasis, 0, rowCount);
+        System.arraycopy(atUpperBound, 0, lastInvertedAtUpperBound, 0, atUpperBound.length);
+
+        /*
+         * The basic variables make up for whatever the non-basic variables that are not at zero contribute.
+         */
+        double[] residual = rightHandSide.clone();
+        for (int column = 0; column < columnIndices.length; column++){
+            if (basisPositions[column] < 0){
+                double value = getNonBasicValue(column);
+                if (value != 0.0){
+                    for (int i = 0; i < columnIndices[column].length; i++){
+                        residual[columnIndices[column][i]] -= columnValues[column][i] * value;
+                    }
+                }
+            }
+        }
+
+        basicValues = new double[rowCount];
+        for (int position = 0; position < rowCount; position++){
+            double value = 0.0;
+            for (int row = 0; row < rowCount; row++){
+                value += inverse[position][row] * residual[row];
+            }
+            basicValues[position] = clamp(basis[position], value);
+        }
+
+        return true;
+    }
+
+    private double clamp(int column, double value)
+    {
+        return Math.min(Math.max(value, lowerBounds[column]), upperBounds[column]);
+    }
+
+    /*
+     * Production planning models are massively degenerate, and in floating point, the simplex can stall for a very long
+     * time pivoting between bases with the same objective value. To avoid this, we move the right hand side so that
+     * each basic variable increases by a small random amount. This makes degenerate vertices of the original problem
+     * unlikely to be degenerate in the perturbed problem.
+     *
+     * Optimality of a basis does not depend on the right hand side, and the exact simplex checks the basis we end up
+     * with against the original right hand side, so we do not need to remove the perturbation afterwards.
+     *
+     * Basic variables are moved away from the nearest of their bounds. Free basic variables can not be degenerate, so
+     * they are left alone.
+     */
+    private void perturb()
+    {
+        Random random = new Random(rowCount);
+
+        for (int position = 0; position < rowCount; position++){
+            int column = basis[position];
+            double value = basicValues[position];
+            double delta = PERTURBATION * (1.0 + Math.abs(value)) * (1.0 + random.nextDouble());
+            double lower = lowerBounds[column];
+            double upper = upperBounds[column];
+
+            if (lower == Double.NEGATIVE_INFINITY && upper == Double.POSITIVE_INFINITY){
+                continue;
+            }else if (upper == Double.POSITIVE_INFINITY){
+                /*
+                 * Moving up, as is.
+                 */
+            }else if (lower == Double.NEGATIVE_INFINITY || value - lower > upper - value){
+                delta = -Math.min(delta, (upper - lower) / 2);
+            }else{
+                delta = Math.min(delta, (upper - lower) / 2);
+            }
+
+            for (int i = 0; i < columnIndices[column].length; i++){
+                rightHandSide[columnIndices[column][i]] += columnValues[column][i] * delta;
+            }
+            basicValues[position] += delta;
+        }
+    }
+
+    /**
+     * Runs the simplex until it finds a basis that looks optimal, the objective looks unbounded or the iteration
+     * limit is reached. In all cases, the basis array passed to the constructor holds the final basis.
+     *
+     * @return {@code false} if the initial basis is numerically singular, in which case the basis array should not be
+     * used.
+     * @throws InterruptedException if the solve is cancelled.
+     */
+    boolean maximize(CancellationToken cancellationToken)
+            throws InterruptedException
+    {
+        if (!invert()){
+            return false;
+        }
+
+        perturb();
+
+        int maxIterations = 50 * (rowCount + columnIndices.length);
+        int degeneratePivots = 0;
+        int updates = 0;
+
+        for (int iteration = 0; iteration < maxIterations; iteration++){
+            cancellationToken.throwIfCancelled();
+
+            if (updates >= REINVERSION_INTERVAL){
+                if (!invert()){
+                    /*
+                     * Rounding errors got the better of us. Go back to the last basis that we know is not singular.
+                     */
+                    System.arraycopy(lastInvertedBasis, 0, basis, 0, rowCount);
+                    System.arraycopy(lastInvertedAtUpperBound, 0, atUpperBound, 0, atUpperBound.length);
+                    return true;
+                }
+                updates = 0;
+            }
+
+            double[] y = new double[rowCount];
+            for (int position = 0; position < rowCount; position++){
+                double c = costs[basis[position]];
+                if (c != 0.0){
+                    double[] inverseRow = basisInverse[position];
+                    for (int row = 0; row < rowCount; row++){
+                        y[row] += c * inverseRow[row];
+                    }
+                }
+            }
+
+            boolean bland = degeneratePivots >= DEGENERATE_PIVOT_LIMIT;
+            int entering = -1;
+            int direction = 0;
+            double enteringImprovement = REDUCED_COST_TOLERANCE;
+
+            for (int column = 0; column < columnIndices.length; column++){
+                if (!eligible[column] || basisPositions[column] >= 0 || getRange(column) == 0.0){
+                    continue;
+                }
+
+                double reducedCost = costs[column];
+                for (int i = 0; i < columnIndices[column].length; i++){
+                    reducedCost -= y[columnIndices[column][i]] * columnValues[column][i];
+                }
+
+                double value = getNonBasicValue(column);
+                int columnDirection;
+
+                if (reducedCost > 0.0 && value < upperBounds[column]){
+                    columnDirection = 1;
+                }else if (reducedCost < 0.0 && value > lowerBounds[column]){
+                    columnDirection = -1;
+                }else{
+                    continue;
+                }
+
+                if (Math.abs(reducedCost) > enteringImprovement){
+                    entering = column;
+                    direction = columnDirection;
+                    enteringImprovement = Math.abs(reducedCost);
+                    if (bland){
+                        break;
+                    }
+                }
+            }
+
+            if (entering < 0){
+                return true;
+            }
+
+            double[] alpha = new double[rowCount];
+            for (int i = 0; i < columnIndices[entering].length; i++){
+                int row = columnIndices[entering][i];
+                double value = columnValues[entering][i];
+                for (int position = 0; position < rowCount; position++){
+                    alpha[position] += basisInverse[position][row] * value;
+                }
+            }
+
+            int leavingPosition = bland
+                    ? blandRatioTest(entering, direction, alpha)
+                    : harrisRatioTest(entering, direction, alpha);
+
+            if (leavingPosition == BOUND_FLIP){
+                double delta = direction * getRange(entering);
+
+                for (int position = 0; position < rowCount; position++){
+                    if (alpha[position] != 0.0){
+                        basicValues[position] = clamp(basis[position], basicValues[position] - delta * alpha[position]);
+                    }
+                }
+
+                atUpperBound[entering] = direction > 0;
+                degeneratePivots = 0;
+                pivotCount++;
+                continue;
+            }
+
+            if (leavingPosition < 0){
+                /*
+                 * Looks unbounded. The exact simplex will confirm this.
+                 */
+                return true;
+            }
+
+            double theta = Math.max(getRatio(leavingPosition, direction * alpha[leavingPosition]), 0.0);
+
+            if (theta <= PRIMAL_TOLERANCE){
+                degeneratePivots++;
+            }else{
+                degeneratePivots = 0;
+            }
+
+            double delta = direction * theta;
+
+            for (int position = 0; position < rowCount; position++){
+                if (position != leavingPosition && alpha[position] != 0.0){
+                    basicValues[position] = clamp(basis[position], basicValues[position] - delta * alpha[position]);
+                }
+            }
+            basicValues[leavingPosition] = getNonBasicValue(entering) + delta;
+            atUpperBound[basis[leavingPosition]] = direction * alpha[leavingPosition] < 0.0;
+            atUpperBound[entering] = false;
+
+            double[] pivotRow = basisInverse[leavingPosition];
+            double pivotValue = alpha[leavingPosition];
+            for (int row = 0; row < rowCount; row++){
+                pivotRow[row] /= pivotValue;
+            }
+            for (int position = 0; position < rowCount; position++){
+                double multiple = alpha[position];
+                if (position != leavingPosition && multiple != 0.0){
+                    double[] inverseRow = basisInverse[position];
+                    for (int row = 0; row < rowCount; row++){
+                        inverseRow[row] -= multiple * pivotRow[row];
+                    }
+                }
+            }
+
+            basisPositions[basis[leavingPosition]] = -1;
+            basis[leavingPosition] = entering;
+            basisPositions[entering] = leavingPosition;
+            updates++;
+            pivotCount++;
+        }
+
+        return true;
+    }
+}
@@ -13,12 +13,11 @@ package io.github.elcheapogary.satisplanory.lp;
 import io.github.elcheapogary.satisplanory.util.BigFraction;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
@@ -26,15 +25,42 @@ import javax.json.JsonString;
 
 public class Expression
 {
-    private final Map<DecisionVariable, BigFraction> coefficients;
+    /*
+     * The terms of the expression, as parallel arrays sorted by variable id. Expressions are immutable, so these are
+     * shared between expressions and never modified.
+     */
+    private final DecisionVariable[] variables;
+    private final BigFraction[] coefficients;
     private final BigFraction constantValue;
 
-    Expression(Map<DecisionVariable, BigFraction> coefficients, BigFraction constantValue)
+    Expression(DecisionVariable[] variables, BigFraction[] coefficients, BigFraction constantValue)
     {
+        assert variables.length == coefficients.length;
+        this.variables = variables;
         this.coefficients = coefficients;
         this.constantValue = constantValue;
     }
 
+    Expression(Map<DecisionVariable, BigFraction> coefficients, BigFraction constantValue)
+    {
+        List<Map.Entry<DecisionVariable, BigFraction>> entries = new ArrayList<>(coefficients.entrySet());
+        entries.sort(Map.Entry.comparingByKey(Variable.COMPARATOR));
+
+        this.variables = new DecisionVariable[entries.size()];
+        this.coefficients = new BigFraction[entries.size()];
+        this.constantValue = constantValue;
+
+        for (int i = 0; i < this.variables.length; i++){
+            this.variables[i] = entries.get(i).getKey();
+            this.coefficients[i] = entries.get(i).getValue();
+        }
+    }
+
+    Expression(Expression expression)
+    {
+        this(expression.variables, expression.coefficients, expression.constantValue);
+    }
+
     static Expression fromJson(JsonObject json, List<? extends DecisionVariable> decisionVariables)
     {
         BigFraction constantValue = BigFraction.parse(json.getString("c"));
@@ -68,28 +94,12 @@ public class Expression
 
     public Expression add(Expression addend)
     {
-        Set<DecisionVariable> variables = new TreeSet<>(Variable.COMPARATOR);
-
-        variables.addAll(coefficients.keySet());
-        variables.addAll(addend.coefficients.keySet());
-
-        Map<DecisionVariable, BigFraction> newCoefficients = new TreeMap<>(Variable.COMPARATOR);
-
-        for (DecisionVariable v : variables){
-            BigFraction coefficient = Objects.requireNonNullElse(coefficients.get(v), BigFraction.zero())
-                    .add(Objects.requireNonNullElse(addend.coefficients.get(v), BigFraction.zero()));
-
-            if (coefficient.signum() != 0){
-                newCoefficients.put(v, coefficient);
-            }
-        }
-
-        return new Expression(newCoefficients, constantValue.add(addend.constantValue));
+        return merge(addend, false);
     }
 
     public Expression add(BigFraction addend)
     {
-        return new Expression(coefficients, constantValue.add(addend));
+        return new Expression(variables, coefficients, constantValue.add(addend));
     }
 
     public Expression add(BigDecimal addend)
@@ -116,9 +126,9 @@ public class Expression
     {
         boolean first = true;
 
-        for (var entry : coefficients.entrySet()){
-            DecisionVariable v = entry.getKey();
-            BigFraction c = entry.getValue();
+        for (int i = 0; i < variables.length; i++){
+            DecisionVariable v = variables[i];
+            BigFraction c = coefficients[i];
 
             if (c.signum() == 0){
                 continue;
@@ -168,16 +178,16 @@ public class Expression
         if (divisor.signum() == 0){
             throw new ArithmeticException();
         }else if (divisor.compareTo(BigFraction.one()) == 0){
-            return new Expression(coefficients, constantValue);
+            return new Expression(this);
         }
 
-        Map<DecisionVariable, BigFraction> newCoefficients = new TreeMap<>(Variable.COMPARATOR);
+        BigFraction[] newCoefficients = new BigFraction[coefficients.length];
 
-        for (var entry : coefficients.entrySet()){
-            newCoefficients.put(entry.getKey(), entry.getValue().divide(divisor));
+        for (int i = 0; i < coefficients.length; i++){
+            newCoefficients[i] = coefficients[i].divide(divisor);
         }
 
-        return new Expression(newCoefficients, constantValue.divide(divisor));
+        return new Expression(variables, newCoefficients, constantValue.divide(divisor));
     }
 
     public Expression divide(BigDecimal divisor)
@@ -230,9 +240,29 @@ public class Expression
         return new Constraint(subtract(value), Constraint.Comparison.EQ);
     }
 
+    /**
+     * Returns the coefficient of the specified term.
+     *
+     * @param term the index of the term, from zero to {@link #getTermCount()}.
+     */
+    BigFraction getCoefficient(int term)
+    {
+        return coefficients[term];
+    }
+
+    /*
+     * Builds a map from the terms, for code that needs to look coefficients up by variable. Prefer iterating over the
+     * terms with getTermCount(), getVariable() and getCoefficient() where possible.
+     */
     Map<DecisionVariable, BigFraction> getCoefficients()
     {
-        return coefficients;
+        Map<DecisionVariable, BigFraction> retv = new TreeMap<>(Variable.COMPARATOR);
+
+        for (int i = 0; i < variables.length; i++){
+            retv.put(variables[i], coefficients[i]);
+        }
+
+        return retv;
     }
 
     BigFraction getConstantValue()
@@ -240,6 +270,21 @@ public class Expression
         return constantValue;
     }
 
+    int getTermCount()
+    {
+        return variables.length;
+    }
+
+    /**
+     * Returns the variable of the specified term. Terms are sorted by variable id.
+     *
+     * @param term the index of the term, from zero to {@link #getTermCount()}.
+     */
+    DecisionVariable getVariable(int term)
+    {
+        return variables[term];
+    }
+
     public Constraint gte(Expression other)
     {
         return new Constraint(subtract(other), Constraint.Comparison.GTE);
@@ -300,21 +345,76 @@ public class Expression
         return new Constraint(subtract(value), Constraint.Comparison.LTE);
     }
 
+    /*
+     * Adds or subtracts another expression, merging the terms of both in variable id order. Terms that cancel out are
+     * left out.
+     */
+    private Expression merge(Expression other, boolean subtract)
+    {
+        DecisionVariable[] newVariables = new DecisionVariable[variables.length + other.variables.length];
+        BigFraction[] newCoefficients = new BigFraction[newVariables.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < variables.length || j < other.variables.length){
+            int cmp;
+
+            if (i == variables.length){
+                cmp = 1;
+            }else if (j == other.variables.length){
+                cmp = -1;
+            }else{
+                cmp = Integer.compare(variables[i].id, other.variables[j].id);
+            }
+
+            DecisionVariable v;
+            BigFraction coefficient;
+
+            if (cmp < 0){
+                v = variables[i];
+                coefficient = coefficients[i];
+                i++;
+            }else{
+                v = other.variables[j];
+                coefficient = subtract ? other.coefficients[j].negate() : other.coefficients[j];
+                if (cmp == 0){
+                    coefficient = coefficients[i].add(coefficient);
+                    i++;
+                }
+                j++;
+            }
+
+            if (coefficient.signum() != 0){
+                newVariables[count] = v;
+                newCoefficients[count] = coefficient;
+                count++;
+            }
+        }
+
+        if (count < newVariables.length){
+            newVariables = Arrays.copyOf(newVariables, count);
+            newCoefficients = Arrays.copyOf(newCoefficients, count);
+        }
+
+        return new Expression(newVariables, newCoefficients, subtract ? constantValue.subtract(other.constantValue) : constantValue.add(other.constantValue));
+    }
+
     public Expression multiply(BigFraction multiplicand)
     {
         if (multiplicand.signum() == 0){
             return zero();
         }else if (multiplicand.compareTo(BigFraction.one()) == 0){
-            return new Expression(coefficients, constantValue);
+            return new Expression(this);
         }
 
-        Map<DecisionVariable, BigFraction> newCoefficients = new TreeMap<>(Variable.COMPARATOR);
+        BigFraction[] newCoefficients = new BigFraction[coefficients.length];
 
-        for (var entry : coefficients.entrySet()){
-            newCoefficients.put(entry.getKey(), entry.getValue().multiply(multiplicand));
+        for (int i = 0; i < coefficients.length; i++){
+            newCoefficients[i] = coefficients[i].multiply(multiplicand);
         }
 
-        return new Expression(newCoefficients, constantValue.multiply(multiplicand));
+        return new Expression(variables, newCoefficients, constantValue.multiply(multiplicand));
     }
 
     public Expression multiply(BigDecimal multiplicand)
@@ -339,23 +439,23 @@ public class Expression
 
     public Expression negate()
     {
-        Map<DecisionVariable, BigFraction> newCoefficients = new TreeMap<>(Variable.COMPARATOR);
+        BigFraction[] newCoefficients = new BigFraction[coefficients.length];
 
-        for (var entry : coefficients.entrySet()){
-            newCoefficients.put(entry.getKey(), entry.getValue().negate());
+        for (int i = 0; i < coefficients.length; i++){
+            newCoefficients[i] = coefficients[i].negate();
         }
 
-        return new Expression(newCoefficients, constantValue.negate());
+        return new Expression(variables, newCoefficients, constantValue.negate());
     }
 
     public Expression subtract(Expression subtrahend)
     {
-        return add(subtrahend.negate());
+        return merge(subtrahend, true);
     }
 
     public Expression subtract(BigFraction subtrahend)
     {
-        return new Expression(coefficients, constantValue.subtract(subtrahend));
+        return new Expression(variables, coefficients, constantValue.subtract(subtrahend));
     }
 
     public Expression subtract(BigDecimal subtrahend)
@@ -382,8 +482,8 @@ public class Expression
     {
         jsonExpression.add("c", getConstantValue().toString());
 
-        for (Map.Entry<DecisionVariable, BigFraction> entry : getCoefficients().entrySet()){
-            jsonExpression.add(Integer.toString(entry.getKey().getId()), entry.getValue().toString());
+        for (int i = 0; i < variables.length; i++){
+            jsonExpression.add(Integer.toString(variables[i].getId()), coefficients[i].toString());
         }
     }
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sums up expressions in place.
+ * <p>
+ * {@link Expression} is immutable, so summing up {@code n} expressions one {@link Expression#add(Expression)} at a
+ * time copies every term that has been added so far, every time. This keeps a single set of terms instead, and only
+ * creates an expression from them when {@link #build()} is called.
+ */
+public class ExpressionBuilder
+{
+    private final Map<DecisionVariable, BigFraction> coefficients = new TreeMap<>(Variable.COMPARATOR);
+    private BigFraction constantValue = BigFraction.zero();
+
+    public ExpressionBuilder add(Expression expression)
+    {
+        return add(BigFraction.one(), expression);
+    }
+
+    /**
+     * Adds {@code multiple} times the expression.
+     */
+    public ExpressionBuilder add(BigFraction multiple, Expression expression)
+    {
+        for (int term = 0; term < expression.getTermCount(); term++){
+            coefficients.merge(expression.getVariable(term), expression.getCoefficient(term).multiply(multiple), BigFraction::add);
+        }
+
+        constantValue = constantValue.add(expression.getConstantValue().multiply(multiple));
+
+        return this;
+    }
+
+    public ExpressionBuilder add(BigDecimal multiple, Expression expression)
+    {
+        return add(BigFraction.valueOf(multiple), expression);
+    }
+
+    public ExpressionBuilder add(long multiple, Expression expression)
+    {
+        return add(BigFraction.valueOf(multiple), expression);
+    }
+
+    public ExpressionBuilder add(BigFraction addend)
+    {
+        constantValue = constantValue.add(addend);
+        return this;
+    }
+
+    /**
+     * Creates an expression from the terms added so far. The builder may be used further, without affecting the
+     * expression.
+     */
+    public Expression build()
+    {
+        Map<DecisionVariable, BigFraction> nonZeroCoefficients = new TreeMap<>(Variable.COMPARATOR);
+
+        for (var entry : coefficients.entrySet()){
+            if (entry.getValue().signum() != 0){
+                nonZeroCoefficients.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return new Expression(nonZeroCoefficients, constantValue);
+    }
+
+    public ExpressionBuilder subtract(Expression expression)
+    {
+        return add(BigFraction.negativeOne(), expression);
+    }
+
+    /**
+     * Subtracts {@code multiple} times the expression.
+     */
+    public ExpressionBuilder subtract(BigFraction multiple, Expression expression)
+    {
+        return add(multiple.negate(), expression);
+    }
+
+    public ExpressionBuilder subtract(BigDecimal multiple, Expression expression)
+    {
+        return subtract(BigFraction.valueOf(multiple), expression);
+    }
+
+    public ExpressionBuilder subtract(long multiple, Expression expression)
+    {
+        return subtract(BigFraction.valueOf(multiple), expression);
+    }
+
+    public ExpressionBuilder subtract(BigFraction subtrahend)
+    {
+        constantValue = constantValue.subtract(subtrahend);
+        return this;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Proof that a model has no solution: a multiplier for each constraint, such that adding up the expressions of the
+ * constraints, each times its multiplier, gives an expression that is negative for every value of the variables within
+ * their bounds. Multipliers of {@code >=} constraints are positive and multipliers of {@code <=} constraints are
+ * negative, so every solution of the constraints would make the sum zero or more.
+ * <p>
+ * The constraints with a non-zero multiplier are the ones that conflict, and variables with a positive coefficient in
+ * the sum are the ones whose upper bound takes part in the conflict. The proof also holds for a different model, as
+ * long as {@link Model#provesInfeasibility(Map)} says so, which is how a change to a model can be ruled out without
+ * solving the changed model.
+ */
+public class FarkasCertificate
+{
+    private final Map<Constraint, BigFraction> multipliers;
+
+    FarkasCertificate(Map<Constraint, BigFraction> multipliers)
+    {
+        this.multipliers = Collections.unmodifiableMap(new HashMap<>(multipliers));
+    }
+
+    public BigFraction getMultiplier(Constraint constraint)
+    {
+        return multipliers.getOrDefault(constraint, BigFraction.zero());
+    }
+
+    /**
+     * Returns the constraints with a non-zero multiplier, and their multipliers.
+     */
+    public Map<Constraint, BigFraction> getMultipliers()
+    {
+        return multipliers;
+    }
+}
@@ -13,7 +13,30 @@ package io.github.elcheapogary.satisplanory.lp;
 public class InfeasibleSolutionException
     extends Exception
 {
+    private final FarkasCertificate certificate;
+
     public InfeasibleSolutionException()
     {
+        this.certificate = null;
+    }
+
+    InfeasibleSolutionException(FarkasCertificate certificate)
+    {
+        this.certificate = certificate;
+    }
+
+    InfeasibleSolutionException(FarkasCertificate certificate, Throwable cause)
+    {
+        super(cause);
+        this.certificate = certificate;
+    }
+
+    /**
+     * Returns the proof that the linear constraints of the model have no solution, or {@code null} if there is none.
+     * There is none if the linear constraints do have solutions, but none that satisfies the branching constraints.
+     */
+    public FarkasCertificate getCertificate()
+    {
+        return certificate;
     }
 }
@@ -36,6 +36,26 @@ class IntegerBranchingConstraint
         return new IntegerBranchingConstraint(expression);
     }
 
+    @Override
+    boolean addCut(Tableau tableau)
+    {
+        return tableau.addGomoryCut(expression);
+    }
+
+    @Override
+    double[] getBranchDistances(Tableau tableau)
+    {
+        BigFraction value = tableau.getValue(expression);
+
+        if (value.isInteger()){
+            return new double[0];
+        }
+
+        double fraction = value.subtract(floor(value)).doubleValue();
+
+        return new double[]{fraction, 1 - fraction};
+    }
+
     @Override
     Collection<? extends Constraint> getConstraints(Tableau tableau)
     {
@@ -45,7 +65,7 @@ class IntegerBranchingConstraint
             return Collections.emptyList();
         }
 
-        BigInteger lower = value.toBigInteger();
+        BigInteger lower = floor(value);
 
         List<Constraint> constraints = new ArrayList<>(2);
 
@@ -55,6 +75,20 @@ class IntegerBranchingConstraint
         return constraints;
     }
 
+    /*
+     * toBigInteger() rounds towards zero, which is the ceiling of a negative value that is not an integer.
+     */
+    private static BigInteger floor(BigFraction value)
+    {
+        BigInteger retv = value.toBigInteger();
+
+        if (value.signum() < 0 && !value.isInteger()){
+            retv = retv.subtract(BigInteger.ONE);
+        }
+
+        return retv;
+    }
+
     @Override
     public JsonObject toJson()
     {
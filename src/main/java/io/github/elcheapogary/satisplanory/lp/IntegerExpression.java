@@ -12,19 +12,18 @@ package io.github.elcheapogary.satisplanory.lp;
 
 import io.github.elcheapogary.satisplanory.util.BigFraction;
 import java.math.BigInteger;
-import java.util.Map;
 
 public class IntegerExpression
         extends Expression
 {
-    IntegerExpression(Map<DecisionVariable, BigFraction> coefficients, BigFraction constantValue)
+    IntegerExpression(DecisionVariable[] variables, BigFraction[] coefficients, BigFraction constantValue)
     {
-        super(coefficients, constantValue);
+        super(variables, coefficients, constantValue);
     }
 
-    private IntegerExpression(Expression e)
+    IntegerExpression(Expression e)
     {
-        this(e.getCoefficients(), e.getConstantValue());
+        super(e);
     }
 
     @Override
@@ -30,14 +30,40 @@ import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 import javax.json.JsonString;
+import javax.json.JsonValue;
 import javax.json.JsonWriter;
 
 public class Model
 {
+    /*
+     * Model sizes, in variables plus constraints, used to choose a pivot rule for the revised simplex.
+     */
+    private static final int SMALL_MODEL_SIZE = 50;
+    private static final int LARGE_MODEL_SIZE = 500;
     private final List<DecisionVariable> decisionVariables = new ArrayList<>();
     private final Collection<BranchingConstraint> branchingConstraints = new LinkedList<>();
     private final Collection<Constraint> constraints = new LinkedList<>();
 
+    public Model()
+    {
+    }
+
+    Model(Collection<? extends DecisionVariable> decisionVariables, Collection<? extends Constraint> constraints, Collection<? extends BranchingConstraint> branchingConstraints)
+    {
+        this.decisionVariables.addAll(decisionVariables);
+        this.constraints.addAll(constraints);
+        this.branchingConstraints.addAll(branchingConstraints);
+    }
+
+    private static void addBoundToJson(JsonObjectBuilder json, String key, BigFraction bound)
+    {
+        if (bound == null){
+            json.addNull(key);
+        }else{
+            json.add(key, bound.toString());
+        }
+    }
+
     public static Model fromJson(String json)
     {
         try (JsonReader r = Json.createReader(new StringReader(json))) {
@@ -50,8 +76,14 @@ public class Model
         Model model = new Model();
 
         int id = 0;
-        for (JsonString s : jsonObject.getJsonArray("variables").getValuesAs(JsonString.class)){
-            DecisionVariable v = new DecisionVariable(id, s.getString());
+        for (JsonValue jsonVariable : jsonObject.getJsonArray("variables")){
+            DecisionVariable v;
+            if (jsonVariable instanceof JsonString s){
+                v = new DecisionVariable(id, s.getString());
+            }else{
+                JsonObject o = jsonVariable.asJsonObject();
+                v = new DecisionVariable(id, o.getString("name"), loadBoundFromJson(o, "lower-bound"), loadBoundFromJson(o, "upper-bound"));
+            }
             model.decisionVariables.add(v);
             id++;
         }
@@ -67,6 +99,14 @@ public class Model
         return model;
     }
 
+    private static BigFraction loadBoundFromJson(JsonObject json, String key)
+    {
+        if (json.isNull(key)){
+            return null;
+        }
+        return BigFraction.parse(json.getString(key));
+    }
+
     private static BranchingConstraint loadBranchingConstraintFromJson(JsonObject json, List<? extends DecisionVariable> decisionVariables)
     {
         String type = json.getString("type");
@@ -84,10 +124,8 @@ public class Model
 
     public BinaryExpression addBinaryVariable(String name)
     {
-        DecisionVariable decisionVariable = new DecisionVariable(decisionVariables.size(), name);
-        decisionVariables.add(decisionVariable);
-        BinaryExpression retv = new BinaryExpression(Collections.singletonMap(decisionVariable, BigFraction.one()), BigFraction.zero());
-        constraints.add(retv.lte(1));
+        DecisionVariable decisionVariable = addDecisionVariable(name, BigFraction.zero(), BigFraction.one());
+        BinaryExpression retv = new BinaryExpression(new DecisionVariable[]{decisionVariable}, new BigFraction[]{BigFraction.one()}, BigFraction.zero());
         branchingConstraints.add(new IntegerBranchingConstraint(retv));
         return retv;
     }
@@ -97,6 +135,13 @@ public class Model
         constraints.add(constraint);
     }
 
+    private DecisionVariable addDecisionVariable(String name, BigFraction lowerBound, BigFraction upperBound)
+    {
+        DecisionVariable decisionVariable = new DecisionVariable(decisionVariables.size(), name, lowerBound, upperBound);
+        decisionVariables.add(decisionVariable);
+        return decisionVariable;
+    }
+
     public IntegerExpression addFreeIntegerVariable(String name)
     {
         return addIntegerConstraint(addFreeVariable(name));
@@ -104,12 +149,12 @@ public class Model
 
     public Expression addFreeVariable(String name)
     {
-        return addVariable("+" + name).subtract(addVariable("-" + name));
+        return addVariable(name, null, null);
     }
 
     public IntegerExpression addIntegerConstraint(Expression expression)
     {
-        IntegerExpression retv = new IntegerExpression(expression.getCoefficients(), expression.getConstantValue());
+        IntegerExpression retv = new IntegerExpression(expression);
         branchingConstraints.add(new IntegerBranchingConstraint(expression));
         return retv;
     }
@@ -121,9 +166,24 @@ public class Model
 
     public Expression addVariable(String name)
     {
-        DecisionVariable decisionVariable = new DecisionVariable(decisionVariables.size(), name);
-        decisionVariables.add(decisionVariable);
-        return new Expression(Collections.singletonMap(decisionVariable, BigFraction.one()), BigFraction.zero());
+        return addVariable(name, BigFraction.zero(), null);
+    }
+
+    /**
+     * Adds a variable with the specified bounds. Bounds are handled by the simplex itself, which is cheaper than adding
+     * them as constraints.
+     *
+     * @param lowerBound the lower bound, or {@code null} if the variable has no lower bound.
+     * @param upperBound the upper bound, or {@code null} if the variable has no upper bound.
+     */
+    public Expression addVariable(String name, BigFraction lowerBound, BigFraction upperBound)
+    {
+        if (lowerBound != null && upperBound != null && lowerBound.compareTo(upperBound) > 0){
+            throw new IllegalArgumentException("lowerBound > upperBound");
+        }
+
+        DecisionVariable decisionVariable = addDecisionVariable(name, lowerBound, upperBound);
+        return new Expression(new DecisionVariable[]{decisionVariable}, new BigFraction[]{BigFraction.one()}, BigFraction.zero());
     }
 
     public void addZeroIfLessThanConstraint(Expression expression, BigFraction minimum)
@@ -150,6 +210,20 @@ public class Model
         this.branchingConstraints.add(new ZeroIfGreaterThanBranchingConstraint(expression, maximum));
     }
 
+    /**
+     * Creates a session that solves this model for the specified objective functions, and can solve it again
+     * incrementally after changes to right hand sides, bounds and objective functions.
+     */
+    public SolverSession createSession(List<Expression> objectiveFunctions)
+    {
+        return createSession(objectiveFunctions, SolverOptions.defaults());
+    }
+
+    public SolverSession createSession(List<Expression> objectiveFunctions, SolverOptions options)
+    {
+        return new SolverSession(decisionVariables, constraints, branchingConstraints, objectiveFunctions, options, choosePricing(options.getPricing(), true));
+    }
+
     public Expression loadExpressionFromJson(JsonObject json)
     {
         return Expression.fromJson(json, decisionVariables);
@@ -170,12 +244,29 @@ public class Model
     public OptimizationResult maximize(List<Expression> objectiveFunctions)
             throws UnboundedSolutionException, InterruptedException, InfeasibleSolutionException
     {
-        return maximize(objectiveFunctions, null);
+        return maximize(objectiveFunctions, SolverOptions.defaults());
     }
 
     public OptimizationResult maximize(List<Expression> objectiveFunctions, Consumer<String> logger)
             throws UnboundedSolutionException, InterruptedException, InfeasibleSolutionException
     {
+        return maximize(objectiveFunctions, SolverOptions.defaults().toBuilder().setLogger(logger).build());
+    }
+
+    public OptimizationResult maximize(List<Expression> objectiveFunctions, SolverOptions options)
+            throws UnboundedSolutionException, InterruptedException, InfeasibleSolutionException
+    {
+        return maximize(objectiveFunctions, options, CancellationToken.forCurrentThread());
+    }
+
+    /**
+     * @throws InterruptedException if the token is cancelled before the solve is done.
+     */
+    public OptimizationResult maximize(List<Expression> objectiveFunctions, SolverOptions options, CancellationToken cancellationToken)
+            throws UnboundedSolutionException, InterruptedException, InfeasibleSolutionException
+    {
+        Consumer<String> logger = options.getLogger();
+
         if (logger != null){
             logger = new Logger(logger);
 
@@ -186,46 +277,359 @@ public class Model
             logger.accept(sw.toString());
         }
 
-        Tableau tableau = new Tableau(logger, decisionVariables);
+        long startTime = System.nanoTime();
+        SolverExecutor executor = new SolverExecutor(options.getParallelism(), cancellationToken);
+        SolverStatistics statistics = executor.getStatistics();
 
-        for (Constraint c : constraints){
-            tableau.addConstraint(c);
+        Presolve presolve = new Presolve(decisionVariables, constraints);
+        boolean presolved = branchingConstraints.isEmpty() && options.isPresolveEnabled();
+        OptimizationResult result;
+
+        if (presolved){
+            try {
+                presolve.presolve(logger);
+            }catch (InfeasibleSolutionException e){
+                throw new InfeasibleSolutionException(findFarkasCertificate(options, executor), e);
+            }
+            statistics.addTime(SolverStatistics.Phase.PRESOLVE, startTime);
+        }
+
+        executor.throwIfCancelled();
+
+        if (branchingConstraints.isEmpty() && options.getAlgorithm() != SolverOptions.Algorithm.TABLEAU){
+            try {
+                result = maximizeWithRevisedSimplex(presolve, objectiveFunctions, logger, options.getAlgorithm() == SolverOptions.Algorithm.HYBRID, choosePricing(options.getPricing(), true), executor);
+            }catch (InfeasibleSolutionException e){
+                /*
+                 * The certificate of the revised simplex is in terms of the constraints it was given, which are the
+                 * ones that were added unless presolve made new ones of them.
+                 */
+                if (!presolved && e.getCertificate() != null){
+                    throw e;
+                }
+                throw new InfeasibleSolutionException(findFarkasCertificate(options, executor), e);
+            }
+        }else{
+            result = maximizeWithTableau(presolve, objectiveFunctions, logger, options, executor, startTime);
+        }
+
+        statistics.setTotalTime(startTime);
+
+        if (logger != null){
+            logger.accept("Solver statistics: " + statistics);
+        }
+
+        return result;
+    }
+
+    private OptimizationResult maximizeWithRevisedSimplex(Presolve presolve, List<Expression> objectiveFunctions, Consumer<String> logger, boolean floatingPointWarmStart, SolverOptions.Pricing pricing, SolverExecutor executor)
+            throws UnboundedSolutionException, InterruptedException, InfeasibleSolutionException
+    {
+        RevisedSimplex simplex = new RevisedSimplex(logger, presolve.getDecisionVariables(), floatingPointWarmStart, pricing, executor);
+        SolverStatistics statistics = executor.getStatistics();
+
+        for (Constraint c : presolve.getConstraints()){
+            simplex.addConstraint(c);
         }
 
-        tableau.solveFeasibility();
+        long phaseStartTime = System.nanoTime();
+        simplex.solveFeasibility();
+        statistics.addTime(SolverStatistics.Phase.PHASE_ONE, phaseStartTime);
 
         List<BigFraction> objectiveFunctionValues = new ArrayList<>(objectiveFunctions.size());
 
-        for (Expression e : objectiveFunctions){
-            Tableau branchConstrainedTableau = BranchingSolver.maximize(tableau, e, branchingConstraints);
-            BigFraction objectiveValue = branchConstrainedTableau.getValue(e);
-            tableau.addConstraint(e.eq(objectiveValue));
-            tableau.solveFeasibility();
+        for (Expression objectiveFunction : objectiveFunctions){
+            Expression e = presolve.substitute(objectiveFunction);
+            phaseStartTime = System.nanoTime();
+            objectiveFunctionValues.add(simplex.maximize(e));
+            simplex.fixOptimalValue(e);
+            statistics.addTime(SolverStatistics.Phase.PHASE_TWO, phaseStartTime);
+            statistics.countObjectiveSolved();
         }
 
+        Expression lastObjectiveFunction = Expression.zero();
+
         if (!objectiveFunctions.isEmpty()){
-            Expression lastObjectiveFunction = objectiveFunctions.get(objectiveFunctions.size() - 1);
+            phaseStartTime = System.nanoTime();
+            lastObjectiveFunction = presolve.substitute(createMinimizeRemainingVariablesObjective(decisionVariables, objectiveFunctions.get(objectiveFunctions.size() - 1)));
+            simplex.maximize(lastObjectiveFunction);
+            statistics.addTime(SolverStatistics.Phase.PHASE_TWO, phaseStartTime);
+        }
 
-            Set<DecisionVariable> variablesToMinimize = new TreeSet<>(Variable.COMPARATOR);
-            variablesToMinimize.addAll(decisionVariables);
-            variablesToMinimize.removeAll(lastObjectiveFunction.getCoefficients().keySet());
+        phaseStartTime = System.nanoTime();
+        simplex.breakTies(lastObjectiveFunction, createTieBreakingObjectives(presolve));
+        statistics.addTime(SolverStatistics.Phase.PHASE_TWO, phaseStartTime);
 
-            Map<DecisionVariable, BigFraction> coefficients = new TreeMap<>(Variable.COMPARATOR);
+        BigFraction[] decisionVariableValues = new BigFraction[decisionVariables.size()];
 
-            for (DecisionVariable v : variablesToMinimize){
-                coefficients.put(v, BigFraction.negativeOne());
+        for (DecisionVariable dv : decisionVariables){
+            decisionVariableValues[dv.id] = simplex.getValue(dv);
+        }
+
+        presolve.postsolve(decisionVariableValues);
+
+        return new OptimizationResult(objectiveFunctionValues, decisionVariableValues, statistics);
+    }
+
+    private OptimizationResult maximizeWithTableau(Presolve presolve, List<Expression> objectiveFunctions, Consumer<String> logger, SolverOptions options, SolverExecutor executor, long startTime)
+            throws UnboundedSolutionException, InterruptedException, InfeasibleSolutionException
+    {
+        Tableau tableau = new Tableau(logger, presolve.getDecisionVariables(), choosePricing(options.getPricing(), false), executor);
+        SolverStatistics statistics = executor.getStatistics();
+        List<Constraint> tableauConstraints = new ArrayList<>(presolve.getConstraints());
+
+        for (Constraint c : tableauConstraints){
+            tableau.addConstraint(c);
+        }
+
+        long phaseStartTime = System.nanoTime();
+
+        try {
+            tableau.solveFeasibility();
+        }catch (InfeasibleSolutionException e){
+            throw new InfeasibleSolutionException(findFarkasCertificate(options, executor), e);
+        }
+
+        statistics.addTime(SolverStatistics.Phase.PHASE_ONE, phaseStartTime);
+
+        /*
+         * The linear constraints are feasible, so if branch and bound finds no solution from here, the model is only
+         * infeasible because of its branching constraints, and there is no certificate.
+         */
+        List<BigFraction> objectiveFunctionValues = new ArrayList<>(objectiveFunctions.size());
+        List<BigFraction> objectiveFunctionBounds = new ArrayList<>(objectiveFunctions.size());
+
+        for (Expression objectiveFunction : objectiveFunctions){
+            Expression e = presolve.substitute(objectiveFunction);
+
+            if (branchingConstraints.isEmpty()){
+                phaseStartTime = System.nanoTime();
+                Tableau.Objective objective = tableau.addObjective(e);
+                tableau.maximize(objective);
+                objectiveFunctionValues.add(tableau.getValue(e));
+                objectiveFunctionBounds.add(tableau.getValue(e));
+                tableau.fixOptimalValue(objective);
+                tableau.removeObjective(objective);
+                statistics.addTime(SolverStatistics.Phase.PHASE_TWO, phaseStartTime);
+            }else{
+                /*
+                 * The optimum found by branch and bound is not a vertex of this tableau, so fixing variables here
+                 * would not keep it. We constrain the objective to its optimal value instead.
+                 */
+                phaseStartTime = System.nanoTime();
+                BranchingSolver.Result result = BranchingSolver.maximize(tableau, tableauConstraints, e, branchingConstraints, options, startTime);
+                statistics.addTime(SolverStatistics.Phase.BRANCH_AND_BOUND, phaseStartTime);
+                BigFraction objectiveValue = result.tableau().getValue(e);
+                objectiveFunctionValues.add(objectiveValue);
+                objectiveFunctionBounds.add(result.bound());
+                phaseStartTime = System.nanoTime();
+                Constraint objectiveConstraint = e.eq(objectiveValue);
+                tableauConstraints.add(objectiveConstraint);
+                tableau.addConstraint(objectiveConstraint);
+                tableau.solveFeasibility();
+                statistics.addTime(SolverStatistics.Phase.PHASE_ONE, phaseStartTime);
+            }
+
+            statistics.countObjectiveSolved();
+        }
+
+        if (branchingConstraints.isEmpty()){
+            phaseStartTime = System.nanoTime();
+            Tableau.Objective objective = tableau.addObjective(Expression.zero());
+
+            if (!objectiveFunctions.isEmpty()){
+                tableau.removeObjective(objective);
+                objective = tableau.addObjective(presolve.substitute(createMinimizeRemainingVariablesObjective(decisionVariables, objectiveFunctions.get(objectiveFunctions.size() - 1))));
+                tableau.maximize(objective);
             }
 
-            tableau = BranchingSolver.maximize(tableau, new Expression(coefficients, BigFraction.zero()), branchingConstraints);
+            tableau.breakTies(objective, createTieBreakingObjectives(presolve));
+            statistics.addTime(SolverStatistics.Phase.PHASE_TWO, phaseStartTime);
+        }else if (!objectiveFunctions.isEmpty()){
+            phaseStartTime = System.nanoTime();
+            tableau = BranchingSolver.maximize(tableau, tableauConstraints, presolve.substitute(createMinimizeRemainingVariablesObjective(decisionVariables, objectiveFunctions.get(objectiveFunctions.size() - 1))), branchingConstraints, options, startTime).tableau();
+            statistics.addTime(SolverStatistics.Phase.BRANCH_AND_BOUND, phaseStartTime);
         }
 
-        Map<DecisionVariable, BigFraction> decisionVariableValues = new TreeMap<>(Variable.COMPARATOR);
+        BigFraction[] decisionVariableValues = new BigFraction[decisionVariables.size()];
 
         for (DecisionVariable dv : decisionVariables){
-            decisionVariableValues.put(dv, tableau.getValue(dv));
+            decisionVariableValues[dv.id] = tableau.getValue(dv);
+        }
+
+        presolve.postsolve(decisionVariableValues);
+
+        return new OptimizationResult(objectiveFunctionValues, objectiveFunctionBounds, decisionVariableValues, statistics);
+    }
+
+    /*
+     * In the tableau, column lengths and the pivot row are at hand, so steepest edge weights are cheap and save a lot
+     * of iterations. The revised simplex has to compute every reduced cost it looks at, and an ftran for every column
+     * length, so it uses plain Dantzig pricing on small models and only prices part of the columns on large ones.
+     */
+    private SolverOptions.Pricing choosePricing(SolverOptions.Pricing pricing, boolean revisedSimplex)
+    {
+        if (pricing != SolverOptions.Pricing.AUTOMATIC){
+            return pricing;
+        }
+
+        if (!revisedSimplex){
+            return SolverOptions.Pricing.STEEPEST_EDGE;
+        }
+
+        int size = decisionVariables.size() + constraints.size();
+
+        if (size < SMALL_MODEL_SIZE){
+            return SolverOptions.Pricing.DANTZIG;
+        }else if (size < LARGE_MODEL_SIZE){
+            return SolverOptions.Pricing.STEEPEST_EDGE;
+        }else{
+            return SolverOptions.Pricing.PARTIAL;
+        }
+    }
+
+    /*
+     * Runs phase I of the revised simplex on the constraints as they were added, so that the certificate it finds is in
+     * terms of those, and not of the constraints that presolve made of them, or of the rows of a tableau that may have
+     * cuts and branching constraints in it. Only models whose linear constraints turned out to be infeasible, after
+     * presolve or in a tableau, get here, so this costs nothing on models that are not. Returns null if the linear constraints are feasible, and the model is only
+     * infeasible because of its branching constraints.
+     */
+    FarkasCertificate findFarkasCertificate(SolverOptions options, SolverExecutor executor)
+            throws InterruptedException
+    {
+        RevisedSimplex simplex = new RevisedSimplex(null, decisionVariables, options.getAlgorithm() == SolverOptions.Algorithm.HYBRID, choosePricing(options.getPricing(), true), executor);
+
+        for (Constraint c : constraints){
+            simplex.addConstraint(c);
+        }
+
+        try {
+            simplex.solveFeasibility();
+        }catch (InfeasibleSolutionException e){
+            assert provesInfeasibility(e.getCertificate().getMultipliers());
+            return e.getCertificate();
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns whether the constraints of this model, each multiplied by the specified multiplier, add up to an
+     * expression that is negative for all values of the variables within their bounds, which proves that the model has
+     * no solution. This is how a {@link FarkasCertificate} for one model can be checked against a model that is
+     * different, but has constraints that correspond to the ones of the certificate. Constraints that are not part of
+     * the model are ignored, and so are branching constraints.
+     */
+    public boolean provesInfeasibility(Map<Constraint, BigFraction> multipliers)
+    {
+        Map<DecisionVariable, BigFraction> coefficients = new TreeMap<>(Variable.COMPARATOR);
+        BigFraction constant = BigFraction.zero();
+
+        for (Constraint constraint : constraints){
+            BigFraction multiplier = multipliers.get(constraint);
+
+            if (multiplier == null || multiplier.signum() == 0){
+                continue;
+            }
+
+            if ((constraint.getComparison() == Constraint.Comparison.GTE && multiplier.signum() < 0)
+                    || (constraint.getComparison() == Constraint.Comparison.LTE && multiplier.signum() > 0)){
+                return false;
+            }
+
+            Expression expression = constraint.getExpression();
+
+            for (int term = 0; term < expression.getTermCount(); term++){
+                coefficients.merge(expression.getVariable(term), expression.getCoefficient(term).multiply(multiplier), BigFraction::add);
+            }
+
+            constant = constant.add(expression.getConstantValue().multiply(multiplier));
+        }
+
+        BigFraction maximum = constant;
+
+        for (var entry : coefficients.entrySet()){
+            DecisionVariable variable = decisionVariables.get(entry.getKey().id);
+            int signum = entry.getValue().signum();
+
+            if (signum != 0){
+                BigFraction bound = signum > 0 ? variable.getUpperBound() : variable.getLowerBound();
+
+                if (bound == null){
+                    return false;
+                }
+
+                maximum = maximum.add(entry.getValue().multiply(bound));
+            }
+        }
+
+        return maximum.signum() < 0;
+    }
+
+    /*
+     * Once all objectives have been maximized, we minimize every variable that is not part of the last objective
+     * function, so that we do not end up with variables that have arbitrary non-zero values. Variables without a lower
+     * bound are pushed towards their upper bound instead, and free variables are left alone, because there is nothing
+     * to push them towards.
+     */
+    static Expression createMinimizeRemainingVariablesObjective(Collection<? extends DecisionVariable> decisionVariables, Expression lastObjectiveFunction)
+    {
+        Set<DecisionVariable> variablesToMinimize = new TreeSet<>(Variable.COMPARATOR);
+        variablesToMinimize.addAll(decisionVariables);
+        for (int i = 0; i < lastObjectiveFunction.getTermCount(); i++){
+            variablesToMinimize.remove(lastObjectiveFunction.getVariable(i));
+        }
+
+        Map<DecisionVariable, BigFraction> coefficients = new TreeMap<>(Variable.COMPARATOR);
+
+        for (DecisionVariable v : variablesToMinimize){
+            if (v.getLowerBound() != null){
+                coefficients.put(v, BigFraction.negativeOne());
+            }else if (v.getUpperBound() != null){
+                coefficients.put(v, BigFraction.one());
+            }
+        }
+
+        return new Expression(coefficients, BigFraction.zero());
+    }
+
+    /*
+     * The objectives above can have more than one optimal solution, and which one the simplex ends up on depends on
+     * the path it took there, which is not the same for the tableau, the revised simplex and a session. Maximizing
+     * these in turn, keeping each one before at its optimal value, picks the same solution whichever optimal solution
+     * we start from: the one with the lowest value of the first variable, of those the one with the lowest value of
+     * the second, and so on. Variables are pushed the same ways as in createMinimizeRemainingVariablesObjective, and
+     * free variables are minimized too, which only picks a solution if they are bounded below.
+     */
+    static List<Expression> createTieBreakingObjectives(Collection<? extends DecisionVariable> decisionVariables)
+    {
+        List<Expression> objectives = new ArrayList<>(decisionVariables.size());
+
+        for (DecisionVariable v : decisionVariables){
+            if (v.getLowerBound() == null && v.getUpperBound() != null){
+                objectives.add(new Expression(Map.of(v, BigFraction.one()), BigFraction.zero()));
+            }else{
+                objectives.add(new Expression(Map.of(v, BigFraction.negativeOne()), BigFraction.zero()));
+            }
+        }
+
+        return objectives;
+    }
+
+    private List<Expression> createTieBreakingObjectives(Presolve presolve)
+    {
+        List<Expression> objectives = new ArrayList<>();
+
+        for (Expression objective : createTieBreakingObjectives(decisionVariables)){
+            objective = presolve.substitute(objective);
+
+            if (objective.getTermCount() > 0){
+                objectives.add(objective);
+            }
         }
 
-        return new OptimizationResult(objectiveFunctionValues, decisionVariableValues);
+        return objectives;
     }
 
     public JsonObject toJson()
@@ -236,7 +640,15 @@ public class Model
             JsonArrayBuilder jsonDecisionVariables = Json.createArrayBuilder();
 
             for (DecisionVariable v : decisionVariables){
-                jsonDecisionVariables.add(v.getName());
+                if (v.hasDefaultBounds()){
+                    jsonDecisionVariables.add(v.getName());
+                }else{
+                    JsonObjectBuilder jsonVariable = Json.createObjectBuilder();
+                    jsonVariable.add("name", v.getName());
+                    addBoundToJson(jsonVariable, "lower-bound", v.getLowerBound());
+                    addBoundToJson(jsonVariable, "upper-bound", v.getUpperBound());
+                    jsonDecisionVariables.add(jsonVariable.build());
+                }
             }
 
             jsonModel.add("variables", jsonDecisionVariables.build());
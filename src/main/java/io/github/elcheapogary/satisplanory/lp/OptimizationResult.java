@@ -14,17 +14,28 @@ import io.github.elcheapogary.satisplanory.util.BigFraction;
 import java.math.BigInteger;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 public class OptimizationResult
 {
     private final List<BigFraction> objectiveValues;
-    private final Map<DecisionVariable, BigFraction> variableValues;
+    private final List<BigFraction> objectiveBounds;
+    /*
+     * Indexed by decision variable id.
+     */
+    private final BigFraction[] variableValues;
+    private final SolverStatistics statistics;
 
-    OptimizationResult(List<BigFraction> objectiveValues, Map<DecisionVariable, BigFraction> variableValues)
+    OptimizationResult(List<BigFraction> objectiveValues, BigFraction[] variableValues, SolverStatistics statistics)
+    {
+        this(objectiveValues, objectiveValues, variableValues, statistics);
+    }
+
+    OptimizationResult(List<BigFraction> objectiveValues, List<BigFraction> objectiveBounds, BigFraction[] variableValues, SolverStatistics statistics)
     {
         this.objectiveValues = Collections.unmodifiableList(objectiveValues);
+        this.objectiveBounds = Collections.unmodifiableList(objectiveBounds);
         this.variableValues = variableValues;
+        this.statistics = statistics;
     }
 
     public boolean getBooleanValue(BinaryExpression expression)
@@ -34,10 +45,13 @@ public class OptimizationResult
 
     public BigFraction getFractionValue(Expression expression)
     {
-        try (var stream = expression.getCoefficients().entrySet().parallelStream()){
-            return stream.map(entry -> variableValues.get(entry.getKey()).multiply(entry.getValue()))
-                    .reduce(expression.getConstantValue(), BigFraction::add);
+        BigFraction retv = expression.getConstantValue();
+
+        for (int i = 0; i < expression.getTermCount(); i++){
+            retv = retv.add(variableValues[expression.getVariable(i).id].multiply(expression.getCoefficient(i)));
         }
+
+        return retv;
     }
 
     public BigInteger getIntegerValue(IntegerExpression expression)
@@ -45,8 +59,50 @@ public class OptimizationResult
         return getFractionValue(expression).toBigIntegerExact();
     }
 
+    /**
+     * The highest value each objective could have, given the values of the objectives before it. This is the value of
+     * the objective, unless branch and bound stopped at the node or time limit of the {@link SolverOptions} before it
+     * could prove the solution optimal.
+     */
+    public List<BigFraction> getObjectiveBounds()
+    {
+        return objectiveBounds;
+    }
+
     public List<BigFraction> getObjectiveValues()
     {
         return objectiveValues;
     }
+
+    /**
+     * How far the first objective that is not proven optimal could be from its bound, relative to the larger of the
+     * two in magnitude, or zero if the solution is optimal. Later objectives are maximized given the values of earlier
+     * ones, so the first one that falls short is the one that matters.
+     */
+    public BigFraction getRelativeGap()
+    {
+        for (int i = 0; i < objectiveValues.size(); i++){
+            BigFraction value = objectiveValues.get(i);
+            BigFraction bound = objectiveBounds.get(i);
+
+            if (!bound.equals(value)){
+                return bound.subtract(value).divide(bound.abs().max(value.abs()));
+            }
+        }
+
+        return BigFraction.zero();
+    }
+
+    public SolverStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * Whether every objective is proven to be at its maximum.
+     */
+    public boolean isOptimal()
+    {
+        return objectiveBounds.equals(objectiveValues);
+    }
 }
@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Chooses the variable that enters the basis in a simplex iteration.
+ * <p>
+ * Columns are identified by an index, which is the variable id in {@link Tableau} and the column id in
+ * {@link RevisedSimplex}. A new instance is used for each maximization, because some rules keep state between
+ * iterations.
+ * <p>
+ * All rules fall back to Bland's rule, the improving column with the lowest index, after a run of degenerate pivots.
+ * Together with ratio tests that break ties by lowest index, this guarantees that the simplex does not cycle. Once a
+ * pivot improves the objective again, the rule goes back to normal.
+ */
+abstract class PivotRule
+{
+    /*
+     * After this many consecutive degenerate pivots, we switch to Bland's rule until the objective improves again.
+     */
+    private static final int DEGENERATE_PIVOT_LIMIT = 50;
+    private int degeneratePivots = 0;
+
+    static PivotRule create(SolverOptions.Pricing pricing, SolverExecutor executor)
+    {
+        return switch (pricing){
+            case GREATEST_INCREASE -> new GreatestIncrease(executor);
+            case DANTZIG -> new Dantzig();
+            case DEVEX -> new Devex();
+            case STEEPEST_EDGE -> new ApproximateSteepestEdge();
+            case PARTIAL -> new Partial();
+            case AUTOMATIC -> throw new IllegalArgumentException("Automatic pricing must be resolved before creating a pivot rule");
+        };
+    }
+
+    private static double square(double d)
+    {
+        return d * d;
+    }
+
+    public final boolean isStalled()
+    {
+        return degeneratePivots >= DEGENERATE_PIVOT_LIMIT;
+    }
+
+    /**
+     * Called after each pivot.
+     *
+     * @param degenerate whether the pivot left the objective value unchanged.
+     * @param pivotRow   the pivot row, only provided if {@link #usesPivotRow()} returns {@code true}.
+     */
+    public final void pivoted(boolean degenerate, PivotRow pivotRow)
+    {
+        if (degenerate){
+            degeneratePivots++;
+        }else{
+            degeneratePivots = 0;
+        }
+
+        if (pivotRow != null){
+            update(pivotRow);
+        }
+    }
+
+    protected abstract int select(Pricing pricing)
+            throws UnboundedSolutionException;
+
+    private int selectBland(Pricing pricing)
+    {
+        for (int column = 0; column < pricing.getColumnCount(); column++){
+            BigFraction reducedCost = pricing.getReducedCost(column);
+            if (reducedCost != null && reducedCost.signum() > 0){
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the column that should enter the basis, or {@code -1} if no column improves the objective.
+     *
+     * @throws UnboundedSolutionException if the rule had to do ratio tests, and found a column that can increase
+     *                                    without limit.
+     */
+    public final int selectEntering(Pricing pricing)
+            throws UnboundedSolutionException
+    {
+        if (isStalled()){
+            return selectBland(pricing);
+        }
+
+        return select(pricing);
+    }
+
+    protected void update(PivotRow pivotRow)
+    {
+    }
+
+    /**
+     * Whether {@link #pivoted(boolean, PivotRow)} needs the pivot row. Computing it is not free in the revised simplex,
+     * so it is only done when needed.
+     */
+    public boolean usesPivotRow()
+    {
+        return false;
+    }
+
+    /**
+     * Gives the pivot rule access to the current state of the simplex.
+     */
+    interface Pricing
+    {
+        int getColumnCount();
+
+        /**
+         * The objective increase for each unit of increase in the specified column, or {@code null} if the column may
+         * not enter the basis.
+         */
+        BigFraction getReducedCost(int column);
+
+        /**
+         * The objective increase if the specified column entered the basis. This requires a ratio test.
+         */
+        BigFraction getImprovement(int column)
+                throws UnboundedSolutionException;
+
+        /**
+         * One plus the squared length of the column in the current basis, in floating point.
+         */
+        double getSquaredColumnNorm(int column);
+    }
+
+    /**
+     * The row of the leaving variable, in terms of the current basis, just before the pivot.
+     *
+     * @param entering   the index of the entering column.
+     * @param leaving    the index of the leaving column.
+     * @param pivotValue the coefficient of the entering column.
+     * @param columns    the indexes of the other non-basic columns with non-zero coefficients in the row.
+     * @param values     the coefficients of those columns.
+     */
+    record PivotRow(int entering, int leaving, double pivotValue, int[] columns, double[] values)
+    {
+    }
+
+    /*
+     * Picks the column that gives the largest objective increase in this iteration. This requires a ratio test for
+     * every candidate column, so it takes few iterations but a lot of work per iteration.
+     */
+    private static class GreatestIncrease
+            extends PivotRule
+    {
+        /*
+         * Each candidate needs a full ratio test, so only a few of them make a task worth forking.
+         */
+        private static final int MIN_TASK_CANDIDATES = 4;
+        private static final Comparator<Candidate> COMPARATOR = Comparator.comparing(Candidate::improvement)
+                .thenComparing(Comparator.comparingInt(Candidate::column).reversed());
+        private final SolverExecutor executor;
+
+        public GreatestIncrease(SolverExecutor executor)
+        {
+            this.executor = executor;
+        }
+
+        @Override
+        protected int select(Pricing pricing)
+                throws UnboundedSolutionException
+        {
+            List<Integer> candidates = new ArrayList<>();
+
+            for (int column = 0; column < pricing.getColumnCount(); column++){
+                BigFraction reducedCost = pricing.getReducedCost(column);
+                if (reducedCost != null && reducedCost.signum() > 0){
+                    candidates.add(column);
+                }
+            }
+
+            List<Candidate> best = executor.mapRanges(candidates.size(), MIN_TASK_CANDIDATES, (from, to) -> {
+                Candidate max = null;
+                for (int column : candidates.subList(from, to)){
+                    Candidate candidate = new Candidate(column, pricing.getImprovement(column));
+                    if (max == null || COMPARATOR.compare(candidate, max) > 0){
+                        max = candidate;
+                    }
+                }
+                return max;
+            });
+
+            return best.stream()
+                    .filter(Objects::nonNull)
+                    .max(COMPARATOR)
+                    .map(Candidate::column)
+                    .orElse(-1);
+        }
+
+        private record Candidate(int column, BigFraction improvement)
+        {
+        }
+    }
+
+    /*
+     * Picks the column with the largest reduced cost.
+     */
+    private static class Dantzig
+            extends PivotRule
+    {
+        @Override
+        protected int select(Pricing pricing)
+        {
+            int entering = -1;
+            BigFraction enteringReducedCost = null;
+
+            for (int column = 0; column < pricing.getColumnCount(); column++){
+                BigFraction reducedCost = pricing.getReducedCost(column);
+                if (reducedCost != null && reducedCost.signum() > 0 && (entering < 0 || reducedCost.compareTo(enteringReducedCost) > 0)){
+                    entering = column;
+                    enteringReducedCost = reducedCost;
+                }
+            }
+
+            return entering;
+        }
+    }
+
+    /*
+     * Picks the column with the largest squared reduced cost relative to a weight that estimates the length of the
+     * column. Steps along long columns move the current solution a long way for little objective increase, so these
+     * rules take fewer iterations than Dantzig's rule.
+     */
+    private abstract static class Weighted
+            extends PivotRule
+    {
+        protected double[] weights = new double[0];
+
+        protected abstract double getWeight(Pricing pricing, int column);
+
+        protected void ensureCapacity(int columnCount)
+        {
+            if (weights.length < columnCount){
+                int oldLength = weights.length;
+                weights = Arrays.copyOf(weights, columnCount);
+                Arrays.fill(weights, oldLength, columnCount, initialWeight());
+            }
+        }
+
+        protected abstract double initialWeight();
+
+        @Override
+        protected int select(Pricing pricing)
+        {
+            ensureCapacity(pricing.getColumnCount());
+
+            int entering = -1;
+            double enteringScore = 0.0;
+
+            for (int column = 0; column < pricing.getColumnCount(); column++){
+                BigFraction reducedCost = pricing.getReducedCost(column);
+                if (reducedCost != null && reducedCost.signum() > 0){
+                    double score = square(reducedCost.doubleValue()) / getWeight(pricing, column);
+                    if (entering < 0 || score > enteringScore){
+                        entering = column;
+                        enteringScore = score;
+                    }
+                }
+            }
+
+            return entering;
+        }
+
+        /*
+         * The Devex update: each weight becomes at least as large as the weight the column would have relative to the
+         * entering column.
+         */
+        @Override
+        protected void update(PivotRow pivotRow)
+        {
+            ensureCapacity(Math.max(pivotRow.entering(), pivotRow.leaving()) + 1);
+
+            double enteringWeight = weights[pivotRow.entering()];
+
+            for (int i = 0; i < pivotRow.columns().length; i++){
+                int column = pivotRow.columns()[i];
+                ensureCapacity(column + 1);
+                double ratio = pivotRow.values()[i] / pivotRow.pivotValue();
+                weights[column] = Math.max(weights[column], square(ratio) * enteringWeight);
+            }
+
+            if (pivotRow.leaving() >= 0){
+                weights[pivotRow.leaving()] = Math.max(enteringWeight / square(pivotRow.pivotValue()), 1.0);
+            }
+        }
+
+        @Override
+        public boolean usesPivotRow()
+        {
+            return true;
+        }
+    }
+
+    /*
+     * Devex reference weights. All weights start at 1, and are updated from the pivot row, which gives an
+     * approximation of steepest edge pricing at very little cost.
+     */
+    private static class Devex
+            extends Weighted
+    {
+        /*
+         * When weights grow this large, they no longer say much about the current basis, so we start over.
+         */
+        private static final double RESET_THRESHOLD = 1e6;
+
+        @Override
+        protected double getWeight(Pricing pricing, int column)
+        {
+            return weights[column];
+        }
+
+        @Override
+        protected double initialWeight()
+        {
+            return 1.0;
+        }
+
+        @Override
+        protected void update(PivotRow pivotRow)
+        {
+            super.update(pivotRow);
+
+            if (pivotRow.leaving() >= 0 && weights[pivotRow.leaving()] > RESET_THRESHOLD){
+                Arrays.fill(weights, 1.0);
+            }
+        }
+    }
+
+    /*
+     * Steepest edge with weights that are computed exactly, in floating point, when a column is first priced, then
+     * kept up to date with the Devex update until they are recomputed.
+     */
+    private static class ApproximateSteepestEdge
+            extends Weighted
+    {
+        private static final int RECOMPUTE_INTERVAL = 100;
+        private int updates = 0;
+
+        @Override
+        protected double getWeight(Pricing pricing, int column)
+        {
+            if (Double.isNaN(weights[column])){
+                weights[column] = pricing.getSquaredColumnNorm(column);
+            }
+            return weights[column];
+        }
+
+        @Override
+        protected double initialWeight()
+        {
+            return Double.NaN;
+        }
+
+        @Override
+        protected void update(PivotRow pivotRow)
+        {
+            if (Double.isNaN(weights[pivotRow.entering()])){
+                return;
+            }
+
+            super.update(pivotRow);
+
+            if (++updates >= RECOMPUTE_INTERVAL){
+                Arrays.fill(weights, Double.NaN);
+                updates = 0;
+            }
+        }
+    }
+
+    /*
+     * Partial and multiple pricing. Columns are priced one segment at a time, starting where the last search stopped,
+     * and only the best column of the first segment with improving columns is used. The next best columns of that
+     * segment are remembered, and are priced first in the following iterations.
+     */
+    private static class Partial
+            extends PivotRule
+    {
+        private static final int SEGMENT_COUNT = 8;
+        private static final int MIN_SEGMENT_SIZE = 64;
+        private static final int MAX_CANDIDATES = 4;
+        private final List<Integer> candidates = new ArrayList<>(MAX_CANDIDATES);
+        private int nextSegmentStart = 0;
+
+        @Override
+        protected int select(Pricing pricing)
+        {
+            int entering = selectFromCandidates(pricing);
+
+            if (entering >= 0){
+                return entering;
+            }
+
+            int columnCount = pricing.getColumnCount();
+            int segmentSize = Math.max(MIN_SEGMENT_SIZE, (columnCount + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+
+            if (nextSegmentStart >= columnCount){
+                nextSegmentStart = 0;
+            }
+
+            int scanned = 0;
+
+            while (scanned < columnCount){
+                int start = nextSegmentStart;
+                int end = Math.min(columnCount, start + segmentSize);
+                scanned += end - start;
+                nextSegmentStart = end >= columnCount ? 0 : end;
+
+                List<Candidate> found = new ArrayList<>();
+
+                for (int column = start; column < end; column++){
+                    BigFraction reducedCost = pricing.getReducedCost(column);
+                    if (reducedCost != null && reducedCost.signum() > 0){
+                        found.add(new Candidate(column, reducedCost));
+                    }
+                }
+
+                if (!found.isEmpty()){
+                    found.sort(Comparator.comparing(Candidate::reducedCost).reversed()
+                            .thenComparingInt(Candidate::column)
+                    );
+
+                    for (int i = 1; i < found.size() && candidates.size() < MAX_CANDIDATES; i++){
+                        candidates.add(found.get(i).column());
+                    }
+
+                    return found.get(0).column();
+                }
+            }
+
+            return -1;
+        }
+
+        private int selectFromCandidates(Pricing pricing)
+        {
+            int entering = -1;
+            BigFraction enteringReducedCost = null;
+
+            for (var it = candidates.iterator(); it.hasNext(); ){
+                int column = it.next();
+                BigFraction reducedCost = column < pricing.getColumnCount() ? pricing.getReducedCost(column) : null;
+                if (reducedCost == null || reducedCost.signum() <= 0){
+                    it.remove();
+                }else if (entering < 0 || reducedCost.compareTo(enteringReducedCost) > 0){
+                    entering = column;
+                    enteringReducedCost = reducedCost;
+                }
+            }
+
+            if (entering >= 0){
+                candidates.remove(Integer.valueOf(entering));
+            }
+
+            return entering;
+        }
+
+        private record Candidate(int column, BigFraction reducedCost)
+        {
+        }
+    }
+}
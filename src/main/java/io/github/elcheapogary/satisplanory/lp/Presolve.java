@@ -0,0 +1,605 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Removes constraints and variables from a model that can be dealt with without the simplex, and maps the solution of
+ * the smaller model back to the original variables.
+ * <p>
+ * The reductions are:
+ * <ul>
+ *     <li>Empty rows are checked and removed.</li>
+ *     <li>Singleton equality rows fix their variable. Singleton inequality rows are removed, and tighten the bounds of
+ *     their variable instead.</li>
+ *     <li>Rows that can not be violated within the bounds of their variables are removed. Rows that can only be
+ *     satisfied with every variable at one of its bounds fix those variables.</li>
+ *     <li>Parallel rows are merged, so that only the tightest bounds remain.</li>
+ *     <li>A variable with at most one bound that only appears in one equality row is substituted by the rest of that
+ *     row, which turns the row into an inequality that keeps the variable within its bound, or removes the row if the
+ *     variable is free.</li>
+ * </ul>
+ * Variables whose bounds meet are fixed, and fixed variables are substituted into the remaining rows. Every eliminated variable is recorded together with an
+ * expression for its value in terms of variables that are still in the model at the time. Objective functions are
+ * rewritten with {@link #substitute(Expression)} before they are handed to the solver, and {@link #postsolve(BigFraction[])}
+ * computes the values of the eliminated variables in reverse order of elimination.
+ * <p>
+ * The solver is still created with every decision variable, but with the bounds from {@link #getDecisionVariables()}.
+ * The eliminated variables end up in no row and no objective, and are fixed at zero in the solver.
+ * <p>
+ * Branching constraints look at decision variables in the solver, so models that have them are not presolved.
+ */
+class Presolve
+{
+    private final List<? extends DecisionVariable> originalDecisionVariables;
+    private final Collection<? extends Constraint> originalConstraints;
+    private final Set<Row> rows = new TreeSet<>(Comparator.comparingInt(Row::getId));
+    private final Map<DecisionVariable, Set<Row>> columns = new TreeMap<>(Variable.COMPARATOR);
+    private final List<Elimination> eliminations = new ArrayList<>();
+    /*
+     * Bounds of the variables that are left. A variable without an entry has no bound.
+     */
+    private final Map<DecisionVariable, BigFraction> lowerBounds = new TreeMap<>(Variable.COMPARATOR);
+    private final Map<DecisionVariable, BigFraction> upperBounds = new TreeMap<>(Variable.COMPARATOR);
+    private boolean presolved = false;
+    private int nextRowId = 0;
+
+    public Presolve(List<? extends DecisionVariable> decisionVariables, Collection<? extends Constraint> constraints)
+    {
+        this.originalDecisionVariables = decisionVariables;
+        this.originalConstraints = constraints;
+    }
+
+    private void addRow(Expression expression, boolean equality)
+    {
+        Row row = new Row(nextRowId++, equality);
+        row.constant = expression.getConstantValue();
+
+        for (int term = 0; term < expression.getTermCount(); term++){
+            if (expression.getCoefficient(term).signum() != 0){
+                row.coefficients.put(expression.getVariable(term), expression.getCoefficient(term));
+                columns.computeIfAbsent(expression.getVariable(term), v -> new TreeSet<>(Comparator.comparingInt(Row::getId))).add(row);
+            }
+        }
+
+        rows.add(row);
+    }
+
+    /**
+     * Returns the decision variables with the bounds of the presolved model, or the original decision variables if
+     * {@link #presolve(Consumer)} was not called.
+     */
+    public List<? extends DecisionVariable> getDecisionVariables()
+    {
+        if (!presolved){
+            return originalDecisionVariables;
+        }
+
+        Set<DecisionVariable> eliminated = new TreeSet<>(Variable.COMPARATOR);
+        for (Elimination elimination : eliminations){
+            eliminated.add(elimination.variable);
+        }
+
+        List<DecisionVariable> retv = new ArrayList<>(originalDecisionVariables.size());
+
+        for (DecisionVariable v : originalDecisionVariables){
+            if (eliminated.contains(v)){
+                retv.add(new DecisionVariable(v.id, v.getName(), BigFraction.zero(), BigFraction.zero()));
+            }else{
+                retv.add(new DecisionVariable(v.id, v.getName(), lowerBounds.get(v), upperBounds.get(v)));
+            }
+        }
+
+        return retv;
+    }
+
+    /**
+     * Returns the constraints of the presolved model, or the original constraints if {@link #presolve(Consumer)} was
+     * not called.
+     */
+    public Collection<? extends Constraint> getConstraints()
+    {
+        if (!presolved){
+            return originalConstraints;
+        }
+
+        List<Constraint> retv = new ArrayList<>(rows.size());
+
+        for (Row row : rows){
+            retv.add(new Constraint(new Expression(new TreeMap<>(row.coefficients), row.constant), row.equality ? Constraint.Comparison.EQ : Constraint.Comparison.LTE));
+        }
+
+        return retv;
+    }
+
+    /*
+     * Replaces the variable with the expression in every row it appears in, and records the elimination.
+     */
+    private void eliminate(DecisionVariable variable, Expression value)
+            throws InfeasibleSolutionException
+    {
+        eliminations.add(new Elimination(variable, value));
+
+        Set<Row> variableRows = columns.remove(variable);
+
+        if (variableRows == null){
+            return;
+        }
+
+        for (Row row : variableRows){
+            BigFraction coefficient = row.coefficients.remove(variable);
+            row.constant = row.constant.add(value.getConstantValue().multiply(coefficient));
+
+            for (int term = 0; term < value.getTermCount(); term++){
+                DecisionVariable v = value.getVariable(term);
+                BigFraction c = row.coefficients.getOrDefault(v, BigFraction.zero()).add(value.getCoefficient(term).multiply(coefficient));
+                if (c.signum() == 0){
+                    row.coefficients.remove(v);
+                    Set<Row> otherRows = columns.get(v);
+                    if (otherRows != null){
+                        otherRows.remove(row);
+                    }
+                }else{
+                    row.coefficients.put(v, c);
+                    columns.computeIfAbsent(v, k -> new TreeSet<>(Comparator.comparingInt(Row::getId))).add(row);
+                }
+            }
+
+            if (row.coefficients.isEmpty()){
+                checkEmptyRow(row);
+                removeRow(row);
+            }
+        }
+    }
+
+    private void checkEmptyRow(Row row)
+            throws InfeasibleSolutionException
+    {
+        int signum = row.constant.signum();
+        if (row.equality ? signum != 0 : signum > 0){
+            throw new InfeasibleSolutionException();
+        }
+    }
+
+    private void fix(DecisionVariable variable, BigFraction value)
+            throws InfeasibleSolutionException
+    {
+        BigFraction lowerBound = lowerBounds.get(variable);
+        BigFraction upperBound = upperBounds.get(variable);
+
+        if ((lowerBound != null && value.compareTo(lowerBound) < 0) || (upperBound != null && value.compareTo(upperBound) > 0)){
+            throw new InfeasibleSolutionException();
+        }
+
+        eliminate(variable, new Expression(new TreeMap<>(Variable.COMPARATOR), value));
+    }
+
+    /*
+     * Merges rows with the same coefficients, up to a factor, into one equality or at most two inequalities.
+     */
+    private boolean mergeParallelRows()
+            throws InfeasibleSolutionException
+    {
+        Map<Map<DecisionVariable, BigFraction>, List<Row>> groups = new LinkedHashMap<>();
+
+        for (Row row : rows){
+            if (row.coefficients.isEmpty()){
+                continue;
+            }
+            BigFraction first = row.coefficients.values().iterator().next();
+            Map<DecisionVariable, BigFraction> normalized = new TreeMap<>(Variable.COMPARATOR);
+            for (var entry : row.coefficients.entrySet()){
+                normalized.put(entry.getKey(), entry.getValue().divide(first));
+            }
+            groups.computeIfAbsent(normalized, k -> new ArrayList<>()).add(row);
+        }
+
+        boolean changed = false;
+
+        for (var entry : groups.entrySet()){
+            List<Row> group = entry.getValue();
+
+            if (group.size() < 2){
+                continue;
+            }
+
+            /*
+             * Each row says lower <= normalized . x <= upper.
+             */
+            BigFraction lower = null;
+            BigFraction upper = null;
+
+            for (Row row : group){
+                BigFraction first = row.coefficients.values().iterator().next();
+                BigFraction value = row.constant.negate().divide(first);
+
+                if (row.equality || first.signum() > 0){
+                    upper = upper == null ? value : upper.min(value);
+                }
+                if (row.equality || first.signum() < 0){
+                    lower = lower == null ? value : lower.max(value);
+                }
+            }
+
+            boolean equality = false;
+
+            if (lower != null && upper != null){
+                int c = lower.compareTo(upper);
+                if (c > 0){
+                    throw new InfeasibleSolutionException();
+                }
+                equality = c == 0;
+            }
+
+            int mergedRowCount = equality ? 1 : (lower == null ? 0 : 1) + (upper == null ? 0 : 1);
+
+            if (group.size() <= mergedRowCount){
+                continue;
+            }
+
+            for (Row row : group){
+                removeRow(row);
+            }
+
+            Expression expression = new Expression(entry.getKey(), BigFraction.zero());
+
+            if (equality){
+                addRow(expression.subtract(upper), true);
+            }else{
+                if (upper != null){
+                    addRow(expression.subtract(upper), false);
+                }
+                if (lower != null){
+                    addRow(expression.negate().add(lower), false);
+                }
+            }
+
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Fills in the values of the eliminated variables.
+     *
+     * @param values the values of all decision variables in the solution of the presolved model, indexed by id. Values
+     *               of eliminated variables are replaced.
+     */
+    public void postsolve(BigFraction[] values)
+    {
+        for (int i = eliminations.size() - 1; i >= 0; i--){
+            Elimination elimination = eliminations.get(i);
+            BigFraction value = elimination.value.getConstantValue();
+            for (int term = 0; term < elimination.value.getTermCount(); term++){
+                value = value.add(values[elimination.value.getVariable(term).id].multiply(elimination.value.getCoefficient(term)));
+            }
+            values[elimination.variable.id] = value;
+        }
+    }
+
+    /**
+     * Reduces the model.
+     *
+     * @throws InfeasibleSolutionException if the reductions show that the model has no feasible solution.
+     */
+    public void presolve(Consumer<String> logger)
+            throws InfeasibleSolutionException
+    {
+        for (Constraint constraint : originalConstraints){
+            Expression expression = constraint.getExpression();
+            switch (constraint.getComparison()){
+                case LTE -> addRow(expression, false);
+                case EQ -> addRow(expression, true);
+                case GTE -> addRow(expression.negate(), false);
+            }
+        }
+
+        presolved = true;
+
+        for (DecisionVariable variable : originalDecisionVariables){
+            if (variable.getLowerBound() != null){
+                lowerBounds.put(variable, variable.getLowerBound());
+            }
+            if (variable.getUpperBound() != null){
+                upperBounds.put(variable, variable.getUpperBound());
+            }
+        }
+
+        int originalRowCount = rows.size();
+
+        for (DecisionVariable variable : originalDecisionVariables){
+            BigFraction lowerBound = lowerBounds.get(variable);
+            if (lowerBound != null && lowerBound.equals(upperBounds.get(variable))){
+                fix(variable, lowerBound);
+            }
+        }
+
+        boolean changed = true;
+
+        while (changed){
+            changed = false;
+
+            for (Row row : new ArrayList<>(rows)){
+                if (rows.contains(row)){
+                    changed |= reduceRow(row);
+                }
+            }
+
+            changed |= mergeParallelRows();
+
+            for (DecisionVariable variable : new ArrayList<>(columns.keySet())){
+                changed |= reduceColumn(variable);
+            }
+        }
+
+        if (logger != null){
+            logger.accept("Presolve removed " + (originalRowCount - rows.size()) + " rows and " + eliminations.size() + " variables");
+        }
+    }
+
+    /*
+     * A variable with at most one bound, that only appears in one equality row and is not the only variable in it, is
+     * replaced by the rest of the row.
+     */
+    private boolean reduceColumn(DecisionVariable variable)
+            throws InfeasibleSolutionException
+    {
+        Set<Row> variableRows = columns.get(variable);
+
+        if (variableRows == null || variableRows.size() != 1){
+            return false;
+        }
+
+        Row row = variableRows.iterator().next();
+
+        if (!row.equality || row.coefficients.size() < 2){
+            return false;
+        }
+
+        BigFraction lowerBound = lowerBounds.get(variable);
+        BigFraction upperBound = upperBounds.get(variable);
+
+        if (lowerBound != null && upperBound != null){
+            return false;
+        }
+
+        BigFraction coefficient = row.coefficients.get(variable);
+
+        Map<DecisionVariable, BigFraction> valueCoefficients = new TreeMap<>(Variable.COMPARATOR);
+        for (var entry : row.coefficients.entrySet()){
+            if (entry.getKey() != variable){
+                valueCoefficients.put(entry.getKey(), entry.getValue().divide(coefficient).negate());
+            }
+        }
+        Expression value = new Expression(valueCoefficients, row.constant.divide(coefficient).negate());
+
+        /*
+         * The variable must stay within its bound, so the row becomes value >= lowerBound or value <= upperBound.
+         */
+        removeRow(row);
+
+        if (lowerBound != null){
+            addRow(value.negate().add(lowerBound), false);
+        }else if (upperBound != null){
+            addRow(value.subtract(upperBound), false);
+        }
+
+        eliminate(variable, value);
+
+        return true;
+    }
+
+    private boolean reduceRow(Row row)
+            throws InfeasibleSolutionException
+    {
+        if (row.coefficients.isEmpty()){
+            checkEmptyRow(row);
+            removeRow(row);
+            return true;
+        }
+
+        if (row.coefficients.size() == 1){
+            return reduceSingletonRow(row);
+        }
+
+        /*
+         * The range of values the row expression can take with every variable within its bounds. Null means unbounded.
+         * Bounds only come from the variables and from singleton rows, so a row with more than one variable can not be
+         * found redundant because of a bound that it implies itself.
+         */
+        BigFraction minActivity = row.constant;
+        BigFraction maxActivity = row.constant;
+
+        for (var entry : row.coefficients.entrySet()){
+            BigFraction lowerBound = lowerBounds.get(entry.getKey());
+            BigFraction upperBound = upperBounds.get(entry.getKey());
+            BigFraction coefficient = entry.getValue();
+
+            if (coefficient.signum() > 0){
+                minActivity = (minActivity == null || lowerBound == null) ? null : minActivity.add(coefficient.multiply(lowerBound));
+                maxActivity = (maxActivity == null || upperBound == null) ? null : maxActivity.add(coefficient.multiply(upperBound));
+            }else{
+                maxActivity = (maxActivity == null || lowerBound == null) ? null : maxActivity.add(coefficient.multiply(lowerBound));
+                minActivity = (minActivity == null || upperBound == null) ? null : minActivity.add(coefficient.multiply(upperBound));
+            }
+
+            if (minActivity == null && maxActivity == null){
+                return false;
+            }
+        }
+
+        if (minActivity != null && minActivity.signum() > 0){
+            throw new InfeasibleSolutionException();
+        }
+
+        if (row.equality && maxActivity != null && maxActivity.signum() < 0){
+            throw new InfeasibleSolutionException();
+        }
+
+        if (!row.equality && maxActivity != null && maxActivity.signum() <= 0){
+            removeRow(row);
+            return true;
+        }
+
+        if (minActivity != null && minActivity.signum() == 0){
+            /*
+             * Forcing row: every variable must be at the bound that minimizes the row.
+             */
+            removeRow(row);
+            for (var entry : new ArrayList<>(row.coefficients.entrySet())){
+                fix(entry.getKey(), entry.getValue().signum() > 0 ? lowerBounds.get(entry.getKey()) : upperBounds.get(entry.getKey()));
+            }
+            return true;
+        }
+
+        if (row.equality && maxActivity != null && maxActivity.signum() == 0){
+            removeRow(row);
+            for (var entry : new ArrayList<>(row.coefficients.entrySet())){
+                fix(entry.getKey(), entry.getValue().signum() > 0 ? upperBounds.get(entry.getKey()) : lowerBounds.get(entry.getKey()));
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean reduceSingletonRow(Row row)
+            throws InfeasibleSolutionException
+    {
+        var entry = row.coefficients.entrySet().iterator().next();
+        DecisionVariable variable = entry.getKey();
+        BigFraction value = row.constant.negate().divide(entry.getValue());
+
+        removeRow(row);
+
+        if (row.equality){
+            fix(variable, value);
+            return true;
+        }
+
+        BigFraction lowerBound = lowerBounds.get(variable);
+        BigFraction upperBound = upperBounds.get(variable);
+
+        if (entry.getValue().signum() > 0){
+            /*
+             * variable <= value
+             */
+            if (upperBound == null || value.compareTo(upperBound) < 0){
+                upperBound = value;
+                upperBounds.put(variable, upperBound);
+            }
+        }else{
+            /*
+             * variable >= value
+             */
+            if (lowerBound == null || value.compareTo(lowerBound) > 0){
+                lowerBound = value;
+                lowerBounds.put(variable, lowerBound);
+            }
+        }
+
+        if (lowerBound != null && upperBound != null){
+            int c = lowerBound.compareTo(upperBound);
+            if (c > 0){
+                throw new InfeasibleSolutionException();
+            }else if (c == 0){
+                fix(variable, lowerBound);
+            }
+        }
+
+        return true;
+    }
+
+    private void removeRow(Row row)
+    {
+        rows.remove(row);
+        for (DecisionVariable v : row.coefficients.keySet()){
+            Set<Row> variableRows = columns.get(v);
+            if (variableRows != null){
+                variableRows.remove(row);
+            }
+        }
+    }
+
+    /**
+     * Rewrites an expression in terms of the variables that are left after presolve.
+     */
+    public Expression substitute(Expression expression)
+    {
+        if (eliminations.isEmpty()){
+            return expression;
+        }
+
+        Map<DecisionVariable, BigFraction> coefficients = new TreeMap<>(Variable.COMPARATOR);
+        coefficients.putAll(expression.getCoefficients());
+        BigFraction constant = expression.getConstantValue();
+
+        for (Elimination elimination : eliminations){
+            BigFraction coefficient = coefficients.remove(elimination.variable);
+
+            if (coefficient == null){
+                continue;
+            }
+
+            constant = constant.add(elimination.value.getConstantValue().multiply(coefficient));
+
+            for (int term = 0; term < elimination.value.getTermCount(); term++){
+                DecisionVariable v = elimination.value.getVariable(term);
+                BigFraction c = coefficients.getOrDefault(v, BigFraction.zero()).add(elimination.value.getCoefficient(term).multiply(coefficient));
+                if (c.signum() == 0){
+                    coefficients.remove(v);
+                }else{
+                    coefficients.put(v, c);
+                }
+            }
+        }
+
+        return new Expression(coefficients, constant);
+    }
+
+    private record Elimination(DecisionVariable variable, Expression value)
+    {
+    }
+
+    /*
+     * A row says coefficients . x + constant <= 0, or == 0 if it is an equality.
+     */
+    private static class Row
+    {
+        private final int id;
+        private final boolean equality;
+        private final TreeMap<DecisionVariable, BigFraction> coefficients = new TreeMap<>(Variable.COMPARATOR);
+        private BigFraction constant;
+
+        public Row(int id, boolean equality)
+        {
+            this.id = id;
+            this.equality = equality;
+        }
+
+        public int getId()
+        {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Looks for a solution that satisfies all branching constraints without searching for one, so that branch and bound
+ * has an incumbent to prune with before its search gets to a leaf.
+ * <p>
+ * Heuristics work on a copy of the tableau of a node, to which they add branch constraints as if they were branching,
+ * but without keeping the other branch. They prove nothing, so they give up as soon as they get stuck, or as soon as
+ * the objective can no longer beat the incumbent. When there is an incumbent, each constraint is rounded towards the
+ * branch that the incumbent satisfies, which is likely to lead to a solution near the incumbent but better than it.
+ * Otherwise, constraints are rounded towards their nearest branch. Lock rounding instead rounds each constraint in the
+ * direction that none of the constraints of the model lock.
+ */
+abstract class PrimalHeuristic
+{
+    /*
+     * Rounding again after the relaxation moved other constraints to fractional values rarely works more than a few
+     * times.
+     */
+    private static final int MAX_ROUNDING_ROUNDS = 4;
+
+    /**
+     * @param constraints the constraints of the model, for lock rounding.
+     */
+    static List<PrimalHeuristic> createAll(Collection<? extends Constraint> constraints)
+    {
+        return List.of(new Rounding(), new LockRounding(constraints), new Diving());
+    }
+
+    private static boolean canBeat(BigFraction value, BigFraction cutoff)
+    {
+        return cutoff == null || value.compareTo(cutoff) > 0;
+    }
+
+    /*
+     * Returns the index of the branch that we round to, of a constraint that the tableau does not satisfy.
+     */
+    private static int getPreferredBranch(List<? extends Constraint> branches, double[] distances, Tableau guide)
+    {
+        if (guide != null){
+            for (int i = 0; i < branches.size(); i++){
+                if (isSatisfied(branches.get(i), guide)){
+                    return i;
+                }
+            }
+        }
+
+        int nearest = 0;
+
+        for (int i = 1; i < distances.length; i++){
+            if (distances[i] < distances[nearest]){
+                nearest = i;
+            }
+        }
+
+        return nearest;
+    }
+
+    private static boolean isSatisfied(Constraint constraint, Tableau tableau)
+    {
+        int signum = tableau.getValue(constraint.getExpression()).signum();
+
+        return switch (constraint.getComparison()){
+            case EQ -> signum == 0;
+            case GTE -> signum >= 0;
+            case LTE -> signum <= 0;
+        };
+    }
+
+    /**
+     * Returns a copy of the tableau, maximized for the objective, that satisfies all the branching constraints and has
+     * an objective value higher than the cutoff, or {@code null} if none was found.
+     *
+     * @param guide  the incumbent, or {@code null} if there is none.
+     * @param cutoff the objective value of the incumbent, or {@code null} if there is none.
+     */
+    abstract Tableau find(Tableau tableau, Tableau.Objective objective, List<? extends BranchingConstraint> constraints, Tableau guide, BigFraction cutoff)
+            throws UnboundedSolutionException, InterruptedException;
+
+    /*
+     * Rounds all constraints at once, and solves the relaxation again. If that moves other constraints to fractional
+     * values, those are rounded in the next round.
+     */
+    private static class Rounding
+            extends PrimalHeuristic
+    {
+        @Override
+        Tableau find(Tableau tableau, Tableau.Objective objective, List<? extends BranchingConstraint> constraints, Tableau guide, BigFraction cutoff)
+                throws UnboundedSolutionException, InterruptedException
+        {
+            Tableau retv = new Tableau(tableau);
+
+            for (int round = 0; round < MAX_ROUNDING_ROUNDS; round++){
+                List<Constraint> branches = new ArrayList<>();
+
+                for (BranchingConstraint constraint : constraints){
+                    double[] distances = constraint.getBranchDistances(retv);
+                    if (distances.length > 0){
+                        List<? extends Constraint> constraintBranches = new ArrayList<>(constraint.getConstraints(retv));
+                        int branch = selectBranch(constraintBranches, distances, retv, guide);
+                        if (branch < 0){
+                            return null;
+                        }
+                        branches.add(constraintBranches.get(branch));
+                    }
+                }
+
+                if (branches.isEmpty()){
+                    return retv;
+                }
+
+                try{
+                    if (!canBeat(retv.addConstraintsAndReoptimize(branches, objective), cutoff)){
+                        return null;
+                    }
+                }catch (InfeasibleSolutionException e){
+                    return null;
+                }
+            }
+
+            return null;
+        }
+
+        /*
+         * Returns the index of the branch to round to, or -1 to give up.
+         */
+        int selectBranch(List<? extends Constraint> branches, double[] distances, Tableau tableau, Tableau guide)
+        {
+            return getPreferredBranch(branches, distances, guide);
+        }
+    }
+
+    /*
+     * Rounding that only rounds in directions that no constraint of the model locks, and gives up on a constraint
+     * that is locked both ways before solving anything. A variable is locked in a direction if moving it that way
+     * could violate a constraint, so a solution that only moves variables in unlocked directions from a solution of the
+     * model is a solution of the model too. The relaxation is solved again after rounding all the same, since the
+     * branch constraints of the node and cuts are not counted, and since rounding one expression may move another one
+     * to a fractional value.
+     *
+     * Variable bounds do not lock: rounding an integer expression to its nearest integers does not leave bounds that
+     * are integers, and the relaxation catches bounds that are not.
+     */
+    static class LockRounding
+            extends Rounding
+    {
+        private final Set<DecisionVariable> lockedUp = new HashSet<>();
+        private final Set<DecisionVariable> lockedDown = new HashSet<>();
+
+        LockRounding(Collection<? extends Constraint> constraints)
+        {
+            for (Constraint constraint : constraints){
+                Expression expression = constraint.getExpression();
+
+                for (int i = 0; i < expression.getTermCount(); i++){
+                    DecisionVariable variable = expression.getVariable(i);
+                    int signum = expression.getCoefficient(i).signum();
+
+                    /*
+                     * The expression of a constraint is compared to zero, so increasing a variable with a positive
+                     * coefficient may violate a <= constraint, and decreasing it may violate a >= constraint.
+                     */
+                    switch (constraint.getComparison()){
+                        case EQ -> {
+                            lockedUp.add(variable);
+                            lockedDown.add(variable);
+                        }
+                        case LTE -> (signum > 0 ? lockedUp : lockedDown).add(variable);
+                        case GTE -> (signum > 0 ? lockedDown : lockedUp).add(variable);
+                    }
+                }
+            }
+        }
+
+        @Override
+        int selectBranch(List<? extends Constraint> branches, double[] distances, Tableau tableau, Tableau guide)
+        {
+            int retv = -1;
+
+            for (int i = 0; i < branches.size(); i++){
+                if (!isLocked(branches.get(i), tableau)){
+                    if (retv >= 0){
+                        return getPreferredBranch(branches, distances, guide);
+                    }
+                    retv = i;
+                }
+            }
+
+            return retv;
+        }
+
+        /*
+         * Whether getting to the branch moves a variable of its expression in a locked direction. The expression has
+         * to move towards zero, so it decreases if its value is positive.
+         */
+        private boolean isLocked(Constraint branch, Tableau tableau)
+        {
+            Expression expression = branch.getExpression();
+            int direction = -tableau.getValue(expression).signum();
+
+            for (int i = 0; i < expression.getTermCount(); i++){
+                int signum = expression.getCoefficient(i).signum() * direction;
+
+                if ((signum > 0 ? lockedUp : lockedDown).contains(expression.getVariable(i))){
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /*
+     * Rounds one constraint at a time, the one closest to one of its branches first, and solves the relaxation again
+     * after each. If a branch is infeasible, the other branch of the same constraint is tried instead, but there is no
+     * backtracking beyond that.
+     */
+    private static class Diving
+            extends PrimalHeuristic
+    {
+        @Override
+        Tableau find(Tableau tableau, Tableau.Objective objective, List<? extends BranchingConstraint> constraints, Tableau guide, BigFraction cutoff)
+                throws UnboundedSolutionException, InterruptedException
+        {
+            Tableau retv = new Tableau(tableau);
+
+            /*
+             * Each step rounds a constraint, and integer constraints with a wide range may take a few steps each, but a
+             * dive that takes much longer than that is not going anywhere.
+             */
+            for (int depth = 0; depth < 2 * constraints.size(); depth++){
+                BranchingConstraint closest = null;
+                double closestScore = 0;
+
+                for (BranchingConstraint constraint : constraints){
+                    if (constraint.getBranchDistances(retv).length > 0){
+                        double score = constraint.getScore(retv);
+                        if (closest == null || score < closestScore){
+                            closest = constraint;
+                            closestScore = score;
+                        }
+                    }
+                }
+
+                if (closest == null){
+                    return retv;
+                }
+
+                List<? extends Constraint> branches = new ArrayList<>(closest.getConstraints(retv));
+                int preferred = getPreferredBranch(branches, closest.getBranchDistances(retv), guide);
+                Tableau next = new Tableau(retv);
+                BigFraction value;
+
+                try{
+                    value = next.addConstraintAndReoptimize(branches.get(preferred), objective);
+                    retv = next;
+                }catch (InfeasibleSolutionException e){
+                    try{
+                        value = retv.addConstraintAndReoptimize(branches.get(1 - preferred), objective);
+                    }catch (InfeasibleSolutionException e2){
+                        return null;
+                    }
+                }
+
+                if (!canBeat(value, cutoff)){
+                    return null;
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,1261 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Revised simplex implementation in exact arithmetic.
+ * <p>
+ * Unlike {@link Tableau}, which updates every row of the tableau on each pivot, this keeps the original constraint
+ * matrix as sparse columns and works with a factorization of the basis matrix. Each iteration only computes the
+ * reduced costs and the entering column, which is a lot less work on large models where most of the tableau is not
+ * touched by the pivot.
+ * <p>
+ * The interface mirrors {@link Tableau}: constraints may be added after solving, and {@link #solveFeasibility()}
+ * restores a feasible basis before the next objective is maximized.
+ * <p>
+ * Variable bounds are handled by the simplex itself rather than as constraint rows. A non-basic column sits at one of
+ * its bounds, or at zero if it is free, and the ratio test stops at whichever bound, of a basic column or of the
+ * entering column itself, is reached first. If that is the bound of the entering column, it just moves to its other
+ * bound and the basis stays the same.
+ * <p>
+ * Right hand sides and bounds may be changed after solving. The basis stays optimal for the objective it was last
+ * maximized for, in the dual sense, so {@link #solveDual(Expression, long)} can restore feasibility from there
+ * instead of starting over.
+ */
+class RevisedSimplex
+{
+    /*
+     * After this many eta updates, the basis is refactorized from scratch.
+     */
+    private static final int REFACTORIZATION_INTERVAL = 64;
+    /*
+     * The floating point simplex uses a dense basis inverse, so we do not use it on models with more rows than this.
+     */
+    private static final int MAX_FLOATING_POINT_ROWS = 2000;
+    /*
+     * After this many dual simplex pivots in a row that do not change the objective value, the dual simplex picks the
+     * leaving column by lowest id instead of by largest infeasibility, so that it can not cycle.
+     */
+    private static final int MAX_DEGENERATE_DUAL_PIVOTS = 50;
+    /*
+     * The number of different cost perturbations the dual simplex uses, see solveDual().
+     */
+    private static final int DUAL_PERTURBATION_STEPS = 8;
+    private final Consumer<String> logger;
+    private final boolean floatingPointWarmStart;
+    private final SolverOptions.Pricing pricing;
+    private final SolverExecutor executor;
+    private final List<Column> columns = new ArrayList<>();
+    private final List<Column> basis = new ArrayList<>();
+    private final List<BigFraction> rightHandSide = new ArrayList<>();
+    /*
+     * The constraint of each row, as it was added, for the Farkas certificate when phase I fails.
+     */
+    private final List<Constraint> constraints = new ArrayList<>();
+    private final List<BigFraction> basicValues = new ArrayList<>();
+    private BasisFactorization factorization;
+
+    /**
+     * @param pricing the pricing to use, which must not be {@link SolverOptions.Pricing#AUTOMATIC}.
+     */
+    public RevisedSimplex(Consumer<String> logger, Collection<? extends DecisionVariable> decisionVariables, boolean floatingPointWarmStart, SolverOptions.Pricing pricing, SolverExecutor executor)
+    {
+        this.logger = logger;
+        this.floatingPointWarmStart = floatingPointWarmStart;
+        this.pricing = pricing;
+        this.executor = executor;
+        for (DecisionVariable dv : decisionVariables){
+            assert dv.id == columns.size();
+            columns.add(new Column(dv.id, "x" + dv.id, ColumnType.STRUCTURAL, dv.getLowerBound(), dv.getUpperBound()));
+        }
+    }
+
+    /*
+     * Creates a copy that can be changed and solved without affecting the original.
+     */
+    public RevisedSimplex(RevisedSimplex other)
+    {
+        this.logger = other.logger;
+        this.floatingPointWarmStart = other.floatingPointWarmStart;
+        this.pricing = other.pricing;
+        this.executor = other.executor;
+        for (Column column : other.columns){
+            columns.add(new Column(column));
+        }
+        for (Column column : other.basis){
+            basis.add(columns.get(column.id));
+        }
+        this.rightHandSide.addAll(other.rightHandSide);
+        this.constraints.addAll(other.constraints);
+        this.basicValues.addAll(other.basicValues);
+    }
+
+    private Column addColumn(String prefix, ColumnType type)
+    {
+        Column column = new Column(columns.size(), prefix + columns.size(), type, BigFraction.zero(), null);
+        columns.add(column);
+        return column;
+    }
+
+    public void addConstraint(Constraint constraint)
+    {
+        int row = rightHandSide.size();
+
+        Expression expression = constraint.getExpression();
+        BigFraction rhs = expression.getConstantValue().negate();
+        BigFraction activity = BigFraction.zero();
+
+        for (int i = 0; i < expression.getTermCount(); i++){
+            Column column = columns.get(expression.getVariable(i).id);
+            column.entries.add(row, expression.getCoefficient(i));
+            activity = activity.add(getValue(column).multiply(expression.getCoefficient(i)));
+        }
+
+        rightHandSide.add(rhs);
+        constraints.add(constraint);
+
+        BigFraction residual = rhs.subtract(activity);
+
+        Column basicColumn = null;
+        BigFraction basicValue = null;
+
+        if (constraint.getComparison() != Constraint.Comparison.EQ){
+            BigFraction slackCoefficient = constraint.getComparison() == Constraint.Comparison.LTE
+                    ? BigFraction.one()
+                    : BigFraction.negativeOne();
+            Column slack = addColumn("s", ColumnType.SLACK);
+            slack.entries.add(row, slackCoefficient);
+
+            BigFraction slackValue = residual.divide(slackCoefficient);
+
+            if (slackValue.signum() >= 0){
+                basicColumn = slack;
+                basicValue = slackValue;
+            }
+        }
+
+        if (basicColumn == null){
+            basicColumn = addColumn("a", ColumnType.ARTIFICIAL);
+            basicColumn.entries.add(row, residual.signum() < 0 ? BigFraction.negativeOne() : BigFraction.one());
+            basicValue = residual.abs();
+        }
+
+        basicColumn.basisPosition = row;
+        basis.add(basicColumn);
+        basicValues.add(basicValue);
+
+        factorization = null;
+    }
+
+    private BigFraction[] btran(BigFraction[] d)
+    {
+        return getFactorization().btran(d);
+    }
+
+    private BigFraction[] computeReducedCostMultipliers(BigFraction[] costs)
+    {
+        BigFraction[] basicCosts = new BigFraction[basis.size()];
+        for (int i = 0; i < basicCosts.length; i++){
+            basicCosts[i] = costs[basis.get(i).id];
+        }
+        return btran(basicCosts);
+    }
+
+    private BigFraction[] createObjective(Expression expression)
+    {
+        BigFraction[] costs = new BigFraction[columns.size()];
+        Arrays.fill(costs, BigFraction.zero());
+        for (int i = 0; i < expression.getTermCount(); i++){
+            costs[expression.getVariable(i).id] = expression.getCoefficient(i);
+        }
+        return costs;
+    }
+
+    /*
+     * Pivots basic artificial variables with a zero value out of the basis. If the row of an artificial variable has
+     * no non-zero coefficients for other eligible variables, the constraint is redundant and the artificial variable
+     * just stays in the basis with a value of zero forever.
+     */
+    private void driveOutArtificialVariables()
+    {
+        for (int position = 0; position < basis.size(); position++){
+            Column artificial = basis.get(position);
+
+            if (artificial.type != ColumnType.ARTIFICIAL || artificial.retired){
+                continue;
+            }
+
+            assert basicValues.get(position).signum() == 0;
+
+            BigFraction[] unit = new BigFraction[basis.size()];
+            Arrays.fill(unit, BigFraction.zero());
+            unit[position] = BigFraction.one();
+            BigFraction[] rho = btran(unit);
+
+            Column entering = null;
+
+            for (Column column : columns){
+                if (column.isEligible() && column.basisPosition < 0 && column.entries.dot(rho).signum() != 0){
+                    entering = column;
+                    break;
+                }
+            }
+
+            if (entering == null){
+                artificial.retired = true;
+            }else{
+                if (logger != null){
+                    logger.accept("Artificial variable " + artificial.getDebugName() + " is basic with zero value, pivoting on: " + entering.getDebugName());
+                }
+                executor.getStatistics().countPivot(true);
+                pivot(entering, position, ftran(entering), BigFraction.zero(), BigFraction.zero());
+            }
+        }
+    }
+
+    /**
+     * Restricts the simplex to the solutions that keep the specified objective function at its current value, which
+     * must be the optimal value.
+     * <p>
+     * Every non-basic column with a non-zero reduced cost sits at the bound that is best for the objective function,
+     * so it is fixed there. Moving any of the remaining non-basic columns does not change the objective function, so
+     * the next objective function can be maximized from the same basis, without adding an equality constraint for the
+     * optimal value and going through phase I again.
+     */
+    public void fixOptimalValue(Expression objectiveFunction)
+    {
+        BigFraction[] costs = createObjective(objectiveFunction);
+        BigFraction[] y = computeReducedCostMultipliers(costs);
+
+        int fixedCount = 0;
+
+        for (Column column : columns){
+            if (column.isEligible() && column.basisPosition < 0 && costs[column.id].subtract(column.entries.dot(y)).signum() != 0){
+                column.fixed = true;
+                fixedCount++;
+            }
+        }
+
+        if (logger != null){
+            logger.accept("Fixed " + fixedCount + " non-basic columns to keep the objective optimal");
+        }
+    }
+
+    /**
+     * Returns whether there may be other solutions with the same, optimal value of the specified objective function,
+     * which there are not if moving any of the non-basic columns that can still move would change it.
+     */
+    public boolean hasAlternativeOptima(Expression objectiveFunction)
+    {
+        BigFraction[] costs = createObjective(objectiveFunction);
+        BigFraction[] y = computeReducedCostMultipliers(costs);
+
+        for (Column column : columns){
+            if (column.isEligible() && column.basisPosition < 0 && (column.canDecrease() || column.canIncrease())
+                    && costs[column.id].subtract(column.entries.dot(y)).signum() == 0){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves to the optimal solution that the tie breaking objective functions pick, which is the same whichever optimal
+     * basis the simplex got to first, and the same as the one {@link Tableau#breakTies(Tableau.Objective, List)} gets
+     * to. The specified objective function must be at its optimal value. Each tie breaking objective function is
+     * maximized in turn, keeping the ones before it at their optimal values, until the solution is the only optimal
+     * one.
+     */
+    public void breakTies(Expression objectiveFunction, List<Expression> tieBreakingObjectiveFunctions)
+            throws InterruptedException
+    {
+        Expression previousObjectiveFunction = objectiveFunction;
+
+        for (Expression tieBreakingObjectiveFunction : tieBreakingObjectiveFunctions){
+            if (!hasAlternativeOptima(previousObjectiveFunction)){
+                return;
+            }
+
+            fixOptimalValue(previousObjectiveFunction);
+
+            try {
+                maximize(tieBreakingObjectiveFunction);
+                previousObjectiveFunction = tieBreakingObjectiveFunction;
+            }catch (UnboundedSolutionException e){
+                /*
+                 * The objective function of a free variable does not pick a solution if the variable is unbounded,
+                 * and every column that is not fixed keeps the objective functions before it optimal.
+                 */
+                previousObjectiveFunction = Expression.zero();
+            }
+        }
+    }
+
+    private BigFraction[] ftran(Column column)
+    {
+        return getFactorization().ftran(column.entries.toDense(rightHandSide.size()));
+    }
+
+    private BasisFactorization getFactorization()
+    {
+        if (factorization == null || factorization.getUpdateCount() >= REFACTORIZATION_INTERVAL){
+            List<SparseVector> basisColumns = new ArrayList<>(basis.size());
+            for (Column column : basis){
+                basisColumns.add(column.entries);
+            }
+            factorization = BasisFactorization.factorize(basis.size(), basisColumns);
+            if (factorization == null){
+                throw new IllegalStateException("Singular basis");
+            }
+        }
+        return factorization;
+    }
+
+    public BigFraction getValue(DecisionVariable decisionVariable)
+    {
+        return getValue(columns.get(decisionVariable.id));
+    }
+
+    private BigFraction getValue(Column column)
+    {
+        if (column.basisPosition < 0){
+            return column.value;
+        }
+        return basicValues.get(column.basisPosition);
+    }
+
+    public BigFraction getValue(Expression expression)
+    {
+        BigFraction retv = expression.getConstantValue();
+        for (int i = 0; i < expression.getTermCount(); i++){
+            retv = retv.add(getValue(expression.getVariable(i)).multiply(expression.getCoefficient(i)));
+        }
+        return retv;
+    }
+
+    public BigFraction maximize(Expression objectiveFunction)
+            throws UnboundedSolutionException, InterruptedException
+    {
+        maximize(createObjective(objectiveFunction), false);
+        return getValue(objectiveFunction);
+    }
+
+    /*
+     * phaseOne only says which statistics the pivots are counted in.
+     */
+    private void maximize(BigFraction[] costs, boolean phaseOne)
+            throws UnboundedSolutionException, InterruptedException
+    {
+        if (floatingPointWarmStart){
+            warmStart(costs);
+        }
+
+        PivotRule pivotRule = PivotRule.create(pricing, executor);
+
+        while (true){
+            executor.throwIfCancelled();
+
+            BigFraction[] y = computeReducedCostMultipliers(costs);
+
+            int enteringId = pivotRule.selectEntering(new RevisedSimplexPricing(costs, y));
+
+            if (enteringId < 0){
+                if (logger != null){
+                    logger.accept("Maximization complete");
+                }
+                return;
+            }
+
+            Column entering = columns.get(enteringId);
+            BigFraction enteringReducedCost = costs[entering.id].subtract(entering.entries.dot(y));
+            int direction = enteringReducedCost.signum();
+
+            BigFraction[] alpha = ftran(entering);
+
+            Step step = ratioTest(entering, direction, alpha);
+
+            if (step == null){
+                throw new UnboundedSolutionException(entering);
+            }
+
+            BigFraction delta = direction > 0 ? step.length() : step.length().negate();
+
+            executor.getStatistics().countPivot(phaseOne);
+
+            if (step.leavingPosition() < 0){
+                if (logger != null){
+                    logger.accept("Moving " + entering.getDebugName() + " to its other bound");
+                    logger.accept("Pivot increase: " + delta.multiply(enteringReducedCost).toBigDecimal(2, RoundingMode.HALF_UP));
+                }
+
+                updateValues(entering, alpha, delta);
+
+                pivotRule.pivoted(false, null);
+
+                continue;
+            }
+
+            if (logger != null){
+                logger.accept("Pivoting, entering: " + entering.getDebugName() + ", exiting: " + basis.get(step.leavingPosition()).getDebugName());
+                logger.accept("Pivot increase: " + delta.multiply(enteringReducedCost).toBigDecimal(2, RoundingMode.HALF_UP));
+            }
+
+            PivotRule.PivotRow pivotRuleRow = pivotRule.usesPivotRow()
+                    ? createPivotRuleRow(entering, step.leavingPosition(), alpha)
+                    : null;
+
+            pivot(entering, step.leavingPosition(), alpha, delta, step.leavingValue());
+
+            boolean degenerate = step.length().signum() == 0;
+
+            if (degenerate){
+                executor.getStatistics().countDegeneratePivot();
+            }
+
+            pivotRule.pivoted(degenerate, pivotRuleRow);
+        }
+    }
+
+    /*
+     * The pivot row is row leavingPosition of the inverse basis times the constraint matrix. We only need it in
+     * floating point.
+     */
+    private PivotRule.PivotRow createPivotRuleRow(Column entering, int leavingPosition, BigFraction[] alpha)
+    {
+        BigFraction[] unit = new BigFraction[basis.size()];
+        Arrays.fill(unit, BigFraction.zero());
+        unit[leavingPosition] = BigFraction.one();
+
+        BigFraction[] rho = btran(unit);
+
+        int[] rowColumns = new int[columns.size()];
+        double[] rowValues = new double[columns.size()];
+        int count = 0;
+
+        for (Column column : columns){
+            if (column == entering || !column.isEligible() || column.basisPosition >= 0){
+                continue;
+            }
+
+            BigFraction value = column.entries.dot(rho);
+
+            if (value.signum() != 0){
+                rowColumns[count] = column.id;
+                rowValues[count] = value.doubleValue();
+                count++;
+            }
+        }
+
+        return new PivotRule.PivotRow(
+                entering.id,
+                basis.get(leavingPosition).id,
+                alpha[leavingPosition].doubleValue(),
+                Arrays.copyOf(rowColumns, count),
+                Arrays.copyOf(rowValues, count)
+        );
+    }
+
+    /*
+     * Returns how far the entering column can move in the specified direction before a basic column, or the entering
+     * column itself, reaches a bound, or null if it can move without limit. Ties are broken in favour of the entering
+     * column, then by lowest column id.
+     */
+    private Step ratioTest(Column entering, int direction, BigFraction[] alpha)
+    {
+        Step retv = null;
+
+        BigFraction enteringBound = direction > 0 ? entering.upperBound : entering.lowerBound;
+
+        if (enteringBound != null){
+            retv = new Step(enteringBound.subtract(entering.value).abs(), -1, null);
+        }
+
+        for (int position = 0; position < alpha.length; position++){
+            int signum = alpha[position].signum() * direction;
+
+            if (signum == 0){
+                continue;
+            }
+
+            /*
+             * The basic column decreases if signum > 0, and increases otherwise.
+             */
+            Column column = basis.get(position);
+            BigFraction bound = signum > 0 ? column.lowerBound : column.upperBound;
+
+            if (bound == null){
+                continue;
+            }
+
+            BigFraction length = basicValues.get(position).subtract(bound).divide(alpha[position].abs());
+
+            if (length.signum() < 0){
+                length = length.negate();
+            }
+
+            if (retv == null){
+                retv = new Step(length, position, bound);
+            }else{
+                int c = length.compareTo(retv.length());
+                if (c < 0 || (c == 0 && retv.leavingPosition() >= 0 && column.id < basis.get(retv.leavingPosition()).id)){
+                    retv = new Step(length, position, bound);
+                }
+            }
+        }
+
+        return retv;
+    }
+
+    /*
+     * Moves the entering column by delta, and the basic columns with it. The entering column becomes basic in place
+     * of the column at leavingPosition, which ends up at leavingValue.
+     */
+    private void pivot(Column entering, int leavingPosition, BigFraction[] alpha, BigFraction delta, BigFraction leavingValue)
+    {
+        updateValues(entering, alpha, delta);
+
+        factorization.update(leavingPosition, alpha);
+
+        Column leaving = basis.get(leavingPosition);
+        leaving.basisPosition = -1;
+        leaving.value = leavingValue;
+        if (leaving.type == ColumnType.ARTIFICIAL){
+            /*
+             * Artificial variables never re-enter the basis once they have left it.
+             */
+            leaving.retired = true;
+        }
+
+        entering.basisPosition = leavingPosition;
+        basis.set(leavingPosition, entering);
+        basicValues.set(leavingPosition, entering.value);
+    }
+
+    /*
+     * Moves the non-basic entering column by delta, and every basic column along with it.
+     */
+    private void updateValues(Column entering, BigFraction[] alpha, BigFraction delta)
+    {
+        if (delta.signum() == 0){
+            return;
+        }
+
+        entering.value = entering.value.add(delta);
+
+        int bitLength = entering.value.bitLength();
+
+        for (int position = 0; position < alpha.length; position++){
+            if (alpha[position].signum() != 0){
+                BigFraction value = basicValues.get(position).subtract(delta.multiply(alpha[position]));
+                basicValues.set(position, value);
+                bitLength = Math.max(bitLength, value.bitLength());
+            }
+        }
+
+        executor.getStatistics().recordBitLength(bitLength);
+    }
+
+    /*
+     * Returns the basis position of the basic column that is furthest outside its bounds, or -1 if the basis is
+     * primal feasible. With lowestId set, the infeasible column with the lowest id is returned instead.
+     */
+    private int selectDualLeaving(boolean lowestId)
+    {
+        int retv = -1;
+        BigFraction retvInfeasibility = null;
+
+        for (int position = 0; position < basis.size(); position++){
+            Column column = basis.get(position);
+            BigFraction value = basicValues.get(position);
+            BigFraction infeasibility;
+
+            BigFraction lowerBound = column.getFeasibleLowerBound();
+            BigFraction upperBound = column.getFeasibleUpperBound();
+
+            if (lowerBound != null && value.compareTo(lowerBound) < 0){
+                infeasibility = lowerBound.subtract(value);
+            }else if (upperBound != null && value.compareTo(upperBound) > 0){
+                infeasibility = value.subtract(upperBound);
+            }else{
+                continue;
+            }
+
+            if (retv < 0){
+                retv = position;
+                retvInfeasibility = infeasibility;
+            }else if (lowestId){
+                if (column.id < basis.get(retv).id){
+                    retv = position;
+                }
+            }else{
+                int c = infeasibility.compareTo(retvInfeasibility);
+                if (c > 0 || (c == 0 && column.id < basis.get(retv).id)){
+                    retv = position;
+                    retvInfeasibility = infeasibility;
+                }
+            }
+        }
+
+        return retv;
+    }
+
+    /*
+     * Changes the bounds of a decision variable. If the column is not basic, it moves to the matching new bound and the
+     * basic columns move with it, which may leave them outside their bounds until the next solveDual().
+     */
+    public void setBounds(DecisionVariable decisionVariable, BigFraction lowerBound, BigFraction upperBound)
+    {
+        Column column = columns.get(decisionVariable.id);
+
+        boolean atUpperBound = column.basisPosition < 0 && column.upperBound != null && column.value.equals(column.upperBound)
+                && (column.lowerBound == null || column.lowerBound.compareTo(column.upperBound) < 0);
+
+        column.lowerBound = lowerBound;
+        column.upperBound = upperBound;
+
+        if (column.basisPosition < 0){
+            BigFraction value = atUpperBound && upperBound != null
+                    ? upperBound
+                    : Column.getInitialValue(lowerBound, upperBound);
+            BigFraction delta = value.subtract(column.value);
+            if (delta.signum() != 0){
+                updateValues(column, ftran(column), delta);
+            }
+        }
+    }
+
+    /*
+     * Changes the right hand side of a row, moving the basic columns along with it.
+     */
+    public void setRightHandSide(int row, BigFraction value)
+    {
+        BigFraction delta = value.subtract(rightHandSide.get(row));
+
+        if (delta.signum() == 0){
+            return;
+        }
+
+        rightHandSide.set(row, value);
+
+        BigFraction[] unit = new BigFraction[basis.size()];
+        Arrays.fill(unit, BigFraction.zero());
+        unit[row] = BigFraction.one();
+        BigFraction[] column = getFactorization().ftran(unit);
+
+        for (int position = 0; position < column.length; position++){
+            if (column[position].signum() != 0){
+                basicValues.set(position, basicValues.get(position).add(delta.multiply(column[position])));
+            }
+        }
+    }
+
+    /*
+     * Restores primal feasibility with the dual simplex, after right hand sides or bounds have changed. This only
+     * works if the basis is still dual feasible for the specified objective function, which it is if it was optimal
+     * for it before the changes, and bounds of non-basic columns have not been removed. Returns false, without
+     * changing anything, if the basis is infeasible and not dual feasible either. Also returns false if the basis is still not feasible
+     * after maxPivots pivots, for callers that have a cheaper way to get there; the basis is still valid then, but
+     * neither feasible nor optimal.
+     */
+    public boolean solveDual(Expression objectiveFunction, long maxPivots)
+            throws InfeasibleSolutionException, InterruptedException
+    {
+        if (selectDualLeaving(false) < 0){
+            /*
+             * Still feasible, so the primal simplex can carry on from here, whether the basis is still dual feasible
+             * or not.
+             */
+            return true;
+        }
+
+        BigFraction[] costs = createObjective(objectiveFunction);
+        BigFraction[] y = computeReducedCostMultipliers(costs);
+
+        {
+            RevisedSimplexPricing pricing = new RevisedSimplexPricing(costs, y);
+
+            for (int column = 0; column < columns.size(); column++){
+                if (pricing.getReducedCost(column) != null){
+                    if (logger != null){
+                        logger.accept("Basis is not dual feasible, dual simplex can not be used");
+                    }
+                    return false;
+                }
+            }
+        }
+
+        /*
+         * Objectives usually only involve a few columns, so most reduced costs are zero, and the dual simplex would
+         * pivot without making any progress for a long time. Any costs the basis is dual feasible for will do, since
+         * the primal simplex has to maximize the real objective afterwards anyway, so we push the reduced cost of
+         * every non-basic column that sits at a bound a bit further into the feasible direction. Costs of basic
+         * columns stay the same, so the other reduced costs do not change.
+         */
+        for (Column column : columns){
+            if (column.isEligible() && column.basisPosition < 0){
+                BigFraction perturbation = BigFraction.valueOf(1 + column.id % DUAL_PERTURBATION_STEPS);
+                if (column.canIncrease() && !column.canDecrease()){
+                    costs[column.id] = costs[column.id].subtract(perturbation);
+                }else if (column.canDecrease() && !column.canIncrease()){
+                    costs[column.id] = costs[column.id].add(perturbation);
+                }
+            }
+        }
+
+        /*
+         * Reduced costs of non-basic columns. They are updated along with the basis rather than computed again on
+         * every iteration.
+         */
+        BigFraction[] reducedCosts = new BigFraction[columns.size()];
+
+        for (Column column : columns){
+            if (column.isEligible() && column.basisPosition < 0){
+                reducedCosts[column.id] = costs[column.id].subtract(column.entries.dot(y));
+            }
+        }
+
+        int degeneratePivotCount = 0;
+
+        for (long pivotCount = 0; ; pivotCount++){
+            executor.throwIfCancelled();
+
+            boolean lowestId = degeneratePivotCount >= MAX_DEGENERATE_DUAL_PIVOTS;
+
+            int leavingPosition = selectDualLeaving(lowestId);
+
+            if (leavingPosition < 0){
+                if (logger != null){
+                    logger.accept("Dual simplex complete");
+                }
+                return true;
+            }
+
+            if (pivotCount >= maxPivots){
+                if (logger != null){
+                    logger.accept("Dual simplex is taking too many pivots, giving up");
+                }
+                return false;
+            }
+
+            Column leaving = basis.get(leavingPosition);
+            BigFraction leavingValue = basicValues.get(leavingPosition);
+            BigFraction bound;
+            int direction;
+
+            if (leaving.getFeasibleLowerBound() != null && leavingValue.compareTo(leaving.getFeasibleLowerBound()) < 0){
+                bound = leaving.getFeasibleLowerBound();
+                direction = 1;
+            }else{
+                bound = leaving.getFeasibleUpperBound();
+                direction = -1;
+            }
+
+            BigFraction[] unit = new BigFraction[basis.size()];
+            Arrays.fill(unit, BigFraction.zero());
+            unit[leavingPosition] = BigFraction.one();
+            BigFraction[] rho = btran(unit);
+
+            /*
+             * The leaving column changes by -rowValue for every unit the entering column moves, so the entering
+             * column has to be able to move in the direction that takes the leaving column towards its bound. Of
+             * those, the one with the smallest ratio of reduced cost to row value keeps every reduced cost dual
+             * feasible. Ties go to the largest row value, which moves the other basic columns the least.
+             */
+            BigFraction[] rowValues = new BigFraction[columns.size()];
+            Column entering = null;
+            BigFraction enteringRatio = null;
+
+            for (Column column : columns){
+                if (!column.isEligible() || column.basisPosition >= 0){
+                    continue;
+                }
+
+                BigFraction rowValue = column.entries.dot(rho);
+
+                if (rowValue.signum() == 0){
+                    continue;
+                }
+
+                rowValues[column.id] = rowValue;
+
+                if (rowValue.signum() * direction < 0 ? !column.canIncrease() : !column.canDecrease()){
+                    continue;
+                }
+
+                BigFraction ratio = reducedCosts[column.id].abs().divide(rowValue.abs());
+
+                int c = entering == null ? -1 : ratio.compareTo(enteringRatio);
+
+                if (c < 0 || (c == 0 && !lowestId && rowValue.abs().compareTo(rowValues[entering.id].abs()) > 0)){
+                    entering = column;
+                    enteringRatio = ratio;
+                }
+            }
+
+            if (entering == null){
+                if (logger != null){
+                    logger.accept("No column can bring " + leaving.getDebugName() + " within its bounds, the model is infeasible");
+                }
+                throw new InfeasibleSolutionException();
+            }
+
+            if (logger != null){
+                logger.accept("Dual pivoting, entering: " + entering.getDebugName() + ", exiting: " + leaving.getDebugName());
+            }
+
+            BigFraction[] alpha = ftran(entering);
+
+            executor.getStatistics().countDualPivot();
+            pivot(entering, leavingPosition, alpha, leavingValue.subtract(bound).divide(alpha[leavingPosition]), bound);
+
+            BigFraction theta = reducedCosts[entering.id].divide(rowValues[entering.id]);
+
+            if (theta.signum() != 0){
+                for (int id = 0; id < rowValues.length; id++){
+                    if (rowValues[id] != null){
+                        reducedCosts[id] = reducedCosts[id].subtract(theta.multiply(rowValues[id]));
+                    }
+                }
+                degeneratePivotCount = 0;
+            }else{
+                degeneratePivotCount++;
+            }
+
+            reducedCosts[entering.id] = null;
+            if (leaving.isEligible()){
+                reducedCosts[leaving.id] = theta.negate();
+            }
+        }
+    }
+
+    public void solveFeasibility()
+            throws InfeasibleSolutionException, InterruptedException
+    {
+        BigFraction[] costs = new BigFraction[columns.size()];
+        Arrays.fill(costs, BigFraction.zero());
+
+        boolean hasArtificialVariables = false;
+
+        for (Column column : basis){
+            if (column.type == ColumnType.ARTIFICIAL && !column.retired){
+                costs[column.id] = BigFraction.negativeOne();
+                hasArtificialVariables = true;
+            }
+        }
+
+        if (!hasArtificialVariables){
+            return;
+        }
+
+        if (logger != null){
+            logger.accept("Finding initial feasible solution");
+        }
+
+        try {
+            maximize(costs, true);
+        }catch (UnboundedSolutionException e){
+            throw new IllegalStateException("Artificial variable minimization can not be unbounded", e);
+        }
+
+        for (int position = 0; position < basis.size(); position++){
+            Column column = basis.get(position);
+            if (column.type == ColumnType.ARTIFICIAL && basicValues.get(position).signum() != 0){
+                throw new InfeasibleSolutionException(createFarkasCertificate(costs));
+            }
+        }
+
+        driveOutArtificialVariables();
+    }
+
+    /*
+     * At the end of a phase I that could not get the artificial variables to zero, the reduced cost multipliers y
+     * prove that there is no solution, with -y as the multipliers of the certificate. Every non-basic column is at the
+     * bound that is best for phase I, so no values of the variables and slacks within their bounds get the phase I
+     * objective above its current, negative value. Written out in rows, that means that -y times the expressions of the
+     * constraints, plus the reduced costs of the slacks times the slacks, is negative, and with the slacks at zero,
+     * that leaves -y times the expressions. Phase I would have increased a slack with a positive reduced cost, which
+     * makes -y positive for >= constraints and negative for <= constraints, so that no solution makes the sum negative.
+     */
+    private FarkasCertificate createFarkasCertificate(BigFraction[] costs)
+    {
+        BigFraction[] y = computeReducedCostMultipliers(costs);
+        Map<Constraint, BigFraction> multipliers = new HashMap<>();
+
+        for (int row = 0; row < y.length; row++){
+            if (y[row].signum() != 0){
+                multipliers.put(constraints.get(row), y[row].negate());
+            }
+        }
+
+        return new FarkasCertificate(multipliers);
+    }
+
+    /*
+     * Runs the simplex in floating point from the current basis, then installs the basis it ends up with if that basis
+     * is non-singular and primal feasible in exact arithmetic. Whether it is also optimal is checked by the exact
+     * simplex, which just carries on pivoting from the installed basis if it is not.
+     */
+    private void warmStart(BigFraction[] costs)
+            throws InterruptedException
+    {
+        int rowCount = basis.size();
+
+        if (rowCount == 0 || rowCount > MAX_FLOATING_POINT_ROWS){
+            return;
+        }
+
+        int[][] columnIndices = new int[columns.size()][];
+        double[][] columnValues = new double[columns.size()][];
+        boolean[] eligible = new boolean[columns.size()];
+        double[] doubleCosts = new double[columns.size()];
+        double[] lowerBounds = new double[columns.size()];
+        double[] upperBounds = new double[columns.size()];
+        boolean[] atUpperBound = new boolean[columns.size()];
+
+        for (Column column : columns){
+            columnIndices[column.id] = new int[column.entries.size()];
+            columnValues[column.id] = new double[column.entries.size()];
+            for (int i = 0; i < column.entries.size(); i++){
+                columnIndices[column.id][i] = column.entries.index(i);
+                columnValues[column.id][i] = column.entries.value(i).doubleValue();
+            }
+            eligible[column.id] = column.isEligible();
+            doubleCosts[column.id] = costs[column.id].doubleValue();
+            lowerBounds[column.id] = column.lowerBound == null ? Double.NEGATIVE_INFINITY : column.lowerBound.doubleValue();
+            upperBounds[column.id] = column.upperBound == null ? Double.POSITIVE_INFINITY : column.upperBound.doubleValue();
+            atUpperBound[column.id] = column.basisPosition < 0 && column.upperBound != null && column.value.equals(column.upperBound);
+        }
+
+        double[] doubleRightHandSide = new double[rowCount];
+        for (int row = 0; row < rowCount; row++){
+            doubleRightHandSide[row] = rightHandSide.get(row).doubleValue();
+        }
+
+        int[] candidateBasis = new int[rowCount];
+        for (int position = 0; position < rowCount; position++){
+            candidateBasis[position] = basis.get(position).id;
+        }
+
+        DoubleSimplex doubleSimplex = new DoubleSimplex(rowCount, columnIndices, columnValues, eligible, doubleCosts, lowerBounds, upperBounds, doubleRightHandSide, candidateBasis, atUpperBound);
+
+        boolean solved = doubleSimplex.maximize(executor.getCancellationToken());
+
+        executor.getStatistics().addFloatingPointPivots(doubleSimplex.getPivotCount());
+
+        if (!solved || doubleSimplex.getPivotCount() == 0){
+            return;
+        }
+
+        List<SparseVector> basisColumns = new ArrayList<>(rowCount);
+        for (int id : candidateBasis){
+            basisColumns.add(columns.get(id).entries);
+        }
+
+        BasisFactorization candidateFactorization = BasisFactorization.factorize(rowCount, basisColumns);
+
+        if (candidateFactorization == null){
+            if (logger != null){
+                logger.accept("Floating point basis is singular, ignoring it");
+            }
+            return;
+        }
+
+        boolean[] inCandidateBasis = new boolean[columns.size()];
+        for (int id : candidateBasis){
+            inCandidateBasis[id] = true;
+        }
+
+        BigFraction[] nonBasicValues = new BigFraction[columns.size()];
+        BigFraction[] residual = rightHandSide.toArray(new BigFraction[0]);
+
+        for (Column column : columns){
+            if (!inCandidateBasis[column.id]){
+                BigFraction value = column.getNonBasicValue(atUpperBound[column.id]);
+                nonBasicValues[column.id] = value;
+                if (value.signum() != 0){
+                    for (int i = 0; i < column.entries.size(); i++){
+                        int row = column.entries.index(i);
+                        residual[row] = residual[row].subtract(column.entries.value(i).multiply(value));
+                    }
+                }
+            }
+        }
+
+        BigFraction[] candidateValues = candidateFactorization.ftran(residual);
+
+        for (int position = 0; position < rowCount; position++){
+            Column column = columns.get(candidateBasis[position]);
+            BigFraction value = candidateValues[position];
+            /*
+             * Artificial variables without a cost are either in redundant rows or we are past phase I, so they
+             * must stay at zero.
+             */
+            if (!column.isWithinBounds(value) || (value.signum() > 0 && column.type == ColumnType.ARTIFICIAL && costs[column.id].signum() == 0)){
+                if (logger != null){
+                    logger.accept("Floating point basis is infeasible, ignoring it");
+                }
+                return;
+            }
+        }
+
+        if (logger != null){
+            logger.accept("Installing basis from floating point simplex after " + doubleSimplex.getPivotCount() + " pivots");
+        }
+
+        for (Column column : basis){
+            column.basisPosition = -1;
+        }
+
+        int bitLength = 0;
+
+        for (int position = 0; position < rowCount; position++){
+            Column column = columns.get(candidateBasis[position]);
+            column.basisPosition = position;
+            basis.set(position, column);
+            basicValues.set(position, candidateValues[position]);
+            bitLength = Math.max(bitLength, candidateValues[position].bitLength());
+        }
+
+        executor.getStatistics().recordBitLength(bitLength);
+
+        for (Column column : columns){
+            if (column.basisPosition < 0){
+                column.value = nonBasicValues[column.id];
+                if (column.type == ColumnType.ARTIFICIAL){
+                    column.retired = true;
+                }
+            }
+        }
+
+        factorization = candidateFactorization;
+    }
+
+    /*
+     * Reduced costs are computed when the pivot rule asks for them, so that partial pricing does not have to price
+     * every column.
+     */
+    private class RevisedSimplexPricing
+            implements PivotRule.Pricing
+    {
+        private final BigFraction[] costs;
+        private final BigFraction[] y;
+
+        public RevisedSimplexPricing(BigFraction[] costs, BigFraction[] y)
+        {
+            this.costs = costs;
+            this.y = y;
+        }
+
+        @Override
+        public int getColumnCount()
+        {
+            return columns.size();
+        }
+
+        /*
+         * The factorization was brought up to date when y was computed, so it is safe to use from several threads
+         * here.
+         */
+        @Override
+        public BigFraction getImprovement(int column)
+                throws UnboundedSolutionException
+        {
+            Column c = columns.get(column);
+            BigFraction[] alpha = factorization.ftran(c.entries.toDense(rightHandSide.size()));
+            BigFraction reducedCost = costs[column].subtract(c.entries.dot(y));
+            Step step = ratioTest(c, reducedCost.signum(), alpha);
+
+            if (step == null){
+                throw new UnboundedSolutionException(c);
+            }
+
+            return step.length().multiply(reducedCost.abs());
+        }
+
+        /*
+         * A column at its upper bound improves the objective by decreasing, so its reduced cost is negated.
+         */
+        @Override
+        public BigFraction getReducedCost(int column)
+        {
+            Column c = columns.get(column);
+
+            if (!c.isEligible() || c.basisPosition >= 0){
+                return null;
+            }
+
+            BigFraction reducedCost = costs[column].subtract(c.entries.dot(y));
+
+            int signum = reducedCost.signum();
+
+            if (signum > 0 && c.canIncrease()){
+                return reducedCost;
+            }else if (signum < 0 && c.canDecrease()){
+                return reducedCost.negate();
+            }
+
+            return null;
+        }
+
+        @Override
+        public double getSquaredColumnNorm(int column)
+        {
+            double retv = 1.0;
+
+            for (BigFraction value : factorization.ftran(columns.get(column).entries.toDense(rightHandSide.size()))){
+                double d = value.doubleValue();
+                retv += d * d;
+            }
+
+            return retv;
+        }
+    }
+
+    private enum ColumnType
+    {
+        STRUCTURAL, SLACK, ARTIFICIAL
+    }
+
+    /*
+     * How far the entering column moves, and the basis position and new value of the column that leaves the basis.
+     * The leaving position is -1 if the entering column reaches its other bound first.
+     */
+    private record Step(BigFraction length, int leavingPosition, BigFraction leavingValue)
+    {
+    }
+
+    private static class Column
+            extends Variable
+    {
+        private final String debugName;
+        private final ColumnType type;
+        private final SparseVector entries;
+        /*
+         * Null if there is no bound.
+         */
+        private BigFraction lowerBound;
+        private BigFraction upperBound;
+        private int basisPosition = -1;
+        /*
+         * The value of the column while it is not basic: one of its bounds, or zero if it is free.
+         */
+        private BigFraction value;
+        /*
+         * For artificial variables: set once the variable may no longer take part in pivots, either because it has
+         * left the basis, or because it is basic in a redundant row.
+         */
+        private boolean retired = false;
+        /*
+         * Set once moving the column would make an objective that has already been maximized worse, see
+         * fixOptimalValue().
+         */
+        private boolean fixed = false;
+
+        public Column(int id, String debugName, ColumnType type, BigFraction lowerBound, BigFraction upperBound)
+        {
+            super(id);
+            this.debugName = debugName;
+            this.type = type;
+            this.entries = new SparseVector();
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            this.value = getInitialValue(lowerBound, upperBound);
+        }
+
+        public Column(Column other)
+        {
+            super(other.id);
+            this.debugName = other.debugName;
+            this.type = other.type;
+            this.entries = new SparseVector(other.entries);
+            this.lowerBound = other.lowerBound;
+            this.upperBound = other.upperBound;
+            this.basisPosition = other.basisPosition;
+            this.value = other.value;
+            this.retired = other.retired;
+            this.fixed = other.fixed;
+        }
+
+        private static BigFraction getInitialValue(BigFraction lowerBound, BigFraction upperBound)
+        {
+            if (lowerBound != null){
+                return lowerBound;
+            }else if (upperBound != null){
+                return upperBound;
+            }else{
+                return BigFraction.zero();
+            }
+        }
+
+        public boolean canDecrease()
+        {
+            return lowerBound == null || value.compareTo(lowerBound) > 0;
+        }
+
+        public boolean canIncrease()
+        {
+            return upperBound == null || value.compareTo(upperBound) < 0;
+        }
+
+        /*
+         * The value of the column when it leaves the basis in the floating point simplex, which only records whether
+         * it is at its upper bound.
+         */
+        public BigFraction getNonBasicValue(boolean atUpperBound)
+        {
+            if (atUpperBound || lowerBound == null){
+                return upperBound == null ? BigFraction.zero() : upperBound;
+            }
+            return lowerBound;
+        }
+
+        /*
+         * The bounds the dual simplex has to bring a basic column within. Artificial variables may not be basic with a
+         * non-zero value once phase I is over.
+         */
+        public BigFraction getFeasibleLowerBound()
+        {
+            return type == ColumnType.ARTIFICIAL ? BigFraction.zero() : lowerBound;
+        }
+
+        public BigFraction getFeasibleUpperBound()
+        {
+            return type == ColumnType.ARTIFICIAL ? BigFraction.zero() : upperBound;
+        }
+
+        public boolean isWithinBounds(BigFraction value)
+        {
+            return (lowerBound == null || value.compareTo(lowerBound) >= 0) && (upperBound == null || value.compareTo(upperBound) <= 0);
+        }
+
+        @Override
+        public String getDebugName()
+        {
+            return debugName;
+        }
+
+        public boolean isEligible()
+        {
+            return type != ColumnType.ARTIFICIAL && !fixed;
+        }
+    }
+}
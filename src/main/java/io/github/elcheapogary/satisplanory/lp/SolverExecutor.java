@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the parallel loops of a solve.
+ * <p>
+ * The loops run on a thread pool that belongs to the solver, with one thread per processor, so solves do not compete
+ * with other users of the common pool, and several solves running at once share a fixed number of threads instead of
+ * each assuming it has all of them. Each solve has its own executor, which runs at most
+ * {@link SolverOptions#getParallelism()} tasks at a time, counting the thread that runs the loop. A loop that is
+ * started while the other tasks of the solve are busy, such as a pivot inside a branch and bound node that is expanded
+ * in parallel with others, runs on the calling thread.
+ * <p>
+ * The executor also carries the {@link CancellationToken} of the solve, which the tasks check, because an interrupt of
+ * the thread that started the solve does not reach the threads of the pool, and the {@link SolverStatistics} that the
+ * tasks count their pivots in.
+ * <p>
+ * Each loop is split into ranges of at least a minimum size, which the caller chooses depending on how much work each
+ * item is. Loops too small for more than one range run on the calling thread, because forking tasks for a handful of
+ * rows costs more than it saves.
+ */
+final class SolverExecutor
+{
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), SolverExecutor::createThread, null, false);
+    /*
+     * The number of tasks that may be started on the pool, on top of the ones that are running.
+     */
+    private final AtomicInteger availableTasks;
+    private final int parallelism;
+    private volatile CancellationToken cancellationToken;
+    private volatile SolverStatistics statistics = new SolverStatistics();
+
+    SolverExecutor(int parallelism, CancellationToken cancellationToken)
+    {
+        this.parallelism = parallelism;
+        this.availableTasks = new AtomicInteger(parallelism - 1);
+        this.cancellationToken = cancellationToken;
+    }
+
+    private static ForkJoinWorkerThread createThread(ForkJoinPool pool)
+    {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("lp-solver-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private int acquireTasks(int wanted)
+    {
+        while (true){
+            int available = availableTasks.get();
+            int acquired = Math.min(wanted, available);
+
+            if (acquired <= 0){
+                return 0;
+            }
+
+            if (availableTasks.compareAndSet(available, available - acquired)){
+                return acquired;
+            }
+        }
+    }
+
+    /**
+     * Performs the action for each item, in parallel if there are enough items for more than one task.
+     *
+     * @param minTaskSize the minimum number of items for each task.
+     * @throws InterruptedException if the solve is cancelled. This is checked before each item, and the remaining
+     *                              items are skipped.
+     */
+    public <T> void forEach(List<? extends T> items, int minTaskSize, Consumer<? super T> action)
+            throws InterruptedException
+    {
+        mapRanges(items.size(), minTaskSize, (from, to) -> {
+            for (int i = from; i < to; i++){
+                throwIfCancelled();
+                action.accept(items.get(i));
+            }
+            return null;
+        });
+    }
+
+    public CancellationToken getCancellationToken()
+    {
+        return cancellationToken;
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    public SolverStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * Splits {@code 0} to {@code size} into consecutive ranges, applies the function to each range, in parallel if
+     * there is more than one, and returns the results in the order of the ranges. If the function throws for any range,
+     * the exception thrown for the first of those is rethrown, after all ranges are done.
+     *
+     * @param minTaskSize the minimum size of each range.
+     */
+    @SuppressWarnings("unchecked")
+    public <R, X extends Exception> List<R> mapRanges(int size, int minTaskSize, RangeFunction<? extends R, ? extends X> function)
+            throws X
+    {
+        int extraTasks = 0;
+        int wantedTasks = Math.min(parallelism, size / Math.max(1, minTaskSize));
+
+        if (wantedTasks > 1){
+            extraTasks = acquireTasks(wantedTasks - 1);
+        }
+
+        if (extraTasks == 0){
+            List<R> retv = new ArrayList<>(1);
+            retv.add(function.apply(0, size));
+            return retv;
+        }
+
+        try {
+            int taskCount = extraTasks + 1;
+            List<RangeTask<R>> tasks = new ArrayList<>(taskCount);
+
+            for (int i = 0; i < taskCount; i++){
+                tasks.add(new RangeTask<>(function, (int)((long)size * i / taskCount), (int)((long)size * (i + 1) / taskCount)));
+            }
+
+            boolean inPool = ForkJoinTask.getPool() == POOL;
+
+            for (RangeTask<R> task : tasks.subList(1, taskCount)){
+                if (inPool){
+                    task.fork();
+                }else{
+                    POOL.execute(task);
+                }
+            }
+
+            tasks.get(0).invoke();
+
+            List<R> retv = new ArrayList<>(taskCount);
+            Throwable failure = null;
+
+            for (RangeTask<R> task : tasks){
+                task.join();
+                if (failure == null){
+                    failure = task.failure;
+                }
+                retv.add(task.result);
+            }
+
+            if (failure instanceof RuntimeException e){
+                throw e;
+            }else if (failure instanceof Error e){
+                throw e;
+            }else if (failure != null){
+                throw (X)failure;
+            }
+
+            return retv;
+        }finally{
+            availableTasks.addAndGet(extraTasks);
+        }
+    }
+
+    /*
+     * For solver sessions, which keep their simplexes, and with them the executor, from one solve to the next.
+     */
+    void setCancellationToken(CancellationToken cancellationToken)
+    {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /*
+     * For solver sessions, which keep their executor from one solve to the next, but report statistics for each solve
+     * on its own.
+     */
+    void setStatistics(SolverStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    public void throwIfCancelled()
+            throws InterruptedException
+    {
+        cancellationToken.throwIfCancelled();
+    }
+
+    @FunctionalInterface
+    interface RangeFunction<R, X extends Exception>
+    {
+        R apply(int from, int to)
+                throws X;
+    }
+
+    private static class RangeTask<R>
+            extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final RangeFunction<? extends R, ?> function;
+        private final int from;
+        private final int to;
+        private R result;
+        private Throwable failure;
+
+        public RangeTask(RangeFunction<? extends R, ?> function, int from, int to)
+        {
+            this.function = function;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            try {
+                result = function.apply(from, to);
+            }catch (Throwable t){
+                failure = t;
+            }
+        }
+    }
+}
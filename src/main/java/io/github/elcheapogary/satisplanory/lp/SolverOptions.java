@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+public class SolverOptions
+{
+    private static final SolverOptions DEFAULT = new Builder().build();
+    private final Algorithm algorithm;
+    private final Branching branching;
+    private final int cutRounds;
+    private final int heuristicInterval;
+    private final Consumer<String> logger;
+    private final NodeSelection nodeSelection;
+    private final long maxNodes;
+    private final int maxOpenNodes;
+    private final Duration maxTime;
+    private final int parallelism;
+    private final Pricing pricing;
+    private final boolean presolveEnabled;
+
+    protected SolverOptions(Builder builder)
+    {
+        this.algorithm = Objects.requireNonNull(builder.algorithm);
+        this.branching = Objects.requireNonNull(builder.branching);
+        this.cutRounds = builder.cutRounds;
+        this.heuristicInterval = builder.heuristicInterval;
+        this.logger = builder.logger;
+        this.nodeSelection = Objects.requireNonNull(builder.nodeSelection);
+        this.maxNodes = builder.maxNodes;
+        this.maxOpenNodes = builder.maxOpenNodes;
+        this.maxTime = builder.maxTime;
+        this.parallelism = builder.parallelism;
+        this.pricing = Objects.requireNonNull(builder.pricing);
+        this.presolveEnabled = builder.presolveEnabled;
+    }
+
+    public static SolverOptions defaults()
+    {
+        return DEFAULT;
+    }
+
+    public Algorithm getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    /**
+     * How branch and bound chooses which of the branching constraints that a node does not satisfy it branches on.
+     */
+    public Branching getBranching()
+    {
+        return branching;
+    }
+
+    /**
+     * The maximum number of rounds of cuts added before branch and bound starts. Each round adds a Gomory mixed
+     * integer cut for every integer constraint with a fractional value in the relaxation, up to a limit, which cuts that
+     * value off without cutting off any integer solution, and solves the relaxation again. Rounds stop early when they
+     * no longer lower the bound. With {@code 0}, no cuts are added.
+     */
+    public int getCutRounds()
+    {
+        return cutRounds;
+    }
+
+    /**
+     * The number of branch and bound nodes that are expanded between runs of the primal heuristics, which round the
+     * relaxation of a node to a solution that satisfies the branching constraints, to find a solution to prune with
+     * before the search gets to one. The heuristics also run at the root, before the search starts. With {@code 0},
+     * they do not run at all.
+     */
+    public int getHeuristicInterval()
+    {
+        return heuristicInterval;
+    }
+
+    public Consumer<String> getLogger()
+    {
+        return logger;
+    }
+
+    /**
+     * The maximum number of branch and bound nodes that are expanded for each objective. If the limit is reached, the
+     * best solution found so far is used, and {@link OptimizationResult#getObjectiveBounds()} tells how much better
+     * the optimal solution could be. If no solution has been found yet, the search continues until it finds one.
+     */
+    public long getMaxNodes()
+    {
+        return maxNodes;
+    }
+
+    /**
+     * When there are more than this many open branch and bound nodes, nodes are selected depth first until there are
+     * fewer again, to limit memory use.
+     */
+    public int getMaxOpenNodes()
+    {
+        return maxOpenNodes;
+    }
+
+    /**
+     * The maximum time a solve spends in branch and bound, counted from the start of the solve, over all objectives.
+     * Like {@link #getMaxNodes()}, the best solution found so far is used when the time is up, so a solve may take
+     * longer if it has not found a solution yet. {@code null} means no limit. Models without branching constraints are
+     * always solved to optimality.
+     */
+    public Duration getMaxTime()
+    {
+        return maxTime;
+    }
+
+    public NodeSelection getNodeSelection()
+    {
+        return nodeSelection;
+    }
+
+    /**
+     * The maximum number of threads a solve uses at the same time. Solves run on a thread pool with one thread per
+     * processor, which is shared by all solves, so this keeps one solve from taking all of it when several run at
+     * once. With {@code 1}, a solve runs on the calling thread only. Branch and bound also expands this many nodes at
+     * a time, so the result of a model with branching constraints may depend on it when there is more than one
+     * optimal solution.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * How the simplex chooses the variable that enters the basis.
+     */
+    public Pricing getPricing()
+    {
+        return pricing;
+    }
+
+    /**
+     * Whether models without branching constraints are presolved, which removes constraints and variables that can be
+     * dealt with without the simplex.
+     */
+    public boolean isPresolveEnabled()
+    {
+        return presolveEnabled;
+    }
+
+    public Builder toBuilder()
+    {
+        return new Builder(this);
+    }
+
+    public enum Algorithm
+    {
+        /**
+         * Full tableau simplex. Every pivot updates every row of the tableau.
+         */
+        TABLEAU,
+        /**
+         * Revised simplex on a sparse constraint matrix with a factorized basis. Models with branching constraints
+         * (integer, binary or zero-if-less-than constraints) are always solved with {@link #TABLEAU}.
+         */
+        REVISED_SIMPLEX,
+        /**
+         * {@link #REVISED_SIMPLEX}, but each maximization first runs the simplex in floating point to find a basis
+         * that is probably optimal. That basis is then checked in exact arithmetic, and exact pivots continue from it
+         * if it turns out not to be feasible or optimal. Ties between optimal solutions are broken in exact arithmetic
+         * too, so the solution is the same as with the other algorithms.
+         */
+        HYBRID
+    }
+
+    public enum Branching
+    {
+        /**
+         * The first unsatisfied branching constraint, in the order they were added to the model.
+         */
+        IN_ORDER,
+        /**
+         * The unsatisfied branching constraint whose value is furthest from the nearest of its branches, such as the
+         * integer variable with a fractional part closest to a half.
+         */
+        MOST_FRACTIONAL,
+        /**
+         * The unsatisfied branching constraint whose branches are expected to lower the bound the most, estimated from
+         * how much branching on it lowered the bound before. Constraints that have not been branched on often enough
+         * for that to be reliable are tried with {@link #STRONG} branching first, a few at each node.
+         */
+        PSEUDO_COST,
+        /**
+         * Tries the branches of the most fractional unsatisfied branching constraints, up to a limit, and branches on
+         * the one whose branches lower the bound the most. This creates the smallest trees, but solves both branches
+         * of each constraint it tries at every node.
+         */
+        STRONG
+    }
+
+    public enum NodeSelection
+    {
+        /**
+         * Expand the open node with the highest bound first. This expands the fewest nodes, but keeps the most nodes
+         * open.
+         */
+        BEST_FIRST,
+        /**
+         * Expand the deepest open node first. This finds solutions quickly and keeps few nodes open.
+         */
+        DEPTH_FIRST,
+        /**
+         * {@link #DEPTH_FIRST} until a solution has been found, then {@link #BEST_FIRST}.
+         */
+        HYBRID
+    }
+
+    public enum Pricing
+    {
+        /**
+         * Chosen by the solver, from the algorithm and the size of the model.
+         */
+        AUTOMATIC,
+        /**
+         * The variable that gives the greatest objective increase in the current iteration. This needs a ratio test
+         * for every candidate, so it is only cheap for small models.
+         */
+        GREATEST_INCREASE,
+        /**
+         * The variable with the greatest reduced cost.
+         */
+        DANTZIG,
+        /**
+         * The variable with the greatest reduced cost relative to Devex reference weights, which estimate the length
+         * of each column in the current basis.
+         */
+        DEVEX,
+        /**
+         * The variable with the greatest reduced cost relative to the length of its column in the current basis. Column
+         * lengths are computed in floating point when first needed, and estimated from there like {@link #DEVEX}
+         * weights.
+         */
+        STEEPEST_EDGE,
+        /**
+         * {@link #DANTZIG} over one segment of the variables at a time, with the runners up of the last segment
+         * priced first in the next iteration. This does the least work per iteration on models with many variables.
+         */
+        PARTIAL
+    }
+
+    public static class Builder
+    {
+        private Algorithm algorithm = Algorithm.HYBRID;
+        private Branching branching = Branching.MOST_FRACTIONAL;
+        private int cutRounds = 4;
+        private int heuristicInterval = 100;
+        private Consumer<String> logger;
+        private NodeSelection nodeSelection = NodeSelection.HYBRID;
+        private long maxNodes = Long.MAX_VALUE;
+        private int maxOpenNodes = 10000;
+        private Duration maxTime = null;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private Pricing pricing = Pricing.AUTOMATIC;
+        private boolean presolveEnabled = true;
+
+        public Builder()
+        {
+        }
+
+        public Builder(SolverOptions options)
+        {
+            this.algorithm = options.algorithm;
+            this.branching = options.branching;
+            this.cutRounds = options.cutRounds;
+            this.heuristicInterval = options.heuristicInterval;
+            this.logger = options.logger;
+            this.nodeSelection = options.nodeSelection;
+            this.maxNodes = options.maxNodes;
+            this.maxOpenNodes = options.maxOpenNodes;
+            this.maxTime = options.maxTime;
+            this.parallelism = options.parallelism;
+            this.pricing = options.pricing;
+            this.presolveEnabled = options.presolveEnabled;
+        }
+
+        public SolverOptions build()
+        {
+            return new SolverOptions(this);
+        }
+
+        public Builder setAlgorithm(Algorithm algorithm)
+        {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        public Builder setBranching(Branching branching)
+        {
+            this.branching = branching;
+            return this;
+        }
+
+        public Builder setCutRounds(int cutRounds)
+        {
+            if (cutRounds < 0){
+                throw new IllegalArgumentException("cutRounds < 0");
+            }
+            this.cutRounds = cutRounds;
+            return this;
+        }
+
+        public Builder setHeuristicInterval(int heuristicInterval)
+        {
+            if (heuristicInterval < 0){
+                throw new IllegalArgumentException("heuristicInterval < 0");
+            }
+            this.heuristicInterval = heuristicInterval;
+            return this;
+        }
+
+        public Builder setLogger(Consumer<String> logger)
+        {
+            this.logger = logger;
+            return this;
+        }
+
+        public Builder setMaxNodes(long maxNodes)
+        {
+            this.maxNodes = maxNodes;
+            return this;
+        }
+
+        public Builder setMaxOpenNodes(int maxOpenNodes)
+        {
+            this.maxOpenNodes = maxOpenNodes;
+            return this;
+        }
+
+        public Builder setMaxTime(Duration maxTime)
+        {
+            this.maxTime = maxTime;
+            return this;
+        }
+
+        public Builder setNodeSelection(NodeSelection nodeSelection)
+        {
+            this.nodeSelection = nodeSelection;
+            return this;
+        }
+
+        public Builder setParallelism(int parallelism)
+        {
+            if (parallelism < 1){
+                throw new IllegalArgumentException("parallelism < 1");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder setPresolveEnabled(boolean presolveEnabled)
+        {
+            this.presolveEnabled = presolveEnabled;
+            return this;
+        }
+
+        public Builder setPricing(Pricing pricing)
+        {
+            this.pricing = pricing;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a solved model around, so that it can be solved again after small changes to right hand sides, variable
+ * bounds or objective functions without starting from scratch.
+ * <p>
+ * Objective functions are maximized one after the other, like {@link Model#maximize(List, SolverOptions)} does, but
+ * the session keeps a separate simplex for each of them: the one for the first objective function only has the
+ * constraints of the model, and each of the next ones also has equality constraints that keep the objective functions
+ * before it at their optimal values. After right hand side or bound changes, or when the optimal value of an earlier
+ * objective function changes, the dual simplex makes the optimal basis of each of them feasible again, and the primal
+ * simplex carries on from there if the objective function itself changed.
+ * <p>
+ * Models with branching constraints, and the {@link SolverOptions.Algorithm#TABLEAU} algorithm, are not supported
+ * incrementally. Sessions for those just solve the changed model from scratch every time. Incremental sessions do
+ * not presolve the model, because presolving would bake in the right hand sides and bounds that the session is meant
+ * to change.
+ * <p>
+ * The session works on a snapshot of the model taken when it was created: later changes to the model itself do not
+ * affect it. Sessions are not thread safe.
+ */
+public class SolverSession
+{
+    /*
+     * The dual simplex only pays off for small changes, which need a few pivots at most. Exact pivots on these bases
+     * are expensive, so after this many it is cheaper to start the level over, from the level before it, or from
+     * scratch with the floating point warm start for the first one.
+     */
+    private static final int MAX_DUAL_PIVOTS = 3;
+    private final List<DecisionVariable> decisionVariables;
+    private final List<Constraint> constraints;
+    private final Collection<BranchingConstraint> branchingConstraints;
+    private final Map<Constraint, Integer> constraintRows = new HashMap<>();
+    private final SolverOptions options;
+    private final SolverOptions.Pricing pricing;
+    private final SolverExecutor executor;
+    /*
+     * The simplex for each objective function, followed by the one for the objective function that minimizes the
+     * remaining variables. Empty until the first solve, and after a solve failed in a way that leaves the bases
+     * unusable.
+     */
+    private final List<RevisedSimplex> levels = new ArrayList<>();
+    /*
+     * The objective function the basis of each level is optimal for.
+     */
+    private final List<Expression> levelObjectiveFunctions = new ArrayList<>();
+    private List<Expression> objectiveFunctions;
+
+    SolverSession(Collection<? extends DecisionVariable> decisionVariables, Collection<? extends Constraint> constraints, Collection<? extends BranchingConstraint> branchingConstraints, List<Expression> objectiveFunctions, SolverOptions options, SolverOptions.Pricing pricing)
+    {
+        this.decisionVariables = new ArrayList<>(decisionVariables);
+        this.constraints = new ArrayList<>(constraints);
+        this.branchingConstraints = List.copyOf(branchingConstraints);
+        this.objectiveFunctions = List.copyOf(objectiveFunctions);
+        this.options = options;
+        this.pricing = pricing;
+        this.executor = new SolverExecutor(options.getParallelism(), CancellationToken.forCurrentThread());
+
+        int row = 0;
+        for (Constraint constraint : constraints){
+            constraintRows.put(constraint, row);
+            row++;
+        }
+    }
+
+    private static DecisionVariable getDecisionVariable(Expression variable)
+    {
+        if (variable.getTermCount() != 1 || !variable.getCoefficient(0).equals(BigFraction.one()) || variable.getConstantValue().signum() != 0){
+            throw new IllegalArgumentException("Not a variable: " + variable);
+        }
+
+        return variable.getVariable(0);
+    }
+
+    private RevisedSimplex createLevel(int level, List<BigFraction> objectiveFunctionValues)
+            throws InfeasibleSolutionException, InterruptedException
+    {
+        RevisedSimplex simplex;
+
+        if (level == 0){
+            simplex = new RevisedSimplex(options.getLogger(), decisionVariables, options.getAlgorithm() == SolverOptions.Algorithm.HYBRID, pricing, executor);
+
+            for (Constraint c : constraints){
+                simplex.addConstraint(c);
+            }
+        }else{
+            simplex = new RevisedSimplex(levels.get(level - 1));
+            simplex.addConstraint(objectiveFunctions.get(level - 1).eq(objectiveFunctionValues.get(level - 1)));
+        }
+
+        simplex.solveFeasibility();
+
+        return simplex;
+    }
+
+    private boolean isIncremental()
+    {
+        return branchingConstraints.isEmpty() && options.getAlgorithm() != SolverOptions.Algorithm.TABLEAU;
+    }
+
+    public OptimizationResult maximize()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        return maximize(CancellationToken.forCurrentThread());
+    }
+
+    /**
+     * @throws InterruptedException if the token is cancelled before the solve is done. The session can still be used
+     *                              afterwards, but the next solve starts from scratch.
+     */
+    public OptimizationResult maximize(CancellationToken cancellationToken)
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        if (!isIncremental()){
+            try {
+                return new Model(decisionVariables, constraints, branchingConstraints).maximize(objectiveFunctions, options, cancellationToken);
+            }catch (InfeasibleSolutionException e){
+                throw new InfeasibleSolutionException(toAddedConstraints(e.getCertificate()), e);
+            }
+        }
+
+        executor.setCancellationToken(cancellationToken);
+        executor.setStatistics(new SolverStatistics());
+
+        try {
+            return maximizeIncrementally();
+        }catch (UnboundedSolutionException | InterruptedException | RuntimeException e){
+            levels.clear();
+            levelObjectiveFunctions.clear();
+            throw e;
+        }catch (InfeasibleSolutionException e){
+            /*
+             * The dual simplex does not leave a certificate behind, and phase I of a level after the first one has the
+             * constraints for the optimal values of the objective functions before it.
+             */
+            FarkasCertificate certificate = new Model(decisionVariables, constraints, branchingConstraints).findFarkasCertificate(options, executor);
+            throw new InfeasibleSolutionException(toAddedConstraints(certificate), e);
+        }
+    }
+
+    private OptimizationResult maximizeIncrementally()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        long startTime = System.nanoTime();
+        SolverStatistics statistics = executor.getStatistics();
+        List<Expression> levelObjectives = new ArrayList<>(objectiveFunctions);
+
+        if (!objectiveFunctions.isEmpty()){
+            levelObjectives.add(Model.createMinimizeRemainingVariablesObjective(decisionVariables, objectiveFunctions.get(objectiveFunctions.size() - 1)));
+        }
+
+        List<BigFraction> objectiveFunctionValues = new ArrayList<>(objectiveFunctions.size());
+        RevisedSimplex simplex = null;
+
+        for (int level = 0; level == 0 || level < levelObjectives.size(); level++){
+            long phaseStartTime = System.nanoTime();
+
+            if (level < levels.size() && levels.get(level).solveDual(levelObjectiveFunctions.get(level), MAX_DUAL_PIVOTS)){
+                simplex = levels.get(level);
+            }else{
+                while (levels.size() > level){
+                    levels.remove(levels.size() - 1);
+                    levelObjectiveFunctions.remove(levelObjectiveFunctions.size() - 1);
+                }
+                simplex = createLevel(level, objectiveFunctionValues);
+                levels.add(simplex);
+                levelObjectiveFunctions.add(Expression.zero());
+            }
+
+            statistics.addTime(SolverStatistics.Phase.PHASE_ONE, phaseStartTime);
+
+            if (level < levelObjectives.size()){
+                Expression objectiveFunction = levelObjectives.get(level);
+                phaseStartTime = System.nanoTime();
+                BigFraction objectiveValue = simplex.maximize(objectiveFunction);
+                statistics.addTime(SolverStatistics.Phase.PHASE_TWO, phaseStartTime);
+                levelObjectiveFunctions.set(level, objectiveFunction);
+
+                if (level < objectiveFunctions.size()){
+                    objectiveFunctionValues.add(objectiveValue);
+                    statistics.countObjectiveSolved();
+
+                    /*
+                     * The levels after this one keep the objective function at its optimal value with the equality
+                     * constraint that was added to the model right after the constraints for the levels before it.
+                     */
+                    for (int laterLevel = level + 1; laterLevel < levels.size(); laterLevel++){
+                        levels.get(laterLevel).setRightHandSide(constraints.size() + level, objectiveValue.subtract(objectiveFunction.getConstantValue()));
+                    }
+                }
+            }
+        }
+
+        /*
+         * Breaking ties moves the simplex away from the optimal basis of the last level, so we do it on a copy, which
+         * leaves the level as it is for warm starting the next solve.
+         */
+        Expression lastObjectiveFunction = levelObjectiveFunctions.get(levelObjectiveFunctions.size() - 1);
+
+        if (simplex.hasAlternativeOptima(lastObjectiveFunction)){
+            long phaseStartTime = System.nanoTime();
+            simplex = new RevisedSimplex(simplex);
+            simplex.breakTies(lastObjectiveFunction, Model.createTieBreakingObjectives(decisionVariables));
+            statistics.addTime(SolverStatistics.Phase.PHASE_TWO, phaseStartTime);
+        }
+
+        BigFraction[] decisionVariableValues = new BigFraction[decisionVariables.size()];
+
+        for (DecisionVariable dv : decisionVariables){
+            decisionVariableValues[dv.id] = simplex.getValue(dv);
+        }
+
+        statistics.setTotalTime(startTime);
+
+        return new OptimizationResult(objectiveFunctionValues, decisionVariableValues, statistics);
+    }
+
+    /*
+     * Constraints are replaced when their right hand side changes, but callers know them by the constraints they added
+     * to the model.
+     */
+    private FarkasCertificate toAddedConstraints(FarkasCertificate certificate)
+    {
+        if (certificate == null){
+            return null;
+        }
+
+        Map<Constraint, BigFraction> multipliers = new HashMap<>();
+
+        for (var entry : constraintRows.entrySet()){
+            BigFraction multiplier = certificate.getMultiplier(constraints.get(entry.getValue()));
+            if (multiplier.signum() != 0){
+                multipliers.put(entry.getKey(), multiplier);
+            }
+        }
+
+        return new FarkasCertificate(multipliers);
+    }
+
+    /**
+     * Changes the bounds of a variable.
+     *
+     * @param variable   a variable, as returned by {@link Model#addVariable(String, BigFraction, BigFraction)}.
+     * @param lowerBound the lower bound, or {@code null} if the variable has no lower bound.
+     * @param upperBound the upper bound, or {@code null} if the variable has no upper bound.
+     */
+    public void setBounds(Expression variable, BigFraction lowerBound, BigFraction upperBound)
+    {
+        if (lowerBound != null && upperBound != null && lowerBound.compareTo(upperBound) > 0){
+            throw new IllegalArgumentException("lowerBound > upperBound");
+        }
+
+        DecisionVariable dv = decisionVariables.get(getDecisionVariable(variable).id);
+        decisionVariables.set(dv.id, new DecisionVariable(dv.id, dv.getName(), lowerBound, upperBound));
+
+        for (RevisedSimplex simplex : levels){
+            simplex.setBounds(dv, lowerBound, upperBound);
+        }
+    }
+
+    public void setObjectiveFunctions(List<Expression> objectiveFunctions)
+    {
+        this.objectiveFunctions = List.copyOf(objectiveFunctions);
+
+        /*
+         * The equality constraints of the later levels are for the old objective functions.
+         */
+        while (levels.size() > 1){
+            levels.remove(levels.size() - 1);
+            levelObjectiveFunctions.remove(levelObjectiveFunctions.size() - 1);
+        }
+    }
+
+    /**
+     * Changes the constant side of a constraint, so that it becomes the variable terms of its expression compared to
+     * the specified value. For example, {@code x.lte(y.add(3))} is {@code x - y <= 3}, and setting its right hand side
+     * to 5 makes it {@code x - y <= 5}.
+     *
+     * @param constraint a constraint that was added to the model before the session was created.
+     */
+    public void setRightHandSide(Constraint constraint, BigFraction value)
+    {
+        Integer row = constraintRows.get(constraint);
+
+        if (row == null){
+            throw new IllegalArgumentException("Constraint is not part of this session: " + constraint);
+        }
+
+        Constraint current = constraints.get(row);
+        Expression expression = current.getExpression();
+        constraints.set(row, new Constraint(expression.subtract(expression.getConstantValue()).subtract(value), current.getComparison()));
+
+        for (RevisedSimplex simplex : levels){
+            simplex.setRightHandSide(row, value);
+        }
+    }
+}
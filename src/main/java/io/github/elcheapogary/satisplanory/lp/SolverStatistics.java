@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a solve did, for finding out why it took as long as it did.
+ * <p>
+ * Pivots are counted by the threads of the solver's pool as they make them, so the counters are updated without
+ * locking. Times are wall clock times of the steps of the solve on the thread that started it, so the time of
+ * branch and bound includes the pivots of its nodes, however many threads made them.
+ */
+public class SolverStatistics
+{
+    private final LongAdder phaseOnePivots = new LongAdder();
+    private final LongAdder phaseTwoPivots = new LongAdder();
+    private final LongAdder degeneratePivots = new LongAdder();
+    private final LongAdder dualPivots = new LongAdder();
+    private final LongAdder floatingPointPivots = new LongAdder();
+    private final LongAdder cuts = new LongAdder();
+    private final LongAccumulator maxBitLength = new LongAccumulator(Math::max, 0);
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long objectivesSolved = 0;
+    private long nodesCreated = 0;
+    private long nodesExpanded = 0;
+    private long nodesPruned = 0;
+    private long nodesInfeasible = 0;
+    private long heuristicSolutions = 0;
+    private long totalNanos = 0;
+
+    SolverStatistics()
+    {
+    }
+
+    void addFloatingPointPivots(long count)
+    {
+        floatingPointPivots.add(count);
+    }
+
+    void addNodesCreated(long count)
+    {
+        nodesCreated += count;
+    }
+
+    void addNodesExpanded(long count)
+    {
+        nodesExpanded += count;
+    }
+
+    void addNodesInfeasible(long count)
+    {
+        nodesInfeasible += count;
+    }
+
+    void addNodesPruned(long count)
+    {
+        nodesPruned += count;
+    }
+
+    /**
+     * Adds the time from {@code startTime}, a {@link System#nanoTime()}, until now to the phase.
+     */
+    void addTime(Phase phase, long startTime)
+    {
+        phaseNanos[phase.ordinal()] += System.nanoTime() - startTime;
+    }
+
+    void countCut()
+    {
+        cuts.increment();
+    }
+
+    void countDegeneratePivot()
+    {
+        degeneratePivots.increment();
+    }
+
+    void countDualPivot()
+    {
+        dualPivots.increment();
+    }
+
+    void countHeuristicSolution()
+    {
+        heuristicSolutions++;
+    }
+
+    void countObjectiveSolved()
+    {
+        objectivesSolved++;
+    }
+
+    void countPivot(boolean phaseOne)
+    {
+        if (phaseOne){
+            phaseOnePivots.increment();
+        }else{
+            phaseTwoPivots.increment();
+        }
+    }
+
+    /**
+     * The time spent in branch and bound, over all objectives.
+     */
+    public Duration getBranchAndBoundTime()
+    {
+        return getTime(Phase.BRANCH_AND_BOUND);
+    }
+
+    /**
+     * The number of cuts added to the root node of branch and bound, see {@link SolverOptions#getCutRounds()}.
+     */
+    public long getCuts()
+    {
+        return cuts.sum();
+    }
+
+    /**
+     * The number of phase I and phase II pivots that did not change the objective value, because the variable that
+     * entered the basis could not move. These are included in {@link #getPhaseOnePivots()} and
+     * {@link #getPhaseTwoPivots()}.
+     */
+    public long getDegeneratePivots()
+    {
+        return degeneratePivots.sum();
+    }
+
+    /**
+     * The number of pivots made by the dual simplex, which restores feasibility after a constraint is added or a right
+     * hand side changes, in branch and bound nodes and in {@link SolverSession}s.
+     */
+    public long getDualPivots()
+    {
+        return dualPivots.sum();
+    }
+
+    /**
+     * The number of pivots made in floating point to find a starting basis, with
+     * {@link SolverOptions.Algorithm#HYBRID}.
+     */
+    public long getFloatingPointPivots()
+    {
+        return floatingPointPivots.sum();
+    }
+
+    /**
+     * The number of times a primal heuristic found a better solution than branch and bound had found so far, see
+     * {@link SolverOptions#getHeuristicInterval()}.
+     */
+    public long getHeuristicSolutions()
+    {
+        return heuristicSolutions;
+    }
+
+    /**
+     * The largest number of bits in a numerator or denominator of the values of basic variables, and of the common
+     * denominators of tableau rows. Exact arithmetic gets slower as numbers get longer, so a solve with few pivots that
+     * still takes long usually has a large value here.
+     */
+    public int getMaxBitLength()
+    {
+        return (int)maxBitLength.get();
+    }
+
+    /**
+     * The number of branch and bound nodes created, including the root node of each objective, and nodes that turned
+     * out to be infeasible.
+     */
+    public long getNodesCreated()
+    {
+        return nodesCreated;
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    /**
+     * The number of branch and bound nodes that turned out to be infeasible when their branch constraint was added.
+     */
+    public long getNodesInfeasible()
+    {
+        return nodesInfeasible;
+    }
+
+    /**
+     * The number of branch and bound nodes dropped without being expanded, because their bound was no better than the
+     * best solution found so far.
+     */
+    public long getNodesPruned()
+    {
+        return nodesPruned;
+    }
+
+    /**
+     * The number of objectives that were maximized, not counting the one that minimizes the variables the last
+     * objective does not involve.
+     */
+    public long getObjectivesSolved()
+    {
+        return objectivesSolved;
+    }
+
+    /**
+     * The number of pivots made to find a feasible solution, by minimizing the artificial variables.
+     */
+    public long getPhaseOnePivots()
+    {
+        return phaseOnePivots.sum();
+    }
+
+    /**
+     * The time spent finding feasible solutions, at the start of the solve and, in models with branching constraints,
+     * after each objective is constrained to its optimal value. In a {@link SolverSession}, this includes restoring
+     * feasibility with the dual simplex.
+     */
+    public Duration getPhaseOneTime()
+    {
+        return getTime(Phase.PHASE_ONE);
+    }
+
+    /**
+     * The number of pivots made to maximize objectives, including the pivots that reoptimize branch and bound nodes.
+     */
+    public long getPhaseTwoPivots()
+    {
+        return phaseTwoPivots.sum();
+    }
+
+    /**
+     * The time spent maximizing objectives outside of branch and bound.
+     */
+    public Duration getPhaseTwoTime()
+    {
+        return getTime(Phase.PHASE_TWO);
+    }
+
+    public Duration getPresolveTime()
+    {
+        return getTime(Phase.PRESOLVE);
+    }
+
+    private Duration getTime(Phase phase)
+    {
+        return Duration.ofNanos(phaseNanos[phase.ordinal()]);
+    }
+
+    public Duration getTotalTime()
+    {
+        return Duration.ofNanos(totalNanos);
+    }
+
+    void recordBitLength(int bitLength)
+    {
+        if (bitLength > maxBitLength.get()){
+            maxBitLength.accumulate(bitLength);
+        }
+    }
+
+    void setTotalTime(long startTime)
+    {
+        totalNanos = System.nanoTime() - startTime;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "total " + getTotalTime().toMillis() + " ms"
+                + ", presolve " + getPresolveTime().toMillis() + " ms"
+                + ", phase I " + getPhaseOnePivots() + " pivots in " + getPhaseOneTime().toMillis() + " ms"
+                + ", phase II " + getPhaseTwoPivots() + " pivots in " + getPhaseTwoTime().toMillis() + " ms"
+                + " (" + getDegeneratePivots() + " degenerate)"
+                + ", " + getDualPivots() + " dual pivots"
+                + ", " + getFloatingPointPivots() + " floating point pivots"
+                + ", " + getObjectivesSolved() + " objectives"
+                + ", branch and bound " + getBranchAndBoundTime().toMillis() + " ms"
+                + " (" + getCuts() + " cuts"
+                + ", " + getNodesCreated() + " nodes created, " + getNodesExpanded() + " expanded, " + getNodesPruned() + " pruned, " + getNodesInfeasible() + " infeasible"
+                + ", " + getHeuristicSolutions() + " heuristic solutions)"
+                + ", max bit length " + getMaxBitLength();
+    }
+
+    enum Phase
+    {
+        PRESOLVE,
+        PHASE_ONE,
+        PHASE_TWO,
+        BRANCH_AND_BOUND
+    }
+}
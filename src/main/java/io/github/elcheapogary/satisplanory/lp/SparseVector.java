@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.lp;
+
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.util.Arrays;
+
+/**
+ * A growable list of non-zero entries of a vector, in insertion order.
+ */
+class SparseVector
+{
+    private int[] indices;
+    private BigFraction[] values;
+    private int size;
+
+    SparseVector()
+    {
+        this(4);
+    }
+
+    SparseVector(int capacity)
+    {
+        capacity = Math.max(capacity, 1);
+        this.indices = new int[capacity];
+        this.values = new BigFraction[capacity];
+    }
+
+    SparseVector(SparseVector other)
+    {
+        this.indices = other.indices.clone();
+        this.values = other.values.clone();
+        this.size = other.size;
+    }
+
+    void add(int index, BigFraction value)
+    {
+        if (size == indices.length){
+            indices = Arrays.copyOf(indices, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        indices[size] = index;
+        values[size] = value;
+        size++;
+    }
+
+    BigFraction dot(BigFraction[] dense)
+    {
+        BigFraction retv = BigFraction.zero();
+        for (int i = 0; i < size; i++){
+            BigFraction d = dense[indices[i]];
+            if (d.signum() != 0){
+                retv = retv.add(d.multiply(values[i]));
+            }
+        }
+        return retv;
+    }
+
+    int index(int i)
+    {
+        return indices[i];
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    BigFraction[] toDense(int length)
+    {
+        BigFraction[] retv = new BigFraction[length];
+        Arrays.fill(retv, BigFraction.zero());
+        for (int i = 0; i < size; i++){
+            retv[indices[i]] = values[i];
+        }
+        return retv;
+    }
+
+    BigFraction value(int i)
+    {
+        return values[i];
+    }
+}
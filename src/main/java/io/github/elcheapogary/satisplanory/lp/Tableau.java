@@ -11,12 +11,15 @@
 package io.github.elcheapogary.satisplanory.lp;
 
 import io.github.elcheapogary.satisplanory.util.BigFraction;
-import io.github.elcheapogary.satisplanory.util.function.throwing.tryreturn.Try;
+import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -25,25 +28,101 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
+/**
+ * Full tableau simplex in exact arithmetic.
+ * <p>
+ * Every column of the tableau is non-negative. A decision variable with other bounds is replaced by a column that
+ * measures its distance from one of its bounds, or by the difference of two columns if it is free, and an upper bound
+ * that remains is added as a row. This keeps the textbook tableau, which is what branch and bound works on, simple.
+ */
 class Tableau
 {
+    /*
+     * The minimum number of rows for each task when pivoting, and when doing a ratio test, in which each row is much
+     * less work.
+     */
+    private static final int MIN_PIVOT_TASK_ROWS = 16;
+    private static final int MIN_RATIO_TEST_TASK_ROWS = 512;
+    /*
+     * The minimum number of expression terms for each task in getValue(Expression).
+     */
+    private static final int MIN_VALUE_TASK_TERMS = 256;
+    /*
+     * Cuts with longer coefficients than this are not added. Their rows would make every later pivot more expensive
+     * than the nodes they could save.
+     */
+    private static final int MAX_CUT_BIT_LENGTH = 128;
+    /*
+     * After this many dual simplex pivots in a row that do not change the objective value, the dual simplex picks the
+     * leaving row by lowest basic variable id instead of by most negative value, so that it can not cycle.
+     */
+    static final int MAX_DEGENERATE_DUAL_PIVOTS = 50;
+    /*
+     * After this many simplex pivots in a row that do not change the objective value, the ratio test breaks ties as if
+     * the constants had been perturbed, see maximize(Row, boolean).
+     */
+    static final int PERTURBATION_DEGENERATE_PIVOTS = 10;
+    private static final Comparator<Pair<Row, BigFraction>> RATIO_COMPARATOR = Comparator.<Pair<Row, BigFraction>, BigFraction>comparing(o -> o.second)
+            .thenComparingInt(o -> o.first.basicVariable.id);
     private final Consumer<String> logger;
+    private final SolverOptions.Pricing pricing;
+    private final SolverExecutor executor;
+    /*
+     * Indexed by decision variable id. Shared between copies, because it never changes.
+     */
+    private final DecisionVariableColumns[] decisionVariableColumns;
     private final Map<Integer, Row> rows = new TreeMap<>();
     private final Map<Integer, TableauVariable> variables = new TreeMap<>();
     private final Collection<TableauVariable> artificialVariables = new TreeSet<>(Variable.COMPARATOR);
     private int maxVariableId;
     private int maxRowId;
 
-    public Tableau(Consumer<String> logger, Collection<? extends DecisionVariable> decisionVariables)
+    /**
+     * @param pricing the pricing to use, which must not be {@link SolverOptions.Pricing#AUTOMATIC}.
+     */
+    public Tableau(Consumer<String> logger, Collection<? extends DecisionVariable> decisionVariables, SolverOptions.Pricing pricing, SolverExecutor executor)
     {
         this.logger = logger;
+        this.pricing = pricing;
+        this.executor = executor;
+        this.decisionVariableColumns = new DecisionVariableColumns[decisionVariables.size()];
         for (DecisionVariable dv : decisionVariables){
             TableauVariable tv = new TableauVariable(dv.id, "x" + dv.id);
             this.variables.put(tv.id, tv);
         }
         maxVariableId = decisionVariables.size();
+
+        for (DecisionVariable dv : decisionVariables){
+            TableauVariable column = variables.get(dv.id);
+            BigFraction lowerBound = dv.getLowerBound();
+            BigFraction upperBound = dv.getUpperBound();
+
+            if (lowerBound != null){
+                decisionVariableColumns[dv.id] = new DecisionVariableColumns(dv.id, lowerBound, false, -1);
+                if (upperBound == null){
+                    continue;
+                }
+                BigFraction range = upperBound.subtract(lowerBound);
+                if (range.signum() == 0){
+                    column.knownZero = true;
+                }else{
+                    /*
+                     * column <= range. There are no basic variables yet, so the slack is basic right away.
+                     */
+                    Row row = addRow();
+                    row.setConstant(range);
+                    row.set(column, BigFraction.one());
+                    TableauVariable slackVariable = addSlackVariable();
+                    row.set(slackVariable, BigFraction.one());
+                    setBasicVariable(row, slackVariable);
+                }
+            }else if (upperBound != null){
+                decisionVariableColumns[dv.id] = new DecisionVariableColumns(dv.id, upperBound, true, -1);
+            }else{
+                decisionVariableColumns[dv.id] = new DecisionVariableColumns(dv.id, BigFraction.zero(), false, addVariable("x-").id);
+            }
+        }
     }
 
     public Tableau(Tableau copy)
@@ -51,6 +130,9 @@ class Tableau
         this.maxVariableId = copy.maxVariableId;
         this.maxRowId = copy.maxRowId;
         this.logger = copy.logger;
+        this.pricing = copy.pricing;
+        this.executor = copy.executor;
+        this.decisionVariableColumns = copy.decisionVariableColumns;
 
         Map<TableauVariable, TableauVariable> variableCopyMap = new TreeMap<>(Variable.COMPARATOR);
         for (TableauVariable v : copy.variables.values()){
@@ -66,14 +148,17 @@ class Tableau
         for (Row r : copy.rows.values()){
             Row c = new Row(r.id);
             rows.put(c.id, c);
-            c.constant = r.constant;
+            c.constantNumerator = r.constantNumerator;
+            c.denominator = r.denominator;
+            c.reducedBitLength = r.reducedBitLength;
             if (r.basicVariable != null){
                 c.basicVariable = variableCopyMap.get(r.basicVariable);
                 c.basicVariable.basicRow = c;
             }
-            for (var entry : r.getCoefficients()){
+            for (var entry : r.numerators.entrySet()){
                 TableauVariable v = variableCopyMap.get(entry.getKey());
-                c.set(v, entry.getValue());
+                c.numerators.put(v, entry.getValue());
+                v.rows.add(c);
             }
         }
     }
@@ -89,15 +174,7 @@ class Tableau
     {
         Row row = addRow();
 
-        row.constant = constraint.getExpression().getConstantValue().negate();
-
-        for (var entry : constraint.getExpression().getCoefficients().entrySet()){
-            TableauVariable v = variables.get(entry.getKey().id);
-            if (!v.knownZero){
-                BigFraction value = entry.getValue();
-                row.set(v, value);
-            }
-        }
+        row.setConstant(setCoefficients(row, constraint.getExpression(), BigFraction.one()).negate());
 
         row.subtractBasicVariableRows();
 
@@ -111,14 +188,14 @@ class Tableau
             row.set(basicVariable, BigFraction.negativeOne());
         }
 
-        if (row.constant.signum() < 0){
+        if (row.getConstantSignum() < 0){
             row.negate();
         }
 
-        if (row.constant.signum() == 0 && row.getCoefficients().isEmpty()){
+        if (row.isEmpty()){
             removeRow(row);
         }else{
-            if (basicVariable == null || row.getCoefficient(basicVariable).signum() < 1){
+            if (basicVariable == null || row.getCoefficientSignum(basicVariable) < 1){
                 basicVariable = addArtificialVariable();
                 row.set(basicVariable, BigFraction.one());
             }
@@ -126,6 +203,138 @@ class Tableau
         }
     }
 
+    /**
+     * Adds a constraint to a tableau that has been maximized for the specified objective, and re-optimizes with the
+     * dual simplex.
+     * <p>
+     * The new row gets a slack variable as its basic variable, even if that makes the slack variable negative. The
+     * objective row is unaffected by the new row, so the tableau stays dual feasible, and the dual simplex can restore
+     * primal feasibility without going through phase I again. Equality constraints are added as a pair of
+     * inequalities.
+     *
+     * @return the new value of the objective.
+     */
+    public BigFraction addConstraintAndReoptimize(Constraint constraint, Objective objective)
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        return addConstraintsAndReoptimize(List.of(constraint), objective);
+    }
+
+    /**
+     * Like {@link #addConstraintAndReoptimize(Constraint, Objective)}, but adds all the constraints before
+     * re-optimizing once.
+     *
+     * @return the new value of the objective.
+     */
+    public BigFraction addConstraintsAndReoptimize(Collection<? extends Constraint> constraints, Objective objective)
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        assert objective != null;
+        assert artificialVariables.isEmpty();
+
+        for (Constraint constraint : constraints){
+            if (constraint.getComparison() == Constraint.Comparison.EQ){
+                addConstraintWithBasicSlack(constraint.getExpression(), Constraint.Comparison.LTE);
+                addConstraintWithBasicSlack(constraint.getExpression(), Constraint.Comparison.GTE);
+            }else{
+                addConstraintWithBasicSlack(constraint.getExpression(), constraint.getComparison());
+            }
+        }
+
+        return reoptimize(objective);
+    }
+
+    private void addConstraintWithBasicSlack(Expression expression, Constraint.Comparison comparison)
+    {
+        Row row = addRow();
+
+        row.setConstant(setCoefficients(row, expression, BigFraction.one()).negate());
+
+        row.subtractBasicVariableRows();
+
+        if (comparison == Constraint.Comparison.GTE){
+            row.negate();
+        }
+
+        TableauVariable slackVariable = addSlackVariable();
+        row.set(slackVariable, BigFraction.one());
+        setBasicVariable(row, slackVariable);
+    }
+
+    /**
+     * Adds a Gomory mixed integer cut for an expression that must be an integer in every solution, if its value in the
+     * current solution is not. The cut is not satisfied by the current solution, but by every solution in which the
+     * expression is an integer. Call {@link #reoptimize(Objective)} to move to a solution that satisfies it.
+     * <p>
+     * In terms of the non-basic columns, the expression is {@code e0 + sum(a_j * x_j)}, with {@code e0} the current
+     * value. Either the expression is at most {@code floor(e0)}, which takes a sum of {@code -a_j * x_j} of at least
+     * {@code f0 = e0 - floor(e0)} over the negative {@code a_j}, or it is at least {@code floor(e0) + 1}, which takes a
+     * sum of {@code a_j * x_j} of at least {@code 1 - f0} over the positive ones. Every column is non-negative, so the
+     * cut {@code sum(a_j / (1 - f0) * x_j) over positive a_j + sum(-a_j / f0 * x_j) over negative a_j >= 1} holds
+     * either way. It does not need any of the columns to be integers, which they usually are not, since integrality
+     * is a property of expressions here.
+     *
+     * @return whether a cut was added. No cut is added if the value is an integer, or if the coefficients of the cut
+     * would get too long.
+     */
+    public boolean addGomoryCut(Expression integerExpression)
+    {
+        Row row = addRow();
+        row.setConstant(setCoefficients(row, integerExpression, BigFraction.one()).negate());
+        row.subtractBasicVariableRows();
+
+        BigFraction value = row.getConstant().negate();
+        BigFraction f0 = value.subtract(value.toBigInteger());
+
+        if (f0.signum() < 0){
+            f0 = f0.add(BigFraction.one());
+        }
+
+        if (f0.signum() == 0){
+            removeRow(row);
+            return false;
+        }
+
+        BigFraction oneMinusF0 = BigFraction.one().subtract(f0);
+        List<TableauVariable> cutVariables = new ArrayList<>(row.variables());
+        List<BigFraction> cutCoefficients = new ArrayList<>(cutVariables.size());
+
+        for (TableauVariable v : cutVariables){
+            BigFraction coefficient = row.getCoefficient(v);
+            coefficient = coefficient.signum() > 0
+                    ? coefficient.divide(oneMinusF0)
+                    : coefficient.negate().divide(f0);
+
+            if (coefficient.bitLength() > MAX_CUT_BIT_LENGTH){
+                removeRow(row);
+                return false;
+            }
+
+            cutCoefficients.add(coefficient);
+        }
+
+        removeRow(row);
+
+        /*
+         * -sum(g_j * x_j) + s = -1, with the slack basic and negative, like the rows of addConstraintAndReoptimize.
+         */
+        Row cut = addRow();
+
+        for (int i = 0; i < cutVariables.size(); i++){
+            cut.set(cutVariables.get(i), cutCoefficients.get(i).negate());
+        }
+
+        cut.setConstant(BigFraction.negativeOne());
+
+        TableauVariable slackVariable = addSlackVariable();
+        cut.set(slackVariable, BigFraction.one());
+        setBasicVariable(cut, slackVariable);
+
+        executor.getStatistics().countCut();
+
+        return true;
+    }
+
     public Objective addObjective(Expression expression)
     {
         Row objectiveRow = addRow();
@@ -135,15 +344,7 @@ class Tableau
         objectiveRow.set(objectiveVariable, BigFraction.one());
         setBasicVariable(objectiveRow, objectiveVariable);
 
-        objectiveRow.constant = expression.getConstantValue();
-
-        for (var entry : expression.getCoefficients().entrySet()){
-            TableauVariable v = variables.get(entry.getKey().id);
-            if (!v.knownZero){
-                BigFraction c = entry.getValue();
-                objectiveRow.set(v, c.negate());
-            }
-        }
+        objectiveRow.setConstant(setCoefficients(objectiveRow, expression, BigFraction.negativeOne()));
 
         if (logger != null){
             debugTableau();
@@ -196,7 +397,7 @@ class Tableau
                             .map(TableauVariable::getDebugName)
                             .orElse("?")
             );
-            int maxRhsWidth = debugGetMaxWidth(rows.values(), row -> row.constant.toBigDecimal(2, RoundingMode.HALF_UP).toString());
+            int maxRhsWidth = debugGetMaxWidth(rows.values(), row -> row.getConstant().toBigDecimal(2, RoundingMode.HALF_UP).toString());
 
             Map<Variable, Integer> variableMaxWidths = new TreeMap<>(Variable.COMPARATOR);
 
@@ -221,7 +422,7 @@ class Tableau
             }
 
             for (Row row : rows.values()){
-                if (row.constant.signum() == 0 && row.getCoefficients().isEmpty()){
+                if (row.isEmpty()){
                     continue;
                 }
 
@@ -241,30 +442,219 @@ class Tableau
                     }
                 }
 
-                sb.append(String.format(" %" + maxRhsWidth + "s", row.constant.toBigDecimal(2, RoundingMode.HALF_UP)));
+                sb.append(String.format(" %" + maxRhsWidth + "s", row.getConstant().toBigDecimal(2, RoundingMode.HALF_UP)));
                 logger.accept(sb.toString());
             }
             logger.accept("");
         }
     }
 
+    /*
+     * Pivots until no basic variable is negative, keeping the objective row dual feasible. The leaving row is the one
+     * with the most negative value, and the entering variable is the one with the smallest ratio of objective row
+     * coefficient to (negated) leaving row coefficient, ties broken by lowest id. After a run of degenerate pivots, the
+     * leaving row is the one with the lowest basic variable id, which is Bland's rule for the dual simplex.
+     */
+    private void dualSimplex(Row objectiveRow)
+            throws InfeasibleSolutionException, InterruptedException
+    {
+        int degeneratePivotCount = 0;
+
+        while (true){
+            executor.throwIfCancelled();
+
+            boolean lowestId = degeneratePivotCount >= MAX_DEGENERATE_DUAL_PIVOTS;
+            Row pivotRow = null;
+
+            for (Row row : rows.values()){
+                if (row != objectiveRow
+                        && row.getConstantSignum() < 0
+                        && (pivotRow == null || (lowestId
+                        ? row.basicVariable.id < pivotRow.basicVariable.id
+                        : row.getConstant().compareTo(pivotRow.getConstant()) < 0))){
+                    pivotRow = row;
+                }
+            }
+
+            if (pivotRow == null){
+                return;
+            }
+
+            TableauVariable pivotVariable = null;
+            BigFraction minRatio = null;
+
+            for (TableauVariable v : pivotRow.variables()){
+                if (pivotRow.getCoefficientSignum(v) >= 0 || v == pivotRow.basicVariable){
+                    continue;
+                }
+
+                BigFraction ratio = objectiveRow.getCoefficient(v).divide(pivotRow.getCoefficient(v).negate());
+
+                if (minRatio == null || ratio.compareTo(minRatio) < 0){
+                    pivotVariable = v;
+                    minRatio = ratio;
+                }
+            }
+
+            if (pivotVariable == null){
+                if (logger != null){
+                    logger.accept("Row with basic variable " + pivotRow.basicVariable.getDebugName() + " can not be made feasible");
+                }
+                throw new InfeasibleSolutionException();
+            }
+
+            if (logger != null){
+                logger.accept("Dual pivoting, entering: " + pivotVariable.getDebugName() + ", exiting: " + pivotRow.basicVariable.getDebugName());
+            }
+
+            if (minRatio.signum() == 0){
+                degeneratePivotCount++;
+            }else{
+                degeneratePivotCount = 0;
+            }
+
+            executor.getStatistics().countDualPivot();
+            pivot(pivotVariable, pivotRow);
+        }
+    }
+
+    /**
+     * Restricts the tableau to the solutions that keep the specified objective at its current value, which must be
+     * the optimal value.
+     * <p>
+     * Every non-basic variable with a positive objective row coefficient would make the objective worse if it entered
+     * the basis, so it is fixed at zero. Moving any of the remaining non-basic variables does not change the objective,
+     * so the objective can be removed afterwards and the next objective maximized from the same basis, without adding
+     * an equality constraint for the optimal value and going through phase I again.
+     */
+    public void fixOptimalValue(Objective objective)
+    {
+        assert objective != null;
+
+        Row objectiveRow = rows.get(objective.rowId);
+
+        assert objectiveRow != null;
+
+        List<TableauVariable> fixedVariables = new ArrayList<>();
+
+        for (TableauVariable v : objectiveRow.variables()){
+            if (v != objectiveRow.basicVariable && objectiveRow.getCoefficientSignum(v) > 0){
+                fixedVariables.add(v);
+            }
+        }
+
+        for (TableauVariable v : fixedVariables){
+            setKnownZero(v);
+        }
+
+        if (logger != null){
+            logger.accept("Fixed " + fixedVariables.size() + " non-basic variables to keep the objective optimal");
+        }
+    }
+
+    /**
+     * Returns whether there may be other solutions with the same, optimal value of the objective, which there are not
+     * if entering any of the non-basic variables that are not known to be zero would change it.
+     */
+    public boolean hasAlternativeOptima(Objective objective)
+    {
+        Row objectiveRow = rows.get(objective.rowId);
+
+        assert objectiveRow != null;
+
+        for (TableauVariable v : variables.values()){
+            if (v.basicRow == null && !v.knownZero && objectiveRow.getCoefficientSignum(v) == 0){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves to the optimal solution that the tie breaking objectives pick, which is the same whichever optimal basis
+     * the tableau got to first, and the same as the one {@link RevisedSimplex#breakTies(Expression, List)} gets to.
+     * The objective must be at its optimal value. Each tie breaking objective is maximized in turn, keeping the ones
+     * before it at their optimal values, until the solution is the only optimal one. The objective is removed, like
+     * the tie breaking objectives are.
+     */
+    public void breakTies(Objective objective, List<Expression> tieBreakingObjectives)
+            throws InterruptedException
+    {
+        try {
+            for (Expression tieBreakingObjective : tieBreakingObjectives){
+                if (!hasAlternativeOptima(objective)){
+                    break;
+                }
+
+                fixOptimalValue(objective);
+                removeObjective(objective);
+                objective = addObjective(tieBreakingObjective);
+
+                try {
+                    maximize(objective);
+                }catch (UnboundedSolutionException e){
+                    /*
+                     * The objective of a free variable does not pick a solution if the variable is unbounded, and
+                     * every variable that is not known to be zero keeps the objectives before it optimal.
+                     */
+                    removeObjective(objective);
+                    objective = addObjective(Expression.zero());
+                }
+            }
+        }finally{
+            removeObjective(objective);
+        }
+    }
+
+    SolverExecutor getExecutor()
+    {
+        return executor;
+    }
+
     public BigFraction getValue(Expression expression)
     {
-        try (var stream = expression.getCoefficients().entrySet().parallelStream()){
-            return stream.map(entry -> getValue(entry.getKey()).multiply(entry.getValue()))
-                    .reduce(expression.getConstantValue(), BigFraction::add);
+        List<BigFraction> sums = executor.mapRanges(expression.getTermCount(), MIN_VALUE_TASK_TERMS, (from, to) -> {
+            BigFraction sum = BigFraction.zero();
+            for (int term = from; term < to; term++){
+                sum = sum.add(getValue(expression.getVariable(term)).multiply(expression.getCoefficient(term)));
+            }
+            return sum;
+        });
+
+        BigFraction retv = expression.getConstantValue();
+
+        for (BigFraction sum : sums){
+            retv = retv.add(sum);
         }
+
+        return retv;
     }
 
     public BigFraction getValue(DecisionVariable decisionVariable)
     {
-        TableauVariable variable = variables.get(decisionVariable.id);
+        DecisionVariableColumns columns = decisionVariableColumns[decisionVariable.id];
+
+        BigFraction retv = getValue(variables.get(columns.column()));
+
+        if (columns.negated()){
+            retv = retv.negate();
+        }
+
+        if (columns.negativePart() >= 0){
+            retv = retv.subtract(getValue(variables.get(columns.negativePart())));
+        }
+
+        return retv.add(columns.offset());
+    }
 
+    private BigFraction getValue(TableauVariable variable)
+    {
         if (variable.basicRow == null){
             return BigFraction.zero();
         }
 
-        return variable.basicRow.constant.divide(variable.basicRow.getCoefficient(variable));
+        return variable.basicRow.getRatio(variable);
     }
 
     public BigFraction getValue(Objective objective)
@@ -279,7 +669,7 @@ class Tableau
         assert variable.basicRow == row;
         assert row.basicVariable == variable;
 
-        return row.constant;
+        return row.getConstant();
     }
 
     public BigFraction maximize(Objective objective)
@@ -294,98 +684,221 @@ class Tableau
         assert objectiveVariable != null;
         assert objectiveVariable.knownZero || objectiveVariable.basicRow == objectiveRow;
 
-        return maximize(objectiveRow);
+        return maximize(objectiveRow, false);
     }
 
-    private BigFraction maximize(Row objectiveRow)
+    /*
+     * phaseOne only says which statistics the pivots are counted in.
+     *
+     * Pivots that do not change the objective value happen when basic variables are zero, which is common in models
+     * with many balance constraints. They may go on for a long time, and in theory forever. Once a run of them gets
+     * long, the constants are perturbed symbolically: the constant of each row is taken to be its value plus a
+     * different, infinitely small amount for each row, smaller for every next row. No basic variable is zero in the
+     * perturbed tableau, so the objective increases with every pivot, and the simplex can not cycle. The perturbation
+     * never changes the constants themselves, only how the ratio test breaks ties, see compareLexicographically(), so
+     * nothing has to be undone afterwards. Once a pivot increases the objective, the perturbation is dropped until the
+     * next long run. Long runs also make the pivot rule fall back to Bland's rule, see PivotRule.
+     */
+    private BigFraction maximize(Row objectiveRow, boolean phaseOne)
             throws UnboundedSolutionException, InterruptedException
     {
+        PivotRule pivotRule = PivotRule.create(pricing, executor);
+        /*
+         * The basic variables when the perturbation started, in row order, or null if the constants are not perturbed.
+         * The amount that each row was perturbed by is the coefficient of these variables in the row.
+         */
+        List<TableauVariable> perturbation = null;
+        int degeneratePivots = 0;
+
         while (true){
-            if (Thread.interrupted()){
-                throw new InterruptedException();
-            }
+            executor.throwIfCancelled();
 
             if (logger != null){
                 debugTableau();
             }
 
-            var catcher = Try.catching(UnboundedSolutionException.class);
-
-            Pair<TableauVariable, Pair<Row, BigFraction>> pivot;
-
-            try (var stream = objectiveRow.getCoefficients().parallelStream()){
-                pivot = stream.filter(entry -> entry.getValue().signum() < 0)
-                        .map(catcher.function(entry -> {
-                            TableauVariable v = entry.getKey();
-                            BigFraction objectiveRowValue = entry.getValue();
-
-                            try (var rowStream = v.rows.parallelStream()){
-                                return rowStream.filter(row -> row != objectiveRow)
-                                        .filter(row -> row.constant.signum() >= 0)
-                                        .map(row -> Pair.of(row, row.getCoefficient(v)))
-                                        .filter(p -> p.second.signum() > 0)
-                                        .map(p -> Pair.of(p.first, p.first.constant.divide(p.second)))
-                                        .min(Comparator.<Pair<Row, BigFraction>, BigFraction>comparing(o -> o.second)
-                                                .thenComparingInt(o -> o.first.basicVariable.id)
-                                        )
-                                        .map(p -> {
-                                            if (p.second.signum() == 0){
-                                                return p;
-                                            }else{
-                                                return Pair.of(p.first, p.second.multiply(objectiveRowValue.negate()));
-                                            }
-                                        })
-                                        .map(p -> Pair.of(v, p))
-                                        .orElseThrow(() -> new UnboundedSolutionException(v));
-                            }
-                        }))
-                        .collect(catcher.collector(Collectors.maxBy(Comparator.<Pair<TableauVariable, Pair<Row, BigFraction>>, BigFraction>comparing(t -> t.second.second)
-                                .thenComparing(Comparator.<Pair<TableauVariable, Pair<Row, BigFraction>>>comparingInt(t -> t.first.id).reversed()))))
-                        .getOrThrow()
-                        .orElse(null);
-            }
+            int entering = pivotRule.selectEntering(new TableauPricing(objectiveRow));
 
-            if (pivot == null){
+            if (entering < 0){
                 if (logger != null){
                     logger.accept("Maximization complete");
                 }
-                return objectiveRow.constant;
+                return objectiveRow.getConstant();
             }
 
-            TableauVariable pivotVariable = pivot.first;
-            Row pivotRow = pivot.second.first;
+            TableauVariable pivotVariable = variables.get(entering);
+            Pair<Row, BigFraction> ratio = ratioTest(objectiveRow, pivotVariable, perturbation);
+            Row pivotRow = ratio.first;
 
             if (logger != null){
                 logger.accept("Pivoting, entering: " + pivotVariable.getDebugName() + ((pivotRow.basicVariable == null) ? "" : (", exiting: " + pivotRow.basicVariable.getDebugName())));
-                logger.accept("Pivot increase: " + pivot.second.second.toBigDecimal(2, RoundingMode.HALF_UP));
+                logger.accept("Pivot increase: " + ratio.second.multiply(objectiveRow.getCoefficient(pivotVariable).negate()).toBigDecimal(2, RoundingMode.HALF_UP));
             }
 
+            PivotRule.PivotRow pivotRuleRow = pivotRule.usesPivotRow()
+                    ? createPivotRuleRow(pivotVariable, pivotRow)
+                    : null;
+
+            boolean degenerate = ratio.second.signum() == 0;
+
+            executor.getStatistics().countPivot(phaseOne);
             pivot(pivotVariable, pivotRow);
+
+            pivotRule.pivoted(degenerate, pivotRuleRow);
+
+            if (!degenerate){
+                degeneratePivots = 0;
+                perturbation = null;
+            }else{
+                executor.getStatistics().countDegeneratePivot();
+                if (++degeneratePivots == PERTURBATION_DEGENERATE_PIVOTS){
+                    perturbation = new ArrayList<>(rows.size());
+                    for (Row row : rows.values()){
+                        /*
+                         * Rows that removeKnownZeros() emptied have no basic variable, and no coefficients to perturb.
+                         */
+                        if (row.basicVariable != null){
+                            perturbation.add(row.basicVariable);
+                        }
+                    }
+                }
+            }
         }
     }
 
+    private PivotRule.PivotRow createPivotRuleRow(TableauVariable pivotVariable, Row pivotRow)
+    {
+        int[] columns = new int[pivotRow.numerators.size()];
+        double[] values = new double[columns.length];
+        int count = 0;
+
+        for (TableauVariable v : pivotRow.variables()){
+            if (v != pivotVariable && v != pivotRow.basicVariable){
+                columns[count] = v.id;
+                values[count] = pivotRow.getCoefficient(v).doubleValue();
+                count++;
+            }
+        }
+
+        return new PivotRule.PivotRow(
+                pivotVariable.id,
+                pivotRow.basicVariable == null ? -1 : pivotRow.basicVariable.id,
+                pivotRow.getCoefficient(pivotVariable).doubleValue(),
+                Arrays.copyOf(columns, count),
+                Arrays.copyOf(values, count)
+        );
+    }
+
     private void pivot(TableauVariable variable, Row pivotRow)
+            throws InterruptedException
     {
         setBasicVariable(pivotRow, variable);
 
-        {
-            BigFraction pivotValue = pivotRow.getCoefficient(variable);
-            if (!pivotValue.equals(BigFraction.one())){
-                pivotRow.divide(pivotValue);
+        pivotRow.divideByCoefficient(variable);
+
+        List<Row> rows = new ArrayList<>(variable.rows);
+        rows.remove(pivotRow);
+
+        SolverStatistics statistics = executor.getStatistics();
+        statistics.recordBitLength(pivotRow.getBitLength());
+
+        executor.forEach(rows, MIN_PIVOT_TASK_ROWS, r -> {
+            r.eliminate(variable, pivotRow);
+            statistics.recordBitLength(r.getBitLength());
+        });
+    }
+
+    /*
+     * Finds the row that limits the increase of the specified variable the most, ties broken by the perturbation, if
+     * there is one, then by lowest basic variable id. Returns the row and the amount by which the variable can
+     * increase.
+     */
+    private Pair<Row, BigFraction> ratioTest(Row objectiveRow, TableauVariable v, List<TableauVariable> perturbation)
+            throws UnboundedSolutionException
+    {
+        List<Row> rows = new ArrayList<>(v.rows);
+
+        Comparator<Pair<Row, BigFraction>> comparator = perturbation == null
+                ? RATIO_COMPARATOR
+                : Comparator.<Pair<Row, BigFraction>, BigFraction>comparing(o -> o.second)
+                .thenComparing((a, b) -> compareLexicographically(a.first, b.first, v, perturbation))
+                .thenComparingInt(o -> o.first.basicVariable.id);
+
+        List<Pair<Row, BigFraction>> minimums = executor.mapRanges(rows.size(), MIN_RATIO_TEST_TASK_ROWS, (from, to) -> {
+            Pair<Row, BigFraction> min = null;
+            for (Row row : rows.subList(from, to)){
+                if (row != objectiveRow && row.getConstantSignum() >= 0 && row.getCoefficientSignum(v) > 0){
+                    Pair<Row, BigFraction> p = Pair.of(row, row.getRatio(v));
+                    if (min == null || comparator.compare(p, min) < 0){
+                        min = p;
+                    }
+                }
             }
-        }
+            return min;
+        });
 
-        try (var stream = new ArrayList<>(variable.rows).parallelStream()){
-            stream.filter(row -> row != pivotRow)
-                    .forEach(r -> r.subtract(r.getCoefficient(variable), pivotRow));
+        return minimums.stream()
+                .filter(Objects::nonNull)
+                .min(comparator)
+                .orElseThrow(() -> new UnboundedSolutionException(v));
+    }
+
+    /*
+     * Compares the perturbations of two rows with the same ratio for the entering variable v, divided by their
+     * coefficient of v like the ratio. Each perturbation is infinitely smaller than the one before, so the first one
+     * that differs decides. The denominator of each row cancels out in the division, and both coefficients of v are
+     * positive, so the numerators can be compared by cross multiplication.
+     */
+    private static int compareLexicographically(Row a, Row b, TableauVariable v, List<TableauVariable> perturbation)
+    {
+        BigInteger aPivot = a.numerators.get(v);
+        BigInteger bPivot = b.numerators.get(v);
+
+        for (TableauVariable variable : perturbation){
+            BigInteger aNumerator = a.numerators.getOrDefault(variable, BigInteger.ZERO);
+            BigInteger bNumerator = b.numerators.getOrDefault(variable, BigInteger.ZERO);
+
+            if (aNumerator.signum() == 0 && bNumerator.signum() == 0){
+                continue;
+            }
+
+            int c = aNumerator.multiply(bPivot).compareTo(bNumerator.multiply(aPivot));
+
+            if (c != 0){
+                return c;
+            }
         }
+
+        return 0;
+    }
+
+    /**
+     * Restores primal feasibility with the dual simplex, after rows with a negative basic slack have been added to a
+     * tableau that was maximized for the objective, and maximizes the objective again.
+     *
+     * @return the new value of the objective.
+     */
+    public BigFraction reoptimize(Objective objective)
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Row objectiveRow = rows.get(objective.rowId);
+
+        assert objectiveRow != null;
+
+        dualSimplex(objectiveRow);
+
+        /*
+         * The dual simplex leaves us with an optimal tableau, so this normally does nothing. It is here in case the
+         * tableau was not optimal for the objective when we were called.
+         */
+        return maximize(objectiveRow, false);
     }
 
     private void removeKnownZeros()
     {
         Set<Row> potentiallyRemovableRows = new TreeSet<>(Row.COMPARATOR);
         for (Row row : rows.values()){
-            if (row.constant.signum() == 0){
+            if (row.getConstantSignum() == 0){
                 potentiallyRemovableRows.add(row);
             }
         }
@@ -396,8 +909,8 @@ class Tableau
             for (Row row : potentiallyRemovableRows){
 
                 boolean hasNegativeCoefficients = false;
-                for (var entry : row.getCoefficients()){
-                    if (entry.getValue().signum() < 0){
+                for (TableauVariable v : row.variables()){
+                    if (row.getCoefficientSignum(v) < 0){
                         hasNegativeCoefficients = true;
                         break;
                     }
@@ -407,7 +920,7 @@ class Tableau
                     Collection<? extends TableauVariable> variables = new ArrayList<>(row.variables());
                     for (TableauVariable v : variables){
                         for (Row r : v.rows){
-                            if (r.constant.signum() == 0){
+                            if (r.getConstantSignum() == 0){
                                 recheckRows.add(r);
                             }
                         }
@@ -449,7 +962,7 @@ class Tableau
         for (TableauVariable v : r.variables()){
             v.rows.remove(r);
         }
-        r.coefficients.clear();
+        r.numerators.clear();
         rows.remove(r.id);
     }
 
@@ -469,6 +982,36 @@ class Tableau
         row.basicVariable = basicVariable;
     }
 
+    /*
+     * Sets the coefficients of the row to multiple times the coefficients of the expression, in terms of tableau
+     * columns, and returns the constant of the expression in terms of tableau columns.
+     */
+    private BigFraction setCoefficients(Row row, Expression expression, BigFraction multiple)
+    {
+        BigFraction constant = expression.getConstantValue();
+
+        for (int term = 0; term < expression.getTermCount(); term++){
+            DecisionVariableColumns columns = decisionVariableColumns[expression.getVariable(term).id];
+            BigFraction coefficient = expression.getCoefficient(term).multiply(multiple);
+
+            constant = constant.add(expression.getCoefficient(term).multiply(columns.offset()));
+
+            TableauVariable v = variables.get(columns.column());
+            if (!v.knownZero){
+                row.set(v, columns.negated() ? coefficient.negate() : coefficient);
+            }
+
+            if (columns.negativePart() >= 0){
+                TableauVariable negativePart = variables.get(columns.negativePart());
+                if (!negativePart.knownZero){
+                    row.set(negativePart, coefficient.negate());
+                }
+            }
+        }
+
+        return constant;
+    }
+
     private void setKnownZero(TableauVariable v)
     {
         if (v.basicRow != null){
@@ -476,12 +1019,66 @@ class Tableau
             v.basicRow = null;
         }
         for (Row row : v.rows){
-            row.coefficients.remove(v);
+            row.numerators.remove(v);
         }
         v.rows.clear();
         v.knownZero = true;
     }
 
+    /*
+     * Replaces basic artificial variables with other columns before phase I, where that keeps the basis feasible, so
+     * that phase I has fewer of them to pivot out, or none at all. Columns in few rows are tried first: pivoting on a
+     * column that is in no other row, like the output or surplus variable of an item balance row, changes no other row,
+     * and in general they change the fewest rows. A column can replace the artificial variable of a row if that row is
+     * one of the rows that limit it the most in the ratio test, so that the pivot leaves every basic variable
+     * non-negative. Rows with a zero constant, like balance rows with nothing going in yet, can always be crashed this
+     * way, on any column with a positive coefficient.
+     *
+     * An artificial variable that left the basis is at zero, and is removed right away, since phase I would never let
+     * it enter again anyway.
+     */
+    private void crash()
+            throws UnboundedSolutionException, InterruptedException
+    {
+        int crashed = 0;
+
+        for (TableauVariable artificial : new ArrayList<>(artificialVariables)){
+            executor.throwIfCancelled();
+
+            Row row = artificial.basicRow;
+
+            if (row == null){
+                continue;
+            }
+
+            List<TableauVariable> candidates = new ArrayList<>();
+
+            for (TableauVariable v : row.variables()){
+                if (v != artificial && !artificialVariables.contains(v) && row.getCoefficientSignum(v) > 0){
+                    candidates.add(v);
+                }
+            }
+
+            candidates.sort(Comparator.comparingInt((TableauVariable v) -> v.rows.size()).thenComparing(Variable.COMPARATOR));
+
+            for (TableauVariable v : candidates){
+                if (ratioTest(null, v, null).second.equals(row.getRatio(v))){
+                    executor.getStatistics().countPivot(true);
+                    pivot(v, row);
+                    artificialVariables.remove(artificial);
+                    removeVariable(artificial);
+                    crashed++;
+                    break;
+                }
+            }
+        }
+
+        if (logger != null){
+            logger.accept("Crash replaced " + crashed + " basic artificial variables, " + artificialVariables.size() + " left");
+            debugTableau();
+        }
+    }
+
     public void solveFeasibility()
             throws UnboundedSolutionException, InterruptedException, InfeasibleSolutionException
     {
@@ -489,6 +1086,12 @@ class Tableau
             return;
         }
 
+        crash();
+
+        if (artificialVariables.isEmpty()){
+            return;
+        }
+
         Row objectiveRow = addRow();
 
         TableauVariable objectiveVariable = addVariable("A");
@@ -508,11 +1111,11 @@ class Tableau
 
         objectiveRow.subtractBasicVariableRows();
 
-        maximize(objectiveRow);
+        maximize(objectiveRow, true);
 
         for (TableauVariable v : artificialVariables){
             if (v.basicRow != null){
-                if (v.basicRow.constant.signum() == 0){
+                if (v.basicRow.getConstantSignum() == 0){
                     TableauVariable pivotVariable = null;
 
                     for (TableauVariable ov : v.basicRow.variables()){
@@ -529,6 +1132,7 @@ class Tableau
                             logger.accept("Artificial variable " + v.getDebugName() + " is basic with zero value, pivoting on first non-basic variable: " + pivotVariable.getDebugName());
                         }
 
+                        executor.getStatistics().countPivot(true);
                         pivot(pivotVariable, v.basicRow);
 
                         if (logger != null){
@@ -561,6 +1165,72 @@ class Tableau
         }
     }
 
+    private class TableauPricing
+            implements PivotRule.Pricing
+    {
+        private final Row objectiveRow;
+        private final BigFraction[] reducedCosts = new BigFraction[maxVariableId];
+
+        public TableauPricing(Row objectiveRow)
+        {
+            this.objectiveRow = objectiveRow;
+
+            for (TableauVariable v : objectiveRow.variables()){
+                if (objectiveRow.getCoefficientSignum(v) < 0){
+                    reducedCosts[v.id] = objectiveRow.getCoefficient(v).negate();
+                }
+            }
+        }
+
+        @Override
+        public int getColumnCount()
+        {
+            return reducedCosts.length;
+        }
+
+        @Override
+        public BigFraction getImprovement(int column)
+                throws UnboundedSolutionException
+        {
+            BigFraction ratio = ratioTest(objectiveRow, variables.get(column), null).second;
+
+            if (ratio.signum() == 0){
+                return ratio;
+            }
+
+            return ratio.multiply(reducedCosts[column]);
+        }
+
+        @Override
+        public BigFraction getReducedCost(int column)
+        {
+            return reducedCosts[column];
+        }
+
+        @Override
+        public double getSquaredColumnNorm(int column)
+        {
+            double retv = 1.0;
+
+            for (Row row : variables.get(column).rows){
+                if (row != objectiveRow){
+                    double d = row.getCoefficient(variables.get(column)).doubleValue();
+                    retv += d * d;
+                }
+            }
+
+            return retv;
+        }
+    }
+
+    /*
+     * A decision variable is offset + column, or offset - column if negated, minus the negative part column if the
+     * decision variable is free.
+     */
+    private record DecisionVariableColumns(int column, BigFraction offset, boolean negated, int negativePart)
+    {
+    }
+
     public static class Objective
     {
         private final int rowId;
@@ -602,12 +1272,26 @@ class Tableau
         }
     }
 
+    /*
+     * A row keeps its coefficients and its constant as integer numerators over one positive denominator shared by the
+     * whole row. Eliminating a variable from a row then takes a few integer multiplications per entry, instead of a
+     * fraction addition with its gcd for every entry. The common factor of the row is only divided out once the
+     * denominator has grown to more than twice the length it had after the previous reduction, which keeps the
+     * numbers from growing without bound while doing the gcds only now and then. Values read from a row are reduced
+     * fractions, so they are the same no matter when the row was last reduced.
+     */
     private static class Row
     {
         private static final Comparator<Row> COMPARATOR = Comparator.comparingInt(Row::getId);
+        /*
+         * How many bits the denominator may grow by, on top of doubling, before the row is reduced.
+         */
+        private static final int REDUCTION_SLACK_BITS = 64;
         private final int id;
-        private final Map<TableauVariable, BigFraction> coefficients = new TreeMap<>(Variable.COMPARATOR);
-        private BigFraction constant = BigFraction.zero();
+        private final Map<TableauVariable, BigInteger> numerators = new TreeMap<>(Variable.COMPARATOR);
+        private BigInteger constantNumerator = BigInteger.ZERO;
+        private BigInteger denominator = BigInteger.ONE;
+        private int reducedBitLength = 1;
         private TableauVariable basicVariable;
 
         public Row(int id)
@@ -615,16 +1299,54 @@ class Tableau
             this.id = id;
         }
 
-        public void add(BigFraction multiple, Row other)
+        /*
+         * Divides the row by the coefficient of the variable, which must not be zero, so that the coefficient becomes
+         * one. Only the denominator changes, unless the coefficient is negative.
+         */
+        public void divideByCoefficient(TableauVariable variable)
         {
-            constant = constant.add(multiple.multiply(other.constant));
-            for (var entry : other.getCoefficients()){
-                TableauVariable variable = entry.getKey();
-                BigFraction coefficient = entry.getValue();
+            BigInteger divisor = numerators.get(variable);
+
+            if (divisor.signum() < 0){
+                negate();
+                divisor = divisor.negate();
+            }
+
+            denominator = divisor;
+            reduceIfGrown();
+        }
+
+        /*
+         * Subtracts the multiple of the other row that makes the coefficient of the variable in this row zero. The
+         * variable must have a non-zero coefficient in both rows.
+         *
+         * With this row r / d and the other row p / e, the result is (r * p_v - p * r_v) / (d * p_v), in which e
+         * cancels out. Dividing p_v and r_v by their gcd first keeps the result smaller, and if the other row has been
+         * divided by the coefficient of the variable, p_v divides d more often than not, so that this row does not
+         * have to be scaled at all.
+         */
+        public void eliminate(TableauVariable variable, Row other)
+        {
+            BigInteger coefficient = numerators.get(variable);
+            BigInteger otherCoefficient = other.numerators.get(variable);
+            BigInteger gcd = coefficient.gcd(otherCoefficient);
+            BigInteger scale = otherCoefficient.divide(gcd);
+            BigInteger multiple = coefficient.divide(gcd);
+
+            if (scale.signum() < 0){
+                scale = scale.negate();
+                multiple = multiple.negate();
+            }
+
+            scale(scale);
+
+            constantNumerator = constantNumerator.subtract(multiple.multiply(other.constantNumerator));
+
+            for (var entry : other.numerators.entrySet()){
+                BigInteger product = multiple.multiply(entry.getValue());
 
-                coefficients.compute(variable, (v, oldValue) -> {
-                    BigFraction newValue = Objects.requireNonNullElse(oldValue, BigFraction.zero());
-                    newValue = newValue.add(multiple.multiply(coefficient));
+                numerators.compute(entry.getKey(), (v, oldValue) -> {
+                    BigInteger newValue = (oldValue == null) ? product.negate() : oldValue.subtract(product);
 
                     if (newValue.signum() == 0){
                         if (oldValue != null){
@@ -639,30 +1361,49 @@ class Tableau
                     }
                 });
             }
+
+            reduceIfGrown();
         }
 
-        public void divide(BigFraction divisor)
+        /*
+         * The bit length of the longer of the denominator and the numerator of the constant, which is the value of the
+         * basic variable.
+         */
+        public int getBitLength()
         {
-            constant = constant.divide(divisor);
-            try (var stream = coefficients.entrySet().parallelStream()){
-                stream.forEach(entry -> entry.setValue(entry.getValue().divide(divisor)));
-            }
+            return Math.max(denominator.bitLength(), constantNumerator.bitLength());
         }
 
         public BigFraction getCoefficient(TableauVariable variable)
         {
-            BigFraction r = coefficients.get(variable);
+            BigInteger numerator = numerators.get(variable);
+
+            if (numerator == null){
+                return BigFraction.zero();
+            }
+
+            return BigFraction.valueOf(numerator, denominator);
+        }
+
+        public int getCoefficientSignum(TableauVariable variable)
+        {
+            BigInteger numerator = numerators.get(variable);
 
-            if (r == null){
-                r = BigFraction.zero();
+            if (numerator == null){
+                return 0;
             }
 
-            return r;
+            return numerator.signum();
+        }
+
+        public BigFraction getConstant()
+        {
+            return BigFraction.valueOf(constantNumerator, denominator);
         }
 
-        public Collection<? extends Map.Entry<? extends TableauVariable, ? extends BigFraction>> getCoefficients()
+        public int getConstantSignum()
         {
-            return coefficients.entrySet();
+            return constantNumerator.signum();
         }
 
         private int getId()
@@ -670,80 +1411,113 @@ class Tableau
             return id;
         }
 
+        /*
+         * Returns the constant divided by the coefficient of the variable, which must not be zero. The denominator
+         * cancels out, so this is a single fraction.
+         */
+        public BigFraction getRatio(TableauVariable variable)
+        {
+            return BigFraction.valueOf(constantNumerator, numerators.get(variable));
+        }
+
+        public boolean isEmpty()
+        {
+            return constantNumerator.signum() == 0 && numerators.isEmpty();
+        }
+
         public void negate()
         {
-            constant = constant.negate();
-            try (var stream = coefficients.entrySet().parallelStream()){
-                stream.forEach(e -> e.setValue(e.getValue().negate()));
+            constantNumerator = constantNumerator.negate();
+            numerators.replaceAll((v, numerator) -> numerator.negate());
+        }
+
+        private void reduceIfGrown()
+        {
+            if (denominator.bitLength() <= 2 * reducedBitLength + REDUCTION_SLACK_BITS){
+                return;
             }
+
+            BigInteger gcd = denominator.gcd(constantNumerator);
+
+            for (Iterator<BigInteger> it = numerators.values().iterator(); it.hasNext() && !gcd.equals(BigInteger.ONE); ){
+                gcd = gcd.gcd(it.next());
+            }
+
+            if (!gcd.equals(BigInteger.ONE)){
+                BigInteger divisor = gcd;
+                denominator = denominator.divide(divisor);
+                constantNumerator = constantNumerator.divide(divisor);
+                numerators.replaceAll((v, numerator) -> numerator.divide(divisor));
+            }
+
+            reducedBitLength = denominator.bitLength();
+        }
+
+        /*
+         * Brings the row onto a denominator that is a multiple of the specified one.
+         */
+        private void rescale(BigInteger otherDenominator)
+        {
+            if (otherDenominator.equals(BigInteger.ONE)){
+                return;
+            }
+
+            scale(otherDenominator.divide(otherDenominator.gcd(denominator)));
+        }
+
+        /*
+         * Multiplies the numerators and the denominator by the factor, which does not change the value of the row.
+         */
+        private void scale(BigInteger factor)
+        {
+            if (factor.equals(BigInteger.ONE)){
+                return;
+            }
+
+            denominator = denominator.multiply(factor);
+            constantNumerator = constantNumerator.multiply(factor);
+            numerators.replaceAll((v, numerator) -> numerator.multiply(factor));
         }
 
         public void set(TableauVariable variable, BigFraction coefficient)
         {
             if (coefficient.signum() == 0){
-                BigFraction oldValue = coefficients.remove(variable);
+                BigInteger oldValue = numerators.remove(variable);
                 if (oldValue != null){
                     variable.rows.remove(this);
                 }
             }else{
-                BigFraction oldValue = coefficients.put(variable, coefficient);
+                rescale(coefficient.getDenominator());
+                BigInteger numerator = coefficient.getNumerator().multiply(denominator.divide(coefficient.getDenominator()));
+                BigInteger oldValue = numerators.put(variable, numerator);
                 if (oldValue == null){
                     variable.rows.add(this);
                 }
             }
         }
 
-        public void subtract(BigFraction multiple, Row other)
+        public void setConstant(BigFraction constant)
         {
-            add(multiple.negate(), other);
+            rescale(constant.getDenominator());
+            constantNumerator = constant.getNumerator().multiply(denominator.divide(constant.getDenominator()));
         }
 
+        /*
+         * Eliminates the basic variables of other rows from this row. Each basic variable only has a coefficient in
+         * its own row, so eliminating one does not bring back another.
+         */
         public void subtractBasicVariableRows()
         {
-            Row r;
-
-            try (var stream = coefficients.entrySet().parallelStream()){
-                r = stream.filter(e -> e.getKey().basicRow != null && e.getKey().basicRow != Row.this)
-                        .map(e -> {
-                            Row basicRow = e.getKey().basicRow;
-                            Row retv = new Row(0);
-                            retv.constant = basicRow.constant.multiply(e.getValue());
-                            for (var entry : basicRow.coefficients.entrySet()){
-                                retv.coefficients.put(entry.getKey(), entry.getValue().multiply(e.getValue()));
-                            }
-                            return retv;
-                        })
-                        .reduce(new Row(0), (r1, r2) -> {
-                            Row retv = new Row(0);
-                            retv.constant = r1.constant.add(r2.constant);
-                            retv.coefficients.putAll(r1.coefficients);
-                            for (var entry : r2.coefficients.entrySet()){
-                                retv.coefficients.compute(entry.getKey(), (v, c) -> {
-                                    BigFraction n;
-
-                                    if (c == null){
-                                        n = entry.getValue();
-                                    }else{
-                                        n = entry.getValue().add(c);
-                                    }
-
-                                    if (n.signum() == 0){
-                                        return null;
-                                    }
-
-                                    return n;
-                                });
-                            }
-                            return retv;
-                        });
+            for (TableauVariable v : new ArrayList<>(numerators.keySet())){
+                if (v.basicRow != null && v.basicRow != this && numerators.containsKey(v)){
+                    eliminate(v, v.basicRow);
+                }
             }
-
-            subtract(BigFraction.one(), r);
         }
 
         public Collection<? extends TableauVariable> variables()
         {
-            return coefficients.keySet();
+            return numerators.keySet();
         }
     }
 }
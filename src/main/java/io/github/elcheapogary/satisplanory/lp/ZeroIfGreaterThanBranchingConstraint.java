@@ -38,6 +38,19 @@ class ZeroIfGreaterThanBranchingConstraint
         return new ZeroIfGreaterThanBranchingConstraint(expression, maximum);
     }
 
+    @Override
+    double[] getBranchDistances(Tableau tableau)
+    {
+        BigFraction value = tableau.getValue(expression);
+
+        if (value.signum() < 0 && value.compareTo(maximum) > 0){
+            double fraction = value.divide(maximum).doubleValue();
+            return new double[]{fraction, 1 - fraction};
+        }else{
+            return new double[0];
+        }
+    }
+
     @Override
     Collection<? extends Constraint> getConstraints(Tableau tableau)
     {
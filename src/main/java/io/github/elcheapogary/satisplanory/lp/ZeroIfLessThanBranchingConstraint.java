@@ -38,6 +38,19 @@ class ZeroIfLessThanBranchingConstraint
         return new ZeroIfLessThanBranchingConstraint(expression, minimum);
     }
 
+    @Override
+    double[] getBranchDistances(Tableau tableau)
+    {
+        BigFraction value = tableau.getValue(expression);
+
+        if (value.signum() > 0 && value.compareTo(minimum) < 0){
+            double fraction = value.divide(minimum).doubleValue();
+            return new double[]{fraction, 1 - fraction};
+        }else{
+            return new double[0];
+        }
+    }
+
     @Override
     Collection<? extends Constraint> getConstraints(Tableau tableau)
     {
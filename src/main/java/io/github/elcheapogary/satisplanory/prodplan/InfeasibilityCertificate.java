@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.prodplan;
+
+import io.github.elcheapogary.satisplanory.lp.Constraint;
+import io.github.elcheapogary.satisplanory.lp.FarkasCertificate;
+import io.github.elcheapogary.satisplanory.model.Item;
+import io.github.elcheapogary.satisplanory.model.Recipe;
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * A FarkasCertificate for the model of a plan, with the multipliers keyed by the item of the balance or output
+ * constraint they are for, so that they can be tried on the model of another planner.
+ *
+ * The balance constraint of an item is output - input - produced + consumed == 0, so the input of an item appears in
+ * the combination of the constraints with the negated multiplier of its balance constraint. An item with a negative
+ * balance multiplier is one the plan needs more of: allowing more input of it raises the maximum of the combination.
+ */
+class InfeasibilityCertificate
+{
+    private final Map<Item, BigFraction> balanceMultipliers;
+    private final Map<Item, BigFraction> outputMultipliers;
+    private final Set<Item> limitingInputItems;
+    private final Set<Item> missingItems;
+
+    private InfeasibilityCertificate(Map<Item, BigFraction> balanceMultipliers, Map<Item, BigFraction> outputMultipliers, Set<Item> limitingInputItems, Set<Item> missingItems)
+    {
+        this.balanceMultipliers = balanceMultipliers;
+        this.outputMultipliers = outputMultipliers;
+        this.limitingInputItems = Collections.unmodifiableSet(limitingInputItems);
+        this.missingItems = Collections.unmodifiableSet(missingItems);
+    }
+
+    static InfeasibilityCertificate create(ProductionPlanner.PlanModel planModel, FarkasCertificate certificate)
+    {
+        if (certificate == null){
+            return null;
+        }
+
+        Map<Item, BigFraction> balanceMultipliers = getMultipliers(planModel.itemBalanceConstraintMap(), certificate);
+        Map<Item, BigFraction> outputMultipliers = getMultipliers(planModel.outputConstraintMap(), certificate);
+
+        Set<Item> producedItems = Item.createSet();
+        for (Recipe recipe : planModel.recipeMap().keySet()){
+            for (Recipe.RecipeItem ri : recipe.getProducts()){
+                producedItems.add(ri.getItem());
+            }
+        }
+
+        Set<Item> limitingInputItems = Item.createSet();
+        Set<Item> missingItems = Item.createSet();
+
+        for (var entry : balanceMultipliers.entrySet()){
+            if (entry.getValue().signum() < 0){
+                Item item = entry.getKey();
+                if (planModel.itemInputMap().containsKey(item)){
+                    limitingInputItems.add(item);
+                }else if (!producedItems.contains(item)){
+                    missingItems.add(item);
+                }
+            }
+        }
+
+        return new InfeasibilityCertificate(balanceMultipliers, outputMultipliers, limitingInputItems, missingItems);
+    }
+
+    private static Map<Item, BigFraction> getMultipliers(Map<Item, Constraint> constraintMap, FarkasCertificate certificate)
+    {
+        Map<Item, BigFraction> multipliers = Item.createMap();
+
+        for (var entry : constraintMap.entrySet()){
+            BigFraction multiplier = certificate.getMultiplier(entry.getValue());
+            if (multiplier.signum() != 0){
+                multipliers.put(entry.getKey(), multiplier);
+            }
+        }
+
+        return multipliers;
+    }
+
+    private static void addMultipliers(Map<Constraint, BigFraction> constraintMultipliers, Map<Item, BigFraction> itemMultipliers, Map<Item, Constraint> constraintMap)
+    {
+        for (var entry : itemMultipliers.entrySet()){
+            Constraint constraint = constraintMap.get(entry.getKey());
+            if (constraint != null){
+                constraintMultipliers.put(constraint, entry.getValue());
+            }
+        }
+    }
+
+    /*
+     * Items with an input in the plan that the plan needs more of.
+     */
+    Set<Item> getLimitingInputItems()
+    {
+        return limitingInputItems;
+    }
+
+    /*
+     * Items the plan needs that are not an input, and that none of the recipes in the model of the plan produce. The
+     * model leaves out recipes that cannot be built from the input items.
+     */
+    Set<Item> getMissingItems()
+    {
+        return missingItems;
+    }
+
+    /*
+     * Whether the multipliers also prove the model of the planner infeasible. The check is exact, so a true result
+     * means the planner has no plan, however its model differs from the one the certificate came from.
+     */
+    boolean provesInfeasible(ProductionPlanner planner)
+    {
+        ProductionPlanner.PlanModel planModel = planner.createPlanModel();
+
+        Map<Constraint, BigFraction> multipliers = new HashMap<>();
+        addMultipliers(multipliers, balanceMultipliers, planModel.itemBalanceConstraintMap());
+        addMultipliers(multipliers, outputMultipliers, planModel.outputConstraintMap());
+
+        return planModel.model().provesInfeasibility(multipliers);
+    }
+}
@@ -25,14 +25,16 @@ public class MultiPlan
     private final ProductionPlan planWithAllItems;
     private final ProductionPlan planWithAllRecipes;
     private final ProductionPlan planWithAllItemsAndRecipes;
+    private final InfeasibilityCertificate certificate;
 
-    MultiPlan(ProductionPlanner productionPlanner, ProductionPlan unmodifiedPlan, ProductionPlan planWithAllItems, ProductionPlan planWithAllRecipes, ProductionPlan planWithAllItemsAndRecipes)
+    MultiPlan(ProductionPlanner productionPlanner, ProductionPlan unmodifiedPlan, ProductionPlan planWithAllItems, ProductionPlan planWithAllRecipes, ProductionPlan planWithAllItemsAndRecipes, InfeasibilityCertificate certificate)
     {
         this.productionPlanner = productionPlanner;
         this.unmodifiedPlan = unmodifiedPlan;
         this.planWithAllItems = planWithAllItems;
         this.planWithAllRecipes = planWithAllRecipes;
         this.planWithAllItemsAndRecipes = planWithAllItemsAndRecipes;
+        this.certificate = certificate;
     }
 
     public boolean canCreatePlanByAddingRecipes()
@@ -50,6 +52,33 @@ public class MultiPlan
         return planWithAllItemsAndRecipes != null;
     }
 
+    /**
+     * Returns the input items the unmodified plan needs more of, as shown by the proof that it is not feasible. Empty
+     * if the unmodified plan is feasible, or if the solver did not find a proof.
+     */
+    public Set<? extends Item> getLimitingInputItems()
+    {
+        if (certificate == null){
+            return Collections.emptySet();
+        }
+
+        return certificate.getLimitingInputItems();
+    }
+
+    /**
+     * Returns the items the unmodified plan needs that are not input items, and that none of the recipes it can use
+     * with its input items produce, as shown by the proof that it is not feasible. Empty if the unmodified plan is
+     * feasible, or if the solver did not find a proof.
+     */
+    public Set<? extends Item> getMissingItems()
+    {
+        if (certificate == null){
+            return Collections.emptySet();
+        }
+
+        return certificate.getMissingItems();
+    }
+
     public Set<? extends Recipe> getMissingRecipes()
     {
         ProductionPlan plan = Objects.requireNonNullElse(planWithAllRecipes, planWithAllItemsAndRecipes);
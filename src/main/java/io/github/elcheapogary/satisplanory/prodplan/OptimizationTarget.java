@@ -11,6 +11,7 @@
 package io.github.elcheapogary.satisplanory.prodplan;
 
 import io.github.elcheapogary.satisplanory.lp.Expression;
+import io.github.elcheapogary.satisplanory.lp.ExpressionBuilder;
 import io.github.elcheapogary.satisplanory.model.Item;
 import io.github.elcheapogary.satisplanory.model.MatterState;
 import io.github.elcheapogary.satisplanory.model.Recipe;
@@ -46,7 +47,7 @@ public enum OptimizationTarget
                         model.getLpModel().addConstraint(model.getItemSurplusMap().get(item).eq(balanceVariable.multiply(item.fromDisplayAmount(weight))));
                     }
                 }else{
-                    Expression balanceExpression = Expression.zero();
+                    ExpressionBuilder balanceExpression = new ExpressionBuilder();
                     List<Item> maxItems = new ArrayList<>(itemMaximizeWeights.keySet());
                     Map<Item, Expression> perItemBalanceVariableMap = Item.createMap();
                     for (int i = 0; i < maxItems.size() - 1; i++){
@@ -55,7 +56,7 @@ public enum OptimizationTarget
                             Item b = maxItems.get(j);
 
                             Expression balanceVariable = model.getLpModel().addVariable("Balance between " + a.getName() + " and " + b.getName());
-                            balanceExpression = balanceExpression.add(balanceVariable);
+                            balanceExpression.add(balanceVariable);
                             model.getLpModel().addConstraint(model.getItemSurplusMap().get(a).gte(balanceVariable.multiply(a.fromDisplayAmount(itemMaximizeWeights.get(a)))));
                             model.getLpModel().addConstraint(model.getItemSurplusMap().get(b).gte(balanceVariable.multiply(b.fromDisplayAmount(itemMaximizeWeights.get(b)))));
 
@@ -64,34 +65,31 @@ public enum OptimizationTarget
                         }
                     }
 
-                    objectiveFunctions.add(balanceExpression);
+                    objectiveFunctions.add(balanceExpression.build());
 
                     Expression finalVariable = model.getLpModel().addVariable("Final balance variable");
 
-                    balanceExpression = Expression.zero();
+                    ExpressionBuilder perItemBalanceExpression = new ExpressionBuilder();
 
                     for (Expression v : perItemBalanceVariableMap.values()){
-                        balanceExpression = balanceExpression.add(v);
+                        perItemBalanceExpression.add(v);
                         model.getLpModel().addConstraint(v.gte(finalVariable));
                     }
 
-                    objectiveFunctions.add(0, balanceExpression);
+                    objectiveFunctions.add(0, perItemBalanceExpression.build());
                     objectiveFunctions.add(0, finalVariable);
                 }
             }
 
             if (!itemMaximizeWeights.isEmpty()){
-                Expression maximizeExpression = Expression.zero();
+                ExpressionBuilder maximizeExpression = new ExpressionBuilder();
                 for (var entry : itemMaximizeWeights.entrySet()){
                     Item item = entry.getKey();
                     BigFraction weight = entry.getValue();
-                    maximizeExpression = maximizeExpression.add(
-                            model.getItemSurplusMap().get(item)
-                                    .multiply(item.toDisplayAmountFraction(weight))
-                    );
+                    maximizeExpression.add(item.toDisplayAmountFraction(weight), model.getItemSurplusMap().get(item));
                 }
 
-                objectiveFunctions.add(maximizeExpression);
+                objectiveFunctions.add(maximizeExpression.build());
             }
 
             return objectiveFunctions;
@@ -101,55 +99,55 @@ public enum OptimizationTarget
         @Override
         List<? extends Expression> getObjectiveFunctions(OptimizationModel model)
         {
-            Expression powerConsumption = Expression.zero();
+            ExpressionBuilder powerConsumption = new ExpressionBuilder();
 
             for (var entry : model.getRecipeMap().entrySet()){
                 Recipe recipe = entry.getKey();
                 Expression recipeExpression = entry.getValue();
 
-                powerConsumption = powerConsumption.add(recipeExpression.multiply(recipe.getPowerConsumption()));
+                powerConsumption.add(recipe.getPowerConsumption(), recipeExpression);
             }
 
-            return Collections.singletonList(powerConsumption.negate());
+            return Collections.singletonList(powerConsumption.build().negate());
         }
     },
     MIN_BUILDINGS{
         @Override
         List<? extends Expression> getObjectiveFunctions(OptimizationModel model)
         {
-            Expression objectiveFunction = Expression.zero();
+            ExpressionBuilder objectiveFunction = new ExpressionBuilder();
 
             for (Expression e : model.getRecipeMap().values()){
-                objectiveFunction = objectiveFunction.subtract(e);
+                objectiveFunction.subtract(e);
             }
 
-            return Collections.singletonList(objectiveFunction);
+            return Collections.singletonList(objectiveFunction.build());
         }
     },
     MAX_INPUT_ITEMS{
         @Override
         List<? extends Expression> getObjectiveFunctions(OptimizationModel model)
         {
-            Expression objectiveFunction = Expression.zero();
+            ExpressionBuilder objectiveFunction = new ExpressionBuilder();
 
             for (Expression e : model.getItemInputMap().values()){
-                objectiveFunction = objectiveFunction.add(e);
+                objectiveFunction.add(e);
             }
 
-            return Collections.singletonList(objectiveFunction);
+            return Collections.singletonList(objectiveFunction.build());
         }
     },
     MIN_INPUT_ITEMS{
         @Override
         List<? extends Expression> getObjectiveFunctions(OptimizationModel model)
         {
-            Expression objectiveFunction = Expression.zero();
+            ExpressionBuilder objectiveFunction = new ExpressionBuilder();
 
             for (Expression e : model.getItemInputMap().values()){
-                objectiveFunction = objectiveFunction.subtract(e);
+                objectiveFunction.subtract(e);
             }
 
-            return Collections.singletonList(objectiveFunction);
+            return Collections.singletonList(objectiveFunction.build());
         }
     },
     MIN_RESOURCE_SCARCITY{
@@ -157,7 +155,7 @@ public enum OptimizationTarget
         List<? extends Expression> getObjectiveFunctions(OptimizationModel model)
         {
             Map<String, Long> limits = SatisfactoryData.getResourceExtractionLimits();
-            Expression objectiveFunction = Expression.zero();
+            ExpressionBuilder objectiveFunction = new ExpressionBuilder();
 
             for (var entry : model.getItemInputMap().entrySet()){
                 Item item = entry.getKey();
@@ -166,42 +164,42 @@ public enum OptimizationTarget
                 Long l = limits.get(item.getName());
 
                 if (l != null){
-                    objectiveFunction = objectiveFunction.subtract(expression.divide(l));
+                    objectiveFunction.subtract(BigFraction.one().divide(l), expression);
                 }
             }
 
-            return Collections.singletonList(objectiveFunction);
+            return Collections.singletonList(objectiveFunction.build());
         }
     },
     MIN_BYPRODUCTS{
         @Override
         List<? extends Expression> getObjectiveFunctions(OptimizationModel model)
         {
-            Expression objectiveFunction = Expression.zero();
+            ExpressionBuilder objectiveFunction = new ExpressionBuilder();
 
             for (Expression e : model.getItemSurplusMap().values()){
-                objectiveFunction = objectiveFunction.subtract(e);
+                objectiveFunction.subtract(e);
             }
 
-            return Collections.singletonList(objectiveFunction);
+            return Collections.singletonList(objectiveFunction.build());
         }
     },
     MAX_SINK_POINTS{
         @Override
         List<? extends Expression> getObjectiveFunctions(OptimizationModel model)
         {
-            Expression objective = Expression.zero();
+            ExpressionBuilder objective = new ExpressionBuilder();
 
             for (var entry : model.getItemSurplusMap().entrySet()){
                 Item item = entry.getKey();
                 Expression expression = entry.getValue();
 
                 if (item.getMatterState() == MatterState.SOLID && item.getSinkValue() > 0){
-                    objective = objective.add(expression.multiply(item.getSinkValue()));
+                    objective.add(item.getSinkValue(), expression);
                 }
             }
 
-            return Collections.singletonList(objective);
+            return Collections.singletonList(objective.build());
         }
     };
 
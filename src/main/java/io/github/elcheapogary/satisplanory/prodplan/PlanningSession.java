@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.prodplan;
+
+import io.github.elcheapogary.satisplanory.lp.InfeasibleSolutionException;
+import io.github.elcheapogary.satisplanory.lp.SolverSession;
+import io.github.elcheapogary.satisplanory.lp.UnboundedSolutionException;
+import io.github.elcheapogary.satisplanory.model.Item;
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Plans with a {@link ProductionPlanner}, keeping the solved model around so that the plan can be recalculated
+ * quickly after input item amounts or minimum output amounts change.
+ * <p>
+ * Any other change, like adding or removing items or recipes, changes the model itself, and needs a new session.
+ */
+public class PlanningSession
+{
+    private final ProductionPlanner.PlanModel planModel;
+    private final SolverSession solverSession;
+    private ProductionPlanner productionPlanner;
+
+    PlanningSession(ProductionPlanner productionPlanner)
+    {
+        this.productionPlanner = productionPlanner;
+        this.planModel = productionPlanner.createPlanModel();
+        this.solverSession = planModel.model().createSession(planModel.objectiveFunctions());
+    }
+
+    public ProductionPlan createPlan()
+            throws ProductionPlanNotFeatisbleException, InterruptedException, ProductionPlanInternalException
+    {
+        try {
+            return planModel.createProductionPlan(solverSession.maximize());
+        }catch (InfeasibleSolutionException e){
+            throw new ProductionPlanNotFeatisbleException(e, InfeasibilityCertificate.create(planModel, e.getCertificate()));
+        }catch (UnboundedSolutionException e){
+            throw new ProductionPlanInternalException(e);
+        }
+    }
+
+    /**
+     * Returns the planner this session currently plans for.
+     */
+    public ProductionPlanner getProductionPlanner()
+    {
+        return productionPlanner;
+    }
+
+    /**
+     * Switches this session to the specified planner, if it only differs from the current one in input item amounts
+     * and minimum output amounts.
+     *
+     * @return {@code false}, without changing anything, if the planners differ in any other way.
+     */
+    public boolean update(ProductionPlanner productionPlanner)
+    {
+        if (!this.productionPlanner.differsOnlyInAmounts(productionPlanner)){
+            return false;
+        }
+
+        for (Map.Entry<Item, BigFraction> entry : productionPlanner.getInputItems().entrySet()){
+            if (!entry.getValue().equals(this.productionPlanner.getInputItems().get(entry.getKey()))){
+                solverSession.setBounds(planModel.itemInputMap().get(entry.getKey()), BigFraction.zero(), entry.getValue());
+            }
+        }
+
+        for (Item item : productionPlanner.getOutputItems()){
+            BigFraction minimum = Objects.requireNonNullElse(productionPlanner.getOutputItemMinimumPerMinute(item), BigFraction.zero());
+            if (!minimum.equals(Objects.requireNonNullElse(this.productionPlanner.getOutputItemMinimumPerMinute(item), BigFraction.zero()))){
+                solverSession.setRightHandSide(planModel.outputRequirementConstraintMap().get(item), minimum);
+            }
+        }
+
+        this.productionPlanner = productionPlanner;
+
+        return true;
+    }
+}
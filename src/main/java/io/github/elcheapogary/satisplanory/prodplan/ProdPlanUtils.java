@@ -10,6 +10,7 @@
 
 package io.github.elcheapogary.satisplanory.prodplan;
 
+import io.github.elcheapogary.satisplanory.lp.CancellationToken;
 import io.github.elcheapogary.satisplanory.model.GameData;
 import io.github.elcheapogary.satisplanory.model.Item;
 import io.github.elcheapogary.satisplanory.model.Recipe;
@@ -17,10 +18,20 @@ import io.github.elcheapogary.satisplanory.satisfactory.SatisfactoryData;
 import io.github.elcheapogary.satisplanory.util.BigFraction;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ProdPlanUtils
 {
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService SPECULATIVE_EXECUTOR = Executors.newCachedThreadPool(ProdPlanUtils::createThread);
+
     private ProdPlanUtils()
     {
     }
@@ -43,70 +54,239 @@ public class ProdPlanUtils
             throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
     {
         ProductionPlan unmodifiedPlan = null;
-        ProductionPlan planWithAllItems = null;
-        ProductionPlan planWithAllRecipes = null;
-        ProductionPlan planWithAllItemsAndRecipes = null;
+        ProductionPlanNotFeatisbleException notFeasibleException = null;
 
         try {
             unmodifiedPlan = planner.createPlan();
-        }catch (ProductionPlanNotFeatisbleException ignore){
+        }catch (ProductionPlanNotFeatisbleException e){
+            notFeasibleException = e;
         }
 
-        if (unmodifiedPlan == null){
-            {
-                ProductionPlanner.Builder pb = planner.toBuilder();
+        return getMultiPlan(gameData, planner, unmodifiedPlan, notFeasibleException);
+    }
 
-                removeMaximizeWeights(planner, pb);
+    /**
+     * Like {@link #getMultiPlan(GameData, ProductionPlanner)}, but creates the unmodified plan with the session, which
+     * is quick if only amounts changed since it last planned.
+     */
+    public static MultiPlan getMultiPlan(GameData gameData, PlanningSession session)
+            throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
+    {
+        ProductionPlan unmodifiedPlan = null;
+        ProductionPlanNotFeatisbleException notFeasibleException = null;
 
-                for (var entry : SatisfactoryData.getResourceExtractionLimits().entrySet()){
-                    gameData.getItemByName(entry.getKey())
-                            .ifPresent(item -> pb.addInputItem(item, entry.getValue()));
-                }
+        try {
+            unmodifiedPlan = session.createPlan();
+        }catch (ProductionPlanNotFeatisbleException e){
+            notFeasibleException = e;
+        }
 
-                gameData.getItemByName("Water")
-                        .ifPresent(item -> pb.addInputItem(item, Long.MAX_VALUE));
+        return getMultiPlan(gameData, session.getProductionPlanner(), unmodifiedPlan, notFeasibleException);
+    }
 
-                try {
-                    planWithAllItems = pb.build().createPlan();
-                }catch (ProductionPlanNotFeatisbleException ignore){
-                }
+    /**
+     * Like {@link #getMultiPlan(GameData, ProductionPlanner)}, but starts on the plans with all items, with all
+     * recipes, and with both, on other threads while it creates the unmodified plan, instead of only after the
+     * unmodified plan turned out not to be feasible. Each of them is cancelled as soon as it is clear that it is not
+     * needed, so an unmodified plan that is not feasible takes about as long as the slowest of the plans that are
+     * needed, instead of all of them one after the other. There is one of them on another thread for each processor
+     * after the first, which is left for the unmodified plan, and the rest are planned after it, like
+     * {@link #getMultiPlan(GameData, ProductionPlanner)} does.
+     */
+    public static MultiPlan getMultiPlanSpeculatively(GameData gameData, ProductionPlanner planner)
+            throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
+    {
+        return getMultiPlanSpeculatively(gameData, planner, planner::createPlan, getSpeculativeThreads());
+    }
+
+    /*
+     * Like getMultiPlanSpeculatively(GameData, ProductionPlanner), but with the number of plans that are started on
+     * other threads given, for tests that run on a single processor.
+     */
+    static MultiPlan getMultiPlanSpeculatively(GameData gameData, ProductionPlanner planner, int speculativeThreads)
+            throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
+    {
+        return getMultiPlanSpeculatively(gameData, planner, planner::createPlan, speculativeThreads);
+    }
+
+    /**
+     * Like {@link #getMultiPlanSpeculatively(GameData, ProductionPlanner)}, but creates the unmodified plan with the
+     * session, on the calling thread.
+     */
+    public static MultiPlan getMultiPlanSpeculatively(GameData gameData, PlanningSession session)
+            throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
+    {
+        return getMultiPlanSpeculatively(gameData, session.getProductionPlanner(), session::createPlan, getSpeculativeThreads());
+    }
+
+    private static MultiPlan getMultiPlanSpeculatively(GameData gameData, ProductionPlanner planner, UnmodifiedPlanSupplier unmodifiedPlanSupplier, int speculativeThreads)
+            throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
+    {
+        SpeculativePlan allItems = new SpeculativePlan(createAllItemsPlanner(gameData, planner));
+        SpeculativePlan allRecipes = new SpeculativePlan(createAllRecipesPlanner(gameData, planner));
+        SpeculativePlan allItemsAndRecipes = new SpeculativePlan(createAllItemsAndRecipesPlanner(gameData, planner));
+        List<SpeculativePlan> speculativePlans = List.of(allItems, allRecipes, allItemsAndRecipes);
+
+        try {
+            for (int i = 0; i < Math.min(speculativePlans.size(), speculativeThreads); i++){
+                speculativePlans.get(i).start();
+            }
+
+            /*
+             * The plan with all items and recipes is only used if neither of the others is feasible, whichever of
+             * them finishes first.
+             */
+            allItems.whenFeasible(allItemsAndRecipes::cancel);
+            allRecipes.whenFeasible(allItemsAndRecipes::cancel);
+
+            ProductionPlan unmodifiedPlan = null;
+            ProductionPlanNotFeatisbleException notFeasibleException = null;
+            InfeasibilityCertificate certificate = null;
+
+            try {
+                unmodifiedPlan = unmodifiedPlanSupplier.createPlan();
+            }catch (ProductionPlanNotFeatisbleException e){
+                notFeasibleException = e;
+                certificate = e.getCertificate();
             }
-            {
-                ProductionPlanner.Builder pb = planner.toBuilder();
 
-                pb.addRecipes(gameData.getRecipes());
+            if (unmodifiedPlan != null){
+                return new MultiPlan(planner, unmodifiedPlan, null, null, null, null);
+            }
 
-                try {
-                    planWithAllRecipes = pb.build().createPlan();
-                }catch (ProductionPlanNotFeatisbleException ignore){
+            for (SpeculativePlan speculativePlan : speculativePlans){
+                speculativePlan.cancelIfProvenInfeasible(certificate);
+            }
+
+            ProductionPlan planWithAllItems = allItems.getPlan();
+            ProductionPlan planWithAllRecipes = allRecipes.getPlan();
+            ProductionPlan planWithAllItemsAndRecipes = null;
+
+            if (planWithAllItems == null && planWithAllRecipes == null){
+                planWithAllItemsAndRecipes = allItemsAndRecipes.getPlan();
+
+                if (planWithAllItemsAndRecipes == null){
+                    /*
+                     * If the certificate of the unmodified plan proved this one infeasible too, the exception of the
+                     * unmodified plan is the one with the certificate.
+                     */
+                    ProductionPlanNotFeatisbleException e = allItemsAndRecipes.getNotFeasibleException();
+                    throw e == null ? notFeasibleException : e;
                 }
             }
 
+            return new MultiPlan(planner, null, planWithAllItems, planWithAllRecipes, planWithAllItemsAndRecipes, certificate);
+        }finally{
+            for (SpeculativePlan speculativePlan : speculativePlans){
+                speculativePlan.cancel();
+            }
+        }
+    }
+
+    /*
+     * One for each processor after the first, which is left for the unmodified plan.
+     */
+    private static int getSpeculativeThreads()
+    {
+        return Runtime.getRuntime().availableProcessors() - 1;
+    }
+
+    private static Thread createThread(Runnable runnable)
+    {
+        Thread thread = new Thread(runnable, "multi-plan-" + THREAD_COUNT.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /*
+     * The certificate that proved the unmodified plan infeasible, if any, often proves some of the other planners
+     * infeasible too: adding recipes does not help if an input is what is missing, and adding inputs does not help if
+     * a recipe is. Checking it is much cheaper than solving their models.
+     */
+    private static ProductionPlan createPlan(ProductionPlanner planner, InfeasibilityCertificate certificate)
+            throws ProductionPlanInternalException, InterruptedException
+    {
+        if (certificate != null && certificate.provesInfeasible(planner)){
+            return null;
+        }
+
+        try {
+            return planner.createPlan();
+        }catch (ProductionPlanNotFeatisbleException ignore){
+            return null;
+        }
+    }
+
+    private static ProductionPlanner createAllItemsPlanner(GameData gameData, ProductionPlanner planner)
+    {
+        ProductionPlanner.Builder pb = planner.toBuilder();
+
+        removeMaximizeWeights(planner, pb);
+        addAllItems(gameData, pb);
+
+        return pb.build();
+    }
+
+    private static ProductionPlanner createAllRecipesPlanner(GameData gameData, ProductionPlanner planner)
+    {
+        ProductionPlanner.Builder pb = planner.toBuilder();
+
+        pb.addRecipes(gameData.getRecipes());
+
+        return pb.build();
+    }
+
+    private static ProductionPlanner createAllItemsAndRecipesPlanner(GameData gameData, ProductionPlanner planner)
+    {
+        ProductionPlanner.Builder pb = planner.toBuilder();
+
+        removeMaximizeWeights(planner, pb);
+        addAllItems(gameData, pb);
+        pb.addRecipes(gameData.getRecipes());
+
+        return pb.build();
+    }
+
+    private static void addAllItems(GameData gameData, ProductionPlanner.Builder pb)
+    {
+        for (var entry : SatisfactoryData.getResourceExtractionLimits().entrySet()){
+            gameData.getItemByName(entry.getKey())
+                    .ifPresent(item -> pb.addInputItem(item, entry.getValue()));
+        }
+
+        gameData.getItemByName("Water")
+                .ifPresent(item -> pb.addInputItem(item, Long.MAX_VALUE));
+    }
+
+    private static MultiPlan getMultiPlan(GameData gameData, ProductionPlanner planner, ProductionPlan unmodifiedPlan, ProductionPlanNotFeatisbleException notFeasibleException)
+            throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
+    {
+        InfeasibilityCertificate certificate = notFeasibleException == null ? null : notFeasibleException.getCertificate();
+        ProductionPlan planWithAllItems = null;
+        ProductionPlan planWithAllRecipes = null;
+        ProductionPlan planWithAllItemsAndRecipes = null;
+
+        if (unmodifiedPlan == null){
+            planWithAllItems = createPlan(createAllItemsPlanner(gameData, planner), certificate);
+            planWithAllRecipes = createPlan(createAllRecipesPlanner(gameData, planner), certificate);
+
             /*
              * We only add a plan with all recipes and all input items if we have no other plan
              * This is like asking "Is it possible to create these required output items at all in this game?"
              * The answer is mostly "yes", and is only actually useful if we have no other plan.
              */
             if (planWithAllItems == null && planWithAllRecipes == null){
-                ProductionPlanner.Builder pb = planner.toBuilder();
+                ProductionPlanner allItemsAndRecipesPlanner = createAllItemsAndRecipesPlanner(gameData, planner);
 
-                removeMaximizeWeights(planner, pb);
-
-                for (var entry : SatisfactoryData.getResourceExtractionLimits().entrySet()){
-                    gameData.getItemByName(entry.getKey())
-                            .ifPresent(item -> pb.addInputItem(item, entry.getValue()));
+                if (certificate != null && certificate.provesInfeasible(allItemsAndRecipesPlanner)){
+                    throw notFeasibleException;
                 }
 
-                gameData.getItemByName("Water")
-                        .ifPresent(item -> pb.addInputItem(item, Long.MAX_VALUE));
-
-                pb.addRecipes(gameData.getRecipes());
-
-                planWithAllItemsAndRecipes = pb.build().createPlan();
+                planWithAllItemsAndRecipes = allItemsAndRecipesPlanner.createPlan();
             }
         }
 
-        return new MultiPlan(planner, unmodifiedPlan, planWithAllItems, planWithAllRecipes, planWithAllItemsAndRecipes);
+        return new MultiPlan(planner, unmodifiedPlan, planWithAllItems, planWithAllRecipes, planWithAllItemsAndRecipes, certificate);
     }
 
     static Collection<? extends Recipe> getRecipesWeCanBuild(Collection<? extends Recipe> recipes, Collection<? extends Item> inputItems)
@@ -161,4 +341,123 @@ public class ProdPlanUtils
             }
         }
     }
+
+    /*
+     * A plan that is either started on another thread before it is known to be needed, or planned on the calling
+     * thread when it is asked for.
+     */
+    private static class SpeculativePlan
+    {
+        private final ProductionPlanner planner;
+        private final CancellationToken cancellationToken = new CancellationToken();
+        /*
+         * Completes with null if the plan is not feasible. Null if the plan was not started on another thread.
+         */
+        private CompletableFuture<ProductionPlan> future;
+        private boolean provenInfeasible = false;
+        /*
+         * Why the plan is not feasible, if it was planned and is not. Set before the future completes.
+         */
+        private ProductionPlanNotFeatisbleException notFeasibleException;
+
+        SpeculativePlan(ProductionPlanner planner)
+        {
+            this.planner = planner;
+        }
+
+        void start()
+        {
+            future = CompletableFuture.supplyAsync(() -> {
+                if (cancellationToken.isCancelled()){
+                    throw new CompletionException(new InterruptedException());
+                }
+
+                try {
+                    return planner.createPlan(cancellationToken);
+                }catch (ProductionPlanNotFeatisbleException e){
+                    notFeasibleException = e;
+                    return null;
+                }catch (ProductionPlanInternalException | InterruptedException e){
+                    throw new CompletionException(e);
+                }
+            }, SPECULATIVE_EXECUTOR);
+        }
+
+        void whenFeasible(Runnable action)
+        {
+            if (future != null){
+                future.thenAccept(plan -> {
+                    if (plan != null){
+                        action.run();
+                    }
+                });
+            }
+        }
+
+        void cancel()
+        {
+            cancellationToken.cancel();
+        }
+
+        void cancelIfProvenInfeasible(InfeasibilityCertificate certificate)
+        {
+            if (certificate != null && certificate.provesInfeasible(planner)){
+                provenInfeasible = true;
+                cancel();
+            }
+        }
+
+        /*
+         * Returns null if the plan is not feasible.
+         */
+        ProductionPlan getPlan()
+                throws ProductionPlanInternalException, InterruptedException
+        {
+            if (provenInfeasible){
+                return null;
+            }
+
+            if (future == null){
+                try {
+                    return planner.createPlan();
+                }catch (ProductionPlanNotFeatisbleException e){
+                    notFeasibleException = e;
+                    return null;
+                }
+            }
+
+            try {
+                return future.get();
+            }catch (ExecutionException e){
+                Throwable cause = e.getCause();
+
+                if (cause instanceof ProductionPlanInternalException internalException){
+                    throw internalException;
+                }else if (cause instanceof InterruptedException interruptedException){
+                    throw interruptedException;
+                }else if (cause instanceof RuntimeException runtimeException){
+                    throw runtimeException;
+                }else if (cause instanceof Error error){
+                    throw error;
+                }
+
+                throw new ProductionPlanInternalException(cause);
+            }
+        }
+
+        /*
+         * The exception the plan was not feasible with, after getPlan() returned null. Null if the plan was proven
+         * infeasible without planning it.
+         */
+        ProductionPlanNotFeatisbleException getNotFeasibleException()
+        {
+            return notFeasibleException;
+        }
+    }
+
+    private interface UnmodifiedPlanSupplier
+    {
+        ProductionPlan createPlan()
+                throws ProductionPlanNotFeatisbleException, InterruptedException, ProductionPlanInternalException;
+    }
 }
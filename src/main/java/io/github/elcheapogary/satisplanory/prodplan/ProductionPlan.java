@@ -10,6 +10,7 @@
 
 package io.github.elcheapogary.satisplanory.prodplan;
 
+import io.github.elcheapogary.satisplanory.lp.SolverStatistics;
 import io.github.elcheapogary.satisplanory.model.Item;
 import io.github.elcheapogary.satisplanory.model.Recipe;
 import io.github.elcheapogary.satisplanory.prodplan.graph.data.InputItemNodeData;
@@ -20,6 +21,7 @@ import io.github.elcheapogary.satisplanory.prodplan.graph.data.RecipeNodeData;
 import io.github.elcheapogary.satisplanory.prodplan.graph.lib.Graph;
 import io.github.elcheapogary.satisplanory.prodplan.graph.lib.Node;
 import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -32,12 +34,21 @@ public class ProductionPlan
     private final Map<Recipe, BigFraction> recipeAmounts;
     private final Map<Item, BigFraction> inputItemAmounts;
     private final Map<Item, BigFraction> outputItemAmounts;
+    private final BigFraction relativeGap;
+    private final SolverStatistics solverStatistics;
 
     public ProductionPlan(Map<Recipe, BigFraction> recipeAmounts, Map<Item, BigFraction> inputItemAmounts, Map<Item, BigFraction> outputItemAmounts)
+    {
+        this(recipeAmounts, inputItemAmounts, outputItemAmounts, BigFraction.zero(), null);
+    }
+
+    public ProductionPlan(Map<Recipe, BigFraction> recipeAmounts, Map<Item, BigFraction> inputItemAmounts, Map<Item, BigFraction> outputItemAmounts, BigFraction relativeGap, SolverStatistics solverStatistics)
     {
         this.recipeAmounts = recipeAmounts;
         this.inputItemAmounts = inputItemAmounts;
         this.outputItemAmounts = outputItemAmounts;
+        this.relativeGap = relativeGap;
+        this.solverStatistics = solverStatistics;
     }
 
     public Collection<? extends Item> getInputItems()
@@ -70,6 +81,28 @@ public class ProductionPlan
         return recipeAmounts.keySet();
     }
 
+    /**
+     * How much better, relative to this plan, the best plan could be, if planning stopped at its time limit before it
+     * could prove this plan the best. See {@link ProductionPlanner.Builder#setTimeLimit(Duration)}.
+     */
+    public BigFraction getRelativeGap()
+    {
+        return relativeGap;
+    }
+
+    /**
+     * What the solver did to find this plan, or {@code null} if the plan was not made by a {@link ProductionPlanner}.
+     */
+    public SolverStatistics getSolverStatistics()
+    {
+        return solverStatistics;
+    }
+
+    public boolean isOptimal()
+    {
+        return relativeGap.signum() == 0;
+    }
+
     public Graph<ProdPlanNodeData, ProdPlanEdgeData> toGraph()
     {
         Graph<ProdPlanNodeData, ProdPlanEdgeData> graph = new Graph<>();
@@ -13,6 +13,8 @@ package io.github.elcheapogary.satisplanory.prodplan;
 public class ProductionPlanNotFeatisbleException
     extends Exception
 {
+    private InfeasibilityCertificate certificate;
+
     public ProductionPlanNotFeatisbleException()
     {
     }
@@ -31,4 +33,18 @@ public class ProductionPlanNotFeatisbleException
     {
         super(cause);
     }
+
+    ProductionPlanNotFeatisbleException(Throwable cause, InfeasibilityCertificate certificate)
+    {
+        super(cause);
+        this.certificate = certificate;
+    }
+
+    /*
+     * Null if the solver found no certificate.
+     */
+    InfeasibilityCertificate getCertificate()
+    {
+        return certificate;
+    }
 }
@@ -10,19 +10,24 @@
 
 package io.github.elcheapogary.satisplanory.prodplan;
 
+import io.github.elcheapogary.satisplanory.lp.CancellationToken;
+import io.github.elcheapogary.satisplanory.lp.Constraint;
 import io.github.elcheapogary.satisplanory.lp.Expression;
+import io.github.elcheapogary.satisplanory.lp.ExpressionBuilder;
 import io.github.elcheapogary.satisplanory.lp.InfeasibleSolutionException;
 import io.github.elcheapogary.satisplanory.lp.Model;
 import io.github.elcheapogary.satisplanory.lp.OptimizationResult;
+import io.github.elcheapogary.satisplanory.lp.SolverOptions;
 import io.github.elcheapogary.satisplanory.lp.UnboundedSolutionException;
 import io.github.elcheapogary.satisplanory.model.Item;
 import io.github.elcheapogary.satisplanory.model.MatterState;
 import io.github.elcheapogary.satisplanory.model.Recipe;
 import io.github.elcheapogary.satisplanory.util.BigFraction;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +44,7 @@ public class ProductionPlanner
     private final boolean strictMaximizeRatios;
     private final List<OptimizationTarget> optimizationTargets;
     private final boolean filterRecipesByOutputItems;
+    private final Duration timeLimit;
 
     protected ProductionPlanner(Builder builder)
     {
@@ -48,6 +54,7 @@ public class ProductionPlanner
         this.strictMaximizeRatios = builder.strictMaximizeRatios;
         this.optimizationTargets = List.copyOf(builder.optimizationTargets);
         this.filterRecipesByOutputItems = builder.filterRecipesByOutputItems;
+        this.timeLimit = builder.timeLimit;
     }
 
     private static void filterRecipesAndItems(Collection<? extends Recipe> recipes, Collection<? extends Item> inputItems, Collection<? extends Item> outputItems, Collection<? super Recipe> filteredRecipes, Collection<? super Item> filteredItems)
@@ -68,20 +75,21 @@ public class ProductionPlanner
 
         List<Item> todoItems = new LinkedList<>(shitWeNeed);
 
-        Set<Recipe> unaddedRecipes = Recipe.createSet(recipes);
+        Map<Item, List<Recipe>> recipesByProduct = Item.createMap();
+
+        for (Recipe recipe : recipes){
+            for (Recipe.RecipeItem ri : recipe.getProducts()){
+                recipesByProduct.computeIfAbsent(ri.getItem(), item -> new ArrayList<>()).add(recipe);
+            }
+        }
+
         Set<Recipe> retv = Recipe.createSet();
 
         while (!todoItems.isEmpty()){
             Item item = todoItems.remove(0);
 
-            for (Iterator<Recipe> it = unaddedRecipes.iterator(); it.hasNext(); ){
-                Recipe recipe = it.next();
-
-                if (recipe.producesItem(item)){
-                    it.remove();
-
-                    retv.add(recipe);
-
+            for (Recipe recipe : recipesByProduct.getOrDefault(item, Collections.emptyList())){
+                if (retv.add(recipe)){
                     for (Recipe.RecipeItem ri : recipe.getIngredients()){
                         if (seenItems.add(ri.getItem())){
                             todoItems.add(ri.getItem());
@@ -112,6 +120,36 @@ public class ProductionPlanner
 
     public ProductionPlan createPlan()
             throws ProductionPlanNotFeatisbleException, InterruptedException, ProductionPlanInternalException
+    {
+        return createPlan(CancellationToken.forCurrentThread());
+    }
+
+    /**
+     * Like {@link #createPlan()}, but can also be cancelled from other threads, with the specified token.
+     *
+     * @throws InterruptedException if the token is cancelled before the plan is done.
+     */
+    public ProductionPlan createPlan(CancellationToken cancellationToken)
+            throws ProductionPlanNotFeatisbleException, InterruptedException, ProductionPlanInternalException
+    {
+        PlanModel planModel = createPlanModel();
+
+        OptimizationResult result;
+
+        try {
+            result = planModel.model().maximize(planModel.objectiveFunctions(), new SolverOptions.Builder()
+                    .setMaxTime(timeLimit)
+                    .build(), cancellationToken);
+        }catch (InfeasibleSolutionException e){
+            throw new ProductionPlanNotFeatisbleException(e, InfeasibilityCertificate.create(planModel, e.getCertificate()));
+        }catch (UnboundedSolutionException e){
+            throw new ProductionPlanInternalException(e);
+        }
+
+        return planModel.createProductionPlan(result);
+    }
+
+    PlanModel createPlanModel()
     {
         Set<Recipe> recipes = Recipe.createSet();
         Set<Item> items = Item.createSet();
@@ -133,60 +171,60 @@ public class ProductionPlanner
         Map<Item, Expression> itemOutputMap = Item.createMap();
         Map<Item, Expression> itemInputMap = Item.createMap();
         Map<Recipe, Expression> recipeMap = Recipe.createMap();
+        Map<Item, Constraint> itemBalanceConstraintMap = Item.createMap();
 
         {
             /*
              * This expression is non-negative because it is non-negative for recipe variables that are all non-negative
              */
-            Map<Item, Expression> itemsProducedExpressionMap = Item.createMap();
+            Map<Item, ExpressionBuilder> itemsProducedExpressionMap = Item.createMap();
             /*
              * This expression is non-negative because it is non-negative for recipe variables that are all non-negative
              */
-            Map<Item, Expression> itemsConsumedExpressionMap = Item.createMap();
+            Map<Item, ExpressionBuilder> itemsConsumedExpressionMap = Item.createMap();
 
             for (Recipe recipe : recipes){
                 Expression recipeVariable = model.addVariable("Recipe: " + recipe.getName());
                 recipeMap.put(recipe, recipeVariable);
 
                 for (Recipe.RecipeItem ri : recipe.getIngredients()){
-                    itemsConsumedExpressionMap.compute(ri.getItem(), (item, expression) ->
-                            Objects.requireNonNullElse(expression, Expression.zero())
-                                    .add(recipeVariable.multiply(ri.getAmount().getAmountPerMinute()))
-                    );
+                    itemsConsumedExpressionMap.computeIfAbsent(ri.getItem(), item -> new ExpressionBuilder())
+                            .add(ri.getAmount().getAmountPerMinute(), recipeVariable);
                 }
 
                 for (Recipe.RecipeItem ri : recipe.getProducts()){
-                    itemsProducedExpressionMap.compute(ri.getItem(), (item, expression) ->
-                            Objects.requireNonNullElse(expression, Expression.zero())
-                                    .add(recipeVariable.multiply(ri.getAmount().getAmountPerMinute()))
-                    );
+                    itemsProducedExpressionMap.computeIfAbsent(ri.getItem(), item -> new ExpressionBuilder())
+                            .add(ri.getAmount().getAmountPerMinute(), recipeVariable);
                 }
             }
 
             for (Item item : items){
-                Expression consumed = Objects.requireNonNullElse(itemsConsumedExpressionMap.get(item), Expression.zero());
-                Expression produced = Objects.requireNonNullElse(itemsProducedExpressionMap.get(item), Expression.zero());
+                Expression consumed = Objects.requireNonNullElseGet(itemsConsumedExpressionMap.get(item), ExpressionBuilder::new).build();
+                Expression produced = Objects.requireNonNullElseGet(itemsProducedExpressionMap.get(item), ExpressionBuilder::new).build();
 
                 Expression input = Expression.zero();
 
                 {
                     BigFraction inputAmountPerMinute = inputItems.get(item);
                     if (inputAmountPerMinute != null){
-                        input = model.addVariable("Input: " + item.getName());
+                        input = model.addVariable("Input: " + item.getName(), BigFraction.zero(), inputAmountPerMinute);
                         itemInputMap.put(item, input);
-                        model.addConstraint(input.lte(inputAmountPerMinute));
                     }
                 }
 
                 Expression output = model.addVariable("Output: " + item.getName());
                 itemOutputMap.put(item, output);
 
-                model.addConstraint(output.subtract(input).eq(produced.subtract(consumed)));
+                Constraint balanceConstraint = output.subtract(input).eq(produced.subtract(consumed));
+                model.addConstraint(balanceConstraint);
+                itemBalanceConstraintMap.put(item, balanceConstraint);
             }
         }
 
         Map<Item, Expression> itemSurplusMap = Item.createMap();
         Map<Item, BigFraction> itemMaximizeWeightsMap = Item.createMap();
+        Map<Item, Constraint> outputRequirementConstraintMap = Item.createMap();
+        Map<Item, Constraint> outputConstraintMap = Item.createMap();
 
         for (Item item : items){
             BigFraction min = BigFraction.zero();
@@ -205,16 +243,29 @@ public class ProductionPlanner
                 weight = BigFraction.zero();
             }
 
+            /*
+             * Every output requirement gets a constraint with the minimum as its right hand side, even if the minimum
+             * is zero, so that a planning session can change it without changing the model.
+             */
             Expression itemSurplus;
+            Constraint outputRequirementConstraint = null;
 
             if (item.getMatterState() != MatterState.SOLID && weight.signum() == 0){
                 itemSurplus = Expression.zero();
-                model.addConstraint(itemOutputMap.get(item).eq(min));
-            }else if (min.signum() == 0){
+                outputRequirementConstraint = itemOutputMap.get(item).eq(min);
+            }else if (outputRequirement == null){
                 itemSurplus = itemOutputMap.get(item);
             }else{
                 itemSurplus = model.addVariable("Surplus: " + item.getName());
-                model.addConstraint(itemSurplus.eq(itemOutputMap.get(item).subtract(min)));
+                outputRequirementConstraint = itemOutputMap.get(item).subtract(itemSurplus).eq(min);
+            }
+
+            if (outputRequirementConstraint != null){
+                model.addConstraint(outputRequirementConstraint);
+                outputConstraintMap.put(item, outputRequirementConstraint);
+                if (outputRequirement != null){
+                    outputRequirementConstraintMap.put(item, outputRequirementConstraint);
+                }
             }
 
             itemSurplusMap.put(item, itemSurplus);
@@ -237,30 +288,49 @@ public class ProductionPlanner
         }
 
         {
-            Expression minimizeAllRecipes = Expression.zero();
+            ExpressionBuilder minimizeAllRecipes = new ExpressionBuilder();
 
             for (Expression e : recipeMap.values()){
-                minimizeAllRecipes = minimizeAllRecipes.subtract(e);
+                minimizeAllRecipes.subtract(e);
             }
 
-            objectiveFunctions.add(minimizeAllRecipes);
+            objectiveFunctions.add(minimizeAllRecipes.build());
         }
 
-        OptimizationResult result;
+        return new PlanModel(model, objectiveFunctions, recipeMap, itemInputMap, itemOutputMap, outputRequirementConstraintMap, itemBalanceConstraintMap, outputConstraintMap);
+    }
 
-        try {
-            result = model.maximize(objectiveFunctions);
-        }catch (InfeasibleSolutionException e){
-            throw new ProductionPlanNotFeatisbleException(e);
-        }catch (UnboundedSolutionException e){
-            throw new ProductionPlanInternalException(e);
+    /**
+     * Creates a session that plans with this planner, and can plan again quickly after input item amounts or minimum
+     * output amounts change. See {@link PlanningSession}.
+     */
+    public PlanningSession createSession()
+    {
+        return new PlanningSession(this);
+    }
+
+    /*
+     * Whether the model for the other planner only differs from ours in the bounds of input variables and the right
+     * hand sides of output requirement constraints.
+     */
+    boolean differsOnlyInAmounts(ProductionPlanner other)
+    {
+        if (!recipes.equals(other.recipes)
+                || !optimizationTargets.equals(other.optimizationTargets)
+                || strictMaximizeRatios != other.strictMaximizeRatios
+                || filterRecipesByOutputItems != other.filterRecipesByOutputItems
+                || !inputItems.keySet().equals(other.inputItems.keySet())
+                || !outputRequirements.keySet().equals(other.outputRequirements.keySet())){
+            return false;
         }
 
-        return new ProductionPlan(
-                getVariableValues(recipeMap, Recipe::createMap, result),
-                getVariableValues(itemInputMap, Item::createMap, result),
-                getVariableValues(itemOutputMap, Item::createMap, result)
-        );
+        for (var entry : outputRequirements.entrySet()){
+            if (!Objects.equals(entry.getValue().maximizeWeight(), other.outputRequirements.get(entry.getKey()).maximizeWeight())){
+                return false;
+            }
+        }
+
+        return true;
     }
 
     public Map<Item, BigFraction> getInputItems()
@@ -301,6 +371,7 @@ public class ProductionPlanner
         private final List<OptimizationTarget> optimizationTargets = new LinkedList<>();
         private boolean strictMaximizeRatios = false;
         private boolean filterRecipesByOutputItems = true;
+        private Duration timeLimit = null;
 
         public Builder()
         {
@@ -314,6 +385,7 @@ public class ProductionPlanner
             this.strictMaximizeRatios = planner.strictMaximizeRatios;
             this.optimizationTargets.addAll(planner.optimizationTargets);
             this.filterRecipesByOutputItems = planner.filterRecipesByOutputItems;
+            this.timeLimit = planner.timeLimit;
         }
 
         public Builder addInputItem(Item item, long itemsPerMinute)
@@ -447,9 +519,38 @@ public class ProductionPlanner
             this.strictMaximizeRatios = strictMaximizeRatios;
             return this;
         }
+
+        /**
+         * Limits the time {@link ProductionPlanner#createPlan()} spends looking for a better plan once it has found one, see
+         * {@link SolverOptions#getMaxTime()}. A plan that is returned before it is proven the best says so in
+         * {@link ProductionPlan#getRelativeGap()}. {@code null}, the default, means no limit.
+         */
+        public Builder setTimeLimit(Duration timeLimit)
+        {
+            this.timeLimit = timeLimit;
+            return this;
+        }
     }
 
     private record OutputRequirement(BigFraction itemsPerMinute, BigFraction maximizeWeight)
     {
     }
+
+    /*
+     * outputConstraintMap has the output constraints of all items that have one, including the ones for fluids
+     * without an output requirement.
+     */
+    record PlanModel(Model model, List<Expression> objectiveFunctions, Map<Recipe, Expression> recipeMap, Map<Item, Expression> itemInputMap, Map<Item, Expression> itemOutputMap, Map<Item, Constraint> outputRequirementConstraintMap, Map<Item, Constraint> itemBalanceConstraintMap, Map<Item, Constraint> outputConstraintMap)
+    {
+        public ProductionPlan createProductionPlan(OptimizationResult result)
+        {
+            return new ProductionPlan(
+                    getVariableValues(recipeMap, Recipe::createMap, result),
+                    getVariableValues(itemInputMap, Item::createMap, result),
+                    getVariableValues(itemOutputMap, Item::createMap, result),
+                    result.getRelativeGap(),
+                    result.getStatistics()
+            );
+        }
+    }
 }
@@ -14,6 +14,7 @@ import io.github.elcheapogary.satisplanory.model.Item;
 import io.github.elcheapogary.satisplanory.model.Recipe;
 import io.github.elcheapogary.satisplanory.prodplan.MultiPlan;
 import io.github.elcheapogary.satisplanory.prodplan.OptimizationTarget;
+import io.github.elcheapogary.satisplanory.prodplan.PlanningSession;
 import io.github.elcheapogary.satisplanory.prodplan.ProdPlanUtils;
 import io.github.elcheapogary.satisplanory.prodplan.ProductionPlan;
 import io.github.elcheapogary.satisplanory.prodplan.ProductionPlanNotFeatisbleException;
@@ -30,6 +31,7 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import javafx.beans.binding.Bindings;
@@ -105,6 +107,11 @@ class ConfigTab
 
         accordion.getPanes().add(createHelpPane(appContext));
 
+        /*
+         * Kept between calculations, so that changing only amounts does not solve the whole model again.
+         */
+        AtomicReference<PlanningSession> planningSession = new AtomicReference<>();
+
         Button button = new Button("Calculate");
         button.setMaxWidth(Double.MAX_VALUE);
         vbox.getChildren().add(button);
@@ -135,6 +142,8 @@ class ConfigTab
                 );
             }
 
+            ProductionPlanner planner = b.build();
+
             MultiPlan plan;
 
             try {
@@ -142,7 +151,26 @@ class ConfigTab
                         .setTitle("Calculating")
                         .setContentText("Calculating production plan")
                         .setCancellable(true)
-                        .runTask(taskContext -> ProdPlanUtils.getMultiPlan(appContext.getGameData(), b.build()))
+                        .runTask(taskContext -> {
+                            /*
+                             * Creating a session builds the whole model, which takes a while for large plans, so it
+                             * happens here rather than on the JavaFX thread.
+                             *
+                             * Sessions are not thread safe, and a cancelled task may still be using its session when
+                             * the next one starts, so the task takes the session out while it uses it, and only puts
+                             * it back once it is done with it. A task that is cancelled or fails does not put it back,
+                             * and the next one creates a new session.
+                             */
+                            PlanningSession session = planningSession.getAndSet(null);
+
+                            if (session == null || !session.update(planner)){
+                                session = planner.createSession();
+                            }
+
+                            MultiPlan multiPlan = ProdPlanUtils.getMultiPlanSpeculatively(appContext.getGameData(), session);
+                            planningSession.set(session);
+                            return multiPlan;
+                        })
                         .get();
             }catch (TaskProgressDialog.TaskCancelledException e){
                 return;
@@ -18,6 +18,7 @@ import io.github.elcheapogary.satisplanory.util.MathExpression;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -78,6 +79,14 @@ class ErrorTab
 
         vbox.getChildren().add(createWordWrapLabel("A production plan is not possible with the selected input items and recipes."));
 
+        if (!model.getMultiPlan().getLimitingInputItems().isEmpty()){
+            vbox.getChildren().add(createWordWrapLabel("Not enough of these input items: " + getItemNames(model.getMultiPlan().getLimitingInputItems())));
+        }
+
+        if (!model.getMultiPlan().getMissingItems().isEmpty()){
+            vbox.getChildren().add(createWordWrapLabel("These items are required, but cannot be produced from the input items with the selected recipes: " + getItemNames(model.getMultiPlan().getMissingItems())));
+        }
+
         if (model.getMultiPlan().canCreatePlanByAddingResources()){
             vbox.getChildren().add(createWordWrapLabel("A production plan is possible with the configured recipes, but requires the addition of the following input items:"));
             vbox.getChildren().add(createMissingResourcesTable(model.getMultiPlan()));
@@ -196,6 +205,15 @@ class ErrorTab
         return tableView;
     }
 
+    private static String getItemNames(Collection<? extends Item> items)
+    {
+        List<String> names = new ArrayList<>(items.size());
+        for (Item item : items){
+            names.add(item.getName());
+        }
+        return String.join(", ", names);
+    }
+
     private static Label createWordWrapLabel(String text)
     {
         Label label = new Label(text);
@@ -23,15 +23,114 @@ public class BigFraction
         implements Comparable<BigFraction>
 {
     private static final Pattern parsePattern = Pattern.compile("((-)?(\\d+))(/([1-9]\\d*))?");
-    protected final BigInteger numerator;
-    protected final BigInteger denominator;
+    /*
+     * Returned by the small value arithmetic helpers when a result does not fit in the small representation. No small
+     * value ever has this numerator, see below.
+     */
+    private static final long OVERFLOW = Long.MIN_VALUE;
+    /*
+     * Nearly every value we work with has a numerator and denominator that fit in a long, and doing arithmetic on longs
+     * is a lot cheaper than on BigIntegers. So there are two representations: a value is stored in smallNumerator and
+     * smallDenominator if both fit in a long and the numerator is not Long.MIN_VALUE, in which case numerator and
+     * denominator are null. Otherwise, it is stored in numerator and denominator. Which representation is used depends
+     * only on the value, so every value has exactly one representation.
+     *
+     * In both representations, the fraction is reduced and the denominator is positive.
+     */
+    private final long smallNumerator;
+    private final long smallDenominator;
+    private final BigInteger numerator;
+    private final BigInteger denominator;
+
+    private BigFraction(long numerator, long denominator)
+    {
+        assert numerator != OVERFLOW;
+        assert denominator > 0;
+        this.smallNumerator = numerator;
+        this.smallDenominator = denominator;
+        this.numerator = null;
+        this.denominator = null;
+    }
 
     private BigFraction(BigInteger numerator, BigInteger denominator)
     {
+        assert !fitsInSmallValue(numerator, denominator);
+        this.smallNumerator = 0;
+        this.smallDenominator = 0;
         this.numerator = numerator;
         this.denominator = denominator;
     }
 
+    private static long addSmall(long a, long b)
+    {
+        if (a == OVERFLOW || b == OVERFLOW){
+            return OVERFLOW;
+        }
+        long r = a + b;
+        if (((a ^ r) & (b ^ r)) < 0){
+            return OVERFLOW;
+        }
+        return r;
+    }
+
+    private static boolean fitsInSmallValue(BigInteger numerator, BigInteger denominator)
+    {
+        return numerator.bitLength() < Long.SIZE
+                && denominator.bitLength() < Long.SIZE
+                && numerator.longValue() != OVERFLOW;
+    }
+
+    /*
+     * Binary GCD of two non-negative longs.
+     */
+    private static long gcd(long a, long b)
+    {
+        if (a == 0){
+            return b;
+        }else if (b == 0){
+            return a;
+        }
+
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>= Long.numberOfTrailingZeros(a);
+
+        do{
+            b >>= Long.numberOfTrailingZeros(b);
+            if (a > b){
+                long t = b;
+                b = a;
+                a = t;
+            }
+            b -= a;
+        }while (b != 0);
+
+        return a << shift;
+    }
+
+    /*
+     * Same as BigInteger.hashCode() for the same value.
+     */
+    private static int hashCodeOfSmallValue(long value)
+    {
+        long abs = Math.abs(value);
+        int hashCode = (int)(abs >>> 32);
+        hashCode = (int)(31L * hashCode + (abs & 0xFFFFFFFFL));
+        return hashCode * Long.signum(value);
+    }
+
+    private static long multiplySmall(long a, long b)
+    {
+        if (a == OVERFLOW || b == OVERFLOW){
+            return OVERFLOW;
+        }
+        long high = Math.multiplyHigh(a, b);
+        long low = a * b;
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0)){
+            return low;
+        }
+        return OVERFLOW;
+    }
+
     public static BigFraction negativeOne()
     {
         return NegativeOne.INSTANCE;
@@ -52,7 +151,12 @@ public class BigFraction
         return IntegerBigFraction.valueOfInteger(value);
     }
 
-    private static BigFraction valueOf(BigInteger numerator, BigInteger denominator)
+    /**
+     * Returns the fraction {@code numerator / denominator}, which do not have to be reduced.
+     *
+     * @throws ArithmeticException if the denominator is zero.
+     */
+    public static BigFraction valueOf(BigInteger numerator, BigInteger denominator)
     {
         Objects.requireNonNull(numerator);
         Objects.requireNonNull(denominator);
@@ -77,7 +181,7 @@ public class BigFraction
         }
 
         if (denominator.equals(BigInteger.ONE)){
-            return new IntegerBigFraction(numerator);
+            return IntegerBigFraction.valueOfInteger(numerator);
         }
 
         BigInteger gcd = numerator.gcd(denominator);
@@ -87,10 +191,53 @@ public class BigFraction
             denominator = denominator.divide(gcd);
 
             if (denominator.equals(BigInteger.ONE)){
-                return new IntegerBigFraction(numerator);
+                return IntegerBigFraction.valueOfInteger(numerator);
             }
         }
 
+        if (fitsInSmallValue(numerator, denominator)){
+            return new BigFraction(numerator.longValue(), denominator.longValue());
+        }
+
+        return new BigFraction(numerator, denominator);
+    }
+
+    /*
+     * Creates a fraction from a numerator and denominator that do not have to be reduced. Either argument may be
+     * OVERFLOW, in which case this returns null.
+     */
+    private static BigFraction valueOfSmall(long numerator, long denominator)
+    {
+        if (numerator == OVERFLOW || denominator == OVERFLOW){
+            return null;
+        }
+
+        if (denominator == 0){
+            throw new ArithmeticException();
+        }else if (denominator < 0){
+            numerator = -numerator;
+            denominator = -denominator;
+        }
+
+        long gcd = gcd(Math.abs(numerator), denominator);
+
+        return valueOfReducedSmall(numerator / gcd, denominator / gcd);
+    }
+
+    /*
+     * Creates a fraction from a reduced numerator and a positive denominator. Either argument may be OVERFLOW, in
+     * which case this returns null.
+     */
+    private static BigFraction valueOfReducedSmall(long numerator, long denominator)
+    {
+        if (numerator == OVERFLOW || denominator == OVERFLOW){
+            return null;
+        }else if (denominator == 1){
+            return IntegerBigFraction.valueOfInteger(numerator);
+        }else if (numerator == 0){
+            return zero();
+        }
+
         return new BigFraction(numerator, denominator);
     }
 
@@ -137,17 +284,57 @@ public class BigFraction
         if (signum() >= 0){
             return this;
         }
-        return valueOf(numerator.abs(), denominator.abs());
+        return negate();
     }
 
     public BigFraction add(BigFraction addend)
     {
+        if (isSmall() && addend.isSmall()){
+            BigFraction retv = addToSmallValue(addend.smallNumerator, addend.smallDenominator);
+            if (retv != null){
+                return retv;
+            }
+        }
+
         return valueOf(
-                this.numerator.multiply(addend.denominator).add(addend.numerator.multiply(this.denominator)),
-                this.denominator.multiply(addend.denominator)
+                this.getNumerator().multiply(addend.getDenominator()).add(addend.getNumerator().multiply(this.getDenominator())),
+                this.getDenominator().multiply(addend.getDenominator())
         );
     }
 
+    /*
+     * Adds a reduced small fraction to this small fraction, using Knuth's method to keep the intermediate values small.
+     * Returns null on overflow.
+     */
+    private BigFraction addToSmallValue(long n, long d)
+    {
+        long a = smallNumerator;
+        long b = smallDenominator;
+
+        if (b == d){
+            return valueOfSmall(addSmall(a, n), b);
+        }
+
+        long gcd = gcd(b, d);
+
+        if (gcd == 1){
+            return valueOfReducedSmall(
+                    addSmall(multiplySmall(a, d), multiplySmall(n, b)),
+                    multiplySmall(b, d)
+            );
+        }
+
+        long t = addSmall(multiplySmall(a, d / gcd), multiplySmall(n, b / gcd));
+
+        if (t == OVERFLOW){
+            return null;
+        }
+
+        long gcd2 = gcd(Math.abs(t), gcd);
+
+        return valueOfReducedSmall(t / gcd2, multiplySmall(b / gcd, d / gcd2));
+    }
+
     public BigFraction add(long addend)
     {
         return add(valueOf(addend));
@@ -158,18 +345,69 @@ public class BigFraction
         return add(valueOf(addend));
     }
 
+    /**
+     * Returns the bit length of the longer of the numerator and the denominator of this fraction in lowest terms, as
+     * in {@link BigInteger#bitLength()}.
+     */
+    public int bitLength()
+    {
+        if (isSmall()){
+            /*
+             * The highest bit of the two or-ed together is the highest bit of the longer one. For a negative
+             * numerator, BigInteger.bitLength() counts the bits of its complement.
+             */
+            return Long.SIZE - Long.numberOfLeadingZeros((smallNumerator < 0 ? ~smallNumerator : smallNumerator) | smallDenominator);
+        }
+        return Math.max(numerator.bitLength(), denominator.bitLength());
+    }
+
     @Override
     public int compareTo(BigFraction o)
     {
-        return this.numerator.multiply(o.denominator).compareTo(o.numerator.multiply(this.denominator));
+        if (isSmall() && o.isSmall()){
+            if (smallDenominator == o.smallDenominator){
+                return Long.compare(smallNumerator, o.smallNumerator);
+            }
+
+            int signum = Long.signum(smallNumerator);
+            int otherSignum = Long.signum(o.smallNumerator);
+
+            if (signum != otherSignum){
+                return Integer.compare(signum, otherSignum);
+            }
+
+            long left = multiplySmall(smallNumerator, o.smallDenominator);
+            long right = multiplySmall(o.smallNumerator, smallDenominator);
+
+            if (left != OVERFLOW && right != OVERFLOW){
+                return Long.compare(left, right);
+            }
+        }
+
+        return this.getNumerator().multiply(o.getDenominator()).compareTo(o.getNumerator().multiply(this.getDenominator()));
     }
 
     public BigFraction divide(BigFraction divisor)
     {
-        if (divisor.numerator.equals(BigInteger.ZERO)){
+        if (divisor.signum() == 0){
             throw new ArithmeticException("divide by zero");
         }
-        return valueOf(numerator.multiply(divisor.denominator), denominator.multiply(divisor.numerator));
+
+        if (isSmall() && divisor.isSmall()){
+            BigFraction retv;
+
+            if (divisor.smallNumerator < 0){
+                retv = multiplySmallValue(-divisor.smallDenominator, -divisor.smallNumerator);
+            }else{
+                retv = multiplySmallValue(divisor.smallDenominator, divisor.smallNumerator);
+            }
+
+            if (retv != null){
+                return retv;
+            }
+        }
+
+        return valueOf(getNumerator().multiply(divisor.getDenominator()), getDenominator().multiply(divisor.getNumerator()));
     }
 
     public BigFraction divide(long divisor)
@@ -185,6 +423,9 @@ public class BigFraction
     @Override
     public double doubleValue()
     {
+        if (isSmall()){
+            return (double)smallNumerator / (double)smallDenominator;
+        }
         return numerator.doubleValue() / denominator.doubleValue();
     }
 
@@ -202,9 +443,34 @@ public class BigFraction
         return (float)doubleValue();
     }
 
+    /**
+     * Returns the denominator of this fraction in lowest terms, which is always positive.
+     */
+    public BigInteger getDenominator()
+    {
+        if (isSmall()){
+            return BigInteger.valueOf(smallDenominator);
+        }
+        return denominator;
+    }
+
+    /**
+     * Returns the numerator of this fraction in lowest terms.
+     */
+    public BigInteger getNumerator()
+    {
+        if (isSmall()){
+            return BigInteger.valueOf(smallNumerator);
+        }
+        return numerator;
+    }
+
     @Override
     public int hashCode()
     {
+        if (isSmall()){
+            return 31 * (31 + hashCodeOfSmallValue(smallNumerator)) + hashCodeOfSmallValue(smallDenominator);
+        }
         return Objects.hash(numerator, denominator);
     }
 
@@ -216,9 +482,17 @@ public class BigFraction
 
     public boolean isInteger()
     {
+        if (isSmall()){
+            return smallDenominator == 1;
+        }
         return denominator.equals(BigInteger.ONE);
     }
 
+    private boolean isSmall()
+    {
+        return numerator == null;
+    }
+
     @Override
     public long longValue()
     {
@@ -267,7 +541,33 @@ public class BigFraction
 
     public BigFraction multiply(BigFraction multiplicand)
     {
-        return valueOf(numerator.multiply(multiplicand.numerator), denominator.multiply(multiplicand.denominator));
+        if (isSmall() && multiplicand.isSmall()){
+            BigFraction retv = multiplySmallValue(multiplicand.smallNumerator, multiplicand.smallDenominator);
+            if (retv != null){
+                return retv;
+            }
+        }
+
+        return valueOf(getNumerator().multiply(multiplicand.getNumerator()), getDenominator().multiply(multiplicand.getDenominator()));
+    }
+
+    /*
+     * Multiplies this small fraction by a reduced small fraction, cancelling common factors before multiplying so the
+     * result is already reduced. Returns null on overflow.
+     */
+    private BigFraction multiplySmallValue(long n, long d)
+    {
+        if (smallNumerator == 0 || n == 0){
+            return zero();
+        }
+
+        long gcd1 = gcd(Math.abs(smallNumerator), d);
+        long gcd2 = gcd(Math.abs(n), smallDenominator);
+
+        return valueOfReducedSmall(
+                multiplySmall(smallNumerator / gcd1, n / gcd2),
+                multiplySmall(smallDenominator / gcd2, d / gcd1)
+        );
     }
 
     public BigFraction multiply(long multiplicand)
@@ -282,19 +582,32 @@ public class BigFraction
 
     public BigFraction negate()
     {
+        if (isSmall()){
+            return valueOfReducedSmall(-smallNumerator, smallDenominator);
+        }
         return valueOf(numerator.negate(), denominator);
     }
 
     public int signum()
     {
+        if (isSmall()){
+            return Long.signum(smallNumerator);
+        }
         return numerator.signum();
     }
 
     public BigFraction subtract(BigFraction val)
     {
+        if (isSmall() && val.isSmall()){
+            BigFraction retv = addToSmallValue(-val.smallNumerator, val.smallDenominator);
+            if (retv != null){
+                return retv;
+            }
+        }
+
         return valueOf(
-                this.numerator.multiply(val.denominator).subtract(val.numerator.multiply(this.denominator)),
-                this.denominator.multiply(val.denominator)
+                this.getNumerator().multiply(val.getDenominator()).subtract(val.getNumerator().multiply(this.getDenominator())),
+                this.getDenominator().multiply(val.getDenominator())
         );
     }
 
@@ -310,21 +623,30 @@ public class BigFraction
 
     public BigDecimal toBigDecimal(int scale, RoundingMode roundingMode)
     {
-        return new BigDecimal(numerator).divide(new BigDecimal(denominator), scale, roundingMode);
+        return new BigDecimal(getNumerator()).divide(new BigDecimal(getDenominator()), scale, roundingMode);
     }
 
     public BigDecimal toBigDecimal(MathContext mathContext)
     {
-        return new BigDecimal(numerator).divide(new BigDecimal(denominator), mathContext);
+        return new BigDecimal(getNumerator()).divide(new BigDecimal(getDenominator()), mathContext);
     }
 
     public BigInteger toBigInteger()
     {
+        if (isSmall()){
+            return BigInteger.valueOf(smallNumerator / smallDenominator);
+        }
         return numerator.divide(denominator);
     }
 
     public BigInteger toBigIntegerExact()
     {
+        if (isSmall()){
+            if (smallNumerator % smallDenominator != 0){
+                throw new ArithmeticException();
+            }
+            return BigInteger.valueOf(smallNumerator / smallDenominator);
+        }
         BigInteger[] a = numerator.divideAndRemainder(denominator);
         if (a[1].signum() != 0){
             throw new ArithmeticException();
@@ -335,15 +657,23 @@ public class BigFraction
     @Override
     public String toString()
     {
+        if (isSmall()){
+            return smallNumerator + "/" + smallDenominator;
+        }
         return numerator.toString() + "/" + denominator;
     }
 
     private static class IntegerBigFraction
             extends BigFraction
     {
-        public IntegerBigFraction(BigInteger numerator)
+        private IntegerBigFraction(long value)
         {
-            super(numerator, BigInteger.ONE);
+            super(value, 1L);
+        }
+
+        private IntegerBigFraction(BigInteger value)
+        {
+            super(value, BigInteger.ONE);
         }
 
         public static BigFraction valueOfInteger(long value)
@@ -354,21 +684,19 @@ public class BigFraction
                 return one();
             }else if (value == -1){
                 return negativeOne();
+            }else if (value == OVERFLOW){
+                return new IntegerBigFraction(BigInteger.valueOf(value));
             }
 
-            return new IntegerBigFraction(BigInteger.valueOf(value));
+            return new IntegerBigFraction(value);
         }
 
         public static BigFraction valueOfInteger(BigInteger value)
         {
             Objects.requireNonNull(value);
 
-            if (value.signum() == 0){
-                return zero();
-            }else if (value.equals(BigInteger.ONE)){
-                return one();
-            }else if (value.equals(BigInteger.ONE.negate())){
-                return negativeOne();
+            if (value.bitLength() < Long.SIZE){
+                return valueOfInteger(value.longValue());
             }
 
             return new IntegerBigFraction(value);
@@ -377,37 +705,46 @@ public class BigFraction
         @Override
         public BigFraction add(BigInteger addend)
         {
-            return valueOfInteger(numerator.add(addend));
+            return valueOfInteger(toBigInteger().add(addend));
         }
 
         @Override
         public byte byteValue()
         {
-            return numerator.byteValue();
+            return (byte)intValue();
         }
 
         @Override
         public BigFraction divide(BigInteger divisor)
         {
-            return BigFraction.valueOf(numerator, divisor);
+            return BigFraction.valueOf(toBigInteger(), divisor);
         }
 
         @Override
         public double doubleValue()
         {
-            return numerator.doubleValue();
+            if (super.isSmall()){
+                return (double)super.smallNumerator;
+            }
+            return super.numerator.doubleValue();
         }
 
         @Override
         public float floatValue()
         {
-            return numerator.floatValue();
+            if (super.isSmall()){
+                return (float)super.smallNumerator;
+            }
+            return super.numerator.floatValue();
         }
 
         @Override
         public int intValue()
         {
-            return numerator.intValue();
+            if (super.isSmall()){
+                return (int)super.smallNumerator;
+            }
+            return super.numerator.intValue();
         }
 
         @Override
@@ -419,55 +756,67 @@ public class BigFraction
         @Override
         public long longValue()
         {
-            return numerator.longValue();
+            if (super.isSmall()){
+                return super.smallNumerator;
+            }
+            return super.numerator.longValue();
         }
 
         @Override
         public BigFraction negate()
         {
-            return valueOfInteger(numerator.negate());
+            if (super.isSmall()){
+                return valueOfInteger(-super.smallNumerator);
+            }
+            return valueOfInteger(super.numerator.negate());
         }
 
         @Override
         public short shortValue()
         {
-            return numerator.shortValue();
+            return (short)intValue();
         }
 
         @Override
         public BigFraction subtract(BigInteger value)
         {
-            return valueOfInteger(numerator.subtract(value));
+            return valueOfInteger(toBigInteger().subtract(value));
         }
 
         @Override
         public BigDecimal toBigDecimal(int scale, RoundingMode roundingMode)
         {
-            return new BigDecimal(numerator).setScale(scale, roundingMode);
+            return new BigDecimal(toBigInteger()).setScale(scale, roundingMode);
         }
 
         @Override
         public BigDecimal toBigDecimal(MathContext mathContext)
         {
-            return new BigDecimal(numerator, mathContext);
+            return new BigDecimal(toBigInteger(), mathContext);
         }
 
         @Override
         public BigInteger toBigInteger()
         {
-            return numerator;
+            if (super.isSmall()){
+                return BigInteger.valueOf(super.smallNumerator);
+            }
+            return super.numerator;
         }
 
         @Override
         public BigInteger toBigIntegerExact()
         {
-            return numerator;
+            return toBigInteger();
         }
 
         @Override
         public String toString()
         {
-            return numerator.toString();
+            if (super.isSmall()){
+                return Long.toString(super.smallNumerator);
+            }
+            return super.numerator.toString();
         }
     }
 
@@ -478,7 +827,7 @@ public class BigFraction
 
         private NegativeOne()
         {
-            super(BigInteger.ONE.negate());
+            super(-1L);
         }
 
         @Override
@@ -564,7 +913,7 @@ public class BigFraction
 
         private One()
         {
-            super(BigInteger.ONE);
+            super(1L);
         }
 
         @Override
@@ -602,7 +951,14 @@ public class BigFraction
         @Override
         public BigFraction divide(BigFraction divisor)
         {
-            return BigFraction.valueOf(divisor.denominator, divisor.numerator);
+            if (divisor.signum() == 0){
+                throw new ArithmeticException("divide by zero");
+            }else if (!divisor.isSmall()){
+                return BigFraction.valueOf(divisor.denominator, divisor.numerator);
+            }else if (divisor.smallNumerator < 0){
+                return valueOfReducedSmall(-divisor.smallDenominator, -divisor.smallNumerator);
+            }
+            return valueOfReducedSmall(divisor.smallDenominator, divisor.smallNumerator);
         }
 
         @Override
@@ -709,7 +1065,7 @@ public class BigFraction
 
         private Zero()
         {
-            super(BigInteger.ZERO);
+            super(0L);
         }
 
         @Override
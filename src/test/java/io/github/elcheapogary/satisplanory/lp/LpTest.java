@@ -10,9 +10,21 @@
 
 package io.github.elcheapogary.satisplanory.lp;
 
+import io.github.elcheapogary.satisplanory.util.BigFraction;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class LpTest
 {
@@ -40,4 +52,1019 @@ class LpTest
 
         assertEquals(5, result.getIntegerValue(b).intValue());
     }
+
+    @Test
+    public void testIntegerVariables2()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        for (SolverOptions.NodeSelection nodeSelection : SolverOptions.NodeSelection.values()){
+            Model model = new Model();
+
+            IntegerExpression x = model.addIntegerVariable("x");
+            IntegerExpression y = model.addIntegerVariable("y");
+
+            model.addConstraint(x.add(y).lte(6));
+            model.addConstraint(x.multiply(9).add(y.multiply(5)).lte(45));
+
+            OptimizationResult result = model.maximize(List.of(x.multiply(8).add(y.multiply(5))), new SolverOptions.Builder()
+                    .setNodeSelection(nodeSelection)
+                    .build()
+            );
+
+            assertEquals(5, result.getIntegerValue(x).intValue());
+            assertEquals(0, result.getIntegerValue(y).intValue());
+        }
+    }
+
+    @Test
+    public void testCuts()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        IntegerExpression x = model.addIntegerVariable("x");
+        IntegerExpression y = model.addIntegerVariable("y");
+
+        model.addConstraint(x.add(y).lte(6));
+        model.addConstraint(x.multiply(9).add(y.multiply(5)).lte(45));
+
+        SolverStatistics[] statistics = new SolverStatistics[2];
+
+        for (int cutRounds = 0; cutRounds < 2; cutRounds++){
+            /*
+             * With a single objective, the nodes are mostly those of the final pass, which minimizes the variables that
+             * the objective does not involve, from wherever phase I leaves the basis. A second objective makes the
+             * passes after the first one branch on the same kind of problem, where the cuts help.
+             */
+            OptimizationResult result = model.maximize(List.of(x.multiply(8).add(y.multiply(5)), y), new SolverOptions.Builder()
+                    .setCutRounds(cutRounds * 4)
+                    .setHeuristicInterval(0)
+                    .setParallelism(1)
+                    .build()
+            );
+
+            assertEquals(5, result.getIntegerValue(x).intValue());
+            assertEquals(0, result.getIntegerValue(y).intValue());
+            statistics[cutRounds] = result.getStatistics();
+        }
+
+        assertEquals(0, statistics[0].getCuts());
+        assertTrue(statistics[1].getCuts() > 0);
+        assertTrue(statistics[1].getNodesCreated() < statistics[0].getNodesCreated());
+    }
+
+    @Test
+    public void testBranching()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        int[] weights = {3, 5, 14, 17, 11};
+        int[] volumes = {16, 8, 9, 5, 10};
+        int[] values = {14, 18, 24, 22, 20};
+
+        Model model = new Model();
+
+        Expression weight = Expression.zero();
+        Expression volume = Expression.zero();
+        Expression objective = Expression.zero();
+
+        for (int i = 0; i < weights.length; i++){
+            IntegerExpression x = model.addIntegerVariable("x" + i);
+            weight = weight.add(x.multiply(weights[i]));
+            volume = volume.add(x.multiply(volumes[i]));
+            objective = objective.add(x.multiply(values[i]));
+        }
+
+        model.addConstraint(weight.lte(44));
+        model.addConstraint(volume.lte(34));
+
+        Map<SolverOptions.Branching, OptimizationResult> results = new EnumMap<>(SolverOptions.Branching.class);
+
+        for (SolverOptions.Branching branching : SolverOptions.Branching.values()){
+            results.put(branching, model.maximize(List.of(objective), new SolverOptions.Builder()
+                    .setBranching(branching)
+                    .setCutRounds(0)
+                    .setHeuristicInterval(0)
+                    .setParallelism(1)
+                    .build()
+            ));
+        }
+
+        OptimizationResult inOrder = results.get(SolverOptions.Branching.IN_ORDER);
+
+        for (OptimizationResult result : results.values()){
+            assertEquals(inOrder.getFractionValue(objective), result.getFractionValue(objective));
+            if (result != inOrder){
+                assertTrue(result.getStatistics().getNodesCreated() < inOrder.getStatistics().getNodesCreated());
+            }
+        }
+    }
+
+    @Test
+    public void testBranchingNegative()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        IntegerExpression x = model.addFreeIntegerVariable("x");
+        IntegerExpression y = model.addFreeIntegerVariable("y");
+
+        model.addConstraint(x.multiply(10).lte(-23));
+        model.addConstraint(y.multiply(3).lte(x.add(-4)));
+
+        for (SolverOptions.Branching branching : SolverOptions.Branching.values()){
+            OptimizationResult result = model.maximize(List.of(x.add(y)), new SolverOptions.Builder()
+                    .setBranching(branching)
+                    .setCutRounds(0)
+                    .setHeuristicInterval(0)
+                    .setParallelism(1)
+                    .build()
+            );
+
+            assertEquals(-3, result.getIntegerValue(x).intValue());
+            assertEquals(-3, result.getIntegerValue(y).intValue());
+        }
+    }
+
+    @Test
+    public void testHeuristics()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        int[] weights = {3, 5, 14, 17, 11};
+        int[] volumes = {16, 8, 9, 5, 10};
+        int[] values = {14, 18, 24, 22, 20};
+
+        Model model = new Model();
+
+        Expression weight = Expression.zero();
+        Expression volume = Expression.zero();
+        Expression objective = Expression.zero();
+
+        for (int i = 0; i < weights.length; i++){
+            IntegerExpression x = model.addIntegerVariable("x" + i);
+            weight = weight.add(x.multiply(weights[i]));
+            volume = volume.add(x.multiply(volumes[i]));
+            objective = objective.add(x.multiply(values[i]));
+        }
+
+        model.addConstraint(weight.lte(44));
+        model.addConstraint(volume.lte(34));
+
+        OptimizationResult[] results = new OptimizationResult[2];
+        OptimizationResult[] limitedResults = new OptimizationResult[2];
+
+        for (int i = 0; i < 2; i++){
+            SolverOptions options = new SolverOptions.Builder()
+                    .setCutRounds(0)
+                    .setHeuristicInterval(i * 100)
+                    .setParallelism(1)
+                    .build();
+
+            results[i] = model.maximize(List.of(objective), options);
+            limitedResults[i] = model.maximize(List.of(objective), options.toBuilder()
+                    .setMaxNodes(1)
+                    .build()
+            );
+        }
+
+        assertEquals(results[0].getFractionValue(objective), results[1].getFractionValue(objective));
+        assertEquals(0, results[0].getStatistics().getHeuristicSolutions());
+        assertTrue(results[1].getStatistics().getHeuristicSolutions() > 0);
+
+        /*
+         * Without heuristics, the search has to go on until it gets to a leaf, but a solution found at the root lets it
+         * stop there.
+         */
+        assertTrue(limitedResults[0].getStatistics().getNodesExpanded() > 1);
+        assertEquals(1, limitedResults[1].getStatistics().getNodesExpanded());
+        assertTrue(limitedResults[1].getFractionValue(objective).compareTo(results[1].getFractionValue(objective)) <= 0);
+    }
+
+    @Test
+    public void testHeuristicsNegative()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        IntegerExpression x = model.addFreeIntegerVariable("x");
+
+        model.addConstraint(x.multiply(10).lte(-23));
+
+        OptimizationResult result = model.maximize(x);
+
+        assertEquals(BigFraction.valueOf(-3), result.getFractionValue(x));
+    }
+
+    @Test
+    public void testLockRounding()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        DecisionVariable xVariable = new DecisionVariable(0, "x");
+        DecisionVariable yVariable = new DecisionVariable(1, "y");
+        Expression x = new Expression(new DecisionVariable[]{xVariable}, new BigFraction[]{BigFraction.one()}, BigFraction.zero());
+        Expression y = new Expression(new DecisionVariable[]{yVariable}, new BigFraction[]{BigFraction.one()}, BigFraction.zero());
+
+        /*
+         * The relaxation has x = 3.75 and y = 2.25. Rounding to the nearest integers gives x >= 4 and y <= 2, which is
+         * infeasible, but every constraint only locks x and y up, so lock rounding rounds both down.
+         */
+        List<Constraint> constraints = List.of(x.add(y).lte(6), x.multiply(9).add(y.multiply(5)).lte(45));
+        List<BranchingConstraint> branchingConstraints = List.of(new IntegerBranchingConstraint(x), new IntegerBranchingConstraint(y));
+
+        Tableau tableau = new Tableau(null, List.of(xVariable, yVariable), SolverOptions.Pricing.DANTZIG, new SolverExecutor(1, new CancellationToken()));
+
+        for (Constraint constraint : constraints){
+            tableau.addConstraint(constraint);
+        }
+
+        tableau.solveFeasibility();
+        Tableau.Objective objective = tableau.addObjective(x.multiply(8).add(y.multiply(5)));
+        tableau.maximize(objective);
+
+        assertEquals(BigFraction.valueOf(15).divide(4), tableau.getValue(x));
+
+        PrimalHeuristic lockRounding = new PrimalHeuristic.LockRounding(constraints);
+        Tableau solution = lockRounding.find(tableau, objective, branchingConstraints, null, null);
+
+        assertNotNull(solution);
+        assertEquals(BigFraction.valueOf(3), solution.getValue(x));
+        assertEquals(BigFraction.valueOf(2), solution.getValue(y));
+
+        /*
+         * An equality locks its variables both ways, so there is nothing lock rounding can do.
+         */
+        lockRounding = new PrimalHeuristic.LockRounding(List.of(constraints.get(0), constraints.get(1), x.add(y).eq(5)));
+
+        assertNull(lockRounding.find(tableau, objective, branchingConstraints, null, null));
+    }
+
+    @Test
+    public void testNodeLimit()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        IntegerExpression x = model.addIntegerVariable("x");
+        IntegerExpression y = model.addIntegerVariable("y");
+
+        model.addConstraint(x.add(y).lte(6));
+        model.addConstraint(x.multiply(9).add(y.multiply(5)).lte(45));
+
+        Expression objective = x.multiply(8).add(y.multiply(5));
+
+        OptimizationResult optimal = model.maximize(objective);
+
+        assertTrue(optimal.isOptimal());
+        assertEquals(optimal.getObjectiveValues(), optimal.getObjectiveBounds());
+        assertEquals(BigFraction.zero(), optimal.getRelativeGap());
+
+        for (SolverOptions.NodeSelection nodeSelection : SolverOptions.NodeSelection.values()){
+            OptimizationResult result = model.maximize(List.of(objective), new SolverOptions.Builder()
+                    .setNodeSelection(nodeSelection)
+                    .setMaxNodes(1)
+                    .setMaxTime(Duration.ZERO)
+                    .build()
+            );
+
+            BigFraction value = result.getObjectiveValues().get(0);
+            BigFraction bound = result.getObjectiveBounds().get(0);
+
+            assertTrue(value.compareTo(BigFraction.valueOf(40)) <= 0, nodeSelection.name());
+            assertTrue(bound.compareTo(BigFraction.valueOf(40)) >= 0, nodeSelection.name());
+            assertEquals(value, result.getFractionValue(objective), nodeSelection.name());
+            assertEquals(bound.equals(value), result.isOptimal(), nodeSelection.name());
+            assertEquals(result.isOptimal(), result.getRelativeGap().signum() == 0, nodeSelection.name());
+        }
+    }
+
+    @Test
+    public void testStatistics()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        IntegerExpression x = model.addIntegerVariable("x");
+        IntegerExpression y = model.addIntegerVariable("y");
+
+        model.addConstraint(x.add(y).lte(6));
+        model.addConstraint(x.multiply(9).add(y.multiply(5)).lte(45));
+
+        SolverStatistics statistics = model.maximize(List.of(x.multiply(8).add(y.multiply(5)), y)).getStatistics();
+
+        assertEquals(2, statistics.getObjectivesSolved());
+        assertTrue(statistics.getPhaseTwoPivots() > 0);
+        assertTrue(statistics.getNodesExpanded() > 1);
+        assertTrue(statistics.getNodesCreated() >= statistics.getNodesExpanded());
+        assertTrue(statistics.getNodesCreated() >= statistics.getNodesInfeasible() + statistics.getNodesPruned());
+        assertTrue(statistics.getMaxBitLength() > 0);
+        assertTrue(statistics.getTotalTime().compareTo(statistics.getBranchAndBoundTime()) >= 0);
+
+        for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+            Model lp = new Model();
+
+            Expression a = lp.addVariable("a");
+            Expression b = lp.addVariable("b");
+
+            lp.addConstraint(a.add(b).lte(4));
+            lp.addConstraint(a.subtract(b).gte(1));
+
+            statistics = lp.maximize(List.of(a.add(b.multiply(2))), new SolverOptions.Builder()
+                    .setAlgorithm(algorithm)
+                    .setPresolveEnabled(false)
+                    .build()
+            ).getStatistics();
+
+            assertEquals(1, statistics.getObjectivesSolved(), algorithm.name());
+            assertTrue(statistics.getPhaseOnePivots() + statistics.getPhaseTwoPivots() + statistics.getFloatingPointPivots() > 0, algorithm.name());
+            assertEquals(0, statistics.getNodesCreated(), algorithm.name());
+        }
+    }
+
+    @Test
+    public void testDegenerate()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        /*
+         * A chain of balance constraints through the origin, like a production chain with nothing going in yet, so
+         * that every variable that enters the basis at the start can not move.
+         */
+        Model model = new Model();
+
+        List<Expression> variables = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++){
+            variables.add(model.addVariable("x" + i));
+        }
+
+        Expression objective = Expression.zero();
+
+        for (int i = 0; i < variables.size(); i++){
+            if (i > 0){
+                model.addConstraint(variables.get(i).lte(variables.get(i - 1)));
+            }
+            objective = objective.add(variables.get(i));
+        }
+
+        model.addConstraint(variables.get(0).lte(10));
+
+        for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+            OptimizationResult result = model.maximize(List.of(objective), new SolverOptions.Builder()
+                    .setAlgorithm(algorithm)
+                    .setPresolveEnabled(false)
+                    .build()
+            );
+
+            assertEquals(BigFraction.valueOf(300), result.getFractionValue(objective), algorithm.name());
+            for (Expression variable : variables){
+                assertEquals(BigFraction.valueOf(10), result.getFractionValue(variable), algorithm.name());
+            }
+        }
+
+        SolverStatistics statistics = model.maximize(List.of(objective), new SolverOptions.Builder()
+                .setAlgorithm(SolverOptions.Algorithm.TABLEAU)
+                .setPresolveEnabled(false)
+                .build()
+        ).getStatistics();
+
+        assertTrue(statistics.getDegeneratePivots() > 0);
+        assertTrue(statistics.getDegeneratePivots() < statistics.getPhaseOnePivots() + statistics.getPhaseTwoPivots());
+    }
+
+    @Test
+    public void testDegenerateAfterKnownZeros()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        /*
+         * A chain like the one of testDegenerate(), with every link twice so that the ratio test has ties, a row that
+         * needs phase I, and a row that phase I empties as known zeros, which leaves that row without a basic variable
+         * when the degenerate pivots of phase II perturb the tableau.
+         */
+        Model model = new Model();
+
+        List<Expression> variables = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++){
+            variables.add(model.addVariable("x" + i));
+        }
+
+        Expression zero1 = model.addVariable("zero1");
+        Expression zero2 = model.addVariable("zero2");
+        model.addConstraint(zero1.add(zero2).lte(0));
+
+        Expression a = model.addVariable("a");
+        Expression b = model.addVariable("b");
+        model.addConstraint(a.add(b).gte(2));
+        model.addConstraint(a.lte(1));
+        model.addConstraint(b.lte(1));
+
+        Expression objective = zero1.add(zero2);
+
+        for (int i = 0; i < variables.size(); i++){
+            if (i > 0){
+                model.addConstraint(variables.get(i).lte(variables.get(i - 1)));
+                model.addConstraint(variables.get(i).multiply(2).lte(variables.get(i - 1).multiply(2)));
+            }
+            objective = objective.add(variables.get(i).multiply(i + 1));
+        }
+
+        model.addConstraint(variables.get(0).lte(10));
+
+        for (SolverOptions.Pricing pricing : SolverOptions.Pricing.values()){
+            OptimizationResult result = model.maximize(List.of(objective), new SolverOptions.Builder()
+                    .setAlgorithm(SolverOptions.Algorithm.TABLEAU)
+                    .setPricing(pricing)
+                    .setPresolveEnabled(false)
+                    .build()
+            );
+
+            assertEquals(BigFraction.valueOf(4650), result.getFractionValue(objective), pricing.name());
+
+            if (pricing == SolverOptions.Pricing.DANTZIG){
+                assertTrue(result.getStatistics().getDegeneratePivots() >= Tableau.PERTURBATION_DEGENERATE_PIVOTS);
+            }
+        }
+    }
+
+    @Test
+    public void testDegenerateDualSimplex()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        /*
+         * With a zero objective every dual pivot is degenerate. Requiring the last variable of the chain x_i <= x_(i-1)
+         * to be at least 1 makes the dual simplex walk back along the whole chain, one pivot for each variable, so it
+         * switches to lowest id leaving rows part of the way.
+         */
+        List<DecisionVariable> decisionVariables = new ArrayList<>();
+        List<Expression> variables = new ArrayList<>();
+
+        for (int i = 0; i < Tableau.MAX_DEGENERATE_DUAL_PIVOTS * 2; i++){
+            DecisionVariable decisionVariable = new DecisionVariable(i, "x" + i);
+            decisionVariables.add(decisionVariable);
+            variables.add(new Expression(new DecisionVariable[]{decisionVariable}, new BigFraction[]{BigFraction.one()}, BigFraction.zero()));
+        }
+
+        SolverExecutor executor = new SolverExecutor(1, new CancellationToken());
+        Tableau tableau = new Tableau(null, decisionVariables, SolverOptions.Pricing.DANTZIG, executor);
+
+        for (int i = 1; i < variables.size(); i++){
+            tableau.addConstraint(variables.get(i).lte(variables.get(i - 1)));
+        }
+
+        tableau.solveFeasibility();
+        Tableau.Objective objective = tableau.addObjective(Expression.zero());
+        tableau.maximize(objective);
+
+        assertEquals(BigFraction.zero(), tableau.addConstraintAndReoptimize(variables.get(variables.size() - 1).gte(1), objective));
+        assertTrue(executor.getStatistics().getDualPivots() > Tableau.MAX_DEGENERATE_DUAL_PIVOTS);
+
+        for (Expression variable : variables){
+            assertTrue(tableau.getValue(variable).compareTo(BigFraction.one()) >= 0);
+        }
+    }
+
+    @Test
+    public void testCrash()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        /*
+         * Two item balance rows with nothing going in, which need artificial variables, and rows with positive
+         * constants that limit which columns can replace them.
+         */
+        Model model = new Model();
+
+        Expression input = model.addVariable("input");
+        Expression recipe1 = model.addVariable("recipe1");
+        Expression recipe2 = model.addVariable("recipe2");
+        Expression output = model.addVariable("output");
+
+        model.addConstraint(input.subtract(recipe1.multiply(2)).eq(0));
+        model.addConstraint(recipe1.multiply(3).subtract(recipe2).subtract(output).eq(0));
+        model.addConstraint(input.lte(12));
+        model.addConstraint(recipe1.add(recipe2).gte(4));
+        model.addConstraint(recipe2.lte(output));
+
+        List<Expression> objectives = List.of(output, recipe2.negate());
+
+        for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+            OptimizationResult result = model.maximize(objectives, new SolverOptions.Builder()
+                    .setAlgorithm(algorithm)
+                    .setPresolveEnabled(false)
+                    .build()
+            );
+
+            assertEquals(List.of(BigFraction.valueOf(18), BigFraction.zero()), result.getObjectiveValues(), algorithm.name());
+            assertEquals(BigFraction.valueOf(6), result.getFractionValue(recipe1), algorithm.name());
+        }
+
+        model.addConstraint(output.gte(20));
+
+        assertThrows(InfeasibleSolutionException.class, () -> model.maximize(objectives, new SolverOptions.Builder()
+                .setAlgorithm(SolverOptions.Algorithm.TABLEAU)
+                .setPresolveEnabled(false)
+                .build()
+        ));
+    }
+
+    @Test
+    public void testFarkasCertificate()
+    {
+        Model model = new Model();
+
+        Expression input = model.addVariable("input", BigFraction.zero(), BigFraction.valueOf(60));
+        Expression recipe = model.addVariable("recipe");
+        Expression output = model.addVariable("output");
+        Expression unrelated = model.addVariable("unrelated");
+
+        Constraint balance = recipe.multiply(30).eq(input);
+        model.addConstraint(balance);
+        model.addConstraint(output.eq(recipe.multiply(15)));
+        Constraint outputRequirement = output.gte(40);
+        model.addConstraint(outputRequirement);
+        Constraint unrelatedLimit = unrelated.lte(5);
+        model.addConstraint(unrelatedLimit);
+
+        for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+            for (boolean presolveEnabled : new boolean[]{true, false}){
+                String message = algorithm.name() + ", presolve " + presolveEnabled;
+
+                InfeasibleSolutionException e = assertThrows(InfeasibleSolutionException.class, () -> model.maximize(List.of(output), new SolverOptions.Builder()
+                        .setAlgorithm(algorithm)
+                        .setPresolveEnabled(presolveEnabled)
+                        .build()
+                ), message);
+
+                FarkasCertificate certificate = e.getCertificate();
+                assertNotNull(certificate, message);
+                assertTrue(model.provesInfeasibility(certificate.getMultipliers()), message);
+                assertTrue(certificate.getMultiplier(outputRequirement).signum() > 0, message);
+                assertTrue(certificate.getMultiplier(balance).signum() != 0, message);
+                assertEquals(BigFraction.zero(), certificate.getMultiplier(unrelatedLimit), message);
+            }
+        }
+
+        assertFalse(model.provesInfeasibility(Map.of(outputRequirement, BigFraction.one())));
+        assertFalse(model.provesInfeasibility(Map.of(outputRequirement, BigFraction.one().negate())));
+    }
+
+    @Test
+    public void testIntegerInfeasible()
+    {
+        Model model = new Model();
+
+        IntegerExpression x = model.addIntegerVariable("x");
+
+        model.addConstraint(x.multiply(2).eq(1));
+
+        /*
+         * The relaxation is feasible, so there is no certificate.
+         */
+        InfeasibleSolutionException e = assertThrows(InfeasibleSolutionException.class, () -> model.maximize(x));
+        assertNull(e.getCertificate());
+    }
+
+    @Test
+    public void testCancellation()
+    {
+        Model model = new Model();
+
+        IntegerExpression x = model.addIntegerVariable("x");
+        Expression y = model.addVariable("y");
+
+        model.addConstraint(x.multiply(2).add(y).lte(7));
+
+        for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+            SolverOptions options = new SolverOptions.Builder()
+                    .setAlgorithm(algorithm)
+                    .build();
+
+            CancellationToken token = new CancellationToken();
+            token.cancel();
+            assertThrows(InterruptedException.class, () -> model.maximize(List.of(x.add(y)), options, token), algorithm.name());
+
+            Thread.currentThread().interrupt();
+            assertThrows(InterruptedException.class, () -> model.maximize(List.of(x.add(y)), options), algorithm.name());
+            assertFalse(Thread.interrupted(), algorithm.name());
+        }
+    }
+
+    @Test
+    public void testExpressionArithmetic()
+    {
+        Model model = new Model();
+
+        Expression x = model.addVariable("x");
+        Expression y = model.addVariable("y");
+        Expression z = model.addVariable("z");
+
+        Expression a = y.multiply(2).add(x);
+        Expression b = z.multiply(3).subtract(y.multiply(2)).add(1);
+
+        assertEquals("${x} + 2${y}", a.toString());
+        assertEquals("${x} + 3${z} + 1", a.add(b).toString());
+        assertEquals("${x} + 4${y} - 3${z} - 1", a.subtract(b).toString());
+        assertEquals("", a.subtract(a).toString());
+        assertEquals("-${x} - 2${y} - 1", a.add(1).negate().toString());
+        assertEquals("${x} + 2${y} <= 5", a.lte(5).toString());
+    }
+
+    @Test
+    public void testExpressionBuilder()
+    {
+        Model model = new Model();
+
+        Expression x = model.addVariable("x");
+        Expression y = model.addVariable("y");
+        Expression z = model.addVariable("z");
+
+        ExpressionBuilder builder = new ExpressionBuilder()
+                .add(z)
+                .add(2, x.add(y))
+                .subtract(BigFraction.valueOf(2), y.add(1))
+                .add(BigFraction.valueOf(3));
+
+        Expression e = builder.build();
+
+        assertEquals("2${x} + ${z} + 1", e.toString());
+
+        builder.subtract(z);
+
+        assertEquals("2${x} + ${z} + 1", e.toString());
+        assertEquals("2${x} + 1", builder.build().toString());
+        assertEquals("", new ExpressionBuilder().build().toString());
+    }
+
+    @Test
+    public void testLexicographicObjectives()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        Expression x = model.addVariable("x");
+        Expression y = model.addVariable("y", BigFraction.zero(), BigFraction.valueOf(8));
+        Expression z = model.addVariable("z");
+
+        model.addConstraint(x.add(y).add(z).lte(10));
+        model.addConstraint(x.add(y).lte(6));
+
+        List<Expression> objectives = List.of(x.add(y).add(z), z.negate(), y);
+
+        for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+            OptimizationResult result = model.maximize(objectives, new SolverOptions.Builder()
+                    .setAlgorithm(algorithm)
+                    .build()
+            );
+
+            assertEquals(List.of(BigFraction.valueOf(10), BigFraction.valueOf(-4), BigFraction.valueOf(6)), result.getObjectiveValues(), algorithm.name());
+            assertEquals(BigFraction.zero(), result.getFractionValue(x), algorithm.name());
+            assertEquals(BigFraction.valueOf(6), result.getFractionValue(y), algorithm.name());
+            assertEquals(BigFraction.valueOf(4), result.getFractionValue(z), algorithm.name());
+        }
+    }
+
+    @Test
+    public void testRevisedSimplexMatchesTableau()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        Expression a = model.addVariable("a");
+        Expression b = model.addVariable("b");
+        Expression c = model.addVariable("c");
+
+        model.addConstraint(a.multiply(2).add(b).add(c).lte(14));
+        model.addConstraint(a.multiply(4).add(b.multiply(2)).add(c.multiply(3)).lte(28));
+        model.addConstraint(a.multiply(2).add(b.multiply(5)).add(c.multiply(5)).lte(30));
+        model.addConstraint(a.add(b).gte(3));
+        model.addConstraint(b.subtract(c).eq(1));
+
+        List<Expression> objectives = List.of(a.add(b.multiply(2)).subtract(c), c.negate());
+
+        OptimizationResult tableauResult = model.maximize(objectives, new SolverOptions.Builder()
+                .setAlgorithm(SolverOptions.Algorithm.TABLEAU)
+                .build()
+        );
+        OptimizationResult revisedResult = model.maximize(objectives, new SolverOptions.Builder()
+                .setAlgorithm(SolverOptions.Algorithm.REVISED_SIMPLEX)
+                .build()
+        );
+        OptimizationResult hybridResult = model.maximize(objectives, new SolverOptions.Builder()
+                .setAlgorithm(SolverOptions.Algorithm.HYBRID)
+                .build()
+        );
+
+        assertEquals(tableauResult.getObjectiveValues(), revisedResult.getObjectiveValues());
+        assertEquals(tableauResult.getObjectiveValues(), hybridResult.getObjectiveValues());
+
+        for (Expression e : List.of(a, b, c)){
+            assertEquals(tableauResult.getFractionValue(e), revisedResult.getFractionValue(e));
+            assertEquals(tableauResult.getFractionValue(e), hybridResult.getFractionValue(e));
+        }
+    }
+
+    @Test
+    public void testAlgorithmsAgreeOnDegenerateModels()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        /*
+         * Small coefficients and right hand sides, and objectives that leave most variables out, give models with
+         * degenerate vertices and many optimal solutions, which every algorithm has to break the same way.
+         */
+        Random random = new Random(1);
+        int solved = 0;
+
+        for (int i = 0; i < 200; i++){
+            Model model = new Model();
+            List<Expression> variables = new ArrayList<>();
+
+            for (int j = 2 + random.nextInt(8); j > 0; j--){
+                variables.add(random.nextInt(10) == 0 ? model.addFreeVariable("x" + j) : model.addVariable("x" + j));
+            }
+
+            for (int j = 1 + random.nextInt(8); j > 0; j--){
+                Expression e = Expression.zero();
+
+                for (Expression variable : variables){
+                    if (random.nextBoolean()){
+                        e = e.add(variable.multiply(random.nextInt(5) - 2));
+                    }
+                }
+
+                int rhs = random.nextInt(4) * 5;
+                model.addConstraint(random.nextInt(4) == 0 ? e.eq(rhs) : e.lte(rhs));
+            }
+
+            Expression sum = Expression.zero();
+            for (Expression variable : variables){
+                model.addConstraint(variable.gte(-10));
+                sum = sum.add(variable);
+            }
+            model.addConstraint(sum.lte(30));
+
+            List<Expression> objectives = new ArrayList<>();
+
+            for (int j = 1 + random.nextInt(2); j > 0; j--){
+                Expression objective = Expression.zero();
+
+                for (Expression variable : variables){
+                    if (random.nextInt(3) == 0){
+                        objective = objective.add(variable.multiply(random.nextInt(3) - 1));
+                    }
+                }
+
+                objectives.add(objective);
+            }
+
+            OptimizationResult expected;
+
+            try {
+                expected = model.maximize(objectives, new SolverOptions.Builder()
+                        .setAlgorithm(SolverOptions.Algorithm.TABLEAU)
+                        .setPresolveEnabled(false)
+                        .build()
+                );
+            }catch (InfeasibleSolutionException e){
+                continue;
+            }
+
+            solved++;
+
+            List<OptimizationResult> results = new ArrayList<>();
+
+            for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+                for (boolean presolve : new boolean[]{false, true}){
+                    SolverOptions options = new SolverOptions.Builder()
+                            .setAlgorithm(algorithm)
+                            .setPresolveEnabled(presolve)
+                            .build();
+
+                    results.add(model.maximize(objectives, options));
+                    results.add(model.createSession(objectives, options).maximize());
+                }
+            }
+
+            for (OptimizationResult result : results){
+                assertEquals(expected.getObjectiveValues(), result.getObjectiveValues(), "model " + i);
+
+                for (Expression variable : variables){
+                    assertEquals(expected.getFractionValue(variable), result.getFractionValue(variable), "model " + i);
+                }
+            }
+        }
+
+        assertTrue(solved > 100);
+    }
+
+    @Test
+    public void testPricingRulesAgree()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        Expression a = model.addVariable("a");
+        Expression b = model.addVariable("b");
+        Expression c = model.addVariable("c");
+        Expression d = model.addVariable("d");
+
+        model.addConstraint(a.multiply(2).add(b).add(c).add(d).lte(14));
+        model.addConstraint(a.multiply(4).add(b.multiply(2)).add(c.multiply(3)).lte(28));
+        model.addConstraint(a.multiply(2).add(b.multiply(5)).add(c.multiply(5)).add(d.multiply(2)).lte(30));
+        model.addConstraint(a.add(b).gte(3));
+        model.addConstraint(b.subtract(c).eq(1));
+
+        List<Expression> objectives = List.of(a.add(b.multiply(2)).subtract(c).add(d), d.negate());
+
+        OptimizationResult expected = model.maximize(objectives);
+
+        for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+            for (SolverOptions.Pricing pricing : SolverOptions.Pricing.values()){
+                OptimizationResult result = model.maximize(objectives, new SolverOptions.Builder()
+                        .setAlgorithm(algorithm)
+                        .setPricing(pricing)
+                        .build()
+                );
+
+                assertEquals(expected.getObjectiveValues(), result.getObjectiveValues(), algorithm + " " + pricing);
+            }
+        }
+    }
+
+    @Test
+    public void testPresolve()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        Expression input = model.addVariable("input");
+        Expression recipeA = model.addVariable("recipeA");
+        Expression recipeB = model.addVariable("recipeB");
+        Expression output = model.addVariable("output");
+        Expression surplus = model.addVariable("surplus");
+        Expression unused = model.addVariable("unused");
+
+        model.addConstraint(input.lte(60));
+        model.addConstraint(input.lte(90));
+        model.addConstraint(unused.eq(0));
+        model.addConstraint(recipeA.multiply(30).add(recipeB.multiply(20)).eq(input));
+        model.addConstraint(output.eq(recipeA.multiply(15).add(recipeB.multiply(20))));
+        model.addConstraint(surplus.eq(output.subtract(10)));
+        model.addConstraint(recipeA.add(recipeB).gte(0));
+        model.addConstraint(recipeB.lte(1));
+
+        List<Expression> objectives = List.of(output, input.negate());
+
+        for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+            OptimizationResult presolved = model.maximize(objectives, new SolverOptions.Builder()
+                    .setAlgorithm(algorithm)
+                    .build()
+            );
+            OptimizationResult notPresolved = model.maximize(objectives, new SolverOptions.Builder()
+                    .setAlgorithm(algorithm)
+                    .setPresolveEnabled(false)
+                    .build()
+            );
+
+            assertEquals(notPresolved.getObjectiveValues(), presolved.getObjectiveValues());
+            assertEquals(BigFraction.valueOf(40), presolved.getFractionValue(output));
+            assertEquals(BigFraction.valueOf(60), presolved.getFractionValue(input));
+            assertEquals(BigFraction.valueOf(30), presolved.getFractionValue(surplus));
+            assertEquals(BigFraction.one(), presolved.getFractionValue(recipeB));
+            assertEquals(BigFraction.zero(), presolved.getFractionValue(unused));
+        }
+    }
+
+    @Test
+    public void testPresolveInfeasible()
+    {
+        Model model = new Model();
+
+        Expression a = model.addVariable("a");
+        Expression b = model.addVariable("b");
+
+        model.addConstraint(a.lte(2));
+        model.addConstraint(a.gte(3));
+        model.addConstraint(a.add(b).lte(10));
+
+        assertThrows(InfeasibleSolutionException.class, () -> model.maximize(b));
+    }
+
+    @Test
+    public void testSolverExecutor()
+    {
+        SolverExecutor executor = new SolverExecutor(4, new CancellationToken());
+
+        assertEquals(List.of(List.of(0, 3)), executor.mapRanges(3, 2, List::of));
+
+        List<List<Integer>> ranges = executor.mapRanges(100, 10, List::of);
+        assertEquals(4, ranges.size());
+        for (int i = 0; i < ranges.size(); i++){
+            assertEquals(i == 0 ? 0 : ranges.get(i - 1).get(1), ranges.get(i).get(0));
+        }
+        assertEquals(100, ranges.get(ranges.size() - 1).get(1));
+
+        /*
+         * The outer loop takes all the tasks of the executor, so the inner loops run on the calling thread.
+         */
+        List<List<Integer>> innerRangeCounts = executor.mapRanges(4, 1, (from, to) -> List.of(executor.mapRanges(100, 1, List::of).size()));
+        assertEquals(List.of(List.of(1), List.of(1), List.of(1), List.of(1)), innerRangeCounts);
+        assertEquals(4, executor.mapRanges(100, 1, List::of).size());
+
+        assertThrows(InfeasibleSolutionException.class, () -> executor.mapRanges(100, 1, (from, to) -> {
+            if (from > 0){
+                throw new InfeasibleSolutionException();
+            }
+            return from;
+        }));
+        assertEquals(4, executor.mapRanges(100, 1, List::of).size());
+
+        assertEquals(1, new SolverExecutor(1, new CancellationToken()).mapRanges(100, 1, List::of).size());
+    }
+
+    @Test
+    public void testSolverSession()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        Expression input = model.addVariable("input", BigFraction.zero(), BigFraction.valueOf(60));
+        Expression recipeA = model.addVariable("recipeA");
+        Expression recipeB = model.addVariable("recipeB");
+        Expression output = model.addVariable("output");
+
+        model.addConstraint(recipeA.multiply(30).add(recipeB.multiply(20)).eq(input));
+        model.addConstraint(output.eq(recipeA.multiply(15).add(recipeB.multiply(20))));
+
+        Constraint outputRequirement = output.gte(10);
+        model.addConstraint(outputRequirement);
+        Constraint recipeBLimit = recipeB.lte(1);
+        model.addConstraint(recipeBLimit);
+
+        for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+            SolverSession session = model.createSession(List.of(output, input.negate()), new SolverOptions.Builder()
+                    .setAlgorithm(algorithm)
+                    .build()
+            );
+
+            assertEquals(List.of(BigFraction.valueOf(40), BigFraction.valueOf(-60)), session.maximize().getObjectiveValues(), algorithm.name());
+
+            session.setBounds(input, BigFraction.zero(), BigFraction.valueOf(90));
+            assertEquals(List.of(BigFraction.valueOf(55), BigFraction.valueOf(-90)), session.maximize().getObjectiveValues(), algorithm.name());
+
+            session.setRightHandSide(recipeBLimit, BigFraction.valueOf(3));
+            OptimizationResult result = session.maximize();
+            assertEquals(List.of(BigFraction.valueOf(75), BigFraction.valueOf(-90)), result.getObjectiveValues(), algorithm.name());
+            assertEquals(BigFraction.one(), result.getFractionValue(recipeA), algorithm.name());
+
+            session.setRightHandSide(outputRequirement, BigFraction.valueOf(100));
+            InfeasibleSolutionException e = assertThrows(InfeasibleSolutionException.class, session::maximize, algorithm.name());
+            assertTrue(e.getCertificate().getMultiplier(outputRequirement).signum() > 0, algorithm.name());
+
+            session.setRightHandSide(outputRequirement, BigFraction.valueOf(50));
+            session.setObjectiveFunctions(List.of(input.negate(), output));
+            result = session.maximize();
+            assertEquals(List.of(BigFraction.valueOf(-50), BigFraction.valueOf(50)), result.getObjectiveValues(), algorithm.name());
+            assertEquals(BigFraction.valueOf(5).divide(2), result.getFractionValue(recipeB), algorithm.name());
+
+            session.setRightHandSide(outputRequirement, BigFraction.valueOf(30));
+            assertEquals(List.of(BigFraction.valueOf(-30), BigFraction.valueOf(30)), session.maximize().getObjectiveValues(), algorithm.name());
+        }
+    }
+
+    @Test
+    public void testVariableBounds()
+            throws InfeasibleSolutionException, UnboundedSolutionException, InterruptedException
+    {
+        Model model = new Model();
+
+        Expression a = model.addVariable("a", BigFraction.valueOf(-5), BigFraction.valueOf(3));
+        Expression b = model.addFreeVariable("b");
+        Expression c = model.addVariable("c", null, BigFraction.valueOf(4));
+
+        model.addConstraint(b.eq(a.add(c)));
+        model.addConstraint(a.subtract(c).gte(-6));
+
+        List<Expression> objectives = List.of(c, a.negate());
+
+        for (Model m : List.of(model, Model.fromJson(model.toJson()))){
+            for (SolverOptions.Algorithm algorithm : SolverOptions.Algorithm.values()){
+                for (boolean presolveEnabled : new boolean[]{true, false}){
+                    OptimizationResult result = m.maximize(objectives, new SolverOptions.Builder()
+                            .setAlgorithm(algorithm)
+                            .setPresolveEnabled(presolveEnabled)
+                            .build()
+                    );
+
+                    assertEquals(BigFraction.valueOf(4), result.getFractionValue(c));
+                    assertEquals(BigFraction.valueOf(-2), result.getFractionValue(a));
+                    assertEquals(BigFraction.valueOf(2), result.getFractionValue(b));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidVariableBounds()
+    {
+        Model model = new Model();
+
+        assertThrows(IllegalArgumentException.class, () -> model.addVariable("a", BigFraction.one(), BigFraction.zero()));
+    }
 }
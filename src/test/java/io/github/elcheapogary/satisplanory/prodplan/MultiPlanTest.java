@@ -10,13 +10,17 @@
 
 package io.github.elcheapogary.satisplanory.prodplan;
 
+import io.github.elcheapogary.satisplanory.model.Building;
+import io.github.elcheapogary.satisplanory.model.GameData;
 import io.github.elcheapogary.satisplanory.model.Item;
+import io.github.elcheapogary.satisplanory.model.MatterState;
 import io.github.elcheapogary.satisplanory.model.Recipe;
 import io.github.elcheapogary.satisplanory.model.test.TestGameData;
 import io.github.elcheapogary.satisplanory.util.BigDecimalUtils;
 import io.github.elcheapogary.satisplanory.util.BigFraction;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.junit.jupiter.api.Assumptions;
@@ -24,10 +28,17 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class MultiPlanTest
 {
+    private interface ProdPlanTask
+    {
+        MultiPlan run()
+                throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException;
+    }
 
     private static void assertCanBeBuiltWithAllRawResourcesAndRecipes(TestGameData gameData, String itemName)
             throws ProductionPlanInternalException, ProductionPlanNotFeatisbleException, InterruptedException
@@ -45,6 +56,146 @@ public class MultiPlanTest
         assertTrue(multiPlan.canCreatePlanByAddingResourcesAndRecipes());
     }
 
+    private static Item createItem(String name)
+    {
+        return new Item.Builder()
+                .setClassName(name.replace(" ", ""))
+                .setName(name)
+                .setDescription(name)
+                .setMatterState(MatterState.SOLID)
+                .setSinkValue(1)
+                .build();
+    }
+
+    private static Recipe createRecipe(Building building, Item ingredient, int ingredientAmount, Item product, int productAmount)
+    {
+        return new Recipe.Builder()
+                .setName(product.getName())
+                .setProducedInBuilding(building)
+                .setCycleTimeSeconds(BigDecimal.valueOf(2))
+                .setVariablePowerConstant(BigDecimal.ZERO)
+                .setVariablePowerFactor(BigDecimal.ONE)
+                .addIngredient(ingredient, ingredientAmount)
+                .addProduct(product, productAmount)
+                .build();
+    }
+
+    /*
+     * The plan is made with getMultiPlan, and with getMultiPlanSpeculatively with none and all of the other plans
+     * started on other threads, which all have to agree.
+     */
+    private static List<MultiPlan> getMultiPlans(GameData gameData, ProductionPlanner planner)
+            throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
+    {
+        return List.of(
+                ProdPlanUtils.getMultiPlan(gameData, planner),
+                ProdPlanUtils.getMultiPlanSpeculatively(gameData, planner, 0),
+                ProdPlanUtils.getMultiPlanSpeculatively(gameData, planner, 3)
+        );
+    }
+
+    @Test
+    public void testFallbacksWithoutGameData()
+            throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
+    {
+        Building building = new Building.Builder()
+                .setClassName("Smelter")
+                .setName("Smelter")
+                .setPowerConsumption(BigDecimal.valueOf(4))
+                .build();
+
+        /*
+         * Iron Ore is one of the resources that the plans with all items add, and nothing produces Artifact.
+         */
+        Item ore = createItem("Iron Ore");
+        Item ingot = createItem("Iron Ingot");
+        Item plate = createItem("Iron Plate");
+        Item artifact = createItem("Artifact");
+        Recipe ingotRecipe = createRecipe(building, ore, 1, ingot, 1);
+        Recipe plateRecipe = createRecipe(building, ingot, 3, plate, 2);
+
+        GameData gameData = new GameData.Builder()
+                .addBuilding(building)
+                .addItem(ore)
+                .addItem(ingot)
+                .addItem(plate)
+                .addItem(artifact)
+                .addRecipe(ingotRecipe)
+                .addRecipe(plateRecipe)
+                .build();
+
+        ProductionPlanner feasiblePlanner = new ProductionPlanner.Builder()
+                .addInputItem(ore, 60)
+                .addRecipe(ingotRecipe)
+                .addRecipe(plateRecipe)
+                .addOutputItem(plate, BigDecimal.ONE, BigDecimal.ONE)
+                .build();
+
+        for (MultiPlan multiPlan : getMultiPlans(gameData, feasiblePlanner)){
+            assertTrue(multiPlan.isUnmodifiedPlanFeasible());
+        }
+
+        ProductionPlanner missingRecipePlanner = new ProductionPlanner.Builder()
+                .addInputItem(ore, 60)
+                .addRecipe(ingotRecipe)
+                .addOutputItem(plate, BigDecimal.ONE, BigDecimal.ONE)
+                .build();
+
+        for (MultiPlan multiPlan : getMultiPlans(gameData, missingRecipePlanner)){
+            assertFalse(multiPlan.isUnmodifiedPlanFeasible());
+            assertTrue(multiPlan.canCreatePlanByAddingRecipes());
+            assertFalse(multiPlan.canCreatePlanByAddingResources());
+            assertFalse(multiPlan.canCreatePlanByAddingResourcesAndRecipes());
+            assertEquals(Set.of(plateRecipe), multiPlan.getMissingRecipes());
+            assertEquals(Set.of(plate), multiPlan.getMissingItems());
+        }
+
+        ProductionPlanner limitingInputPlanner = new ProductionPlanner.Builder()
+                .addInputItem(ore, 30)
+                .addRecipe(ingotRecipe)
+                .addRecipe(plateRecipe)
+                .requireOutputItemsPerMinute(plate, 100)
+                .build();
+
+        for (MultiPlan multiPlan : getMultiPlans(gameData, limitingInputPlanner)){
+            assertFalse(multiPlan.isUnmodifiedPlanFeasible());
+            assertTrue(multiPlan.canCreatePlanByAddingResources());
+            assertEquals(Set.of(ore), multiPlan.getLimitingInputItems());
+        }
+
+        /*
+         * No plan is feasible, and the certificate of the unmodified plan already proves that. The exception of the
+         * unmodified plan is passed on, with its certificate.
+         */
+        ProductionPlanner artifactPlanner = new ProductionPlanner.Builder()
+                .addInputItem(ore, 60)
+                .addRecipe(ingotRecipe)
+                .requireOutputItemsPerMinute(artifact, 1)
+                .build();
+
+        List<ProdPlanTask> tasks = List.of(
+                () -> ProdPlanUtils.getMultiPlan(gameData, artifactPlanner),
+                () -> ProdPlanUtils.getMultiPlanSpeculatively(gameData, artifactPlanner, 0),
+                () -> ProdPlanUtils.getMultiPlanSpeculatively(gameData, artifactPlanner, 3)
+        );
+
+        for (ProdPlanTask task : tasks){
+            ProductionPlanNotFeatisbleException e = assertThrows(ProductionPlanNotFeatisbleException.class, task::run);
+            assertNotNull(e.getCause());
+            assertNotNull(e.getCertificate());
+            assertEquals(Set.of(artifact), e.getCertificate().getMissingItems());
+        }
+
+        /*
+         * Adding inputs does not help a plan that is missing a recipe, but adding the recipe does.
+         */
+        ProductionPlanNotFeatisbleException e = assertThrows(ProductionPlanNotFeatisbleException.class, missingRecipePlanner::createPlan);
+        InfeasibilityCertificate certificate = e.getCertificate();
+
+        assertTrue(certificate.provesInfeasible(missingRecipePlanner.toBuilder().addInputItem(ingot, 1000).build()));
+        assertFalse(certificate.provesInfeasible(missingRecipePlanner.toBuilder().addRecipe(plateRecipe).build()));
+    }
+
     @Test
     public void testMissingRecipe()
             throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
@@ -70,6 +221,65 @@ public class MultiPlanTest
         assertTrue(missingRecipes.contains(gameData.requireRecipeByName("Iron Plate")));
 
         assertFalse(multiPlan.canCreatePlanByAddingResources());
+
+        assertTrue(multiPlan.getMissingItems().contains(gameData.requireItemByName("Iron Plate")));
+        assertTrue(multiPlan.getLimitingInputItems().isEmpty());
+    }
+
+    @Test
+    public void testSpeculative()
+            throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
+    {
+        TestGameData gameData = TestGameData.getLatestTestData();
+
+        Assumptions.assumeFalse(gameData == null);
+
+        ProductionPlanner infeasiblePlanner = new ProductionPlanner.Builder()
+                .addInputItem(gameData.requireItemByName("Iron Ore"), 60)
+                .addRecipe(gameData.requireRecipeByName("Iron Ingot"))
+                .addOutputItem(gameData.requireItemByName("Iron Plate"), BigDecimal.ONE, BigDecimal.ONE)
+                .build();
+
+        MultiPlan multiPlan = ProdPlanUtils.getMultiPlanSpeculatively(gameData, infeasiblePlanner);
+
+        assertFalse(multiPlan.isUnmodifiedPlanFeasible());
+        assertTrue(multiPlan.canCreatePlanByAddingRecipes());
+        assertFalse(multiPlan.canCreatePlanByAddingResources());
+        assertEquals(ProdPlanUtils.getMultiPlan(gameData, infeasiblePlanner).getMissingRecipes(), multiPlan.getMissingRecipes());
+
+        ProductionPlanner feasiblePlanner = infeasiblePlanner.toBuilder()
+                .addRecipe(gameData.requireRecipeByName("Iron Plate"))
+                .build();
+
+        multiPlan = ProdPlanUtils.getMultiPlanSpeculatively(gameData, feasiblePlanner.createSession());
+
+        assertTrue(multiPlan.isUnmodifiedPlanFeasible());
+        assertFalse(multiPlan.canCreatePlanByAddingRecipes());
+        assertFalse(multiPlan.canCreatePlanByAddingResources());
+    }
+
+    @Test
+    public void testLimitingInputItem()
+            throws ProductionPlanInternalException, InterruptedException, ProductionPlanNotFeatisbleException
+    {
+        TestGameData gameData = TestGameData.getLatestTestData();
+
+        Assumptions.assumeFalse(gameData == null);
+
+        ProductionPlanner planner = new ProductionPlanner.Builder()
+                .addInputItem(gameData.requireItemByName("Iron Ore"), 30)
+                .addRecipe(gameData.requireRecipeByName("Iron Ingot"))
+                .addRecipe(gameData.requireRecipeByName("Iron Plate"))
+                .requireOutputItemsPerMinute(gameData.requireItemByName("Iron Plate"), 100)
+                .build();
+
+        MultiPlan multiPlan = ProdPlanUtils.getMultiPlan(gameData, planner);
+
+        assertFalse(multiPlan.isUnmodifiedPlanFeasible());
+        assertTrue(multiPlan.canCreatePlanByAddingResources());
+
+        assertEquals(Set.of(gameData.requireItemByName("Iron Ore")), multiPlan.getLimitingInputItems());
+        assertTrue(multiPlan.getMissingItems().isEmpty());
     }
 
     @Test
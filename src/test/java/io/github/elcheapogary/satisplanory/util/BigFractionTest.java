@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2023 elcheapogary
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package io.github.elcheapogary.satisplanory.util;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BigFractionTest
+{
+    private static BigFraction fraction(BigInteger numerator, BigInteger denominator)
+    {
+        return BigFraction.valueOf(numerator).divide(denominator);
+    }
+
+    private static void assertSameValue(BigInteger numerator, BigInteger denominator, BigFraction actual)
+    {
+        BigInteger gcd = numerator.gcd(denominator);
+        if (denominator.signum() < 0){
+            gcd = gcd.negate();
+        }
+        numerator = numerator.divide(gcd);
+        denominator = denominator.divide(gcd);
+
+        String expected = denominator.equals(BigInteger.ONE)
+                ? numerator.toString()
+                : numerator + "/" + denominator;
+
+        assertEquals(expected, actual.toString());
+        assertEquals(fraction(numerator, denominator), actual);
+        assertEquals(fraction(numerator, denominator).hashCode(), actual.hashCode());
+    }
+
+    @Test
+    void testLongOverflow()
+    {
+        BigFraction max = BigFraction.valueOf(Long.MAX_VALUE);
+        BigFraction min = BigFraction.valueOf(Long.MIN_VALUE);
+
+        assertEquals("9223372036854775808", max.add(1).toString());
+        assertEquals("-9223372036854775808", max.negate().subtract(1).toString());
+        assertEquals(min, max.negate().subtract(1));
+        assertEquals("9223372036854775808", min.negate().toString());
+        assertEquals(max, min.negate().subtract(1));
+        assertEquals("85070591730234615847396907784232501249", max.multiply(max).toString());
+        assertEquals(max, max.multiply(max).divide(max));
+        assertEquals("1/9223372036854775807", BigFraction.one().divide(max).toString());
+        assertEquals("-1/9223372036854775808", BigFraction.one().divide(min).toString());
+        assertTrue(max.add(1).compareTo(max) > 0);
+        assertTrue(min.compareTo(max.negate()) < 0);
+        assertEquals(Long.MIN_VALUE, min.longValue());
+        assertEquals(Long.MAX_VALUE, max.longValue());
+    }
+
+    @Test
+    void testMatchesBigIntegerArithmetic()
+    {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 10000; i++){
+            int bits = 1 + random.nextInt(66);
+            BigInteger an = new BigInteger(bits, random).subtract(BigInteger.ONE.shiftLeft(bits - 1));
+            BigInteger ad = new BigInteger(bits, random).add(BigInteger.ONE);
+            BigInteger bn = new BigInteger(bits, random).subtract(BigInteger.ONE.shiftLeft(bits - 1));
+            BigInteger bd = new BigInteger(bits, random).add(BigInteger.ONE);
+
+            BigFraction a = fraction(an, ad);
+            BigFraction b = fraction(bn, bd);
+
+            assertSameValue(an.multiply(bd).add(bn.multiply(ad)), ad.multiply(bd), a.add(b));
+            assertSameValue(an.multiply(bd).subtract(bn.multiply(ad)), ad.multiply(bd), a.subtract(b));
+            assertSameValue(an.multiply(bn), ad.multiply(bd), a.multiply(b));
+            if (bn.signum() != 0){
+                assertSameValue(an.multiply(bd), ad.multiply(bn), a.divide(b));
+            }
+            assertEquals(an.multiply(bd).compareTo(bn.multiply(ad)), a.compareTo(b));
+            assertSameValue(an, ad, BigFraction.valueOf(an, ad));
+            assertSameValue(an.negate(), ad, BigFraction.valueOf(an, ad.negate()));
+            assertSameValue(a.getNumerator(), a.getDenominator(), a);
+            assertEquals(BigInteger.ONE, a.getNumerator().gcd(a.getDenominator()));
+            assertEquals(1, a.getDenominator().signum());
+            assertEquals(Math.max(a.getNumerator().bitLength(), a.getDenominator().bitLength()), a.bitLength());
+        }
+    }
+}